@@ -0,0 +1,55 @@
+package com.duola.grpc_java.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 每个 data 事件的 JSON 序列化开销，ObjectMapper 与 Spring MVC 消息转换器的默认配置一致
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int boxes;
+
+    private ObjectMapper objectMapper;
+    private StreamInferenceResponse response;
+
+    @Setup
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        List<DetectionResult> detections = new ArrayList<>(boxes);
+        for (int i = 0; i < boxes; i++) {
+            DetectionResult detection = new DetectionResult();
+            detection.setClassName(i % 2 == 0 ? "person" : "car");
+            detection.setClassId(i % 80);
+            detection.setScore(0.5 + (i % 50) / 100.0);
+            detection.setX((double) (i % 640));
+            detection.setY((double) (i % 480));
+            detection.setWidth((double) (32 + i % 64));
+            detection.setHeight((double) (48 + i % 96));
+            detection.setTrackId(i);
+            detections.add(detection);
+        }
+        response = new StreamInferenceResponse(true, "Frame processed successfully", detections);
+        response.setFrameIndex(7);
+        response.setRuntimeMs(12.3);
+        response.setEventType("frame");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,42 @@
+package com.duola.grpc_java.service;
+
+import io.grpc.ai.StreamFrame;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上行热路径：Base64 图片解码 + StreamFrame 构建，覆盖 100 KB / 1 MB / 5 MB 三档图片
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FrameEncodeBenchmark {
+
+    @Param({"102400", "1048576", "5242880"})
+    private int imageBytes;
+
+    private String imageBase64;
+
+    @Setup
+    public void setup() {
+        byte[] image = new byte[imageBytes];
+        new Random(42).nextBytes(image);
+        // JPEG SOI / EOI 标记，内容本身对编码开销没有影响
+        image[0] = (byte) 0xFF;
+        image[1] = (byte) 0xD8;
+        image[imageBytes - 2] = (byte) 0xFF;
+        image[imageBytes - 1] = (byte) 0xD9;
+        imageBase64 = Base64.getEncoder().encodeToString(image);
+    }
+
+    @Benchmark
+    public StreamFrame decodeAndBuildFrame() {
+        return StreamGrpcInferenceService.buildImageFrame(imageBase64, 0);
+    }
+}
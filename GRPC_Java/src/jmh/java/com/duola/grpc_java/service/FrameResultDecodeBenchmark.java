@@ -0,0 +1,87 @@
+package com.duola.grpc_java.service;
+
+import com.duola.grpc_java.dto.DetectionResult;
+import com.duola.grpc_java.dto.StreamInferenceResponse;
+import com.google.protobuf.Any;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import io.grpc.ai.FrameResult;
+import io.grpc.ai.ResultEnvelope;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下行热路径：FrameResult（Any 包装的 Struct 检测框）解析为 StreamInferenceResponse，覆盖 10 / 100 / 1000 个框
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameResultDecodeBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int boxes;
+
+    private FrameResult frameResult;
+    private List<Struct> items;
+
+    @Setup
+    public void setup() {
+        items = new ArrayList<>(boxes);
+        ListValue.Builder list = ListValue.newBuilder();
+        for (int i = 0; i < boxes; i++) {
+            Struct item = detectionStruct(i);
+            items.add(item);
+            list.addValues(Value.newBuilder().setStructValue(item).build());
+        }
+        Struct detections = Struct.newBuilder()
+                .putFields("items", Value.newBuilder().setListValue(list).build())
+                .build();
+
+        frameResult = FrameResult.newBuilder()
+                .setFrameIndex(7)
+                .addResults(ResultEnvelope.newBuilder()
+                        .setKind("detections")
+                        .setContentType("application/x-protobuf;type=\"google.protobuf.Struct\"")
+                        .setMessage(Any.pack(detections))
+                        .build())
+                .setMeta(Struct.newBuilder()
+                        .putFields("runtime_ms", Value.newBuilder().setNumberValue(12.3).build())
+                        .putFields("session_id", Value.newBuilder().setStringValue("bench").build())
+                        .build())
+                .build();
+    }
+
+    @Benchmark
+    public StreamInferenceResponse processFrameResult() {
+        return StreamGrpcInferenceService.processFrameResult(frameResult);
+    }
+
+    @Benchmark
+    public void parseDetectionResult(Blackhole bh) {
+        for (Struct item : items) {
+            DetectionResult detection = StreamGrpcInferenceService.parseDetectionResult(item);
+            bh.consume(detection);
+        }
+    }
+
+    static Struct detectionStruct(int i) {
+        return Struct.newBuilder()
+                .putFields("class_name", Value.newBuilder().setStringValue(i % 2 == 0 ? "person" : "car").build())
+                .putFields("class_id", Value.newBuilder().setNumberValue(i % 80).build())
+                .putFields("score", Value.newBuilder().setNumberValue(0.5 + (i % 50) / 100.0).build())
+                .putFields("x", Value.newBuilder().setNumberValue(i % 640).build())
+                .putFields("y", Value.newBuilder().setNumberValue(i % 480).build())
+                .putFields("width", Value.newBuilder().setNumberValue(32 + i % 64).build())
+                .putFields("height", Value.newBuilder().setNumberValue(48 + i % 96).build())
+                .putFields("track_id", Value.newBuilder().setNumberValue(i).build())
+                .build();
+    }
+}
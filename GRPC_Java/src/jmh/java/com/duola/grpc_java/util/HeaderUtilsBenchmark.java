@@ -0,0 +1,31 @@
+package com.duola.grpc_java.util;
+
+import com.duola.grpc_java.dto.StreamInferenceRequest;
+import io.grpc.ai.InferenceHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个流 open 时构建 InferenceHeader 的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderUtilsBenchmark {
+
+    private StreamInferenceRequest request;
+
+    @Setup
+    public void setup() {
+        request = new StreamInferenceRequest();
+    }
+
+    @Benchmark
+    public InferenceHeader buildHeaderFrom() {
+        return HeaderUtils.buildHeaderFrom(request);
+    }
+}
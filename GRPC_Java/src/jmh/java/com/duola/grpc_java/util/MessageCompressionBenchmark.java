@@ -0,0 +1,51 @@
+package com.duola.grpc_java.util;
+
+import io.grpc.Codec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 小检测结果消息的 lz4 / gzip 压缩往返，配合 -prof gc 看每条消息的分配量
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCompressionBenchmark {
+
+    @Param({"lz4", "gzip"})
+    private String encoding;
+
+    private Codec codec;
+    private byte[] message;
+
+    @Setup
+    public void setup() {
+        codec = MessageCompression.LZ4.equals(encoding) ? new MessageCompression.Lz4Codec() : new Codec.Gzip();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            sb.append("{\"class_name\":\"person\",\"confidence\":0.9,\"bbox\":[").append(i).append(",2,3,4]}");
+        }
+        message = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(message.length);
+        try (OutputStream out = codec.compress(compressed)) {
+            out.write(message);
+        }
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package com.duola.grpc_java.client;
 
+import com.duola.grpc_java.util.HeaderUtils;
+import com.duola.grpc_java.util.MessageCompression;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.ai.*;
+import io.grpc.stub.ClientCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
 import com.google.protobuf.util.Timestamps;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Struct;
-import com.google.protobuf.Value;
 import com.google.protobuf.Any;
 import com.google.protobuf.InvalidProtocolBufferException;
 
@@ -18,27 +20,53 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
 
 public class AdvancedInferenceClient {
 
     private static final String OUTPUT_DIR = "output";
 
     public static void main(String[] args) throws InterruptedException {
+        // 位置参数 + --key=value 形式的压测选项
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 2) {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                positional.add(arg);
+            }
+        }
+
         // 检查命令行参数
-        if (args.length < 1) {
-            System.err.println("Usage: java AdvancedInferenceClient <image_path|directory> [server_host] [server_port]");
+        if (positional.isEmpty()) {
+            System.err.println("Usage: java AdvancedInferenceClient <image_path|directory> [server_host] [server_port] [options]");
+            System.err.println("Directory load options:");
+            System.err.println("  --streams=N    concurrent streams (default 4)");
+            System.err.println("  --rate=R       target frames/sec across all streams, open-loop (default 50)");
+            System.err.println("  --duration=S   seconds to generate load (default 30)");
+            System.err.println("  --window=W     frames in flight per stream, sent as max_in_flight (default 8)");
             System.err.println("Example: java AdvancedInferenceClient /path/to/image.jpg localhost 50051");
-            System.err.println("Example: java AdvancedInferenceClient /path/to/images/ localhost 50051");
+            System.err.println("Example: java AdvancedInferenceClient /path/to/images/ localhost 50051 --streams=8 --rate=200");
             return;
         }
 
-        String inputPath = args[0];
-        String serverHost = args.length > 1 ? args[1] : "localhost";
-        int serverPort = args.length > 2 ? Integer.parseInt(args[2]) : 50051;
+        String inputPath = positional.get(0);
+        String serverHost = positional.size() > 1 ? positional.get(1) : "localhost";
+        int serverPort = positional.size() > 2 ? Integer.parseInt(positional.get(2)) : 50051;
 
         System.out.println("=== Advanced YOLO Inference Client ===");
         System.out.println("Server: " + serverHost + ":" + serverPort);
@@ -56,6 +84,8 @@ public class AdvancedInferenceClient {
                 .forAddress(serverHost, serverPort)
                 .usePlaintext()
                 .maxInboundMessageSize(32 * 1024 * 1024) // 32MB
+                .decompressorRegistry(MessageCompression.decompressorRegistry())
+                .intercept(MessageCompression.requestResponseEncoding(MessageCompression.DEFAULT_PREFERENCE))
                 .build();
 
         try {
@@ -68,7 +98,7 @@ public class AdvancedInferenceClient {
                 processSingleImage(stub, inputFile);
             } else if (inputFile.isDirectory()) {
                 // 处理目录中的所有图像文件
-                processImageDirectory(stub, inputFile);
+                processImageDirectory(stub, inputFile, LoadOptions.from(options));
             } else {
                 System.err.println("Input path is neither a file nor a directory: " + inputPath);
             }
@@ -107,9 +137,13 @@ public class AdvancedInferenceClient {
         }
     }
 
+    /**
+     * 目录压测模式：N 条常驻流，每条流按固定间隔开环发帧（不等上一帧结果），最多 window 帧在途。
+     * 延迟从计划发送时刻算起，发送端因窗口已满而推迟时，排队时间同样计入延迟（修正 coordinated omission）。
+     */
     private static void processImageDirectory(InferenceStreamServiceGrpc.InferenceStreamServiceStub stub,
-                                              File directory) throws InterruptedException {
-        System.out.println("\n=== Processing Image Directory ===");
+                                              File directory, LoadOptions options) throws InterruptedException {
+        System.out.println("\n=== Directory Load Test ===");
 
         File[] imageFiles = directory.listFiles((dir, name) -> {
             String lower = name.toLowerCase();
@@ -122,36 +156,228 @@ public class AdvancedInferenceClient {
             return;
         }
 
-        System.out.println("Found " + imageFiles.length + " image files");
+        // 图片预先读入内存，发送路径上不做磁盘 IO
+        List<ByteString> images = new ArrayList<>(imageFiles.length);
+        for (File imageFile : imageFiles) {
+            try {
+                images.add(ByteString.copyFrom(Files.readAllBytes(imageFile.toPath())));
+            } catch (IOException e) {
+                System.err.println("Error reading image file " + imageFile.getName() + ": " + e.getMessage());
+            }
+        }
+        if (images.isEmpty()) {
+            return;
+        }
+
+        System.out.println("Loaded " + images.size() + " images");
+        System.out.printf("Streams: %d, window: %d, target rate: %.1f frames/s, duration: %d s%n",
+                options.streams, options.window, options.rate, options.durationSeconds);
+
+        ConcurrentHistogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(10), 3);
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) * options.streams / options.rate);
+        long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        List<LoadStream> streams = new ArrayList<>(options.streams);
+        List<Thread> senders = new ArrayList<>(options.streams);
+        for (int i = 0; i < options.streams; i++) {
+            // 各流错开起始时刻，使合并后的发送间隔均匀
+            long firstNanos = startNanos + periodNanos * i / options.streams;
+            LoadStream stream = new LoadStream(i, images, options.window, latency);
+            streams.add(stream);
+            Thread sender = new Thread(() -> stream.run(stub, firstNanos, periodNanos, endNanos), "load-stream-" + i);
+            senders.add(sender);
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        for (LoadStream stream : streams) {
+            stream.awaitCompletion(30, TimeUnit.SECONDS);
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        long sent = 0, completed = 0, errors = 0, lost = 0;
+        for (LoadStream stream : streams) {
+            sent += stream.sent;
+            completed += stream.completed.sum();
+            errors += stream.errors.sum();
+            lost += stream.pending();
+        }
 
-        for (int i = 0; i < imageFiles.length; i++) {
-            File imageFile = imageFiles[i];
-            System.out.println("\n--- Processing " + (i + 1) + "/" + imageFiles.length + ": " + imageFile.getName());
+        System.out.println("\n=== Load Summary ===");
+        System.out.printf("Frames sent: %d, completed: %d, errors: %d, unanswered: %d%n", sent, completed, errors, lost);
+        System.out.printf("Throughput: %.1f frames/s (sent %.1f frames/s, target %.1f)%n",
+                completed / elapsedSeconds, sent / elapsedSeconds, options.rate);
+        System.out.printf("Latency ms (from intended send time): mean=%.2f p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                latency.getMean() / 1000.0,
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(90) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0,
+                latency.getMaxValue() / 1000.0);
+    }
 
-            CountDownLatch finishLatch = new CountDownLatch(1);
-            AtomicInteger frameCount = new AtomicInteger(0);
+    private static final class LoadOptions {
+        final int streams;
+        final double rate;
+        final long durationSeconds;
+        final int window;
+
+        private LoadOptions(int streams, double rate, long durationSeconds, int window) {
+            this.streams = streams;
+            this.rate = rate;
+            this.durationSeconds = durationSeconds;
+            this.window = window;
+        }
 
-            StreamObserver<StreamRequest> requestObserver = createRequestObserver(stub, finishLatch, frameCount);
+        static LoadOptions from(Map<String, String> options) {
+            return new LoadOptions(
+                    Math.max(1, Integer.parseInt(options.getOrDefault("streams", "4"))),
+                    Math.max(0.1, Double.parseDouble(options.getOrDefault("rate", "50"))),
+                    Math.max(1L, Long.parseLong(options.getOrDefault("duration", "30"))),
+                    Math.max(1, Integer.parseInt(options.getOrDefault("window", "8"))));
+        }
+    }
 
-            try {
-                byte[] imageBytes = Files.readAllBytes(imageFile.toPath());
-                System.out.println("Loaded image: " + imageBytes.length + " bytes");
+    /**
+     * 一条压测流：发送线程按计划时刻发帧，响应线程按 frame_index 找回计划时刻并记录延迟
+     */
+    private static final class LoadStream implements StreamObserver<StreamResponse> {
+        private final int id;
+        private final List<ByteString> images;
+        private final int window;
+        private final Semaphore inFlight;
+        private final ConcurrentHistogram latency;
+        // 按 frame_index 排序，帧级错误 ack 归到最早未返回的一帧
+        private final ConcurrentSkipListMap<Long, Long> intendedNanos = new ConcurrentSkipListMap<>();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private volatile boolean failed = false;
+        // 第一条 ack 是对 open 的答复，之后的非 0 ack 才是帧级错误
+        private volatile boolean opened = false;
+        private long sent = 0L;
+        private volatile StreamObserver<StreamRequest> requestObserver;
+
+        LoadStream(int id, List<ByteString> images, int window, ConcurrentHistogram latency) {
+            this.id = id;
+            this.images = images;
+            this.window = window;
+            this.inFlight = new Semaphore(window);
+            this.latency = latency;
+        }
 
-                // 发送流
-                sendInferenceRequest(requestObserver, imageBytes, i);
+        void run(InferenceStreamServiceGrpc.InferenceStreamServiceStub stub, long firstNanos, long periodNanos, long endNanos) {
+            requestObserver = stub.stream(this);
+            InferenceHeader header = HeaderUtils.header("yolov8n", 640, 640, true, "detect", false, window, true);
+            requestObserver.onNext(StreamRequest.newBuilder()
+                    .setOpen(StreamOpen.newBuilder().setHeader(header).build())
+                    .build());
+
+            try {
+                for (long frameIndex = 0; !failed; frameIndex++) {
+                    long intended = firstNanos + frameIndex * periodNanos;
+                    if (intended - endNanos >= 0) {
+                        break;
+                    }
+                    long wait;
+                    while ((wait = intended - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    // 窗口满时阻塞发送，但延迟仍从 intended 算起
+                    inFlight.acquire();
+                    if (failed) {
+                        break;
+                    }
+                    intendedNanos.put(frameIndex, intended);
+                    ByteString image = images.get((int) ((id + frameIndex) % images.size()));
+                    requestObserver.onNext(StreamRequest.newBuilder()
+                            .setFrame(StreamFrame.newBuilder()
+                                    .addInputs(InputEnvelope.newBuilder()
+                                            .setKind("image")
+                                            .setContentType("image/jpeg")
+                                            .setBinary(image)
+                                            .build())
+                                    .setFrameIndex(frameIndex)
+                                    .setTs(Timestamps.fromMillis(System.currentTimeMillis()))
+                                    .build())
+                            .build());
+                    sent++;
+                }
+                if (!failed) {
+                    requestObserver.onNext(StreamRequest.newBuilder()
+                            .setClose(StreamClose.newBuilder().build())
+                            .build());
+                    requestObserver.onCompleted();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                requestObserver.onError(e);
+            }
+        }
 
-                // 等待完成
-                if (!finishLatch.await(30, TimeUnit.SECONDS)) {
-                    System.err.println("Request timed out for " + imageFile.getName());
+        @Override
+        public void onNext(StreamResponse response) {
+            if (response.hasFrame()) {
+                Long intended = intendedNanos.remove(response.getFrame().getFrameIndex());
+                if (intended != null) {
+                    latency.recordValue(Math.min(latency.getHighestTrackableValue(),
+                            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended)));
+                    completed.increment();
+                    inFlight.release();
                 }
+            } else if (response.hasAck()) {
+                CustomStatus status = response.getAck().getStatus();
+                if (!opened) {
+                    opened = true;
+                    if (status.getCode() != 0) {
+                        // open 被拒绝（如租户限流），整条流不可用，停止发送
+                        System.err.println("Stream " + id + " rejected: " + status.getMessage());
+                        errors.increment();
+                        failed = true;
+                        inFlight.release(window);
+                        cancel("stream rejected");
+                    }
+                } else if (status.getCode() != 0) {
+                    // 失败帧以 ack 返回，不带 frame_index；流以 ordered 打开，对应最早未返回的一帧
+                    System.err.println("Stream " + id + " error ACK: " + status.getMessage());
+                    errors.increment();
+                    if (intendedNanos.pollFirstEntry() != null) {
+                        inFlight.release();
+                    }
+                }
+            }
+        }
 
-                // 短暂休息，避免服务器过载
-                Thread.sleep(500);
+        @Override
+        public void onError(Throwable t) {
+            System.err.println("Stream " + id + " error: " + t.getMessage());
+            failed = true;
+            inFlight.release(window);
+            finished.countDown();
+        }
 
-            } catch (IOException e) {
-                System.err.println("Error reading image file " + imageFile.getName() + ": " + e.getMessage());
+        @Override
+        public void onCompleted() {
+            finished.countDown();
+        }
+
+        void awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+            if (!finished.await(timeout, unit)) {
+                cancel("load test finished");
             }
         }
+
+        private void cancel(String reason) {
+            if (requestObserver instanceof ClientCallStreamObserver) {
+                ((ClientCallStreamObserver<StreamRequest>) requestObserver).cancel(reason, null);
+            }
+        }
+
+        int pending() {
+            return intendedNanos.size();
+        }
     }
 
     private static StreamObserver<StreamRequest> createRequestObserver(
@@ -283,26 +509,14 @@ public class AdvancedInferenceClient {
         }
     }
 
+    private static InferenceHeader buildHeader() {
+        // 构建推理头部，包含配置选项
+        return HeaderUtils.header("yolov8n", 640, 640, true, "detect", true);
+    }
+
     private static void sendInferenceRequest(StreamObserver<StreamRequest> requestObserver,
                                              byte[] imageBytes, int frameIndex) {
-        // 构建推理头部，包含配置选项
-        Struct.Builder optionsBuilder = Struct.newBuilder();
-        optionsBuilder.putFields("target_w", Value.newBuilder().setNumberValue(640).build());
-        optionsBuilder.putFields("target_h", Value.newBuilder().setNumberValue(640).build());
-        optionsBuilder.putFields("keep_aspect_ratio", Value.newBuilder().setBoolValue(true).build());
-        optionsBuilder.putFields("mode", Value.newBuilder().setStringValue("detect").build());
-        optionsBuilder.putFields("persist", Value.newBuilder().setBoolValue(false).build());
-        optionsBuilder.putFields("return_overlay", Value.newBuilder().setBoolValue(true).build());
-
-        InferenceHeader header = InferenceHeader.newBuilder()
-                .setModel(ModelSpec.newBuilder()
-                        .setName("yolov8n")
-                        .setVersion("v1")
-                        .build())
-                .setOptions(optionsBuilder.build())
-                .addAccept("application/x-protobuf;type=\"google.protobuf.Struct\"")
-                .addAccept("image/jpeg;kind=\"overlay\"")
-                .build();
+        InferenceHeader header = buildHeader();
 
         // 发送流打开请求
         StreamRequest openReq = StreamRequest.newBuilder()
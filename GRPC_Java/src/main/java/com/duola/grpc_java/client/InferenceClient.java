@@ -1,5 +1,6 @@
 package com.duola.grpc_java.client;
 
+import com.duola.grpc_java.util.MessageCompression;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.ai.*;
@@ -37,6 +38,8 @@ public class InferenceClient {
                 .forAddress(serverHost, serverPort)
                 .usePlaintext()
                 .maxInboundMessageSize(32 * 1024 * 1024) // 32MB
+                .decompressorRegistry(MessageCompression.decompressorRegistry())
+                .intercept(MessageCompression.requestResponseEncoding(MessageCompression.DEFAULT_PREFERENCE))
                 .build();
 
         InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = InferenceStreamServiceGrpc.newStub(channel);
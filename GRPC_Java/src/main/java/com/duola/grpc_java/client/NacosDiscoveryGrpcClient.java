@@ -5,6 +5,9 @@ import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.NamingFactory;
 import com.alibaba.nacos.api.naming.NamingService;
 import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.duola.grpc_java.util.HeaderUtils;
+import com.duola.grpc_java.util.MessageCompression;
+import com.duola.grpc_java.util.VideoChunks;
 import com.google.protobuf.Any;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Struct;
@@ -17,7 +20,9 @@ import io.grpc.stub.StreamObserver;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
@@ -61,6 +66,8 @@ public class NacosDiscoveryGrpcClient {
                 .forAddress(host, port)
                 .usePlaintext()
                 .maxInboundMessageSize(64 * 1024 * 1024)
+                .decompressorRegistry(MessageCompression.decompressorRegistry())
+                .intercept(MessageCompression.requestResponseEncoding(MessageCompression.DEFAULT_PREFERENCE))
                 .build();
 
         try {
@@ -155,14 +162,12 @@ public class NacosDiscoveryGrpcClient {
             return;
         }
 
-        // 注意：一次性发送整个视频文件可能较大，需确保 gRPC 与服务端允许的消息大小足够。
+        // 视频按块读取发送，不受 gRPC 单条消息大小限制，内存占用以块大小为上限
         CountDownLatch finishLatch = new CountDownLatch(1);
         AtomicInteger frameCount = new AtomicInteger(0);
         StreamObserver<StreamRequest> requestObserver = createResponsePrintingObserver(stub, finishLatch, frameCount);
 
-        try {
-            byte[] videoBytes = Files.readAllBytes(file.toPath());
-
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
             InferenceHeader header = buildHeader("yolo-detection-nano");
 
             // open
@@ -170,20 +175,15 @@ public class NacosDiscoveryGrpcClient {
                     .setOpen(StreamOpen.newBuilder().setHeader(header).build())
                     .build());
 
-            // 将整段视频作为一个输入，由服务端自行解码
-            InputEnvelope input = InputEnvelope.newBuilder()
-                    .setKind("video")
-                    .setContentType("video/mp4")
-                    .setBinary(ByteString.copyFrom(videoBytes))
-                    .build();
-
-            StreamFrame frame = StreamFrame.newBuilder()
-                    .addInputs(input)
-                    .setFrameIndex(0)
-                    .setTs(Timestamps.fromMillis(System.currentTimeMillis()))
-                    .build();
-
-            requestObserver.onNext(StreamRequest.newBuilder().setFrame(frame).build());
+            // 分块发送，由服务端按 offset 拼接后解码
+            int chunks = VideoChunks.sendFile(channel, "video/mp4", VideoChunks.DEFAULT_CHUNK_SIZE, frame -> {
+                if (!VideoChunks.awaitReady(requestObserver, () -> finishLatch.getCount() == 0)) {
+                    return false;
+                }
+                requestObserver.onNext(StreamRequest.newBuilder().setFrame(frame).build());
+                return true;
+            });
+            System.out.println("Sent " + file.length() + " bytes in " + chunks + " chunks");
 
             // close
             requestObserver.onNext(StreamRequest.newBuilder()
@@ -195,24 +195,15 @@ public class NacosDiscoveryGrpcClient {
             }
         } catch (IOException e) {
             System.err.println("Read video error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("Send video error: " + e.getMessage());
         }
     }
 
     private static InferenceHeader buildHeader(String modelName) {
-        Struct.Builder optionsBuilder = Struct.newBuilder();
-        optionsBuilder.putFields("target_w", Value.newBuilder().setNumberValue(640).build());
-        optionsBuilder.putFields("target_h", Value.newBuilder().setNumberValue(640).build());
-        optionsBuilder.putFields("keep_aspect_ratio", Value.newBuilder().setBoolValue(true).build());
-        optionsBuilder.putFields("mode", Value.newBuilder().setStringValue("detect").build());
-        optionsBuilder.putFields("persist", Value.newBuilder().setBoolValue(false).build());
-        optionsBuilder.putFields("return_overlay", Value.newBuilder().setBoolValue(true).build());
-
-        return InferenceHeader.newBuilder()
-                .setModel(ModelSpec.newBuilder().setName(modelName).setVersion("v1").build())
-                .setOptions(optionsBuilder.build())
-                .addAccept("application/x-protobuf;type=\"google.protobuf.Struct\"")
-                .addAccept("image/jpeg;kind=\"overlay\"")
-                .build();
+        return HeaderUtils.header(modelName, 640, 640, true, "detect", true);
     }
 
     private static StreamObserver<StreamRequest> createResponsePrintingObserver(
@@ -22,8 +22,9 @@ public class WebMvcConfg implements WebMvcConfigurer {
                 //设置允许跨域请求的域名
                 //当**Credentials为true时，**Origin不能为星号，需为具体的ip地址【如果接口不带cookie,ip无需设成具体ip】
                 .allowedOrigins("http://localhost:8088", "https://localhost:8443")
-                //是否允许证书 不再默认开启
-                .allowCredentials(true)
+                //是否允许证书 不再默认开启：接口不带 cookie，且控制器上的 @CrossOrigin("*") 与 credentials=true 合并后
+                //会让每个请求都抛 IllegalArgumentException
+                .allowCredentials(false)
                 //设置允许的方法
                 .allowedMethods("*")
                 //跨域允许时间
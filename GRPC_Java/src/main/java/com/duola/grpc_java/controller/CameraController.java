@@ -4,7 +4,11 @@ import com.duola.grpc_java.dto.CameraInferenceRequest;
 import com.duola.grpc_java.dto.CameraInferenceResponse;
 import com.duola.grpc_java.dto.CameraConfigRequest;
 import com.duola.grpc_java.dto.CameraStatusResponse;
+import com.duola.grpc_java.metrics.InferenceMetrics;
+import com.duola.grpc_java.metrics.InferenceMetrics.Stage;
+import com.duola.grpc_java.metrics.TraceContextFilter;
 import com.duola.grpc_java.service.CameraInferenceService;
+import com.duola.grpc_java.service.TenantAdmission;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -24,20 +28,33 @@ public class CameraController {
     @Autowired
     private CameraInferenceService cameraInferenceService;
     
+    @Autowired
+    private InferenceMetrics inferenceMetrics;
+    
+    @Autowired
+    private TenantAdmission tenantAdmission;
+    
     /**
      * 摄像头单帧推理接口
      */
     @PostMapping(value = "/frame/inference", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public SseEmitter cameraFrameInference(@RequestBody CameraInferenceRequest request) {
+    public SseEmitter cameraFrameInference(@RequestBody CameraInferenceRequest request,
+                                           @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId,
+                                           @RequestAttribute(value = TraceContextFilter.TRACE_ID_ATTRIBUTE, required = false) String traceId) {
+        request.setTraceId(traceId);
+        request.setTenantId(tenantId);
+        tenantAdmission.admit(tenantId);
         SseEmitter emitter = new SseEmitter(30000L); // 30秒超时
         
         // 异步处理推理请求
         CompletableFuture.runAsync(() -> {
             try {
-                CameraInferenceResponse response = cameraInferenceService.processCameraFrame(request);
+                CameraInferenceResponse response = cameraInferenceService.processCameraFrame(request, emitter.getTimeout());
+                long writeStartNanos = System.nanoTime();
                 emitter.send(SseEmitter.event()
                         .name("frame")
                         .data(response));
+                inferenceMetrics.start(request.getModel(), "camera_frame").record(Stage.SSE_WRITE, writeStartNanos);
                 emitter.complete();
             } catch (Exception e) {
                 try {
@@ -58,8 +75,13 @@ public class CameraController {
      * 摄像头流式推理接口
      */
     @PostMapping(value = "/stream/inference", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public SseEmitter cameraStreamInference(@RequestBody CameraInferenceRequest request) {
+    public SseEmitter cameraStreamInference(@RequestBody CameraInferenceRequest request,
+                                            @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId,
+                                            @RequestAttribute(value = TraceContextFilter.TRACE_ID_ATTRIBUTE, required = false) String traceId) {
+        request.setTraceId(traceId);
+        request.setTenantId(tenantId);
         SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时
+        Runnable release = tenantAdmission.openStream(tenantId, emitter);
         
         // 异步处理流式推理请求
         CompletableFuture.runAsync(() -> {
@@ -74,6 +96,8 @@ public class CameraController {
                 } catch (Exception sendError) {
                     emitter.completeWithError(sendError);
                 }
+            } finally {
+                release.run();
             }
         });
         
@@ -2,7 +2,10 @@ package com.duola.grpc_java.controller;
 
 import com.duola.grpc_java.dto.InferenceRequest;
 import com.duola.grpc_java.dto.InferenceResponse;
+import com.duola.grpc_java.metrics.TraceContextFilter;
 import com.duola.grpc_java.service.GrpcInferenceService;
+import com.duola.grpc_java.service.InstanceDiscovery;
+import com.duola.grpc_java.service.TenantAdmission;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -15,13 +18,24 @@ public class InferenceController {
     
     private final GrpcInferenceService grpcInferenceService;
     
+    private final TenantAdmission tenantAdmission;
+    
     public InferenceController(@Value("${grpc.server.host:localhost}") String grpcHost,
-                            @Value("${grpc.server.port:50051}") int grpcPort) {
-        this.grpcInferenceService = new GrpcInferenceService(grpcHost, grpcPort);
+                            @Value("${grpc.server.port:50051}") int grpcPort,
+                            InstanceDiscovery instanceDiscovery,
+                            TenantAdmission tenantAdmission) {
+        this.grpcInferenceService = new GrpcInferenceService(grpcHost, grpcPort, instanceDiscovery);
+        this.tenantAdmission = tenantAdmission;
     }
     
     @PostMapping(value = "/inference", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<InferenceResponse> performInference(@RequestBody InferenceRequest request) {
+    public ResponseEntity<InferenceResponse> performInference(@RequestBody InferenceRequest request,
+                                                              @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId,
+                                                              @RequestAttribute(value = TraceContextFilter.TRACE_ID_ATTRIBUTE, required = false) String traceId) {
+        request.setTraceId(traceId);
+        request.setTenantId(tenantId);
+        // 超限直接 429，不进入下面的 500 兜底
+        tenantAdmission.admit(tenantId);
         try {
             // 验证请求
             if (request.getImage() == null || request.getImage().trim().isEmpty()) {
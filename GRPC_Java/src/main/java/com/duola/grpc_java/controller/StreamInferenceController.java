@@ -1,15 +1,26 @@
 package com.duola.grpc_java.controller;
 
+import com.duola.grpc_java.dto.BatchJobResponse;
+import com.duola.grpc_java.dto.BatchJobResultsResponse;
 import com.duola.grpc_java.dto.StreamInferenceRequest;
 import com.duola.grpc_java.dto.StreamInferenceResponse;
+import com.duola.grpc_java.metrics.TraceContextFilter;
+import com.duola.grpc_java.service.BatchJobService;
 import com.duola.grpc_java.service.StreamGrpcInferenceService;
+import com.duola.grpc_java.service.TenantAdmission;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
 
 @RestController
@@ -20,13 +31,24 @@ public class StreamInferenceController {
     @Autowired
     private StreamGrpcInferenceService streamGrpcInferenceService;
     
+    @Autowired
+    private TenantAdmission tenantAdmission;
+    
+    @Autowired
+    private BatchJobService batchJobService;
+    
     /**
      * 流式推理接口 - 使用SSE (Server-Sent Events)
      * 支持实时返回推理结果
      */
     @PostMapping(value = "/inference/sse", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public SseEmitter streamInferenceSSE(@RequestBody StreamInferenceRequest request) {
+    public SseEmitter streamInferenceSSE(@RequestBody StreamInferenceRequest request,
+                                         @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId,
+                                         @RequestAttribute(value = TraceContextFilter.TRACE_ID_ATTRIBUTE, required = false) String traceId) {
+        request.setTraceId(traceId);
+        request.setTenantId(tenantId);
         SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时
+        Runnable release = tenantAdmission.openStream(tenantId, emitter);
         
         // 异步处理推理请求
         CompletableFuture.runAsync(() -> {
@@ -41,6 +63,8 @@ public class StreamInferenceController {
                 } catch (Exception sendError) {
                     emitter.completeWithError(sendError);
                 }
+            } finally {
+                release.run();
             }
         });
         
@@ -52,46 +76,141 @@ public class StreamInferenceController {
      * 返回Flux流式数据
      */
     @PostMapping(value = "/inference/reactive", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public Flux<StreamInferenceResponse> streamInferenceReactive(@RequestBody StreamInferenceRequest request) {
-        return streamGrpcInferenceService.performStreamInferenceReactive(request);
+    public Flux<StreamInferenceResponse> streamInferenceReactive(@RequestBody StreamInferenceRequest request,
+                                                                 @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId,
+                                                                 @RequestAttribute(value = TraceContextFilter.TRACE_ID_ATTRIBUTE, required = false) String traceId) {
+        request.setTraceId(traceId);
+        request.setTenantId(tenantId);
+        Runnable release = tenantAdmission.openStream(tenantId);
+        try {
+            return streamGrpcInferenceService.performStreamInferenceReactive(request)
+                    .doFinally(signal -> release.run());
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
     }
     
     /**
      * 视频流推理接口 - 支持视频文件上传和实时处理
+     * video 为文件分片时先落盘到临时文件，再映射分块发送，处理结束后删除；为文本字段时按 Base64 视频处理
      */
     @PostMapping(value = "/video/inference", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public SseEmitter streamVideoInference(
-            @RequestParam("video") String videoBase64,
+            @RequestPart(value = "video", required = false) MultipartFile videoFile,
+            HttpServletRequest servletRequest,
             @RequestParam(value = "model", defaultValue = "yolo-detection-nano") String model,
             @RequestParam(value = "target_width", defaultValue = "640") Integer targetWidth,
             @RequestParam(value = "target_height", defaultValue = "640") Integer targetHeight,
             @RequestParam(value = "keep_aspect_ratio", defaultValue = "true") Boolean keepAspectRatio,
             @RequestParam(value = "mode", defaultValue = "detect") String mode,
-            @RequestParam(value = "return_overlay", defaultValue = "true") Boolean returnOverlay) {
+            @RequestParam(value = "return_overlay", defaultValue = "true") Boolean returnOverlay,
+            @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId,
+            @RequestAttribute(value = TraceContextFilter.TRACE_ID_ATTRIBUTE, required = false) String traceId) {
         
         StreamInferenceRequest request = new StreamInferenceRequest();
-        request.setVideo(videoBase64);
+        // 文本字段形式的 video 不会绑定到 MultipartFile，按普通参数读取
+        request.setVideo(videoFile == null ? servletRequest.getParameter("video") : null);
         request.setModel(model);
         request.setTargetWidth(targetWidth);
         request.setTargetHeight(targetHeight);
         request.setKeepAspectRatio(keepAspectRatio);
         request.setMode(mode);
         request.setReturnOverlay(returnOverlay);
+        request.setTraceId(traceId);
+        request.setTenantId(tenantId);
         
         SseEmitter emitter = new SseEmitter(600000L); // 10分钟超时
+        // 先准入再落盘，超限的上传不写磁盘
+        Runnable release = tenantAdmission.openStream(tenantId, emitter);
+        
+        // 在请求线程内落盘：multipart 临时文件随请求清理，异步任务只持有自己的副本
+        Path spooled;
+        try {
+            spooled = spoolUpload(videoFile);
+        } catch (IOException e) {
+            release.run();
+            sendVideoError(emitter, e);
+            return emitter;
+        }
         
         CompletableFuture.runAsync(() -> {
             try {
-                streamGrpcInferenceService.performVideoStreamInference(request, emitter);
+                streamGrpcInferenceService.performVideoStreamInference(request, spooled, emitter);
+            } catch (Exception e) {
+                sendVideoError(emitter, e);
+            } finally {
+                deleteQuietly(spooled);
+                release.run();
+            }
+        });
+        
+        return emitter;
+    }
+    
+    private static Path spoolUpload(MultipartFile videoFile) throws IOException {
+        if (videoFile == null || videoFile.isEmpty()) {
+            return null;
+        }
+        Path spooled = Files.createTempFile("video-upload-", ".mp4");
+        try {
+            videoFile.transferTo(spooled);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(spooled);
+            throw e;
+        }
+        return spooled;
+    }
+    
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Failed to delete spooled upload " + path + ": " + e.getMessage());
+        }
+    }
+    
+    private static void sendVideoError(SseEmitter emitter, Exception e) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("error")
+                    .data(new StreamInferenceResponse(false, "Video stream error: " + e.getMessage())));
+            emitter.completeWithError(e);
+        } catch (Exception sendError) {
+            emitter.completeWithError(sendError);
+        }
+    }
+    
+    /**
+     * 批量图片推理接口 - 支持多张图片同时处理
+     * 结果随 SSE 连接返回，断开即丢失；图片较多时使用 /batch/jobs
+     */
+    @PostMapping(value = "/batch/inference", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public SseEmitter batchInference(@RequestBody StreamInferenceRequest request,
+                                     @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId,
+                                     @RequestAttribute(value = TraceContextFilter.TRACE_ID_ATTRIBUTE, required = false) String traceId) {
+        request.setTraceId(traceId);
+        request.setTenantId(tenantId);
+        SseEmitter emitter = new SseEmitter(600000L); // 10分钟超时
+        Runnable release = tenantAdmission.openStream(tenantId, emitter);
+        
+        CompletableFuture.runAsync(() -> {
+            try {
+                streamGrpcInferenceService.performBatchInference(request, emitter);
             } catch (Exception e) {
                 try {
                     emitter.send(SseEmitter.event()
                             .name("error")
-                            .data(new StreamInferenceResponse(false, "Video stream error: " + e.getMessage())));
+                            .data(new StreamInferenceResponse(false, "Batch inference error: " + e.getMessage())));
                     emitter.completeWithError(e);
                 } catch (Exception sendError) {
                     emitter.completeWithError(sendError);
                 }
+            } finally {
+                release.run();
             }
         });
         
@@ -99,30 +218,94 @@ public class StreamInferenceController {
     }
     
     /**
-     * 批量图片推理接口 - 支持多张图片同时处理
+     * 提交异步批量任务，立即返回 job_id；结果写入磁盘日志，之后分页拉取或续接推送
      */
-    @PostMapping(value = "/batch/inference", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public SseEmitter batchInference(@RequestBody StreamInferenceRequest request) {
-        SseEmitter emitter = new SseEmitter(600000L); // 10分钟超时
+    @PostMapping(value = "/batch/jobs", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchJobResponse> submitBatchJob(@RequestBody StreamInferenceRequest request,
+                                                           @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId,
+                                                           @RequestAttribute(value = TraceContextFilter.TRACE_ID_ATTRIBUTE, required = false) String traceId) {
+        request.setTraceId(traceId);
+        request.setTenantId(tenantId);
+        tenantAdmission.admit(tenantId);
+        BatchJobResponse job = batchJobService.submit(request, tenantId);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/stream/batch/jobs/" + job.getJobId()))
+                .body(job);
+    }
+    
+    /**
+     * 查询异步批量任务状态与进度
+     */
+    @GetMapping("/batch/jobs/{jobId}")
+    public ResponseEntity<BatchJobResponse> getBatchJob(@PathVariable("jobId") String jobId,
+                                                        @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId) {
+        return ResponseEntity.ok(batchJobService.status(jobId, tenantId));
+    }
+    
+    /**
+     * 分页拉取结果，按图片顺序；下一页的 offset 取返回的 next_offset
+     */
+    @GetMapping("/batch/jobs/{jobId}/results")
+    public ResponseEntity<BatchJobResultsResponse> getBatchJobResults(
+            @PathVariable("jobId") String jobId,
+            @RequestParam(value = "offset", defaultValue = "0") Long offset,
+            @RequestParam(value = "limit", defaultValue = "100") Integer limit,
+            @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId) {
+        return ResponseEntity.ok(batchJobService.results(jobId, tenantId, offset, limit));
+    }
+    
+    /**
+     * 以 SSE 推送结果，任务未结束时持续推送新结果；带 Last-Event-ID 重连时从下一条续接
+     */
+    @GetMapping("/batch/jobs/{jobId}/results/stream")
+    public SseEmitter streamBatchJobResults(
+            @PathVariable("jobId") String jobId,
+            @RequestParam(value = "offset", defaultValue = "0") Long offset,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId) {
+        long from = offset;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                from = Long.parseLong(lastEventId.trim()) + 1;
+            } catch (NumberFormatException e) {
+                // 非本接口产生的事件 id，按 offset 处理
+            }
+        }
+        // 先校验任务存在，不存在时直接返回 404 而不是建立 SSE 连接
+        batchJobService.status(jobId, tenantId);
         
+        SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时，断开后可续接
+        Runnable release = tenantAdmission.openStream(tenantId, emitter);
+        long start = from;
         CompletableFuture.runAsync(() -> {
             try {
-                streamGrpcInferenceService.performBatchInference(request, emitter);
+                batchJobService.streamResults(jobId, tenantId, start, emitter);
             } catch (Exception e) {
                 try {
                     emitter.send(SseEmitter.event()
                             .name("error")
-                            .data(new StreamInferenceResponse(false, "Batch inference error: " + e.getMessage())));
+                            .data(new StreamInferenceResponse(false, "Batch job stream error: " + e.getMessage())));
                     emitter.completeWithError(e);
                 } catch (Exception sendError) {
                     emitter.completeWithError(sendError);
                 }
+            } finally {
+                release.run();
             }
         });
         
         return emitter;
     }
     
+    /**
+     * 取消任务并删除已写入的结果
+     */
+    @DeleteMapping("/batch/jobs/{jobId}")
+    public ResponseEntity<BatchJobResponse> cancelBatchJob(@PathVariable("jobId") String jobId,
+                                                           @RequestHeader(value = TenantAdmission.TENANT_HEADER, required = false) String tenantId) {
+        return ResponseEntity.ok(batchJobService.cancel(jobId, tenantId));
+    }
+    
     /**
      * 健康检查接口
      */
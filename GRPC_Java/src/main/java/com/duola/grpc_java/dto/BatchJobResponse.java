@@ -0,0 +1,48 @@
+package com.duola.grpc_java.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 异步批量任务状态DTO
+ */
+@Getter
+@Setter
+public class BatchJobResponse {
+    
+    @JsonProperty("job_id")
+    private String jobId;
+    
+    @JsonProperty("status")
+    private String status; // queued, running, completed, failed, cancelled
+    
+    @JsonProperty("message")
+    private String message;
+    
+    @JsonProperty("total_images")
+    private Integer totalImages;
+    
+    // 已写入结果日志的条数，即结果分页的上界
+    @JsonProperty("result_count")
+    private Long resultCount;
+    
+    @JsonProperty("succeeded")
+    private Integer succeeded;
+    
+    @JsonProperty("failed")
+    private Integer failed;
+    
+    @JsonProperty("created_at")
+    private Long createdAt;
+    
+    @JsonProperty("finished_at")
+    private Long finishedAt;
+    
+    @JsonProperty("timestamp")
+    private Long timestamp;
+    
+    public BatchJobResponse() {
+        this.timestamp = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,43 @@
+package com.duola.grpc_java.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * 异步批量任务的一页结果，next_offset 作为下一页的 offset
+ */
+@Getter
+@Setter
+public class BatchJobResultsResponse {
+    
+    @JsonProperty("job_id")
+    private String jobId;
+    
+    @JsonProperty("status")
+    private String status;
+    
+    @JsonProperty("offset")
+    private Long offset;
+    
+    @JsonProperty("next_offset")
+    private Long nextOffset;
+    
+    // 任务已结束且已读到最后一条
+    @JsonProperty("done")
+    private Boolean done;
+    
+    // 日志中存的是 StreamInferenceResponse 的 JSON，原样返回，不再反序列化
+    @JsonProperty("results")
+    private List<JsonNode> results;
+    
+    @JsonProperty("timestamp")
+    private Long timestamp;
+    
+    public BatchJobResultsResponse() {
+        this.timestamp = System.currentTimeMillis();
+    }
+}
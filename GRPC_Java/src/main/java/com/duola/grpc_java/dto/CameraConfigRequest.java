@@ -41,6 +41,19 @@ public class CameraConfigRequest {
     @JsonProperty("max_concurrent_requests")
     private Integer maxConcurrentRequests = 3;
     
+    // 网关侧跟踪参数，未设置时沿用 YoloInferenceConfig 的默认值
+    @JsonProperty("track_threshold")
+    private Double trackThreshold;
+    
+    @JsonProperty("track_buffer")
+    private Integer trackBuffer;
+    
+    @JsonProperty("track_max_age")
+    private Integer trackMaxAge;
+    
+    @JsonProperty("track_min_hits")
+    private Integer trackMinHits;
+    
     // 构造函数
     public CameraConfigRequest() {}
 
@@ -1,5 +1,6 @@
 package com.duola.grpc_java.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
@@ -41,6 +42,12 @@ public class CameraInferenceRequest {
     @JsonProperty("session_id")
     private String sessionId;
     
+    @JsonIgnore
+    private String traceId; // 由控制器写入 HTTP 入口的 trace，不从请求体读取
+    
+    @JsonIgnore
+    private String tenantId; // 由控制器写入 X-Tenant-Id，不从请求体读取
+    
     // 构造函数
     public CameraInferenceRequest() {}
 
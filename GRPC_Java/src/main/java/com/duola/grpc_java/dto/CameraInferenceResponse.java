@@ -1,5 +1,6 @@
 package com.duola.grpc_java.dto;
 
+import com.duola.grpc_java.dto2.yolo.YoloTrackingResult;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
@@ -46,6 +47,9 @@ public class CameraInferenceResponse {
     @JsonProperty("progress")
     private Double progress;
     
+    @JsonProperty("tracks")
+    private List<YoloTrackingResult> tracks;
+    
     // 构造函数
     public CameraInferenceResponse() {}
     
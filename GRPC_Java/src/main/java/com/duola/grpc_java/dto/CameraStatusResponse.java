@@ -102,17 +102,24 @@ public class CameraStatusResponse {
         private String model;
         
         @JsonProperty("total_frames")
-        private Integer totalFrames;
+        private Long totalFrames;
         
         @JsonProperty("detected_frames")
-        private Integer detectedFrames;
+        private Long detectedFrames;
         
         @JsonProperty("detected_objects")
-        private Integer detectedObjects;
+        private Long detectedObjects;
         
+        // 最近一个统计窗口（默认 10 秒）内的 FPS
         @JsonProperty("avg_fps")
         private Double avgFps;
         
+        @JsonProperty("p50_latency_ms")
+        private Double p50LatencyMs;
+        
+        @JsonProperty("p95_latency_ms")
+        private Double p95LatencyMs;
+        
         @JsonProperty("start_time")
         private Long startTime;
         
@@ -1,9 +1,13 @@
 package com.duola.grpc_java.dto;
 
+import com.duola.grpc_java.segmentation.EncodedMask;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.List;
+
 @Setter
 @Getter
 public class DetectionResult {
@@ -32,6 +36,24 @@ public class DetectionResult {
     @JsonProperty("track_id")
     private Integer trackId;
     
+    // 分割模式下裁剪到检测框的掩码，保持编码形式，按需解码
+    @JsonProperty("mask")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private EncodedMask mask;
+    
+    // 由掩码简化得到的外轮廓（交错的 x, y 坐标）及其面积、周长
+    @JsonProperty("contours")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<float[]> contours;
+    
+    @JsonProperty("area")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double area;
+    
+    @JsonProperty("perimeter")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double perimeter;
+    
     // Constructors
     public DetectionResult() {}
     
@@ -1,5 +1,6 @@
 package com.duola.grpc_java.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
@@ -29,6 +30,12 @@ public class InferenceRequest {
     @JsonProperty("return_overlay")
     private Boolean returnOverlay = true;
     
+    @JsonIgnore
+    private String traceId; // Set by the controller from the HTTP edge trace, never read from the body
+    
+    @JsonIgnore
+    private String tenantId; // Set by the controller from X-Tenant-Id, never read from the body
+    
     // Constructors
     public InferenceRequest() {}
     
@@ -1,5 +1,6 @@
 package com.duola.grpc_java.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
@@ -46,6 +47,21 @@ public class StreamInferenceRequest {
     @JsonProperty("frame_interval")
     private Integer frameInterval = 1; // Process every Nth frame
     
+    @JsonProperty("max_in_flight")
+    private Integer maxInFlight = 1; // Frames the backend may process concurrently within one stream
+    
+    @JsonProperty("ordered")
+    private Boolean ordered = true; // Deliver frame results in frame_index order
+    
+    @JsonProperty("contour_threshold")
+    private Double contourThreshold; // Mask contour simplification tolerance, as YoloInferenceConfig.contour_threshold; null uses the gateway default
+    
+    @JsonIgnore
+    private String traceId; // Set by the controller from the HTTP edge trace, never read from the body
+    
+    @JsonIgnore
+    private String tenantId; // Set by the controller from X-Tenant-Id, never read from the body
+    
     // Constructors
     public StreamInferenceRequest() {}
     
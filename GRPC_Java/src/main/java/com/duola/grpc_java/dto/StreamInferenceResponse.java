@@ -49,6 +49,9 @@ public class StreamInferenceResponse {
     @JsonProperty("processed_frames")
     private Integer processedFrames;
     
+    @JsonProperty("pts_ms")
+    private Double ptsMs; // Presentation time of the source video frame
+    
     // Constructors
     public StreamInferenceResponse() {
         this.timestamp = System.currentTimeMillis();
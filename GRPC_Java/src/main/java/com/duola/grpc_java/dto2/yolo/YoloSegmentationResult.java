@@ -5,6 +5,8 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.List;
+
 /**
  * YOLO分割结果
  */
@@ -25,7 +27,7 @@ public class YoloSegmentationResult extends InferenceResult {
     private String mask; // Base64 encoded binary mask
     
     @JsonProperty("contours")
-    private Object contours; // List of contour points
+    private List<float[]> contours; // 每条外轮廓为交错的 {x0, y0, x1, y1, ...}
     
     @JsonProperty("bbox")
     private Object bbox; // {x, y, width, height}
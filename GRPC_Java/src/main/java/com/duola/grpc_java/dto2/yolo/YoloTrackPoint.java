@@ -0,0 +1,31 @@
+package com.duola.grpc_java.dto2.yolo;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 轨迹上的一个点：目标框中心坐标与时间戳（毫秒）
+ */
+@Getter
+@Setter
+public class YoloTrackPoint {
+    
+    @JsonProperty("x")
+    private Double x;
+    
+    @JsonProperty("y")
+    private Double y;
+    
+    @JsonProperty("timestamp")
+    private Long timestamp;
+    
+    // 构造函数
+    public YoloTrackPoint() {}
+    
+    public YoloTrackPoint(Double x, Double y, Long timestamp) {
+        this.x = x;
+        this.y = y;
+        this.timestamp = timestamp;
+    }
+}
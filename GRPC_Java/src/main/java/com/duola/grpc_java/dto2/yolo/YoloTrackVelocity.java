@@ -0,0 +1,32 @@
+package com.duola.grpc_java.dto2.yolo;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 轨迹中心点的平滑速度，单位为像素/秒
+ */
+@Getter
+@Setter
+public class YoloTrackVelocity {
+    
+    @JsonProperty("x")
+    private Double x;
+    
+    @JsonProperty("y")
+    private Double y;
+    
+    // 构造函数
+    public YoloTrackVelocity() {}
+    
+    public YoloTrackVelocity(Double x, Double y) {
+        this.x = x;
+        this.y = y;
+    }
+    
+    // 便捷方法
+    public Double getSpeed() {
+        return x != null && y != null ? Math.hypot(x, y) : null;
+    }
+}
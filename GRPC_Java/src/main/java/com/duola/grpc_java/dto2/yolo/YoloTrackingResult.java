@@ -30,10 +30,10 @@ public class YoloTrackingResult extends InferenceResult {
     private String trackState; // active, lost, deleted
     
     @JsonProperty("velocity")
-    private Object velocity; // {x, y} velocity vector
+    private YoloTrackVelocity velocity; // {x, y} 像素/秒
     
     @JsonProperty("trajectory")
-    private List<Object> trajectory; // List of {x, y, timestamp}
+    private List<YoloTrackPoint> trajectory; // 由旧到新的 {x, y, timestamp}
     
     // 构造函数
     public YoloTrackingResult() {
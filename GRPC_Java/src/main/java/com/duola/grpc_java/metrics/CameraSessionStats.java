@@ -0,0 +1,206 @@
+package com.duola.grpc_java.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个摄像头会话的统计，帧路径上只有 LongAdder 累加与数组原子操作，不加锁。
+ * 累计计数用 LongAdder；最近 windowSeconds 秒的帧数与延迟分布放在按秒轮转的环形桶中，
+ * 每个桶带秒级时间戳，写入时发现桶属于旧的一秒就 CAS 抢占并清零，读取时只统计仍在窗口内的桶。
+ * 延迟按对数分桶（每倍程 4 档，相对误差约 20%），p50/p95 取所在档的上界。
+ * 抢占与清零之间若有并发写入可能丢失个别样本，对窗口统计可以接受。
+ */
+public final class CameraSessionStats {
+
+    public static final int DEFAULT_WINDOW_SECONDS = 10;
+
+    // 延迟档位：0..3 ms 各一档，之后每个 2 的幂区间分 4 档，最大到约 17 分钟
+    private static final int LATENCY_BINS = 80;
+    private static final long MAX_LATENCY_MS = (1L << 20) - 1;
+
+    // 每个桶的布局：[秒级时间戳, 帧数, 延迟档位...]
+    private static final int STAMP = 0;
+    private static final int FRAMES = 1;
+    private static final int BIN_OFFSET = 2;
+    private static final int STRIDE = BIN_OFFSET + LATENCY_BINS;
+
+    private final LongAdder totalFrames = new LongAdder();
+    private final LongAdder detectedFrames = new LongAdder();
+    private final LongAdder detectedObjects = new LongAdder();
+    private final long startTime;
+    private volatile long lastActivity;
+
+    private final int windowSeconds;
+    // 多一个桶，保证当前秒写入时不会覆盖窗口内最早的一秒
+    private final int slots;
+    private final AtomicLongArray buckets;
+
+    public CameraSessionStats() {
+        this(DEFAULT_WINDOW_SECONDS, System.currentTimeMillis());
+    }
+
+    public CameraSessionStats(int windowSeconds, long nowMillis) {
+        this.windowSeconds = Math.max(1, windowSeconds);
+        this.slots = this.windowSeconds + 1;
+        this.buckets = new AtomicLongArray(slots * STRIDE);
+        for (int i = 0; i < slots; i++) {
+            buckets.set(i * STRIDE + STAMP, Long.MIN_VALUE);
+        }
+        this.startTime = nowMillis;
+        this.lastActivity = nowMillis;
+    }
+
+    /**
+     * 记录一帧结果
+     *
+     * @param latencyMs 帧延迟，小于 0 表示没有延迟样本
+     */
+    public void recordFrame(int objects, long latencyMs) {
+        recordFrame(objects, latencyMs, System.currentTimeMillis());
+    }
+
+    public void recordFrame(int objects, long latencyMs, long nowMillis) {
+        totalFrames.increment();
+        if (objects > 0) {
+            detectedFrames.increment();
+            detectedObjects.add(objects);
+        }
+        lastActivity = nowMillis;
+
+        int base = bucketFor(Math.floorDiv(nowMillis, 1000L));
+        buckets.incrementAndGet(base + FRAMES);
+        if (latencyMs >= 0) {
+            buckets.incrementAndGet(base + BIN_OFFSET + binOf(latencyMs));
+        }
+    }
+
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    public long getTotalFrames() {
+        return totalFrames.sum();
+    }
+
+    public long getDetectedFrames() {
+        return detectedFrames.sum();
+    }
+
+    public long getDetectedObjects() {
+        return detectedObjects.sum();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    public Window window() {
+        return window(System.currentTimeMillis());
+    }
+
+    /**
+     * 统计截至 nowMillis 的滑动窗口：FPS 按窗口实际覆盖的时长（会话不足一个窗口时按会话时长）计算
+     */
+    public Window window(long nowMillis) {
+        long nowSecond = Math.floorDiv(nowMillis, 1000L);
+        long oldestSecond = nowSecond - windowSeconds + 1;
+        long frames = 0;
+        long[] bins = new long[LATENCY_BINS];
+        long samples = 0;
+        for (int i = 0; i < slots; i++) {
+            int base = i * STRIDE;
+            long stamp = buckets.get(base + STAMP);
+            if (stamp < oldestSecond || stamp > nowSecond) {
+                continue;
+            }
+            frames += buckets.get(base + FRAMES);
+            for (int b = 0; b < LATENCY_BINS; b++) {
+                long c = buckets.get(base + BIN_OFFSET + b);
+                bins[b] += c;
+                samples += c;
+            }
+        }
+
+        long windowStart = Math.max(startTime, oldestSecond * 1000L);
+        double spanSeconds = Math.max(1.0, (nowMillis - windowStart) / 1000.0);
+        return new Window(frames / spanSeconds,
+                percentile(bins, samples, 0.50),
+                percentile(bins, samples, 0.95));
+    }
+
+    private int bucketFor(long second) {
+        int base = (int) Math.floorMod(second, (long) slots) * STRIDE;
+        long stamp = buckets.get(base + STAMP);
+        if (stamp < second && buckets.compareAndSet(base + STAMP, stamp, second)) {
+            for (int i = FRAMES; i < STRIDE; i++) {
+                buckets.set(base + i, 0L);
+            }
+        }
+        return base;
+    }
+
+    static int binOf(long latencyMs) {
+        long v = Math.min(latencyMs, MAX_LATENCY_MS);
+        if (v < 4) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        return 4 + (exp - 2) * 4 + (int) ((v >> (exp - 2)) & 3);
+    }
+
+    static long upperBoundOf(int bin) {
+        if (bin < 4) {
+            return bin;
+        }
+        int exp = (bin - 4) / 4 + 2;
+        int sub = (bin - 4) % 4;
+        return ((5L + sub) << (exp - 2)) - 1;
+    }
+
+    private static Double percentile(long[] bins, long samples, double q) {
+        if (samples == 0) {
+            return null;
+        }
+        long rank = (long) Math.ceil(q * samples);
+        long seen = 0;
+        for (int b = 0; b < bins.length; b++) {
+            seen += bins[b];
+            if (seen >= rank) {
+                return (double) upperBoundOf(b);
+            }
+        }
+        return (double) upperBoundOf(bins.length - 1);
+    }
+
+    /**
+     * 滑动窗口统计结果，没有延迟样本时 p50/p95 为 null
+     */
+    public static final class Window {
+
+        private final double fps;
+        private final Double p50LatencyMs;
+        private final Double p95LatencyMs;
+
+        Window(double fps, Double p50LatencyMs, Double p95LatencyMs) {
+            this.fps = fps;
+            this.p50LatencyMs = p50LatencyMs;
+            this.p95LatencyMs = p95LatencyMs;
+        }
+
+        public double getFps() {
+            return fps;
+        }
+
+        public Double getP50LatencyMs() {
+            return p50LatencyMs;
+        }
+
+        public Double getP95LatencyMs() {
+            return p95LatencyMs;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.duola.grpc_java.metrics;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.Status;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * gRPC 调用级指标，客户端与服务端拦截器共用，指标名以 grpc.client / grpc.server 区分：
+ * <ul>
+ *   <li>{prefix}.message.size：每条消息的序列化字节数，direction=sent/received，count 即消息数，total 即字节数</li>
+ *   <li>{prefix}.call.duration：调用（流）从开始到关闭的耗时，按 status 打标签</li>
+ * </ul>
+ * 字节数取 protobuf 序列化大小（未压缩），生成的消息会缓存该值，序列化时不会重复计算。
+ */
+final class GrpcCallMetrics {
+
+    private final MeterRegistry registry;
+    private final String prefix;
+    private final Map<String, MethodMeters> meters = new ConcurrentHashMap<>();
+
+    GrpcCallMetrics(MeterRegistry registry, String prefix) {
+        this.registry = registry;
+        this.prefix = prefix;
+    }
+
+    MethodMeters forMethod(String fullMethodName) {
+        return meters.computeIfAbsent(fullMethodName, MethodMeters::new);
+    }
+
+    static int sizeOf(Object message) {
+        return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+    }
+
+    final class MethodMeters {
+
+        private final String method;
+        private final DistributionSummary sent;
+        private final DistributionSummary received;
+        private final Map<Status.Code, Timer> durations = new ConcurrentHashMap<>();
+
+        private MethodMeters(String method) {
+            this.method = method;
+            this.sent = summary(method, "sent");
+            this.received = summary(method, "received");
+        }
+
+        void sent(Object message) {
+            sent.record(sizeOf(message));
+        }
+
+        void received(Object message) {
+            received.record(sizeOf(message));
+        }
+
+        void closed(Status.Code code, long startNanos) {
+            durations.computeIfAbsent(code, c -> Timer.builder(prefix + ".call.duration")
+                            .description("gRPC call duration from start to close")
+                            .tag("method", method)
+                            .tag("status", c.name())
+                            .register(registry))
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private DistributionSummary summary(String method, String direction) {
+            return DistributionSummary.builder(prefix + ".message.size")
+                    .description("Serialized gRPC message size")
+                    .baseUnit("bytes")
+                    .tag("method", method)
+                    .tag("direction", direction)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.duola.grpc_java.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 推理请求各阶段耗时，导出为带百分位直方图的 Micrometer Timer（inference.stage），按 stage / model / endpoint 打标签。
+ * 后端在 meta.runtime_ms 中上报的模型耗时单独记为 inference.backend.runtime，与 frame_result 对比即可分离网络与排队开销。
+ */
+@Component
+public class InferenceMetrics {
+
+    public static final String STAGE_TIMER = "inference.stage";
+    public static final String BACKEND_RUNTIME_TIMER = "inference.backend.runtime";
+
+    // model 来自请求参数，限制标签取值数量，防止指标基数失控
+    private static final int MAX_MODEL_TAGS = 32;
+    private static final String OTHER_MODEL = "other";
+
+    public enum Stage {
+        DISCOVERY("discovery"),
+        CHANNEL("channel"),
+        DECODE("decode"),
+        PROTO_BUILD("proto_build"),
+        FIRST_ACK("first_ack"),
+        FRAME_RESULT("frame_result"),
+        RESULT_PARSE("result_parse"),
+        SSE_WRITE("sse_write");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+    private final Set<String> models = ConcurrentHashMap.newKeySet();
+
+    public InferenceMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 开始一次请求的计时，返回的 RequestTimer 贯穿该请求的各个阶段
+     */
+    public RequestTimer start(String model, String endpoint) {
+        return new RequestTimer(timersFor(model, endpoint));
+    }
+
+    private Timer[] timersFor(String model, String endpoint) {
+        String modelTag = model == null || model.isEmpty() ? "unknown" : model;
+        if (!models.contains(modelTag)) {
+            if (models.size() >= MAX_MODEL_TAGS) {
+                modelTag = OTHER_MODEL;
+            } else {
+                models.add(modelTag);
+            }
+        }
+        String tagModel = modelTag;
+        return timers.computeIfAbsent(tagModel + '|' + endpoint, k -> {
+            Stage[] stages = Stage.values();
+            Timer[] result = new Timer[stages.length + 1];
+            for (Stage stage : stages) {
+                result[stage.ordinal()] = Timer.builder(STAGE_TIMER)
+                        .description("Inference request stage latency")
+                        .tag("stage", stage.tag)
+                        .tag("model", tagModel)
+                        .tag("endpoint", endpoint)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofNanos(100_000))
+                        .maximumExpectedValue(Duration.ofSeconds(60))
+                        .register(registry);
+            }
+            result[stages.length] = Timer.builder(BACKEND_RUNTIME_TIMER)
+                    .description("Model runtime reported by the backend (meta.runtime_ms)")
+                    .tag("model", tagModel)
+                    .tag("endpoint", endpoint)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(60))
+                    .register(registry);
+            return result;
+        });
+    }
+
+    /**
+     * 单个请求的阶段计时器。首个 ack 只记一次；FrameResult 按 frame_index 匹配发送时刻，
+     * 匹配不到（如视频解出的帧）时以最近一次发帧为起点
+     */
+    public static final class RequestTimer {
+
+        public static final RequestTimer NOOP = new RequestTimer(null);
+
+        private final Timer[] timers;
+        private final AtomicBoolean firstAckRecorded = new AtomicBoolean(false);
+        private final Map<Long, Long> frameSentNanos;
+        private volatile long openSentNanos;
+        private volatile long lastFrameSentNanos;
+
+        private RequestTimer(Timer[] timers) {
+            this.timers = timers;
+            this.frameSentNanos = timers == null ? null : new ConcurrentHashMap<>();
+        }
+
+        public void record(Stage stage, long sinceNanos) {
+            if (timers != null) {
+                timers[stage.ordinal()].record(System.nanoTime() - sinceNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public void openSent() {
+            openSentNanos = System.nanoTime();
+        }
+
+        public void ackReceived() {
+            if (timers != null && firstAckRecorded.compareAndSet(false, true)) {
+                record(Stage.FIRST_ACK, openSentNanos);
+            }
+        }
+
+        public void frameSent(long frameIndex) {
+            if (timers != null) {
+                long now = System.nanoTime();
+                frameSentNanos.put(frameIndex, now);
+                lastFrameSentNanos = now;
+            }
+        }
+
+        public void frameResult(long frameIndex) {
+            if (timers != null) {
+                Long sent = frameSentNanos.remove(frameIndex);
+                record(Stage.FRAME_RESULT, sent != null ? sent : lastFrameSentNanos);
+            }
+        }
+
+        public void backendRuntime(Double runtimeMs) {
+            if (timers != null && runtimeMs != null && runtimeMs >= 0) {
+                timers[timers.length - 1].record((long) (runtimeMs * 1_000_000L), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.duola.grpc_java.metrics;
+
+import com.duola.grpc_java.util.TraceParent;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+
+/**
+ * 网关侧 gRPC 客户端拦截器：记录 grpc.client.* 调用指标，并把当前 trace 以 W3C traceparent 写入请求 metadata。
+ * trace-id 优先取调用的 {@link #TRACE_ID} 选项（网关在 HTTP 入口确定，随请求显式传到各个异步线程），
+ * 其次取调用线程 MDC（命令行客户端），都没有时为该调用新开一个 trace；不回写调用线程的 MDC，避免线程池线程串用 trace。
+ */
+@Component
+public class TelemetryClientInterceptor implements ClientInterceptor {
+
+    public static final Metadata.Key<String> TRACEPARENT =
+            Metadata.Key.of(TraceParent.HEADER, Metadata.ASCII_STRING_MARSHALLER);
+
+    /** 本次调用所属的 trace-id，通过 stub.withOption 设置 */
+    public static final CallOptions.Key<String> TRACE_ID = CallOptions.Key.create("trace-id");
+
+    private final GrpcCallMetrics metrics;
+
+    public TelemetryClientInterceptor(MeterRegistry registry) {
+        this.metrics = new GrpcCallMetrics(registry, "grpc.client");
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions,
+                                                               Channel next) {
+        GrpcCallMetrics.MethodMeters meters = metrics.forMethod(method.getFullMethodName());
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                headers.put(TRACEPARENT, outgoingTraceParent(callOptions).format());
+                long startNanos = System.nanoTime();
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onMessage(RespT message) {
+                        meters.received(message);
+                        super.onMessage(message);
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        meters.closed(status.getCode(), startNanos);
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+
+            @Override
+            public void sendMessage(ReqT message) {
+                meters.sent(message);
+                super.sendMessage(message);
+            }
+        };
+    }
+
+    /**
+     * 本次调用作为当前 span 的子 span：trace-id 沿用调用选项或 MDC，parent-id 为新生成的出站 span
+     */
+    static TraceParent outgoingTraceParent(CallOptions callOptions) {
+        String traceId = TraceParent.normalizeTraceId(callOptions.getOption(TRACE_ID));
+        if (traceId == null) {
+            traceId = TraceParent.normalizeTraceId(MDC.get("trace_id"));
+        }
+        return TraceParent.of(traceId != null ? traceId : TraceParent.newTraceId(), TraceParent.newSpanId());
+    }
+}
@@ -0,0 +1,85 @@
+package com.duola.grpc_java.metrics;
+
+import com.duola.grpc_java.util.TraceParent;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.ai.TraceContext;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 服务端拦截器：记录 grpc.server.* 调用指标，并从 metadata 的 traceparent 中提取 trace，
+ * 以本端新 span 的形式放入 {@link #TRACE_CONTEXT}，供服务实现在 header 未携带 trace 时填充 MDC。
+ * 没有 traceparent 或格式不合法时开启新的 trace。
+ */
+public class TelemetryServerInterceptor implements ServerInterceptor {
+
+    public static final Context.Key<TraceContext> TRACE_CONTEXT = Context.key("trace-context");
+
+    private final GrpcCallMetrics metrics;
+
+    public TelemetryServerInterceptor(MeterRegistry registry) {
+        this.metrics = new GrpcCallMetrics(registry, "grpc.server");
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        GrpcCallMetrics.MethodMeters meters = metrics.forMethod(call.getMethodDescriptor().getFullMethodName());
+        long startNanos = System.nanoTime();
+        AtomicBoolean closed = new AtomicBoolean(false);
+
+        ServerCall<ReqT, RespT> recordingCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void sendMessage(RespT message) {
+                meters.sent(message);
+                super.sendMessage(message);
+            }
+
+            @Override
+            public void close(Status status, Metadata trailers) {
+                if (closed.compareAndSet(false, true)) {
+                    meters.closed(status.getCode(), startNanos);
+                }
+                super.close(status, trailers);
+            }
+        };
+
+        Context context = Context.current().withValue(TRACE_CONTEXT,
+                serverSpan(TraceParent.parse(headers.get(TelemetryClientInterceptor.TRACEPARENT))));
+        ServerCall.Listener<ReqT> listener = Contexts.interceptCall(context, recordingCall, headers, next);
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                meters.received(message);
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onCancel() {
+                // 客户端取消时服务实现不一定再调用 close，这里补记一次
+                if (closed.compareAndSet(false, true)) {
+                    meters.closed(Status.Code.CANCELLED, startNanos);
+                }
+                super.onCancel();
+            }
+        };
+    }
+
+    static TraceContext serverSpan(TraceParent remote) {
+        TraceContext.Builder trace = TraceContext.newBuilder().setSpanId(TraceParent.newSpanId());
+        if (remote == null) {
+            return trace.setTraceId(TraceParent.newTraceId()).build();
+        }
+        return trace.setTraceId(remote.traceId()).setParentSpanId(remote.spanId()).build();
+    }
+}
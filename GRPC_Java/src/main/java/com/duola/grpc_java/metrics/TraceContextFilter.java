@@ -0,0 +1,47 @@
+package com.duola.grpc_java.metrics;
+
+import com.duola.grpc_java.util.MDCUtils;
+import com.duola.grpc_java.util.TraceParent;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * HTTP 入口的 trace：请求带合法 traceparent 时沿用其 trace-id，否则新开一个 trace。
+ * trace-id 放入请求属性 {@link #TRACE_ID_ATTRIBUTE}，由控制器写进请求 DTO 后显式传给 gRPC 调用
+ * （InferenceHeader.trace 与出站 traceparent），不依赖 MDC 跨线程传递；
+ * 请求线程的 MDC 只用于本线程的日志，请求结束时清除
+ */
+@Component
+public class TraceContextFilter extends OncePerRequestFilter {
+
+    public static final String TRACE_ID_ATTRIBUTE = "com.duola.grpc_java.metrics.TraceContextFilter.traceId";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        TraceParent remote = TraceParent.parse(request.getHeader(TraceParent.HEADER));
+        String traceId;
+        if (remote != null) {
+            traceId = remote.traceId();
+            MDC.put("trace_id", traceId);
+            MDC.put("parent_span_id", remote.spanId());
+        } else {
+            MDC.remove("trace_id");
+            traceId = MDCUtils.ensureTraceId();
+        }
+        request.setAttribute(TRACE_ID_ATTRIBUTE, traceId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove("trace_id");
+            MDC.remove("parent_span_id");
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.duola.grpc_java.segmentation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 掩码 → 简化多边形。对裁剪后的位图逐个连通域做 Moore 邻域外轮廓跟踪（8 连通，不含内孔），
+ * 再用 Douglas-Peucker 按容差简化，简化结果输出时顺带用鞋带公式与边长累加算出面积和周长。
+ * 坐标在原图像素坐标系下，以交错的 float[]{x0, y0, x1, y1, ...} 保存，客户端可直接绘制。
+ * <p>
+ * 容差取 YoloInferenceConfig.contourThreshold 乘以掩码框短边（0.1 即短边的 10%，约为周长的 2.5%），
+ * 大小目标得到相近的顶点数。实例持有可复用的暂存数组，非线程安全
+ */
+public final class ContourExtractor {
+
+    /** 小于该像素数的连通域视为噪声 */
+    private static final int MIN_COMPONENT_PIXELS = 4;
+    private static final double MIN_TOLERANCE = 0.5;
+
+    // 顺时针（图像坐标 y 向下）：W, NW, N, NE, E, SE, S, SW
+    private static final int[] DX = {-1, -1, 0, 1, 1, 1, 0, -1};
+    private static final int[] DY = {0, -1, -1, -1, 0, 1, 1, 1};
+
+    private final double relativeTolerance;
+
+    private byte[] labels = new byte[0];
+    private int[] stack = new int[64];
+    private int[] trace = new int[256];
+    private boolean[] keep = new boolean[128];
+    private int[] ranges = new int[64];
+
+    // 最近一次 toPolygon 顺带算出的多边形面积与周长
+    private double polygonArea;
+    private double polygonPerimeter;
+
+    public ContourExtractor(double relativeTolerance) {
+        this.relativeTolerance = relativeTolerance;
+    }
+
+    /**
+     * 轮廓集合与多边形面积、周长（均为所有外轮廓之和）
+     */
+    public record MaskShape(List<float[]> contours, double area, double perimeter) {}
+
+    public MaskShape extract(EncodedMask mask) {
+        return extract(mask, relativeTolerance);
+    }
+
+    /**
+     * 按本次给定的相对容差提取，同一个实例可服务不同请求的容差
+     */
+    public MaskShape extract(EncodedMask mask, double relativeTolerance) {
+        return extract(mask.decode(), mask.getWidth(), mask.getHeight(), mask.getX(), mask.getY(), relativeTolerance);
+    }
+
+    /**
+     * bitmap 为行优先的 0/1 位图，offsetX/offsetY 为其左上角在原图中的位置
+     */
+    public MaskShape extract(byte[] bitmap, int width, int height, int offsetX, int offsetY) {
+        return extract(bitmap, width, height, offsetX, offsetY, relativeTolerance);
+    }
+
+    /**
+     * 同上，relativeTolerance 取代构造时给定的默认容差
+     */
+    public MaskShape extract(byte[] bitmap, int width, int height, int offsetX, int offsetY, double relativeTolerance) {
+        double tolerance = Math.max(MIN_TOLERANCE, relativeTolerance * Math.min(width, height));
+        int total = width * height;
+        if (labels.length < total) {
+            labels = new byte[total];
+        } else {
+            Arrays.fill(labels, 0, total, (byte) 0);
+        }
+
+        List<float[]> contours = new ArrayList<>();
+        double area = 0.0;
+        double perimeter = 0.0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int p = y * width + x;
+                if (bitmap[p] == 0 || labels[p] != 0) {
+                    continue;
+                }
+                // 行扫描遇到的第一个像素必然在外轮廓上，且其左侧为背景
+                int pixels = fill(bitmap, width, height, x, y);
+                if (pixels < MIN_COMPONENT_PIXELS) {
+                    continue;
+                }
+                int n = traceBoundary(bitmap, width, height, x, y);
+                float[] polygon = simplify(n, tolerance, offsetX, offsetY);
+                contours.add(polygon);
+                area += polygonArea;
+                perimeter += polygonPerimeter;
+            }
+        }
+        return new MaskShape(contours, area, perimeter);
+    }
+
+    /**
+     * 标记 (x, y) 所在的 8 连通域，返回像素数
+     */
+    private int fill(byte[] bitmap, int width, int height, int x, int y) {
+        int top = 0;
+        int count = 0;
+        stack[top++] = y * width + x;
+        labels[y * width + x] = 1;
+        while (top > 0) {
+            int p = stack[--top];
+            count++;
+            int px = p % width;
+            int py = p / width;
+            for (int d = 0; d < 8; d++) {
+                int nx = px + DX[d];
+                int ny = py + DY[d];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                    continue;
+                }
+                int q = ny * width + nx;
+                if (bitmap[q] != 0 && labels[q] == 0) {
+                    labels[q] = 1;
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = q;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moore 邻域跟踪，结果以交错的 (x, y) 存入 trace，返回点数。
+     * 回到起点且下一步与第一步相同时结束（Jacob 停止准则），避免单像素宽的部分被提前截断
+     */
+    private int traceBoundary(byte[] bitmap, int width, int height, int sx, int sy) {
+        int n = 0;
+        n = push(n, sx, sy);
+        int cx = sx;
+        int cy = sy;
+        int back = 0; // 回溯方向：起点左侧为背景
+        int firstX = -1;
+        int firstY = -1;
+        int limit = 4 * width * height + 8;
+        for (int step = 0; step < limit; step++) {
+            int nextX = -1;
+            int nextY = -1;
+            int nextBack = 0;
+            for (int i = 1; i <= 8; i++) {
+                int d = (back + i) & 7;
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (nx >= 0 && ny >= 0 && nx < width && ny < height && bitmap[ny * width + nx] != 0) {
+                    // 新的回溯点为顺时针检查时上一个背景邻居，换算成相对新像素的方向
+                    int pd = (d + 7) & 7;
+                    nextBack = directionOf(cx + DX[pd] - nx, cy + DY[pd] - ny);
+                    nextX = nx;
+                    nextY = ny;
+                    break;
+                }
+            }
+            if (nextX < 0) {
+                break; // 孤立像素
+            }
+            if (firstX < 0) {
+                firstX = nextX;
+                firstY = nextY;
+            } else if (cx == sx && cy == sy && nextX == firstX && nextY == firstY) {
+                break;
+            }
+            cx = nextX;
+            cy = nextY;
+            back = nextBack;
+            if (!(cx == sx && cy == sy)) {
+                n = push(n, cx, cy);
+            }
+        }
+        return n / 2;
+    }
+
+    private int push(int n, int x, int y) {
+        if (n + 2 > trace.length) {
+            trace = Arrays.copyOf(trace, trace.length * 2);
+        }
+        trace[n] = x;
+        trace[n + 1] = y;
+        return n + 2;
+    }
+
+    private static int directionOf(int dx, int dy) {
+        for (int d = 0; d < 8; d++) {
+            if (DX[d] == dx && DY[d] == dy) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 闭合轮廓的 Douglas-Peucker：以起点和距它最远的点切成两条折线分别简化，用显式栈代替递归
+     */
+    private float[] simplify(int n, double tolerance, int offsetX, int offsetY) {
+        if (n <= 3) {
+            return toPolygon(n, null, offsetX, offsetY);
+        }
+        if (keep.length < n) {
+            keep = new boolean[Math.max(n, keep.length * 2)];
+        }
+        Arrays.fill(keep, 0, n, false);
+        int far = 0;
+        double best = -1;
+        for (int i = 1; i < n; i++) {
+            double dx = trace[2 * i] - trace[0];
+            double dy = trace[2 * i + 1] - trace[1];
+            double dist = dx * dx + dy * dy;
+            if (dist > best) {
+                best = dist;
+                far = i;
+            }
+        }
+        keep[0] = true;
+        keep[far] = true;
+
+        int top = 0;
+        top = pushRange(top, 0, far);
+        top = pushRange(top, far, n);
+        double tol2 = tolerance * tolerance;
+        while (top > 0) {
+            int end = ranges[--top];
+            int start = ranges[--top];
+            int endIndex = end % n;
+            double ax = trace[2 * start];
+            double ay = trace[2 * start + 1];
+            double bx = trace[2 * endIndex];
+            double by = trace[2 * endIndex + 1];
+            int split = -1;
+            double maxDist = tol2;
+            for (int i = start + 1; i < end; i++) {
+                double d = segmentDistanceSquared(trace[2 * i], trace[2 * i + 1], ax, ay, bx, by);
+                if (d > maxDist) {
+                    maxDist = d;
+                    split = i;
+                }
+            }
+            if (split > 0) {
+                keep[split] = true;
+                top = pushRange(top, start, split);
+                top = pushRange(top, split, end);
+            }
+        }
+        return toPolygon(n, keep, offsetX, offsetY);
+    }
+
+    private int pushRange(int top, int start, int end) {
+        if (end - start < 2) {
+            return top;
+        }
+        if (top + 2 > ranges.length) {
+            ranges = Arrays.copyOf(ranges, ranges.length * 2);
+        }
+        ranges[top] = start;
+        ranges[top + 1] = end;
+        return top + 2;
+    }
+
+    private float[] toPolygon(int n, boolean[] kept, int offsetX, int offsetY) {
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (kept == null || kept[i]) {
+                count++;
+            }
+        }
+        float[] polygon = new float[count * 2];
+        int k = 0;
+        double cross = 0.0;
+        double length = 0.0;
+        for (int i = 0; i < n; i++) {
+            if (kept == null || kept[i]) {
+                float x = trace[2 * i] + offsetX;
+                float y = trace[2 * i + 1] + offsetY;
+                if (k > 0) {
+                    cross += (double) polygon[k - 2] * y - (double) x * polygon[k - 1];
+                    length += Math.hypot(x - polygon[k - 2], y - polygon[k - 1]);
+                }
+                polygon[k++] = x;
+                polygon[k++] = y;
+            }
+        }
+        if (count > 1) {
+            // 闭合边
+            cross += (double) polygon[k - 2] * polygon[1] - (double) polygon[0] * polygon[k - 1];
+            length += Math.hypot(polygon[0] - polygon[k - 2], polygon[1] - polygon[k - 1]);
+        }
+        polygonArea = Math.abs(cross) / 2.0;
+        // 两点时闭合边与第一条边重合
+        polygonPerimeter = count > 2 ? length : length / 2.0;
+        return polygon;
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double vx = bx - ax;
+        double vy = by - ay;
+        double len2 = vx * vx + vy * vy;
+        double t = len2 > 0 ? ((px - ax) * vx + (py - ay) * vy) / len2 : 0.0;
+        t = Math.max(0.0, Math.min(1.0, t));
+        double dx = px - (ax + t * vx);
+        double dy = py - (ay + t * vy);
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,131 @@
+package com.duola.grpc_java.segmentation;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Base64;
+
+/**
+ * 裁剪到检测框的实例掩码，保持后端传来的编码形式（RLE 字符串或位打包 long[]）。
+ * 位图只在第一次调用 {@link #decode()} / {@link #contains(int, int)} 时展开并缓存，
+ * 只转发给前端或只需要面积的调用方不会付出展开整幅掩码的代价
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class EncodedMask {
+
+    private final int index;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final String encoding;
+    private final String counts;
+    private final long[] bits;
+
+    private volatile byte[] decoded;
+
+    private EncodedMask(int index, int x, int y, int width, int height, String encoding, String counts, long[] bits) {
+        this.index = index;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.encoding = encoding;
+        this.counts = counts;
+        this.bits = bits;
+    }
+
+    public static EncodedMask rle(int index, int x, int y, int width, int height, String counts) {
+        return new EncodedMask(index, x, y, width, height, MaskCodec.ENCODING_RLE, counts, null);
+    }
+
+    public static EncodedMask bitpacked(int index, int x, int y, int width, int height, long[] bits) {
+        return new EncodedMask(index, x, y, width, height, MaskCodec.ENCODING_BITPACKED, null, bits);
+    }
+
+    @JsonIgnore
+    public int getIndex() {
+        return index;
+    }
+
+    @JsonProperty("x")
+    public int getX() {
+        return x;
+    }
+
+    @JsonProperty("y")
+    public int getY() {
+        return y;
+    }
+
+    @JsonProperty("width")
+    public int getWidth() {
+        return width;
+    }
+
+    @JsonProperty("height")
+    public int getHeight() {
+        return height;
+    }
+
+    @JsonProperty("encoding")
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * COCO 压缩字符串，仅 RLE 编码时有值
+     */
+    @JsonProperty("counts")
+    public String getCounts() {
+        return counts;
+    }
+
+    /**
+     * 位打包数据的 Base64（小端 long），仅 bitpacked 编码时有值
+     */
+    @JsonProperty("bits")
+    public String getBitsBase64() {
+        return bits != null ? Base64.getEncoder().encodeToString(MaskCodec.toBytes(bits)) : null;
+    }
+
+    /**
+     * 前景像素数，直接从编码数据统计，不展开位图
+     */
+    @JsonProperty("area")
+    public long getArea() {
+        return bits != null ? MaskCodec.bitCount(bits) : MaskCodec.rleArea(MaskCodec.fromCocoString(counts));
+    }
+
+    /**
+     * 展开为裁剪框内行优先的 0/1 位图（width * height），结果缓存，调用方不要修改
+     */
+    public byte[] decode() {
+        byte[] bitmap = decoded;
+        if (bitmap == null) {
+            bitmap = bits != null
+                    ? MaskCodec.unpack(bits, width, height)
+                    : MaskCodec.rleDecode(MaskCodec.fromCocoString(counts), width, height);
+            decoded = bitmap;
+        }
+        return bitmap;
+    }
+
+    @JsonIgnore
+    public boolean isDecoded() {
+        return decoded != null;
+    }
+
+    /**
+     * 原图坐标 (px, py) 是否落在掩码前景上
+     */
+    public boolean contains(int px, int py) {
+        int cx = px - x;
+        int cy = py - y;
+        if (cx < 0 || cy < 0 || cx >= width || cy >= height) {
+            return false;
+        }
+        return decode()[cy * width + cx] != 0;
+    }
+}
@@ -0,0 +1,213 @@
+package com.duola.grpc_java.segmentation;
+
+import com.google.protobuf.Struct;
+import io.grpc.ai.ResultEnvelope;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * 分割掩码的紧凑编码。掩码先裁剪到检测框，再按 InferenceHeader.accept 协商的格式传输：
+ * <ul>
+ *     <li>{@link #ACCEPT_RLE}：COCO 风格游程编码，按列优先扫描、首段为 0 的游程长度，用 COCO 的压缩字符串表示，放在 envelope 的 text 中</li>
+ *     <li>{@link #ACCEPT_BITPACKED}：按行优先逐位打包的 long[]（小端字节序，第 i 个像素是第 i/64 个字的第 i%64 位），放在 binary 中</li>
+ * </ul>
+ * 后端每个实例返回一个 kind="mask" 的 ResultEnvelope，meta 中带 index（对应第几个检测）与裁剪框 x/y/width/height
+ */
+public final class MaskCodec {
+
+    public static final String KIND = "mask";
+    public static final String ACCEPT_RLE = "application/x-mask;encoding=\"rle\"";
+    public static final String ACCEPT_BITPACKED = "application/x-mask;encoding=\"bitpacked\"";
+
+    public static final String ENCODING_RLE = "rle";
+    public static final String ENCODING_BITPACKED = "bitpacked";
+
+    private MaskCodec() {}
+
+    /**
+     * 解析后端返回的掩码 envelope，只读取编码后的数据，不展开位图；格式不认识时返回 null
+     */
+    public static EncodedMask fromEnvelope(ResultEnvelope envelope) {
+        if (!KIND.equals(envelope.getKind()) || !envelope.hasMeta()) {
+            return null;
+        }
+        Struct meta = envelope.getMeta();
+        int index = (int) number(meta, "index");
+        int x = (int) number(meta, "x");
+        int y = (int) number(meta, "y");
+        int width = (int) number(meta, "width");
+        int height = (int) number(meta, "height");
+        if (ACCEPT_RLE.equals(envelope.getContentType()) && envelope.hasText()) {
+            return EncodedMask.rle(index, x, y, width, height, envelope.getText());
+        }
+        if (ACCEPT_BITPACKED.equals(envelope.getContentType()) && envelope.hasBinary()) {
+            LongBuffer words = envelope.getBinary().asReadOnlyByteBuffer()
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            long[] bits = new long[words.remaining()];
+            words.get(bits);
+            return EncodedMask.bitpacked(index, x, y, width, height, bits);
+        }
+        return null;
+    }
+
+    /**
+     * 行优先的 0/1 位图 → 列优先游程长度，返回的数组长度即游程个数
+     */
+    public static int[] rleEncode(byte[] bitmap, int width, int height) {
+        int[] counts = new int[64];
+        int n = 0;
+        int run = 0;
+        byte current = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                byte v = bitmap[y * width + x] != 0 ? (byte) 1 : (byte) 0;
+                if (v != current) {
+                    if (n + 1 >= counts.length) {
+                        counts = Arrays.copyOf(counts, counts.length * 2);
+                    }
+                    counts[n++] = run;
+                    run = 0;
+                    current = v;
+                }
+                run++;
+            }
+        }
+        counts[n++] = run;
+        return Arrays.copyOf(counts, n);
+    }
+
+    /**
+     * 列优先游程长度 → 行优先的 0/1 位图
+     */
+    public static byte[] rleDecode(int[] counts, int width, int height) {
+        byte[] bitmap = new byte[width * height];
+        int pos = 0;
+        int total = width * height;
+        for (int i = 0; i < counts.length && pos < total; i++) {
+            int end = Math.min(total, pos + counts[i]);
+            if ((i & 1) == 1) {
+                for (int p = pos; p < end; p++) {
+                    bitmap[(p % height) * width + p / height] = 1;
+                }
+            }
+            pos = end;
+        }
+        return bitmap;
+    }
+
+    /**
+     * 不展开位图直接从游程统计前景像素数
+     */
+    public static long rleArea(int[] counts) {
+        long area = 0;
+        for (int i = 1; i < counts.length; i += 2) {
+            area += counts[i];
+        }
+        return area;
+    }
+
+    /**
+     * COCO 的游程压缩字符串：从第三个游程起存与前前一个游程的差值，每 5 位一组、带续位，加 48 映射到可打印字符
+     */
+    public static String toCocoString(int[] counts) {
+        StringBuilder sb = new StringBuilder(counts.length * 2);
+        for (int i = 0; i < counts.length; i++) {
+            long x = counts[i];
+            if (i > 2) {
+                x -= counts[i - 2];
+            }
+            boolean more = true;
+            while (more) {
+                int c = (int) (x & 0x1f);
+                x >>= 5;
+                more = (c & 0x10) != 0 ? x != -1 : x != 0;
+                if (more) {
+                    c |= 0x20;
+                }
+                sb.append((char) (c + 48));
+            }
+        }
+        return sb.toString();
+    }
+
+    public static int[] fromCocoString(String s) {
+        int[] counts = new int[Math.max(1, s.length())];
+        int m = 0;
+        int p = 0;
+        while (p < s.length()) {
+            long x = 0;
+            int k = 0;
+            boolean more = true;
+            while (more) {
+                int c = s.charAt(p) - 48;
+                x |= (long) (c & 0x1f) << (5 * k);
+                more = (c & 0x20) != 0;
+                p++;
+                k++;
+                if (!more && (c & 0x10) != 0) {
+                    x |= -1L << (5 * k);
+                }
+            }
+            if (m > 2) {
+                x += counts[m - 2];
+            }
+            counts[m++] = (int) x;
+        }
+        return Arrays.copyOf(counts, m);
+    }
+
+    /**
+     * 行优先的 0/1 位图 → 按位打包的 long[]
+     */
+    public static long[] pack(byte[] bitmap, int width, int height) {
+        int total = width * height;
+        long[] words = new long[(total + 63) >>> 6];
+        for (int i = 0; i < total; i++) {
+            if (bitmap[i] != 0) {
+                words[i >>> 6] |= 1L << (i & 63);
+            }
+        }
+        return words;
+    }
+
+    public static byte[] unpack(long[] words, int width, int height) {
+        int total = width * height;
+        byte[] bitmap = new byte[total];
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                if (i >= total) {
+                    break;
+                }
+                bitmap[i] = 1;
+                word &= word - 1;
+            }
+        }
+        return bitmap;
+    }
+
+    public static long bitCount(long[] words) {
+        long area = 0;
+        for (long word : words) {
+            area += Long.bitCount(word);
+        }
+        return area;
+    }
+
+    /**
+     * long[] → 小端字节，用于 JSON 中的 Base64 表示，与后端发送的 binary 一致
+     */
+    static byte[] toBytes(long[] words) {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asLongBuffer().put(words);
+        return buffer.array();
+    }
+
+    private static double number(Struct struct, String field) {
+        return struct.containsFields(field) ? struct.getFieldsOrThrow(field).getNumberValue() : 0.0;
+    }
+}
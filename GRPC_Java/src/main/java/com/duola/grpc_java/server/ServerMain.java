@@ -1,15 +1,28 @@
 package com.duola.grpc_java.server;
 
+import com.duola.grpc_java.metrics.TelemetryServerInterceptor;
 import com.duola.grpc_java.server.imp.InferenceStreamServiceImpl;
+import com.duola.grpc_java.util.MessageCompression;
+import com.duola.grpc_java.util.TenantLimiter;
 import io.grpc.*;
+import io.micrometer.core.instrument.Metrics;
 
 
 public class ServerMain {
 
     public static void main(String[] args) throws Exception {
         int port = 50051;
+        // 按租户的准入限制，-Dtenant.requests-per-second / -Dtenant.burst / -Dtenant.max-streams 覆盖，<= 0 表示不限制
+        TenantLimiter tenantLimiter = new TenantLimiter(
+                Double.parseDouble(System.getProperty("tenant.requests-per-second", "20")),
+                Double.parseDouble(System.getProperty("tenant.burst", "40")),
+                Integer.getInteger("tenant.max-streams", 8));
         Server server = ServerBuilder.forPort(port)
-                .addService(new InferenceStreamServiceImpl())
+                .compressorRegistry(MessageCompression.compressorRegistry())
+                .decompressorRegistry(MessageCompression.decompressorRegistry())
+                .addService(ServerInterceptors.intercept(new InferenceStreamServiceImpl(tenantLimiter),
+                        MessageCompression.responseEncodingSelector(),
+                        new TelemetryServerInterceptor(Metrics.globalRegistry)))
                 .build()
                 .start();
 
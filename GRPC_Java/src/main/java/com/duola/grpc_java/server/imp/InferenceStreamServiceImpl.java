@@ -1,6 +1,8 @@
 package com.duola.grpc_java.server.imp;
 
+import io.grpc.Context;
 import io.grpc.ai.*;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
 
@@ -11,68 +13,163 @@ import com.google.protobuf.util.Timestamps;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
+import com.duola.grpc_java.metrics.TelemetryServerInterceptor;
+import com.duola.grpc_java.util.LogRateLimiter;
 import com.duola.grpc_java.util.MDCUtils;
-
+import com.duola.grpc_java.util.MessageCompression;
+import com.duola.grpc_java.util.TenantLimiter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class InferenceStreamServiceImpl extends InferenceStreamServiceGrpc.InferenceStreamServiceImplBase {
 
     private static final Logger logger = LoggerFactory.getLogger(InferenceStreamServiceImpl.class);
 
+    // 单条流允许的最大并发帧数上限，客户端通过 options.max_in_flight 申请
+    private static final int MAX_IN_FLIGHT_LIMIT = 32;
+
+    private final Executor frameExecutor;
+    // 按 header.tenant 的令牌桶与并发流上限，超限的 open 直接回 RESOURCE_EXHAUSTED
+    private final TenantLimiter tenantLimiter;
+
+    public InferenceStreamServiceImpl() {
+        this(TenantLimiter.unlimited());
+    }
+
+    public InferenceStreamServiceImpl(TenantLimiter tenantLimiter) {
+        this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "inference-frame-worker");
+            thread.setDaemon(true);
+            return thread;
+        }), tenantLimiter);
+    }
+
+    public InferenceStreamServiceImpl(Executor frameExecutor) {
+        this(frameExecutor, TenantLimiter.unlimited());
+    }
+
+    public InferenceStreamServiceImpl(Executor frameExecutor, TenantLimiter tenantLimiter) {
+        this.frameExecutor = frameExecutor;
+        this.tenantLimiter = tenantLimiter;
+    }
+
     @Override
     public StreamObserver<StreamRequest> stream(StreamObserver<StreamResponse> responseObserver) {
+        // 手动入站流控：open 之后按 max_in_flight 放出额度，每输出一帧结果再补一个
+        final ServerCallStreamObserver<StreamResponse> callObserver =
+                responseObserver instanceof ServerCallStreamObserver
+                        ? (ServerCallStreamObserver<StreamResponse>) responseObserver
+                        : null;
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        // 调用上下文：客户端取消或 deadline 到期后 isCancelled() 为 true，工作线程上也要用它判断
+        final Context callContext = Context.current();
+        final TraceContext remoteTrace = TelemetryServerInterceptor.TRACE_CONTEXT.get(callContext);
+        // 准入成功后占用的租户流名额，流结束或被取消时归还（只归还一次）
+        final AtomicReference<String> admittedTenant = new AtomicReference<>();
+        final Runnable releaseTenant = () -> {
+            String tenant = admittedTenant.getAndSet(null);
+            if (tenant != null) {
+                tenantLimiter.releaseStream(tenant);
+            }
+        };
+        if (callObserver != null) {
+            callObserver.setOnCancelHandler(() -> {
+                completed.set(true);
+                releaseTenant.run();
+            });
+            callObserver.disableAutoRequest();
+            callObserver.request(1);
+        }
+
         return new StreamObserver<StreamRequest>() {
             final AtomicBoolean opened = new AtomicBoolean(false);
+            final LogRateLimiter frameLogLimiter = new LogRateLimiter(1, TimeUnit.SECONDS);
+            final Object sendLock = new Object();
             InferenceHeader header = null;
+            Map<String, String> logContext = Collections.emptyMap();
+            OrderedFrameDispatcher dispatcher = null;
             long recvFrames = 0L;
 
             @Override
             public void onNext(StreamRequest request) {
+                // 帧是热路径：不触碰 MDC，日志上下文在需要打印时才按预先计算好的快照安装
+                if (request.hasFrame()) {
+                    try {
+                        handleFrame(request.getFrame(), responseObserver);
+                    } catch (Exception e) {
+                        failStream(e, responseObserver);
+                    }
+                    return;
+                }
+
+                int credits = 1;
                 try {
-                    // Populate MDC from header for tracing/tenant
                     if (request.hasOpen() && request.getOpen().hasHeader()) {
-                        MDCUtils.populateFromHeader(request.getOpen().getHeader());
-                    } else if (header != null) {
-                        MDCUtils.populateFromHeader(header);
+                        MDCUtils.install(MDCUtils.snapshotFromHeader(request.getOpen().getHeader(), remoteTrace));
+                    } else {
+                        MDCUtils.install(logContext);
                     }
 
                     if (request.hasOpen()) {
+                        boolean wasOpened = opened.get();
                         handleOpen(request.getOpen(), responseObserver);
-                    } else if (request.hasFrame()) {
-                        handleFrame(request.getFrame(), responseObserver);
+                        if (!wasOpened && dispatcher != null) {
+                            credits = dispatcher.maxInFlight();
+                        }
                     } else if (request.hasClose()) {
                         handleClose(request.getClose(), responseObserver);
                     } else {
                         sendAck(responseObserver, 3, "Unknown event in StreamRequest"); // INVALID_ARGUMENT
                     }
                 } catch (Exception e) {
-                    logger.error("Server error while handling stream request", e);
-                    sendAck(responseObserver, 13, "Server error: " + e.getMessage()); // INTERNAL
-                    responseObserver.onCompleted();
+                    failStream(e, responseObserver);
                 } finally {
                     MDCUtils.clear();
                 }
+                requestNext(credits);
             }
 
             @Override
             public void onError(Throwable t) {
                 try {
+                    MDCUtils.install(logContext);
                     logger.error("Client stream error: {}", t.getMessage(), t);
                 } finally {
                     MDCUtils.clear();
-                    responseObserver.onCompleted();
+                    finish();
                 }
             }
 
             @Override
             public void onCompleted() {
                 try {
+                    MDCUtils.install(logContext);
                     logger.info("Client completed sending. Total frames received: {}", recvFrames);
                 } finally {
                     MDCUtils.clear();
-                    responseObserver.onCompleted();
+                    if (dispatcher != null) {
+                        dispatcher.whenDrained(this::finish);
+                    } else {
+                        finish();
+                    }
+                }
+            }
+
+            private void failStream(Exception e, StreamObserver<StreamResponse> out) {
+                try {
+                    MDCUtils.install(logContext);
+                    logger.error("Server error while handling stream request", e);
+                } finally {
+                    MDCUtils.clear();
                 }
+                sendAck(out, 13, "Server error: " + e.getMessage()); // INTERNAL
+                finish();
             }
 
             private void handleOpen(StreamOpen open, StreamObserver<StreamResponse> out) {
@@ -80,27 +177,97 @@ public class InferenceStreamServiceImpl extends InferenceStreamServiceGrpc.Infer
                     sendAck(out, 9, "Stream already opened"); // FAILED_PRECONDITION
                     return;
                 }
-                header = open.getHeader();
+                InferenceHeader requested = open.getHeader();
+                String tenant = TenantLimiter.normalize(requested.hasTenant() ? requested.getTenant().getTenantId() : null);
+                TenantLimiter.Decision decision = tenantLimiter.tryOpenStream(tenant);
+                if (!decision.admitted()) {
+                    logger.warn("StreamOpen rejected for tenant {}: {}", tenant, decision);
+                    sendAck(out, 8, decision == TenantLimiter.Decision.TOO_MANY_STREAMS
+                            ? "Tenant stream limit exceeded"
+                            : "Tenant rate limit exceeded"); // RESOURCE_EXHAUSTED
+                    finish();
+                    return;
+                }
+                admittedTenant.set(tenant);
+                if (completed.get()) {
+                    // open 期间客户端已取消
+                    releaseTenant.run();
+                }
+                header = requested;
+                logContext = MDCUtils.snapshotFromHeader(header, remoteTrace);
+                dispatcher = createDispatcher(header);
                 opened.set(true);
 
                 String modelName = header.hasModel() ? header.getModel().getName() : "(unknown)";
                 String modelVer  = header.hasModel() ? header.getModel().getVersion() : "(unknown)";
-                logger.info("StreamOpen received. Model = {} / {}", modelName, modelVer);
+                logger.info("StreamOpen received. Model = {} / {}, max_in_flight = {}, ordered = {}",
+                        modelName, modelVer, dispatcher.maxInFlight(), dispatcher.isOrdered());
 
                 sendAck(out, 0, "Stream opened"); // OK
             }
 
-            private void handleFrame(StreamFrame frame, StreamObserver<StreamResponse> out) {
+            private OrderedFrameDispatcher createDispatcher(InferenceHeader header) {
+                Struct options = header.getOptions();
+                int maxInFlight = 1;
+                if (options.containsFields("max_in_flight")) {
+                    maxInFlight = (int) options.getFieldsOrThrow("max_in_flight").getNumberValue();
+                }
+                maxInFlight = Math.max(1, Math.min(maxInFlight, MAX_IN_FLIGHT_LIMIT));
+                boolean ordered = !options.containsFields("ordered")
+                        || options.getFieldsOrThrow("ordered").getBoolValue();
+                // 单帧并发时直接在入站线程上处理，避免无谓的线程切换
+                Executor executor = maxInFlight == 1 ? Runnable::run : frameExecutor;
+                return new OrderedFrameDispatcher(executor, maxInFlight, ordered, this::send, () -> requestNext(1));
+            }
+
+            private void requestNext(int n) {
+                if (callObserver != null && !completed.get()) {
+                    callObserver.request(n);
+                }
+            }
+
+            private void send(StreamResponse resp) {
+                synchronized (sendLock) {
+                    if (!completed.get()) {
+                        if (callObserver != null) {
+                            // 叠图 JPEG 已是压缩数据，逐条关闭，避免白耗 CPU
+                            callObserver.setMessageCompression(MessageCompression.isCompressible(resp));
+                        }
+                        responseObserver.onNext(resp);
+                    }
+                }
+            }
+
+            private void finish() {
+                synchronized (sendLock) {
+                    if (completed.compareAndSet(false, true)) {
+                        responseObserver.onCompleted();
+                    }
+                }
+                releaseTenant.run();
+            }
+
+            private void handleFrame(StreamFrame frame, StreamObserver<StreamResponse> out) throws InterruptedException {
                 if (!opened.get()) {
                     sendAck(out, 9, "Stream not opened yet"); // FAILED_PRECONDITION
+                    requestNext(1);
                     return;
                 }
                 recvFrames++;
 
+                if (logger.isDebugEnabled() && frameLogLimiter.tryAcquire()) {
+                    logFrame(frame);
+                }
+
+                dispatcher.submit(() -> inferFrame(frame));
+            }
+
+            private StreamResponse inferFrame(StreamFrame frame) {
                 long frameIndex = frame.getFrameIndex();
-                Timestamp ts = frame.hasTs() ? frame.getTs() : Timestamps.fromMillis(System.currentTimeMillis());
-                logger.info("Frame received: index={}, inputs={}, ts={}",
-                        frameIndex, frame.getInputsCount(), Timestamps.toString(ts));
+                // 调用已被放弃时不再开始推理，不为断开的客户端消耗算力
+                if (callContext.isCancelled()) {
+                    return ackResponse(1, "Call cancelled before inference of frame " + frameIndex); // CANCELLED
+                }
 
                 FrameResult.Builder frameResult = FrameResult.newBuilder()
                         .setFrameIndex(frameIndex)
@@ -144,19 +311,37 @@ public class InferenceStreamServiceImpl extends InferenceStreamServiceGrpc.Infer
                     frameResult.addResults(result);
                 }
 
-                StreamResponse resp = StreamResponse.newBuilder()
+                return StreamResponse.newBuilder()
                         .setFrame(frameResult.build())
                         .build();
+            }
 
-                out.onNext(resp);
+            private void logFrame(StreamFrame frame) {
+                try {
+                    MDCUtils.install(logContext);
+                    Timestamp ts = frame.hasTs() ? frame.getTs() : Timestamps.fromMillis(System.currentTimeMillis());
+                    logger.debug("Frame received (sampled): index={}, inputs={}, ts={}, total={}",
+                            frame.getFrameIndex(), frame.getInputsCount(), Timestamps.toString(ts), recvFrames);
+                } finally {
+                    MDCUtils.clear();
+                }
             }
 
             private void handleClose(StreamClose close, StreamObserver<StreamResponse> out) {
                 logger.info("StreamClose received. meta={}", (close.hasMeta() ? close.getMeta() : "{}"));
-                sendAck(out, 0, "Stream closed"); // OK
+                // 等在途帧全部输出后再确认关闭，保证 close ack 排在最后一帧结果之后
+                if (dispatcher != null) {
+                    dispatcher.whenDrained(() -> sendAck(out, 0, "Stream closed")); // OK
+                } else {
+                    sendAck(out, 0, "Stream closed"); // OK
+                }
             }
 
             private void sendAck(StreamObserver<StreamResponse> out, int code, String message) {
+                send(ackResponse(code, message));
+            }
+
+            private StreamResponse ackResponse(int code, String message) {
                 CustomStatus status = CustomStatus.newBuilder()
                         .setCode(code)
                         .setMessage(message)
@@ -166,11 +351,9 @@ public class InferenceStreamServiceImpl extends InferenceStreamServiceGrpc.Infer
                         .setStatus(status)
                         .build();
 
-                StreamResponse resp = StreamResponse.newBuilder()
+                return StreamResponse.newBuilder()
                         .setAck(ack)
                         .build();
-
-                out.onNext(resp);
             }
         };
     }
@@ -0,0 +1,141 @@
+package com.duola.grpc_java.server.imp;
+
+import io.grpc.ai.CustomStatus;
+import io.grpc.ai.StreamAck;
+import io.grpc.ai.StreamResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 单条流内的帧并发调度器。
+ * 最多同时处理 maxInFlight 帧；ordered 模式下结果按提交顺序（即 frame_index 顺序）经有界重排缓冲区输出，
+ * unordered 模式下谁先完成谁先输出。缓冲区中的结果与在途帧共用同一额度，因此内存占用有上限。
+ */
+final class OrderedFrameDispatcher {
+
+    private final Executor executor;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final Consumer<StreamResponse> sink;
+    private final Runnable onEmitted;
+
+    private final Semaphore permits;
+    private final StreamResponse[] slots;
+    private final Object lock = new Object();
+    private final List<Runnable> drainActions = new ArrayList<>();
+
+    private long nextSeq = 0L;
+    private long nextEmitSeq = 0L;
+    private int outstanding = 0;
+
+    OrderedFrameDispatcher(Executor executor, int maxInFlight, boolean ordered,
+                           Consumer<StreamResponse> sink, Runnable onEmitted) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be >= 1");
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+        this.sink = sink;
+        this.onEmitted = onEmitted;
+        this.permits = new Semaphore(maxInFlight);
+        this.slots = new StreamResponse[maxInFlight];
+    }
+
+    int maxInFlight() {
+        return maxInFlight;
+    }
+
+    boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * 提交一帧的处理任务。正常情况下 gRPC 入站流控保证不会超过额度，信号量只是兜底。
+     */
+    void submit(Supplier<StreamResponse> work) throws InterruptedException {
+        permits.acquire();
+        final long seq;
+        synchronized (lock) {
+            seq = nextSeq++;
+            outstanding++;
+        }
+        try {
+            executor.execute(() -> complete(seq, run(work)));
+        } catch (RuntimeException e) {
+            complete(seq, errorResponse(e));
+        }
+    }
+
+    /**
+     * 所有已提交的帧都输出后执行 action；当前没有在途帧则立即执行。
+     */
+    void whenDrained(Runnable action) {
+        synchronized (lock) {
+            if (outstanding > 0) {
+                drainActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    private StreamResponse run(Supplier<StreamResponse> work) {
+        try {
+            return work.get();
+        } catch (RuntimeException e) {
+            return errorResponse(e);
+        }
+    }
+
+    private void complete(long seq, StreamResponse response) {
+        List<Runnable> actions = null;
+        int emitted = 0;
+        synchronized (lock) {
+            if (!ordered) {
+                sink.accept(response);
+                emitted = 1;
+            } else {
+                slots[(int) (seq % maxInFlight)] = response;
+                int idx;
+                while (slots[idx = (int) (nextEmitSeq % maxInFlight)] != null) {
+                    StreamResponse next = slots[idx];
+                    slots[idx] = null;
+                    nextEmitSeq++;
+                    sink.accept(next);
+                    emitted++;
+                }
+            }
+            outstanding -= emitted;
+            if (outstanding == 0 && !drainActions.isEmpty()) {
+                actions = new ArrayList<>(drainActions);
+                drainActions.clear();
+            }
+        }
+        if (emitted > 0) {
+            permits.release(emitted);
+            for (int i = 0; i < emitted; i++) {
+                onEmitted.run();
+            }
+        }
+        if (actions != null) {
+            actions.forEach(Runnable::run);
+        }
+    }
+
+    private static StreamResponse errorResponse(Exception e) {
+        return StreamResponse.newBuilder()
+                .setAck(StreamAck.newBuilder()
+                        .setStatus(CustomStatus.newBuilder()
+                                .setCode(13) // INTERNAL
+                                .setMessage("Frame processing error: " + e.getMessage())
+                                .build())
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,516 @@
+package com.duola.grpc_java.service;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.duola.grpc_java.dto.StreamInferenceResponse;
+import com.duola.grpc_java.util.PriorityDispatcher;
+import io.grpc.Status;
+import io.grpc.ai.FrameResult;
+import io.grpc.ai.InferenceHeader;
+import io.grpc.ai.StreamClose;
+import io.grpc.ai.StreamFrame;
+import io.grpc.ai.StreamOpen;
+import io.grpc.ai.StreamRequest;
+import io.grpc.ai.StreamResponse;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * 批量推理的多实例扇出：每个健康实例开一条流，各自的发送线程从共享的图片序列中领取下一个下标，
+ * 单实例在途帧数不超过 perInstanceInFlight，快的实例自然领得多。
+ * 图片内容只由 frameBuilder 在锁外按下标读取（可以是落盘的图片），这里不持有图片数据。
+ * FrameResult 的 frame_index 即图片在请求中的下标，结果按下标重新排序后依次交给 sink；
+ * sink 在锁外由单个线程依次调用，慢的下游不会阻塞结果回填与领取。
+ * <p>
+ * 领取位置最多领先已输出位置 reorderWindow 张，乱序缓冲不会随批量大小增长。
+ * 帧级错误（后端对单帧回非 0 的 ack，如图片解码失败，流继续可用）只让对应图片失败，
+ * 这依赖 header 要求 ordered（见 {@link StreamGrpcInferenceService#batchHeader}）；
+ * 某个实例的流出错时，它未返回的图片转交其他实例重试一次；
+ * 没有存活实例或超时/取消时，剩余图片以失败结果输出。
+ * 每个实例同时占用 {@link PriorityDispatcher} 的批量名额，实时帧积压时照常让出
+ */
+final class BatchFanOut {
+
+    interface Transport {
+        StreamObserver<StreamRequest> open(Instance instance, StreamObserver<StreamResponse> responses);
+    }
+
+    record Summary(int succeeded, int failed, boolean timedOut) {}
+
+    // 包含首次发送在内，每张图片最多发送的次数
+    private static final int MAX_ATTEMPTS = 2;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int size;
+    private final IntPredicate skipped;
+    private final InferenceHeader header;
+    private final Transport transport;
+    private final IntFunction<StreamFrame> frameBuilder;
+    private final Function<FrameResult, StreamInferenceResponse> parser;
+    private final Consumer<StreamInferenceResponse> sink;
+    private final PriorityDispatcher.Lane lane;
+    private final InstanceOutlierDetector outlierDetector;
+    private final int perInstanceInFlight;
+    private final int reorderWindow;
+    private final BooleanSupplier cancelled;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final StreamInferenceResponse[] ready;
+    private final boolean[] finished;
+    private final int[] attempts;
+    private final ArrayDeque<Integer> retry = new ArrayDeque<>();
+    // 已按下标排好、等待交给 sink 的结果；draining 表示已有线程在输出
+    private final ArrayDeque<StreamInferenceResponse> outbox = new ArrayDeque<>();
+    private boolean draining;
+    private int nextIndex;
+    private int emitted;
+    private int finishedCount;
+    private int succeeded;
+    private int failed;
+    private volatile int aliveWorkers;
+    private volatile long deadlineNanos;
+    private boolean timedOut;
+
+    /**
+     * skipped 判断某张图片是否为空（不发送、不输出结果），在锁内调用，不能读取图片内容
+     */
+    BatchFanOut(int size, IntPredicate skipped, InferenceHeader header, Transport transport,
+                IntFunction<StreamFrame> frameBuilder, Function<FrameResult, StreamInferenceResponse> parser,
+                Consumer<StreamInferenceResponse> sink, PriorityDispatcher.Lane lane,
+                InstanceOutlierDetector outlierDetector, int perInstanceInFlight, int instances,
+                BooleanSupplier cancelled) {
+        this.size = size;
+        this.skipped = skipped;
+        this.header = header;
+        this.transport = transport;
+        this.frameBuilder = frameBuilder;
+        this.parser = parser;
+        this.sink = sink;
+        this.lane = lane;
+        this.outlierDetector = outlierDetector;
+        this.perInstanceInFlight = Math.max(1, perInstanceInFlight);
+        this.reorderWindow = Math.max(1, 2 * this.perInstanceInFlight * Math.max(1, instances));
+        this.cancelled = cancelled;
+        this.ready = new StreamInferenceResponse[size];
+        this.finished = new boolean[size];
+        this.attempts = new int[size];
+    }
+
+    /**
+     * 阻塞到全部图片有结果、超时或取消；worker 线程由 executor 提供，每个实例一个
+     */
+    Summary run(List<Instance> instances, Executor executor, long timeoutMs) throws InterruptedException {
+        deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<Worker> workers = new ArrayList<>(instances.size());
+        lock.lock();
+        try {
+            aliveWorkers = instances.size();
+            if (aliveWorkers == 0) {
+                abandonRemainingLocked("No healthy gRPC service instance found");
+            }
+        } finally {
+            lock.unlock();
+        }
+        drain();
+        CountDownLatch exited = new CountDownLatch(instances.size());
+        for (Instance instance : instances) {
+            Worker worker = new Worker(instance);
+            workers.add(worker);
+            executor.execute(() -> {
+                try {
+                    worker.run();
+                } finally {
+                    exited.countDown();
+                }
+            });
+        }
+
+        lock.lock();
+        try {
+            while (finishedCount < size && !stopped()) {
+                changed.awaitNanos(POLL_NANOS);
+            }
+            if (finishedCount < size) {
+                timedOut = !cancelled.getAsBoolean() && aliveWorkers > 0;
+                abandonRemainingLocked(timedOut ? "Batch request timeout" : "Batch cancelled");
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        awaitDrained();
+        // 等 worker 发完 close；超时未退出的直接取消
+        if (!exited.await(1, TimeUnit.SECONDS)) {
+            workers.forEach(Worker::cancel);
+        }
+        lock.lock();
+        try {
+            return new Summary(succeeded, failed, timedOut);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean stopped() {
+        return cancelled.getAsBoolean() || System.nanoTime() - deadlineNanos >= 0 || aliveWorkers == 0;
+    }
+
+    private long remainingMillis() {
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * 领取下一张待发送的图片；没有可领的但其他实例仍有在途帧时等待（它们失败后会转交过来），
+     * 全部完成或已停止时返回 -1
+     */
+    private int claim(Worker worker) throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (worker.failed || finishedCount >= size || stopped()) {
+                    return -1;
+                }
+                Integer again = retry.pollFirst();
+                if (again != null) {
+                    return assignLocked(worker, again);
+                }
+                if (nextIndex < size && nextIndex < emitted + reorderWindow) {
+                    int index = nextIndex++;
+                    if (skipped.test(index)) {
+                        // 空图片不发送，也不输出结果
+                        finishLocked(index, null);
+                        continue;
+                    }
+                    return assignLocked(worker, index);
+                }
+                changed.awaitNanos(POLL_NANOS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int assignLocked(Worker worker, int index) {
+        attempts[index]++;
+        worker.pending.add(index);
+        return index;
+    }
+
+    private void complete(Worker worker, int index, StreamInferenceResponse response) {
+        lock.lock();
+        try {
+            if (!worker.pending.remove(index)) {
+                return;
+            }
+            finishLocked(index, response);
+        } finally {
+            lock.unlock();
+        }
+        worker.window.release();
+        lane.releaseOne();
+        drain();
+    }
+
+    private void fail(Worker worker, String reason) {
+        int released;
+        lock.lock();
+        try {
+            if (worker.failed) {
+                return;
+            }
+            worker.failed = true;
+            aliveWorkers--;
+            released = worker.pending.size();
+            for (int index : worker.pending) {
+                if (attempts[index] < MAX_ATTEMPTS && aliveWorkers > 0) {
+                    retry.addLast(index);
+                } else {
+                    finishLocked(index, failure(index, reason));
+                }
+            }
+            worker.pending.clear();
+            if (aliveWorkers == 0) {
+                abandonRemainingLocked(reason);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.window.release(released);
+        for (int i = 0; i < released; i++) {
+            lane.releaseOne();
+        }
+        drain();
+    }
+
+    /**
+     * 依次把 outbox 中的结果交给 sink。同一时间只有一个线程输出，其他线程放入后直接返回，
+     * 由正在输出的线程接着取走，因此顺序与放入顺序一致
+     */
+    private void drain() {
+        lock.lock();
+        try {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        } finally {
+            lock.unlock();
+        }
+        boolean drained = false;
+        try {
+            while (true) {
+                StreamInferenceResponse next;
+                lock.lock();
+                try {
+                    next = outbox.pollFirst();
+                    if (next == null) {
+                        draining = false;
+                        drained = true;
+                        changed.signalAll();
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                sink.accept(next);
+            }
+        } finally {
+            if (!drained) {
+                lock.lock();
+                try {
+                    draining = false;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * run 返回前确保所有结果都已交给 sink，调用方随后发送的汇总不会排到结果前面
+     */
+    private void awaitDrained() throws InterruptedException {
+        while (true) {
+            drain();
+            lock.lock();
+            try {
+                if (!draining && outbox.isEmpty()) {
+                    return;
+                }
+                if (draining) {
+                    changed.awaitNanos(POLL_NANOS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 记录一张图片的结果，并把按下标已连续完成的部分移入 outbox（由 {@link #drain()} 在锁外输出）；
+     * response 为 null 表示跳过
+     */
+    private void finishLocked(int index, StreamInferenceResponse response) {
+        if (finished[index]) {
+            return;
+        }
+        finished[index] = true;
+        ready[index] = response;
+        finishedCount++;
+        if (response != null) {
+            if (Boolean.TRUE.equals(response.getSuccess())) {
+                succeeded++;
+            } else {
+                failed++;
+            }
+        }
+        while (emitted < size && finished[emitted]) {
+            StreamInferenceResponse next = ready[emitted];
+            ready[emitted] = null;
+            emitted++;
+            if (next != null) {
+                outbox.addLast(next);
+            }
+        }
+        changed.signalAll();
+    }
+
+    private void abandonRemainingLocked(String reason) {
+        retry.clear();
+        for (int index = 0; index < size; index++) {
+            if (!finished[index]) {
+                finishLocked(index, skipped.test(index) ? null : failure(index, reason));
+            }
+        }
+        nextIndex = size;
+    }
+
+    private static StreamInferenceResponse failure(int index, String reason) {
+        StreamInferenceResponse response = new StreamInferenceResponse(false, reason);
+        response.setFrameIndex(index);
+        return response;
+    }
+
+    /**
+     * 一个实例上的流：发送线程按窗口领取并发送，响应线程回填结果
+     */
+    private final class Worker implements StreamObserver<StreamResponse> {
+
+        private final Instance instance;
+        private final Semaphore window = new Semaphore(perInstanceInFlight);
+        // 由外部类的 lock 保护，按发送顺序排列
+        private final Set<Integer> pending = new LinkedHashSet<>();
+        private volatile boolean failed;
+        private volatile StreamObserver<StreamRequest> requests;
+
+        Worker(Instance instance) {
+            this.instance = instance;
+        }
+
+        void run() {
+            try {
+                requests = transport.open(instance, this);
+                requests.onNext(StreamRequest.newBuilder()
+                        .setOpen(StreamOpen.newBuilder().setHeader(header).build())
+                        .build());
+                while (acquireWindow()) {
+                    if (!lane.acquire(remainingMillis(), () -> failed || stopped())) {
+                        window.release();
+                        break;
+                    }
+                    int index = claim(this);
+                    drain();
+                    if (index < 0) {
+                        window.release();
+                        lane.releaseOne();
+                        break;
+                    }
+                    StreamFrame frame;
+                    try {
+                        frame = frameBuilder.apply(index);
+                    } catch (RuntimeException e) {
+                        // 图片本身有问题（如 Base64 非法），不算实例故障
+                        complete(this, index, failure(index, "Invalid image: " + e.getMessage()));
+                        continue;
+                    }
+                    requests.onNext(StreamRequest.newBuilder().setFrame(frame).build());
+                }
+                if (failed || stopped()) {
+                    cancel();
+                } else {
+                    requests.onNext(StreamRequest.newBuilder().setClose(StreamClose.newBuilder().build()).build());
+                    requests.onCompleted();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            } catch (RuntimeException e) {
+                fail("gRPC error: " + e.getMessage());
+                cancel();
+            }
+        }
+
+        private boolean acquireWindow() throws InterruptedException {
+            while (!failed && !stopped()) {
+                if (window.tryAcquire(POLL_NANOS, TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void fail(String reason) {
+            BatchFanOut.this.fail(this, reason);
+        }
+
+        void cancel() {
+            StreamObserver<StreamRequest> current = requests;
+            if (current instanceof ClientCallStreamObserver) {
+                ((ClientCallStreamObserver<StreamRequest>) current).cancel("Batch finished", null);
+            }
+        }
+
+        @Override
+        public void onNext(StreamResponse response) {
+            if (response.hasFrame()) {
+                FrameResult result = response.getFrame();
+                int index = (int) result.getFrameIndex();
+                if (index < 0 || index >= size) {
+                    return;
+                }
+                StreamInferenceResponse parsed;
+                try {
+                    parsed = parser.apply(result);
+                } catch (RuntimeException e) {
+                    parsed = failure(index, "Processing error: " + e.getMessage());
+                }
+                complete(this, index, parsed);
+            } else if (response.hasAck() && response.getAck().getStatus().getCode() != 0) {
+                String reason = "ACK: " + response.getAck().getStatus().getMessage();
+                int index = oldestPending();
+                if (index >= 0) {
+                    // 帧级错误的 ack 不带下标：流以 ordered 打开，后端按发送顺序回复，归到最早未返回的一帧，流继续使用
+                    complete(this, index, failure(index, reason));
+                } else {
+                    // 没有在途帧时是对 open 的拒绝，整条流不可用
+                    fail(reason);
+                    cancel();
+                }
+            }
+        }
+
+        private int oldestPending() {
+            lock.lock();
+            try {
+                Iterator<Integer> it = pending.iterator();
+                return it.hasNext() ? it.next() : -1;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (Status.fromThrowable(t).getCode() != Status.Code.CANCELLED) {
+                outlierDetector.recordFailure(instance);
+            }
+            fail("gRPC stream error: " + t.getMessage());
+        }
+
+        @Override
+        public void onCompleted() {
+            boolean drained;
+            lock.lock();
+            try {
+                drained = pending.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+            if (drained) {
+                outlierDetector.recordSuccess(instance, -1L);
+            } else {
+                fail("Stream completed before all frames returned");
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.duola.grpc_java.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 批量任务的输入图片，提交时逐张写入 {@code <id>.images.log/.idx}（格式同 {@link BatchJobLog}），
+ * 执行时按下标从磁盘读取（共用一对常驻只读通道，{@link #delete()} 时关闭），任务排队和执行期间堆内不保留整批 Base64 图片。
+ * 空图片只记在内存的位图里，{@link #isBlank(int)} 不读磁盘
+ */
+final class BatchJobImages extends AbstractList<String> {
+
+    private final BatchJobLog log;
+    private final BitSet blank;
+    private final int size;
+
+    private BatchJobImages(BatchJobLog log, BitSet blank, int size) {
+        this.log = log;
+        this.blank = blank;
+        this.size = size;
+    }
+
+    static BatchJobImages spool(Path dir, String jobId, List<String> images) throws IOException {
+        BatchJobLog log = BatchJobLog.create(dir, jobId + ".images");
+        BitSet blank = new BitSet(images.size());
+        try {
+            for (int i = 0; i < images.size(); i++) {
+                String image = images.get(i);
+                if (image == null || image.trim().isEmpty()) {
+                    blank.set(i);
+                    log.append(new byte[0]);
+                } else {
+                    log.append(image.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            log.closeWriter();
+            log.openReaders();
+        } catch (IOException | RuntimeException e) {
+            log.delete();
+            throw e;
+        }
+        return new BatchJobImages(log, blank, images.size());
+    }
+
+    boolean isBlank(int index) {
+        return blank.get(index);
+    }
+
+    /**
+     * 读取第 index 张图片；空图片返回空串
+     */
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        if (blank.get(index)) {
+            return "";
+        }
+        try {
+            return new String(log.read(index, 1).get(0), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read batch job image " + index, e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    void delete() {
+        log.delete();
+    }
+}
@@ -0,0 +1,186 @@
+package com.duola.grpc_java.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量任务的结果日志，一个任务两个文件：
+ * <ul>
+ *     <li>{@code <id>.log}：逐条追加的记录，每条为 4 字节长度 + 内容（单张图片结果的 JSON）；</li>
+ *     <li>{@code <id>.idx}：第 n 条记录在 .log 中的起始偏移，定长 8 字节，按序号直接定位。</li>
+ * </ul>
+ * 单线程追加、多线程读取：读取方各自打开只读通道，只读取已发布（{@link #size()} 以内）的记录，
+ * 任务占用的堆内存与图片数量无关。需要逐条频繁读取的日志可以 {@link #openReaders()}，
+ * 之后的读取共用一对常驻只读通道做定位读取，直到 {@link #delete()}
+ */
+final class BatchJobLog {
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    private static final int INDEX_BYTES = Long.BYTES;
+
+    private final Path logFile;
+    private final Path indexFile;
+    private FileChannel log;
+    private FileChannel index;
+    private long logPosition;
+    private volatile long size;
+    private volatile Readers readers;
+
+    private record Readers(FileChannel index, FileChannel log) {}
+
+    private BatchJobLog(Path logFile, Path indexFile) {
+        this.logFile = logFile;
+        this.indexFile = indexFile;
+    }
+
+    static BatchJobLog create(Path dir, String jobId) throws IOException {
+        Files.createDirectories(dir);
+        BatchJobLog jobLog = new BatchJobLog(dir.resolve(jobId + ".log"), dir.resolve(jobId + ".idx"));
+        jobLog.log = FileChannel.open(jobLog.logFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            jobLog.index = FileChannel.open(jobLog.indexFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            jobLog.delete();
+            throw e;
+        }
+        return jobLog;
+    }
+
+    /**
+     * 追加一条记录，写完索引后才对读取方可见
+     */
+    synchronized void append(byte[] record) throws IOException {
+        if (log == null) {
+            throw new IOException("Batch job log is closed");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_BYTES + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        writeFully(log, buffer, logPosition);
+
+        ByteBuffer offset = ByteBuffer.allocate(INDEX_BYTES);
+        offset.putLong(logPosition).flip();
+        writeFully(index, offset, size * INDEX_BYTES);
+
+        logPosition += LENGTH_BYTES + record.length;
+        size++;
+    }
+
+    /**
+     * 已写入的记录条数
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * 从第 from 条开始最多读取 limit 条
+     */
+    List<byte[]> read(long from, int limit) throws IOException {
+        long end = Math.min(size, from + Math.max(0, limit));
+        if (from < 0 || from >= end) {
+            return List.of();
+        }
+        int count = (int) (end - from);
+        Readers shared = readers;
+        if (shared != null) {
+            return read(shared.index(), shared.log(), from, count);
+        }
+        try (FileChannel indexReader = FileChannel.open(indexFile, StandardOpenOption.READ);
+             FileChannel logReader = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            return read(indexReader, logReader, from, count);
+        }
+    }
+
+    private static List<byte[]> read(FileChannel indexReader, FileChannel logReader, long from, int count)
+            throws IOException {
+        List<byte[]> records = new ArrayList<>(count);
+        ByteBuffer offsets = ByteBuffer.allocate(count * INDEX_BYTES);
+        readFully(indexReader, offsets, from * INDEX_BYTES);
+        offsets.flip();
+        ByteBuffer length = ByteBuffer.allocate(LENGTH_BYTES);
+        for (int i = 0; i < count; i++) {
+            long position = offsets.getLong();
+            length.clear();
+            readFully(logReader, length, position);
+            ByteBuffer record = ByteBuffer.allocate(length.flip().getInt());
+            readFully(logReader, record, position + LENGTH_BYTES);
+            records.add(record.array());
+        }
+        return records;
+    }
+
+    /**
+     * 打开常驻的只读通道，之后的 {@link #read} 不再每次打开文件；定位读取不共享位置，可多线程并发使用
+     */
+    synchronized void openReaders() throws IOException {
+        if (readers != null) {
+            return;
+        }
+        FileChannel indexReader = FileChannel.open(indexFile, StandardOpenOption.READ);
+        try {
+            readers = new Readers(indexReader, FileChannel.open(logFile, StandardOpenOption.READ));
+        } catch (IOException e) {
+            closeQuietly(indexReader);
+            throw e;
+        }
+    }
+
+    /**
+     * 任务结束后关闭写通道，已写入的记录仍可读取
+     */
+    synchronized void closeWriter() {
+        closeQuietly(log);
+        closeQuietly(index);
+        log = null;
+        index = null;
+    }
+
+    synchronized void delete() {
+        closeWriter();
+        Readers shared = readers;
+        readers = null;
+        if (shared != null) {
+            closeQuietly(shared.index());
+            closeQuietly(shared.log());
+        }
+        try {
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(indexFile);
+        } catch (IOException e) {
+            System.err.println("Failed to delete batch job log " + logFile + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of batch job log");
+            }
+            position += read;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 关闭失败不影响已写入的数据
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.duola.grpc_java.service;
+
+import com.duola.grpc_java.dto.BatchJobResponse;
+import com.duola.grpc_java.dto.BatchJobResultsResponse;
+import com.duola.grpc_java.dto.StreamInferenceRequest;
+import com.duola.grpc_java.dto.StreamInferenceResponse;
+import com.duola.grpc_java.util.TenantLimiter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * 异步批量任务：提交即返回 job_id，由固定大小的工作线程池执行（排队数有上限，满了返回 503）。
+ * 提交时图片写入 {@link BatchJobImages}，执行时按下标读取，任务结束即删除；
+ * 每张图片的结果按顺序追加到磁盘上的 {@link BatchJobLog}。客户端断开不影响任务，
+ * 之后可按 offset 分页拉取，或从任意 offset（SSE 的 Last-Event-ID）续接推送。
+ * 任务结束后保留 retention-ms，到期连同日志文件一起删除。
+ * <p>
+ * 任务只在内存中登记，网关重启后未完成的任务不会恢复
+ */
+@Service
+public class BatchJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchJobService.class);
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        boolean finished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+
+        String value() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 执行一个批量请求，图片从 images 按下标读取（request 中不再带图片），结果按图片顺序交给 sink
+     */
+    interface Runner {
+        BatchFanOut.Summary run(StreamInferenceRequest request, BatchJobImages images,
+                                Consumer<StreamInferenceResponse> sink, BooleanSupplier cancelled,
+                                long deadlineMs) throws InterruptedException;
+    }
+
+    @Value("${inference.batch.jobs.dir:}")
+    private String dir = "";
+
+    @Value("${inference.batch.jobs.workers:2}")
+    private int workers = 2;
+
+    @Value("${inference.batch.jobs.queue-capacity:32}")
+    private int queueCapacity = 32;
+
+    @Value("${inference.batch.jobs.timeout-ms:3600000}")
+    private long timeoutMs = 3_600_000L;
+
+    @Value("${inference.batch.jobs.retention-ms:3600000}")
+    private long retentionMs = 3_600_000L;
+
+    @Value("${inference.batch.jobs.max-page-size:500}")
+    private int maxPageSize = 500;
+
+    @Autowired
+    private StreamGrpcInferenceService streamGrpcInferenceService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private Runner runner;
+    private Path directory;
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService sweeper;
+
+    public BatchJobService() {
+    }
+
+    BatchJobService(Runner runner, ObjectMapper objectMapper, Path directory, int workers, int queueCapacity) {
+        this.runner = runner;
+        this.objectMapper = objectMapper;
+        this.dir = directory.toString();
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        if (runner == null) {
+            runner = streamGrpcInferenceService::runBatchJob;
+        }
+        directory = dir == null || dir.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "batch-jobs")
+                : Path.of(dir);
+        int poolSize = Math.max(1, workers);
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "batch-job-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "batch-job-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000L, Math.min(retentionMs, 60_000L));
+        sweeper.scheduleAtFixedRate(() -> {
+            try {
+                expire(System.currentTimeMillis());
+            } catch (Exception e) {
+                logger.warn("Batch job sweep failed", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 图片落盘后登记任务并放入工作队列，request 中的图片随之清空；队列已满时返回 503，并删除已写入的文件
+     */
+    public BatchJobResponse submit(StreamInferenceRequest request, String tenantId) {
+        if (request.getImages() == null || request.getImages().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "images must not be empty");
+        }
+        String id = UUID.randomUUID().toString();
+        BatchJobLog log;
+        BatchJobImages images;
+        try {
+            log = BatchJobLog.create(directory, id);
+        } catch (IOException e) {
+            logger.error("Failed to create batch job log in {}", directory, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create batch job");
+        }
+        try {
+            images = BatchJobImages.spool(directory, id, request.getImages());
+        } catch (IOException e) {
+            log.delete();
+            logger.error("Failed to spool batch job images in {}", directory, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create batch job");
+        }
+        request.setImages(null);
+        Job job = new Job(id, TenantLimiter.normalize(tenantId), request, images, log);
+        jobs.put(id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            job.deleteFiles();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Batch job queue is full");
+        }
+        logger.info("Batch job {} queued: {} images, tenant {}", id, job.totalImages, job.tenant);
+        return job.toResponse();
+    }
+
+    public BatchJobResponse status(String jobId, String tenantId) {
+        return find(jobId, tenantId).toResponse();
+    }
+
+    /**
+     * 从第 offset 条开始读取一页结果，limit 不超过 max-page-size
+     */
+    public BatchJobResultsResponse results(String jobId, String tenantId, long offset, int limit) {
+        Job job = find(jobId, tenantId);
+        // 先取状态再读日志：状态已结束时读到的就是全部结果
+        Status status = job.status;
+        List<byte[]> records = read(job, Math.max(0L, offset), Math.max(1, Math.min(limit, maxPageSize)));
+        List<JsonNode> results = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            try {
+                results.add(objectMapper.readTree(record));
+            } catch (IOException e) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Corrupted batch job log");
+            }
+        }
+        long next = Math.max(0L, offset) + records.size();
+        BatchJobResultsResponse response = new BatchJobResultsResponse();
+        response.setJobId(job.id);
+        response.setStatus(status.value());
+        response.setOffset(Math.max(0L, offset));
+        response.setNextOffset(next);
+        response.setDone(status.finished() && next >= job.log.size());
+        response.setResults(results);
+        return response;
+    }
+
+    /**
+     * 从第 offset 条开始推送结果（事件 id 为结果序号，断线后以 Last-Event-ID + 1 续接），
+     * 追上写入位置后等待新结果，任务结束且全部推送后发送 completed 事件。阻塞直到结束或客户端断开
+     */
+    public void streamResults(String jobId, String tenantId, long offset, SseEmitter emitter) throws Exception {
+        Job job = find(jobId, tenantId);
+        AtomicBoolean closed = new AtomicBoolean(false);
+        emitter.onCompletion(() -> closed.set(true));
+        emitter.onTimeout(() -> closed.set(true));
+        emitter.onError(t -> closed.set(true));
+
+        long next = Math.max(0L, offset);
+        while (!closed.get()) {
+            Status status = job.status;
+            List<byte[]> records = read(job, next, maxPageSize);
+            for (byte[] record : records) {
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(next))
+                        .name("frame")
+                        .data(new String(record, StandardCharsets.UTF_8)));
+                next++;
+            }
+            if (records.isEmpty()) {
+                if (status.finished()) {
+                    emitter.send(SseEmitter.event()
+                            .name("completed")
+                            .data(job.toResponse()));
+                    emitter.complete();
+                    return;
+                }
+                job.awaitResults(next, 1_000L);
+            }
+        }
+    }
+
+    /**
+     * 取消任务并删除结果日志；运行中的任务在当前帧结束后停止
+     */
+    public BatchJobResponse cancel(String jobId, String tenantId) {
+        Job job = find(jobId, tenantId);
+        jobs.remove(job.id);
+        job.cancelled.set(true);
+        synchronized (job) {
+            // 运行中的任务由工作线程在退出时删除文件
+            boolean running = job.status == Status.RUNNING;
+            if (!job.status.finished()) {
+                job.status = Status.CANCELLED;
+                job.message = "Cancelled";
+            }
+            if (!running) {
+                job.deleteFiles();
+            }
+            job.notifyAll();
+        }
+        return job.toResponse();
+    }
+
+    void expire(long nowMs) {
+        for (Job job : jobs.values()) {
+            if (job.status.finished() && job.finishedAt > 0 && nowMs - job.finishedAt >= retentionMs) {
+                jobs.remove(job.id);
+                job.deleteFiles();
+                logger.info("Batch job {} expired", job.id);
+            }
+        }
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.status != Status.QUEUED) {
+                return;
+            }
+            job.status = Status.RUNNING;
+            job.startedAt = System.currentTimeMillis();
+        }
+        Status status;
+        String message;
+        try {
+            BatchFanOut.Summary summary = runner.run(job.request, job.images, response -> append(job, response),
+                    () -> job.cancelled.get() || job.writeFailed, timeoutMs);
+            if (job.cancelled.get()) {
+                status = Status.CANCELLED;
+                message = "Cancelled";
+            } else if (job.writeFailed) {
+                status = Status.FAILED;
+                message = "Failed to write batch job log";
+            } else if (summary.timedOut()) {
+                status = Status.FAILED;
+                message = "Batch request timeout";
+            } else {
+                status = Status.COMPLETED;
+                message = "Batch completed: " + summary.succeeded() + " succeeded, " + summary.failed() + " failed";
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = Status.FAILED;
+            message = "Interrupted";
+        } catch (Exception e) {
+            logger.warn("Batch job {} failed", job.id, e);
+            status = Status.FAILED;
+            message = e.getMessage();
+        }
+        job.log.closeWriter();
+        // 任务结束后不再需要输入图片
+        job.images.delete();
+        synchronized (job) {
+            if (!job.status.finished()) {
+                job.status = status;
+                job.message = message;
+            }
+            job.finishedAt = System.currentTimeMillis();
+            if (job.status == Status.CANCELLED) {
+                job.log.delete();
+            }
+            job.notifyAll();
+        }
+        logger.info("Batch job {} {} in {} ms: {}", job.id, job.status.value(),
+                job.finishedAt - job.startedAt, job.message);
+    }
+
+    /**
+     * 由 BatchFanOut 按图片顺序调用；写失败时停止任务，而不是丢掉中间的结果
+     */
+    private void append(Job job, StreamInferenceResponse response) {
+        if (job.writeFailed) {
+            return;
+        }
+        try {
+            job.log.append(objectMapper.writeValueAsBytes(response));
+        } catch (IOException e) {
+            logger.error("Batch job {} failed to append result", job.id, e);
+            job.writeFailed = true;
+            return;
+        }
+        synchronized (job) {
+            if (Boolean.TRUE.equals(response.getSuccess())) {
+                job.succeeded++;
+            } else {
+                job.failed++;
+            }
+            job.notifyAll();
+        }
+    }
+
+    private List<byte[]> read(Job job, long offset, int limit) {
+        try {
+            return job.log.read(offset, limit);
+        } catch (IOException e) {
+            // 任务在读取期间被取消或过期，日志已删除
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Batch job results are no longer available");
+        }
+    }
+
+    /**
+     * 其他租户的任务按不存在处理
+     */
+    private Job find(String jobId, String tenantId) {
+        Job job = jobId == null ? null : jobs.get(jobId);
+        if (job == null || !job.tenant.equals(TenantLimiter.normalize(tenantId))) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Batch job not found");
+        }
+        return job;
+    }
+
+    private static final class Job {
+        final String id;
+        final String tenant;
+        final int totalImages;
+        final StreamInferenceRequest request;
+        final BatchJobImages images;
+        final BatchJobLog log;
+        final long createdAt = System.currentTimeMillis();
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        volatile boolean writeFailed;
+        volatile Status status = Status.QUEUED;
+        // 以下字段由 Job 自身的监视器保护
+        String message = "Queued";
+        int succeeded;
+        int failed;
+        long startedAt;
+        volatile long finishedAt;
+
+        Job(String id, String tenant, StreamInferenceRequest request, BatchJobImages images, BatchJobLog log) {
+            this.id = id;
+            this.tenant = tenant;
+            this.totalImages = images.size();
+            this.request = request;
+            this.images = images;
+            this.log = log;
+        }
+
+        void deleteFiles() {
+            images.delete();
+            log.delete();
+        }
+
+        synchronized void awaitResults(long size, long timeoutMs) throws InterruptedException {
+            if (log.size() <= size && !status.finished()) {
+                wait(timeoutMs);
+            }
+        }
+
+        synchronized BatchJobResponse toResponse() {
+            BatchJobResponse response = new BatchJobResponse();
+            response.setJobId(id);
+            response.setStatus(status.value());
+            response.setMessage(message);
+            response.setTotalImages(totalImages);
+            response.setResultCount(log.size());
+            response.setSucceeded(succeeded);
+            response.setFailed(failed);
+            response.setCreatedAt(createdAt);
+            response.setFinishedAt(finishedAt > 0 ? finishedAt : null);
+            return response;
+        }
+    }
+}
@@ -7,15 +7,20 @@ import com.duola.grpc_java.dto.CameraStatusResponse;
 import com.duola.grpc_java.dto.StreamInferenceRequest;
 import com.duola.grpc_java.dto.StreamInferenceResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * 摄像头推理服务
@@ -26,19 +31,34 @@ public class CameraInferenceService {
     @Autowired
     private StreamGrpcInferenceService streamGrpcInferenceService;
     
-    // 存储活跃的摄像头会话
-    private final Map<String, CameraStatusResponse.CameraSessionInfo> activeSessions = new ConcurrentHashMap<>();
+    @Autowired
+    private CameraSessionRegistry activeSessions;
+    
+    private static final long DEFAULT_FRAME_TIMEOUT_MS = 30_000L;
+    
+    /**
+     * 为 true 时 track 模式由网关按会话跟踪，后端只做无状态检测，Python 实例无需会话粘滞
+     */
+    @Value("${camera.tracking.gateway-side:true}")
+    private boolean gatewaySideTracking = true;
     
     // 统计信息
     private final AtomicInteger totalSessions = new AtomicInteger(0);
-    private final AtomicLong totalFrames = new AtomicLong(0);
-    private final AtomicLong detectedFrames = new AtomicLong(0);
-    private final AtomicLong detectedObjects = new AtomicLong(0);
+    private final LongAdder totalFrames = new LongAdder();
+    private final LongAdder detectedFrames = new LongAdder();
+    private final LongAdder detectedObjects = new LongAdder();
     
     /**
      * 处理摄像头单帧推理
      */
     public CameraInferenceResponse processCameraFrame(CameraInferenceRequest request) {
+        return processCameraFrame(request, DEFAULT_FRAME_TIMEOUT_MS);
+    }
+    
+    /**
+     * 处理摄像头单帧推理，timeoutMs 一般取调用方 SseEmitter 的超时
+     */
+    public CameraInferenceResponse processCameraFrame(CameraInferenceRequest request, long timeoutMs) {
         long startTime = System.currentTimeMillis();
         
         try {
@@ -51,13 +71,14 @@ public class CameraInferenceService {
             StreamInferenceRequest streamRequest = convertToStreamRequest(request);
             
             // 执行推理
-            StreamInferenceResponse streamResponse = streamGrpcInferenceService.performSingleInference(streamRequest);
+            StreamInferenceResponse streamResponse = streamGrpcInferenceService.performSingleInference(streamRequest, timeoutMs, "camera_frame");
             
             // 更新统计信息
-            updateSessionStats(request.getSessionId(), streamResponse);
+            updateSessionStats(request.getSessionId(), streamResponse, System.currentTimeMillis() - startTime);
             
             // 转换为摄像头响应
             CameraInferenceResponse response = convertToCameraResponse(streamResponse, request.getSessionId());
+            applyTracking(request, response);
             response.setRuntimeMs((double) (System.currentTimeMillis() - startTime));
             response.setEventType("frame");
             
@@ -90,28 +111,76 @@ public class CameraInferenceService {
             // 转换为StreamInferenceRequest
             StreamInferenceRequest streamRequest = convertToStreamRequest(request);
             
+            // 会话被停止或空闲驱逐时结束 SSE，emitter 的完成回调会取消对应的 gRPC 流；
+            // 推理返回后注销，正常 complete() 不会触发完成回调，不能依赖它清理会话上的登记
+            CameraSession session = activeSessions.get(request.getSessionId());
+            Runnable deregister = session != null ? session.onClose(emitter::complete) : () -> { };
+            
             // 执行流式推理
-            streamGrpcInferenceService.performStreamInference(streamRequest, new SseEmitter() {
-                @Override
-                public void send(Object object) throws IOException {
-                    if (object instanceof StreamInferenceResponse) {
-                        StreamInferenceResponse streamResponse = (StreamInferenceResponse) object;
-                        CameraInferenceResponse cameraResponse = convertToCameraResponse(streamResponse, request.getSessionId());
-                        updateSessionStats(request.getSessionId(), streamResponse);
-                        emitter.send(SseEmitter.event().name("frame").data(cameraResponse));
+            // 超时与生命周期回调都转交给真实的 emitter，使 gRPC deadline 与取消能跟随客户端连接
+            try {
+                streamGrpcInferenceService.performStreamInference(streamRequest, new SseEmitter(emitter.getTimeout()) {
+                    @Override
+                    public synchronized void onTimeout(Runnable callback) {
+                        emitter.onTimeout(callback);
+                    }
+                
+                    @Override
+                    public synchronized void onError(Consumer<Throwable> callback) {
+                        emitter.onError(callback);
+                    }
+                
+                    @Override
+                    public synchronized void onCompletion(Runnable callback) {
+                        emitter.onCompletion(callback);
                     }
-                }
                 
-                @Override
-                public void complete() {
-                    emitter.complete();
-                }
+                    @Override
+                    public void send(Object object) throws IOException {
+                        if (object instanceof StreamInferenceResponse) {
+                            StreamInferenceResponse streamResponse = (StreamInferenceResponse) object;
+                            CameraInferenceResponse cameraResponse = convertToCameraResponse(streamResponse, request.getSessionId());
+                            applyTracking(request, cameraResponse);
+                            Double runtimeMs = streamResponse.getRuntimeMs();
+                            updateSessionStats(request.getSessionId(), streamResponse, runtimeMs != null ? runtimeMs.longValue() : -1L);
+                            emitter.send(SseEmitter.event().name("frame").data(cameraResponse));
+                        }
+                    }
+                
+                    @Override
+                    public void send(SseEventBuilder builder) throws IOException {
+                        // 推理服务按事件发送，否则事件会停留在未初始化的包装 emitter 中；
+                        // 只有 frame 事件是一帧结果，需要跟踪和计数，ack/completed/error/timeout 保留原事件名转发
+                        Set<ResponseBodyEmitter.DataWithMediaType> items = builder.build();
+                        String name = eventName(items);
+                        for (ResponseBodyEmitter.DataWithMediaType item : items) {
+                            if (!(item.getData() instanceof StreamInferenceResponse)) {
+                                continue;
+                            }
+                            if ("frame".equals(name)) {
+                                send(item.getData());
+                            } else {
+                                CameraInferenceResponse cameraResponse = convertToCameraResponse(
+                                        (StreamInferenceResponse) item.getData(), request.getSessionId());
+                                cameraResponse.setEventType(name);
+                                emitter.send(SseEmitter.event().name(name).data(cameraResponse));
+                            }
+                        }
+                    }
+                
+                    @Override
+                    public void complete() {
+                        emitter.complete();
+                    }
                 
-                @Override
-                public void completeWithError(Throwable ex) {
-                    emitter.completeWithError(ex);
-                }
-            });
+                    @Override
+                    public void completeWithError(Throwable ex) {
+                        emitter.completeWithError(ex);
+                    }
+                }, "camera_stream");
+            } finally {
+                deregister.run();
+            }
             
         } catch (Exception e) {
             try {
@@ -136,16 +205,12 @@ public class CameraInferenceService {
             }
             final String finalSessionId = sessionId;  // 新建一个 effectively final 的变量
 
-            CameraStatusResponse.CameraSessionInfo sessionInfo = activeSessions.computeIfAbsent(
-                    finalSessionId,
-                    k -> new CameraStatusResponse.CameraSessionInfo(finalSessionId)
-            );
+            CameraSession session = activeSessions.getOrCreate(finalSessionId);
 
 
             // 更新配置
-            sessionInfo.setFrameRate(request.getFrameRate());
-            sessionInfo.setDetectionThreshold(request.getDetectionThreshold());
-            sessionInfo.setModel(request.getModel());
+            session.configure(request.getFrameRate(), request.getDetectionThreshold(), request.getModel());
+            session.configureTracking(request);
             
             return new CameraInferenceResponse(true, "Camera session configured successfully", "config");
             
@@ -160,8 +225,10 @@ public class CameraInferenceService {
     public CameraStatusResponse getCameraStatus() {
         try {
             CameraStatusResponse response = new CameraStatusResponse(true, "Camera status retrieved successfully");
-            response.setActiveSessions(activeSessions);
-            response.setTotalSessions(activeSessions.size());
+            Map<String, CameraStatusResponse.CameraSessionInfo> sessions = new LinkedHashMap<>();
+            activeSessions.forEach((id, session) -> sessions.put(id, session.toInfo()));
+            response.setActiveSessions(sessions);
+            response.setTotalSessions(sessions.size());
             
             return response;
             
@@ -175,8 +242,7 @@ public class CameraInferenceService {
      */
     public CameraInferenceResponse stopCameraSession(String sessionId) {
         try {
-            if (sessionId != null && activeSessions.containsKey(sessionId)) {
-                activeSessions.remove(sessionId);
+            if (activeSessions.remove(sessionId) != null) {
                 return new CameraInferenceResponse(true, "Camera session stopped successfully", "stop");
             } else {
                 return new CameraInferenceResponse(false, "Session not found: " + sessionId, "error");
@@ -196,11 +262,49 @@ public class CameraInferenceService {
         streamRequest.setTargetWidth(request.getTargetWidth());
         streamRequest.setTargetHeight(request.getTargetHeight());
         streamRequest.setKeepAspectRatio(request.getKeepAspectRatio());
-        streamRequest.setMode(request.getMode());
+        // 网关侧跟踪时后端只需检测
+        streamRequest.setMode(isGatewayTracked(request) ? "detect" : request.getMode());
         streamRequest.setReturnOverlay(request.getReturnOverlay());
+        streamRequest.setTraceId(request.getTraceId());
+        streamRequest.setTenantId(request.getTenantId());
         return streamRequest;
     }
     
+    /**
+     * 取出已构建 SSE 事件的事件名，没有 event 行时返回 null
+     */
+    private static String eventName(Set<ResponseBodyEmitter.DataWithMediaType> items) {
+        for (ResponseBodyEmitter.DataWithMediaType item : items) {
+            if (!MediaType.TEXT_PLAIN.isCompatibleWith(item.getMediaType()) || !(item.getData() instanceof String)) {
+                continue;
+            }
+            String text = (String) item.getData();
+            int start = text.indexOf("event:");
+            if (start >= 0) {
+                int end = text.indexOf('\n', start);
+                return text.substring(start + "event:".length(), end < 0 ? text.length() : end).trim();
+            }
+        }
+        return null;
+    }
+    
+    private boolean isGatewayTracked(CameraInferenceRequest request) {
+        return gatewaySideTracking && "track".equals(request.getMode()) && request.getSessionId() != null;
+    }
+    
+    /**
+     * 网关侧跟踪：把本帧检测交给会话的跟踪器，回填 trackId 并附上轨迹；会话不存在时原样返回检测
+     */
+    private void applyTracking(CameraInferenceRequest request, CameraInferenceResponse response) {
+        if (!isGatewayTracked(request) || !Boolean.TRUE.equals(response.getSuccess())) {
+            return;
+        }
+        CameraSession session = activeSessions.get(request.getSessionId());
+        if (session != null) {
+            response.setTracks(session.track(response.getDetections()));
+        }
+    }
+    
     /**
      * 转换响应格式
      */
@@ -221,34 +325,22 @@ public class CameraInferenceService {
     }
     
     /**
-     * 更新会话统计信息
+     * 更新会话统计信息，latencyMs 小于 0 表示没有延迟样本
      */
-    private void updateSessionStats(String sessionId, StreamInferenceResponse response) {
+    private void updateSessionStats(String sessionId, StreamInferenceResponse response, long latencyMs) {
+        int objects = response.getDetections() != null ? response.getDetections().size() : 0;
         if (sessionId != null) {
-            CameraStatusResponse.CameraSessionInfo sessionInfo = activeSessions.get(sessionId);
-            if (sessionInfo != null) {
-                sessionInfo.setTotalFrames(sessionInfo.getTotalFrames() + 1);
-                sessionInfo.setLastActivity(System.currentTimeMillis());
-                
-                if (response.getDetections() != null && !response.getDetections().isEmpty()) {
-                    sessionInfo.setDetectedFrames(sessionInfo.getDetectedFrames() + 1);
-                    sessionInfo.setDetectedObjects(sessionInfo.getDetectedObjects() + response.getDetections().size());
-                }
-                
-                // 计算平均FPS
-                long elapsed = System.currentTimeMillis() - sessionInfo.getStartTime();
-                if (elapsed > 0) {
-                    double fps = (sessionInfo.getTotalFrames() * 1000.0) / elapsed;
-                    sessionInfo.setAvgFps(fps);
-                }
+            CameraSession session = activeSessions.get(sessionId);
+            if (session != null) {
+                session.getStats().recordFrame(objects, latencyMs);
             }
         }
         
         // 更新全局统计
-        totalFrames.incrementAndGet();
-        if (response.getDetections() != null && !response.getDetections().isEmpty()) {
-            detectedFrames.incrementAndGet();
-            detectedObjects.addAndGet(response.getDetections().size());
+        totalFrames.increment();
+        if (objects > 0) {
+            detectedFrames.increment();
+            detectedObjects.add(objects);
         }
     }
 }
@@ -0,0 +1,129 @@
+package com.duola.grpc_java.service;
+
+import com.duola.grpc_java.dto.CameraConfigRequest;
+import com.duola.grpc_java.dto.CameraStatusResponse;
+import com.duola.grpc_java.dto.DetectionResult;
+import com.duola.grpc_java.dto2.yolo.YoloInferenceConfig;
+import com.duola.grpc_java.dto2.yolo.YoloTrackingResult;
+import com.duola.grpc_java.metrics.CameraSessionStats;
+import com.duola.grpc_java.tracking.ByteTracker;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 网关内的摄像头会话：配置由 /camera/config 写入，统计由帧路径无锁更新，对外状态按需生成快照。
+ * 会话上挂着的 SSE / gRPC 流等资源通过 {@link #onClose(Runnable)} 登记，会话停止或被驱逐时统一释放
+ */
+class CameraSession {
+
+    private final String sessionId;
+    private final CameraSessionStats stats = new CameraSessionStats();
+    private final Set<Runnable> releasers = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    private volatile Integer frameRate;
+    private volatile Double detectionThreshold;
+    private volatile String model;
+
+    // 跟踪器按需创建，帧可能来自多个请求线程，跟踪在会话锁内串行执行
+    private YoloInferenceConfig trackingConfig = new YoloInferenceConfig().forTracking();
+    private ByteTracker tracker;
+
+    CameraSession(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    CameraSessionStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 登记会话关闭时要执行的释放动作，返回的 Runnable 用于资源自行结束时注销；会话已关闭则立即执行
+     */
+    Runnable onClose(Runnable releaser) {
+        releasers.add(releaser);
+        if (closed && releasers.remove(releaser)) {
+            releaser.run();
+        }
+        return () -> releasers.remove(releaser);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+        for (Runnable releaser : releasers) {
+            if (releasers.remove(releaser)) {
+                try {
+                    releaser.run();
+                } catch (Exception e) {
+                    System.err.println("Failed to release camera session " + sessionId + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    void configure(Integer frameRate, Double detectionThreshold, String model) {
+        this.frameRate = frameRate;
+        this.detectionThreshold = detectionThreshold;
+        this.model = model;
+        stats.touch();
+    }
+
+    /**
+     * 应用请求里的跟踪参数，参数变化后丢弃旧跟踪器，下一帧按新参数重新开始
+     */
+    synchronized void configureTracking(CameraConfigRequest request) {
+        YoloInferenceConfig config = new YoloInferenceConfig().forTracking();
+        if (request.getTrackThreshold() != null) {
+            config.setTrackThreshold(request.getTrackThreshold());
+        }
+        if (request.getTrackBuffer() != null) {
+            config.setTrackBuffer(request.getTrackBuffer());
+        }
+        if (request.getTrackMaxAge() != null) {
+            config.setTrackMaxAge(request.getTrackMaxAge());
+        }
+        if (request.getTrackMinHits() != null) {
+            config.setTrackMinHits(request.getTrackMinHits());
+        }
+        trackingConfig = config;
+        tracker = null;
+    }
+
+    /**
+     * 对一帧检测做跟踪，回填各检测的 trackId 并返回当前轨迹
+     */
+    synchronized List<YoloTrackingResult> track(List<DetectionResult> detections) {
+        if (tracker == null) {
+            tracker = new ByteTracker(trackingConfig);
+        }
+        return tracker.update(detections);
+    }
+
+    CameraStatusResponse.CameraSessionInfo toInfo() {
+        CameraStatusResponse.CameraSessionInfo info = new CameraStatusResponse.CameraSessionInfo(sessionId);
+        info.setFrameRate(frameRate);
+        info.setDetectionThreshold(detectionThreshold);
+        info.setModel(model);
+        info.setTotalFrames(stats.getTotalFrames());
+        info.setDetectedFrames(stats.getDetectedFrames());
+        info.setDetectedObjects(stats.getDetectedObjects());
+        info.setStartTime(stats.getStartTime());
+        info.setLastActivity(stats.getLastActivity());
+
+        CameraSessionStats.Window window = stats.window();
+        info.setAvgFps(window.getFps());
+        info.setP50LatencyMs(window.getP50LatencyMs());
+        info.setP95LatencyMs(window.getP95LatencyMs());
+        return info;
+    }
+}
@@ -0,0 +1,195 @@
+package com.duola.grpc_java.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 有上限的摄像头会话表。
+ * 超过 idle-timeout 没有活动（帧或配置）的会话由时间轮清扫线程驱逐；会话数达到上限时驱逐最久未活动的会话。
+ * 帧路径只更新会话的 lastActivity，不触碰时间轮：会话按“lastActivity + idle-timeout”放入对应槽位，
+ * 槽位到期时再读一次 lastActivity，仍未超时就重新挂到新的槽位，因此每个会话每个超时周期最多被检查一次。
+ * 驱逐会关闭会话，释放其登记的 SSE / gRPC 流。
+ */
+@Component
+public class CameraSessionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(CameraSessionRegistry.class);
+
+    @Value("${camera.session.max-sessions:1024}")
+    private int maxSessions = 1024;
+
+    @Value("${camera.session.idle-timeout-ms:300000}")
+    private long idleTimeoutMs = 300_000L;
+
+    @Value("${camera.session.tick-ms:1000}")
+    private long tickMs = 1000L;
+
+    @Value("${camera.session.wheel-size:512}")
+    private int wheelSize = 512;
+
+    private final Map<String, CameraSession> sessions = new ConcurrentHashMap<>();
+    private Queue<CameraSession>[] wheel;
+    private volatile long currentTick;
+    private ScheduledExecutorService sweeper;
+
+    public CameraSessionRegistry() {
+    }
+
+    CameraSessionRegistry(int maxSessions, long idleTimeoutMs, long tickMs, int wheelSize) {
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        initWheel();
+    }
+
+    @PostConstruct
+    void start() {
+        initWheel();
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "camera-session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleAtFixedRate(() -> {
+            try {
+                advance(System.currentTimeMillis());
+            } catch (Exception e) {
+                logger.warn("Camera session sweep failed", e);
+            }
+        }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        sessions.values().forEach(CameraSession::close);
+        sessions.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void initWheel() {
+        wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        currentTick = System.currentTimeMillis() / tickMs;
+    }
+
+    CameraSession get(String sessionId) {
+        return sessionId == null ? null : sessions.get(sessionId);
+    }
+
+    /**
+     * 取已有会话或新建；新建导致超过上限时驱逐最久未活动的其他会话
+     */
+    CameraSession getOrCreate(String sessionId) {
+        CameraSession existing = sessions.get(sessionId);
+        if (existing != null) {
+            return existing;
+        }
+        CameraSession created = new CameraSession(sessionId);
+        CameraSession previous = sessions.putIfAbsent(sessionId, created);
+        if (previous != null) {
+            return previous;
+        }
+        schedule(created, created.getStats().getLastActivity() + idleTimeoutMs);
+        while (sessions.size() > maxSessions) {
+            if (!evictLeastRecentlyActive(created)) {
+                break;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * 移除并关闭会话，返回被移除的会话，不存在时返回 null
+     */
+    CameraSession remove(String sessionId) {
+        CameraSession session = sessionId == null ? null : sessions.remove(sessionId);
+        if (session != null) {
+            session.close();
+        }
+        return session;
+    }
+
+    void forEach(BiConsumer<String, CameraSession> action) {
+        sessions.forEach(action);
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    /**
+     * 推进时间轮到 nowMillis，处理途经槽位中到期的会话；落后超过一圈时只需处理一圈
+     */
+    synchronized void advance(long nowMillis) {
+        long targetTick = nowMillis / tickMs;
+        long from = Math.max(currentTick + 1, targetTick - wheelSize + 1);
+        for (long tick = from; tick <= targetTick; tick++) {
+            currentTick = tick;
+            expire(wheel[(int) Math.floorMod(tick, (long) wheelSize)], nowMillis);
+        }
+        currentTick = Math.max(currentTick, targetTick);
+    }
+
+    private void expire(Queue<CameraSession> slot, long nowMillis) {
+        // 只处理进入时已在槽内的会话，本轮重新挂回同一槽位的留到下一圈
+        for (int n = slot.size(); n > 0; n--) {
+            CameraSession session = slot.poll();
+            if (session == null) {
+                return;
+            }
+            if (sessions.get(session.getSessionId()) != session) {
+                continue;
+            }
+            long deadline = session.getStats().getLastActivity() + idleTimeoutMs;
+            if (deadline <= nowMillis) {
+                evict(session, "idle for " + (nowMillis - session.getStats().getLastActivity()) + " ms");
+            } else {
+                schedule(session, deadline);
+            }
+        }
+    }
+
+    private void schedule(CameraSession session, long deadlineMillis) {
+        long tick = Math.max((deadlineMillis + tickMs - 1) / tickMs, currentTick + 1);
+        wheel[(int) Math.floorMod(tick, (long) wheelSize)].add(session);
+    }
+
+    private boolean evictLeastRecentlyActive(CameraSession keep) {
+        CameraSession oldest = null;
+        for (CameraSession session : sessions.values()) {
+            if (session != keep && (oldest == null
+                    || session.getStats().getLastActivity() < oldest.getStats().getLastActivity())) {
+                oldest = session;
+            }
+        }
+        return oldest != null && evict(oldest, "session limit " + maxSessions + " reached");
+    }
+
+    private boolean evict(CameraSession session, String reason) {
+        if (!sessions.remove(session.getSessionId(), session)) {
+            return false;
+        }
+        session.close();
+        logger.info("Evicted camera session {} ({})", session.getSessionId(), reason);
+        return true;
+    }
+}
@@ -1,14 +1,14 @@
 package com.duola.grpc_java.service;
 
+import com.alibaba.nacos.api.naming.pojo.Instance;
 import com.duola.grpc_java.dto.DetectionResult;
 import com.duola.grpc_java.dto.InferenceRequest;
 import com.duola.grpc_java.dto.InferenceResponse;
+import com.duola.grpc_java.util.HeaderUtils;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Struct;
-import com.google.protobuf.Value;
 import com.google.protobuf.util.Timestamps;
 import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
 import io.grpc.ai.*;
 import io.grpc.stub.StreamObserver;
 
@@ -20,26 +20,28 @@ import java.util.concurrent.TimeUnit;
 
 public class GrpcInferenceService {
     
-    private final String grpcServerHost;
-    private final int grpcServerPort;
+    private static final long REQUEST_TIMEOUT_MS = 30_000L;
     
-    public GrpcInferenceService(String grpcServerHost, int grpcServerPort) {
-        this.grpcServerHost = grpcServerHost;
-        this.grpcServerPort = grpcServerPort;
+    private final Instance backend;
+    private final InstanceDiscovery instanceDiscovery;
+    
+    public GrpcInferenceService(String grpcServerHost, int grpcServerPort, InstanceDiscovery instanceDiscovery) {
+        // 该接口直连固定地址，只借用 InstanceDiscovery 创建通道
+        this.backend = new Instance();
+        this.backend.setIp(grpcServerHost);
+        this.backend.setPort(grpcServerPort);
+        this.instanceDiscovery = instanceDiscovery;
     }
     
     public InferenceResponse performInference(InferenceRequest request) {
         ManagedChannel channel = null;
         try {
             // 创建 gRPC 连接
-            channel = ManagedChannelBuilder
-                    .forAddress(grpcServerHost, grpcServerPort)
-                    .usePlaintext()
-                    .maxInboundMessageSize(32 * 1024 * 1024) // 32MB
-                    .build();
+            channel = instanceDiscovery.createChannel(backend);
             
             InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = 
-                    InferenceStreamServiceGrpc.newStub(channel);
+                    StreamGrpcInferenceService.newStub(channel, request.getTraceId())
+                            .withDeadlineAfter(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
             
             // 解码 Base64 图像
             byte[] imageBytes = Base64.getDecoder().decode(request.getImage());
@@ -83,7 +85,7 @@ public class GrpcInferenceService {
             sendInferenceRequest(requestObserver, request, imageBytes);
             
             // 等待响应完成
-            if (!finishLatch.await(30, TimeUnit.SECONDS)) {
+            if (!finishLatch.await(REQUEST_TIMEOUT_MS + 500L, TimeUnit.MILLISECONDS)) {
                 response.setSuccess(false);
                 response.setMessage("Request timeout");
             }
@@ -103,23 +105,9 @@ public class GrpcInferenceService {
                                    InferenceRequest request, byte[] imageBytes) {
         try {
             // 构建推理头部
-            Struct.Builder optionsBuilder = Struct.newBuilder();
-            optionsBuilder.putFields("target_w", Value.newBuilder().setNumberValue(request.getTargetWidth()).build());
-            optionsBuilder.putFields("target_h", Value.newBuilder().setNumberValue(request.getTargetHeight()).build());
-            optionsBuilder.putFields("keep_aspect_ratio", Value.newBuilder().setBoolValue(request.getKeepAspectRatio()).build());
-            optionsBuilder.putFields("mode", Value.newBuilder().setStringValue(request.getMode()).build());
-            optionsBuilder.putFields("persist", Value.newBuilder().setBoolValue(false).build());
-            optionsBuilder.putFields("return_overlay", Value.newBuilder().setBoolValue(request.getReturnOverlay()).build());
-            
-            InferenceHeader header = InferenceHeader.newBuilder()
-                    .setModel(ModelSpec.newBuilder()
-                            .setName(request.getModel())
-                            .setVersion("v1")
-                            .build())
-                    .setOptions(optionsBuilder.build())
-                    .addAccept("application/x-protobuf;type=\"google.protobuf.Struct\"")
-                    .addAccept("image/jpeg;kind=\"overlay\"")
-                    .build();
+            InferenceHeader header = HeaderUtils.withTenant(HeaderUtils.withTrace(HeaderUtils.header(request.getModel(),
+                    request.getTargetWidth(), request.getTargetHeight(), request.getKeepAspectRatio(),
+                    request.getMode(), request.getReturnOverlay()), request.getTraceId()), request.getTenantId());
             
             // 发送流打开请求
             StreamRequest openReq = StreamRequest.newBuilder()
@@ -0,0 +1,23 @@
+package com.duola.grpc_java.service;
+
+import com.alibaba.nacos.api.exception.NacosException;
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import io.grpc.ManagedChannel;
+
+import java.util.List;
+
+/**
+ * YOLO 后端实例的发现与连接。默认实现走 Nacos，压测等场景可以替换为静态实例列表 + 进程内通道
+ */
+public interface InstanceDiscovery {
+
+    /**
+     * 当前健康的后端实例
+     */
+    List<Instance> healthyInstances() throws NacosException;
+
+    /**
+     * 为实例创建 gRPC 通道，调用方负责关闭
+     */
+    ManagedChannel createChannel(Instance instance);
+}
@@ -0,0 +1,288 @@
+package com.duola.grpc_java.service;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * YOLO 后端实例的熔断与离群摘除。
+ * 按实例统计最近 windowSize 次调用的错误率与延迟：连续失败、错误率过高或延迟明显高于其他实例时摘除一段冷却期，
+ * 冷却期满后进入半开状态只放行一个探测请求，探测成功则恢复，失败则以加倍的冷却期再次摘除。
+ * Nacos 发现实例不健康需要数秒，这里在几次请求内就能把流量从异常实例上移走。
+ */
+@Component
+public class InstanceOutlierDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceOutlierDetector.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    @Value("${inference.outlier.window-size:20}")
+    private int windowSize = 20;
+
+    @Value("${inference.outlier.min-requests:5}")
+    private int minRequests = 5;
+
+    @Value("${inference.outlier.error-rate-threshold:0.5}")
+    private double errorRateThreshold = 0.5;
+
+    @Value("${inference.outlier.consecutive-failures:3}")
+    private int consecutiveFailureThreshold = 3;
+
+    @Value("${inference.outlier.latency-factor:3.0}")
+    private double latencyFactor = 3.0;
+
+    @Value("${inference.outlier.min-latency-ms:200}")
+    private long minLatencyMs = 200L;
+
+    @Value("${inference.outlier.base-ejection-ms:10000}")
+    private long baseEjectionMs = 10_000L;
+
+    @Value("${inference.outlier.max-ejection-ms:120000}")
+    private long maxEjectionMs = 120_000L;
+
+    private final Map<String, InstanceStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 从健康实例中按权重选一个未被摘除的实例；全部被摘除时退回到全量随机选择，避免整体不可用
+     */
+    public Instance choose(List<Instance> healthy) {
+        if (healthy == null || healthy.isEmpty()) {
+            return null;
+        }
+        long now = System.nanoTime();
+        List<Instance> available = availableAt(healthy, now);
+        if (available.isEmpty()) {
+            return healthy.get(ThreadLocalRandom.current().nextInt(healthy.size()));
+        }
+        Instance chosen = pickByWeight(available);
+        InstanceStats s = stats.get(key(chosen));
+        if (s != null) {
+            s.onSelected(now);
+        }
+        return chosen;
+    }
+
+    /**
+     * 健康实例中未被摘除的全部实例（批量扇出同时使用多个实例）；全部被摘除时返回原列表
+     */
+    public List<Instance> available(List<Instance> healthy) {
+        if (healthy == null || healthy.isEmpty()) {
+            return List.of();
+        }
+        long now = System.nanoTime();
+        List<Instance> available = availableAt(healthy, now);
+        for (Instance instance : available) {
+            InstanceStats s = stats.get(key(instance));
+            if (s != null) {
+                s.onSelected(now);
+            }
+        }
+        return available.isEmpty() ? healthy : available;
+    }
+
+    private List<Instance> availableAt(List<Instance> healthy, long now) {
+        List<Instance> available = new ArrayList<>(healthy.size());
+        for (Instance instance : healthy) {
+            InstanceStats s = stats.get(key(instance));
+            if (s == null || s.isAvailable(now)) {
+                available.add(instance);
+            }
+        }
+        return available;
+    }
+
+    public void recordSuccess(Instance instance, long latencyMicros) {
+        InstanceStats s = statsFor(instance);
+        s.record(key(instance), false, latencyMicros);
+        if (latencyMicros >= 0) {
+            checkLatencyOutlier(instance, s);
+        }
+    }
+
+    public void recordFailure(Instance instance) {
+        statsFor(instance).record(key(instance), true, -1L);
+    }
+
+    State stateOf(Instance instance) {
+        InstanceStats s = stats.get(key(instance));
+        return s == null ? State.CLOSED : s.state(System.nanoTime());
+    }
+
+    private void checkLatencyOutlier(Instance instance, InstanceStats s) {
+        double mean = s.meanLatencyMicros(minRequests);
+        if (mean < TimeUnit.MILLISECONDS.toMicros(minLatencyMs)) {
+            return;
+        }
+        List<Double> others = new ArrayList<>();
+        stats.forEach((k, other) -> {
+            if (other != s) {
+                double m = other.meanLatencyMicros(minRequests);
+                if (m >= 0) {
+                    others.add(m);
+                }
+            }
+        });
+        if (others.isEmpty()) {
+            return;
+        }
+        Collections.sort(others);
+        double median = others.get(others.size() / 2);
+        if (mean > latencyFactor * median) {
+            s.eject(System.nanoTime(), key(instance), "latency outlier");
+        }
+    }
+
+    private InstanceStats statsFor(Instance instance) {
+        return stats.computeIfAbsent(key(instance), k -> new InstanceStats());
+    }
+
+    private static String key(Instance instance) {
+        return instance.getIp() + ":" + instance.getPort();
+    }
+
+    private static Instance pickByWeight(List<Instance> instances) {
+        double total = 0;
+        for (Instance instance : instances) {
+            total += Math.max(0.0, instance.getWeight());
+        }
+        if (total <= 0) {
+            return instances.get(ThreadLocalRandom.current().nextInt(instances.size()));
+        }
+        double r = ThreadLocalRandom.current().nextDouble(total);
+        for (Instance instance : instances) {
+            r -= Math.max(0.0, instance.getWeight());
+            if (r < 0) {
+                return instance;
+            }
+        }
+        return instances.get(instances.size() - 1);
+    }
+
+    /**
+     * 单个实例的滑动窗口与熔断状态，方法都在自身锁内执行，竞争只发生在同一实例的调用之间
+     */
+    private final class InstanceStats {
+
+        private final boolean[] failures = new boolean[windowSize];
+        private final long[] latencies = new long[windowSize];
+        private int cursor = 0;
+        private int size = 0;
+        private int consecutiveFailures = 0;
+
+        private State state = State.CLOSED;
+        private long openUntilNanos = 0L;
+        private long probeStartedNanos = -1L;
+        private int ejections = 0;
+
+        synchronized boolean isAvailable(long now) {
+            switch (state(now)) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    // 只放行一个探测；探测长时间没有结果则允许重新探测
+                    return probeStartedNanos < 0 || now - probeStartedNanos > currentEjectionNanos();
+                default:
+                    return false;
+            }
+        }
+
+        synchronized void onSelected(long now) {
+            if (state(now) == State.HALF_OPEN) {
+                probeStartedNanos = now;
+            }
+        }
+
+        synchronized State state(long now) {
+            if (state == State.OPEN && now - openUntilNanos >= 0) {
+                state = State.HALF_OPEN;
+                probeStartedNanos = -1L;
+            }
+            return state;
+        }
+
+        synchronized void record(String key, boolean failure, long latencyMicros) {
+            long now = System.nanoTime();
+            if (state(now) == State.HALF_OPEN) {
+                if (failure) {
+                    eject(now, key, "probe failed");
+                } else {
+                    state = State.CLOSED;
+                    ejections = 0;
+                    reset();
+                    logger.info("Instance {} recovered after probe", key);
+                }
+                return;
+            }
+
+            failures[cursor] = failure;
+            latencies[cursor] = latencyMicros;
+            cursor = (cursor + 1) % failures.length;
+            size = Math.min(size + 1, failures.length);
+            consecutiveFailures = failure ? consecutiveFailures + 1 : 0;
+
+            if (state != State.CLOSED || !failure) {
+                return;
+            }
+            if (consecutiveFailures >= consecutiveFailureThreshold) {
+                eject(now, key, "consecutive failures");
+            } else if (size >= minRequests && errorRate() >= errorRateThreshold) {
+                eject(now, key, "error rate");
+            }
+        }
+
+        synchronized double meanLatencyMicros(int minSamples) {
+            long sum = 0;
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (latencies[i] >= 0) {
+                    sum += latencies[i];
+                    n++;
+                }
+            }
+            return n >= minSamples ? (double) sum / n : -1.0;
+        }
+
+        synchronized void eject(long now, String key, String reason) {
+            ejections++;
+            state = State.OPEN;
+            openUntilNanos = now + currentEjectionNanos();
+            logger.warn("Ejecting instance {} ({}), cool-down {} ms",
+                    key, reason, TimeUnit.NANOSECONDS.toMillis(currentEjectionNanos()));
+            probeStartedNanos = -1L;
+            reset();
+        }
+
+        private long currentEjectionNanos() {
+            int shift = Math.min(Math.max(ejections - 1, 0), 16);
+            long ms = Math.min(maxEjectionMs, baseEjectionMs << shift);
+            return TimeUnit.MILLISECONDS.toNanos(ms);
+        }
+
+        private double errorRate() {
+            int failed = 0;
+            for (int i = 0; i < size; i++) {
+                if (failures[i]) {
+                    failed++;
+                }
+            }
+            return (double) failed / size;
+        }
+
+        private void reset() {
+            cursor = 0;
+            size = 0;
+            consecutiveFailures = 0;
+        }
+    }
+}
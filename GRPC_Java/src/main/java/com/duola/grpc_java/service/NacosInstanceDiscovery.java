@@ -0,0 +1,60 @@
+package com.duola.grpc_java.service;
+
+import com.alibaba.nacos.api.exception.NacosException;
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.duola.grpc_java.metrics.TelemetryClientInterceptor;
+import com.duola.grpc_java.util.MessageCompression;
+import com.duola.grpc_java.util.NacosUtils;
+import io.grpc.ManagedChannel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class NacosInstanceDiscovery implements InstanceDiscovery {
+
+    @Autowired
+    private TelemetryClientInterceptor telemetryInterceptor;
+
+    @Value("${nacos.server.addr:127.0.0.1:8848}")
+    private String nacosServerAddr;
+
+    @Value("${nacos.namespace:}")
+    private String nacosNamespace;
+
+    @Value("${nacos.username:nacos}")
+    private String nacosUsername;
+
+    @Value("${nacos.password:nacos}")
+    private String nacosPassword;
+
+    @Value("${nacos.group:DEFAULT_GROUP}")
+    private String nacosGroup;
+
+    @Value("${grpc.service.name:yolo-detection-nano}")
+    private String grpcServiceName;
+
+    /** 希望后端使用的响应压缩，按偏好逗号分隔；identity 表示不压缩 */
+    @Value("${inference.compression.response:" + MessageCompression.DEFAULT_PREFERENCE + "}")
+    private String responseEncoding;
+
+    @Override
+    public List<Instance> healthyInstances() throws NacosException {
+        return NacosUtils.selectHealthyInstances(
+                nacosServerAddr,
+                nacosNamespace,
+                nacosUsername,
+                nacosPassword,
+                grpcServiceName,
+                nacosGroup
+        );
+    }
+
+    @Override
+    public ManagedChannel createChannel(Instance instance) {
+        return NacosUtils.createPlainChannel(instance, 64, telemetryInterceptor,
+                MessageCompression.requestResponseEncoding(responseEncoding));
+    }
+}
@@ -5,8 +5,19 @@ import com.alibaba.nacos.api.naming.pojo.Instance;
 import com.duola.grpc_java.dto.DetectionResult;
 import com.duola.grpc_java.dto.StreamInferenceRequest;
 import com.duola.grpc_java.dto.StreamInferenceResponse;
+import com.duola.grpc_java.metrics.InferenceMetrics;
+import com.duola.grpc_java.metrics.InferenceMetrics.RequestTimer;
+import com.duola.grpc_java.metrics.InferenceMetrics.Stage;
+import com.duola.grpc_java.metrics.TelemetryClientInterceptor;
+import com.duola.grpc_java.segmentation.ContourExtractor;
+import com.duola.grpc_java.segmentation.EncodedMask;
+import com.duola.grpc_java.segmentation.MaskCodec;
 import com.duola.grpc_java.util.HeaderUtils;
-import com.duola.grpc_java.util.NacosUtils;
+import com.duola.grpc_java.util.LatencyTracker;
+import com.duola.grpc_java.util.PriorityDispatcher;
+import com.duola.grpc_java.util.PriorityDispatcher.Priority;
+import com.duola.grpc_java.util.RetryBudget;
+import com.duola.grpc_java.util.VideoChunks;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
@@ -14,47 +25,168 @@ import com.google.protobuf.util.Timestamps;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.ai.*;
+import io.grpc.stub.ClientCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import io.grpc.Status;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.FluxSink;
 
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
 @Service
 public class StreamGrpcInferenceService {
     
-    @org.springframework.beans.factory.annotation.Value("${nacos.server.addr:127.0.0.1:8848}")
-    private String nacosServerAddr;
+    @Autowired
+    private InstanceDiscovery instanceDiscovery;
     
-    @org.springframework.beans.factory.annotation.Value("${nacos.namespace:}")
-    private String nacosNamespace;
+    private static final String OUTPUT_DIR = "output";
     
-    @org.springframework.beans.factory.annotation.Value("${nacos.username:nacos}")
-    private String nacosUsername;
+    // 调用方未给出超时时使用的默认值（与各控制器 SseEmitter 的超时保持一致）
+    private static final long DEFAULT_SINGLE_TIMEOUT_MS = 30_000L;
+    private static final long DEFAULT_STREAM_TIMEOUT_MS = 300_000L;
+    private static final long DEFAULT_BULK_TIMEOUT_MS = 600_000L;
+    // gRPC deadline 比 SSE 超时提前到期，留出发送超时事件的时间
+    private static final long DEADLINE_MARGIN_MS = 500L;
+    // 延迟样本少于该数量时不信任分位数，使用默认对冲延迟
+    private static final int HEDGE_MIN_SAMPLES = 20;
     
-    @org.springframework.beans.factory.annotation.Value("${nacos.password:nacos}")
-    private String nacosPassword;
+    @org.springframework.beans.factory.annotation.Value("${inference.hedging.enabled:false}")
+    private boolean hedgingEnabled;
     
-    @org.springframework.beans.factory.annotation.Value("${nacos.group:DEFAULT_GROUP}")
-    private String nacosGroup;
+    @org.springframework.beans.factory.annotation.Value("${inference.hedging.max-attempts:2}")
+    private int hedgingMaxAttempts;
     
-    @org.springframework.beans.factory.annotation.Value("${grpc.service.name:yolo-detection-nano}")
-    private String grpcServiceName;
+    @org.springframework.beans.factory.annotation.Value("${inference.hedging.percentile:95}")
+    private double hedgingPercentile;
     
-    private static final String OUTPUT_DIR = "output";
+    @org.springframework.beans.factory.annotation.Value("${inference.hedging.min-delay-ms:20}")
+    private long hedgingMinDelayMs;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.hedging.default-delay-ms:250}")
+    private long hedgingDefaultDelayMs;
+    
+    // 换实例重试的总尝试次数上限（含首次），与是否开启对冲无关，同样受重试预算约束
+    @org.springframework.beans.factory.annotation.Value("${inference.retry.max-attempts:2}")
+    private int retryMaxAttempts;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.retry-budget.max-tokens:10}")
+    private double retryBudgetMaxTokens;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.retry-budget.ratio:0.1}")
+    private double retryBudgetRatio;
+    
+    // 视频按块上传，关闭时退回整段视频作为一个输入
+    @org.springframework.beans.factory.annotation.Value("${inference.video.chunked:true}")
+    private boolean videoChunked = true;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.video.chunk-size-kb:1024}")
+    private int videoChunkSizeKb = 1024;
+    
+    // 分割结果在网关转成简化多边形
+    @org.springframework.beans.factory.annotation.Value("${inference.segmentation.contours:true}")
+    private boolean segmentationContours = true;
+    
+    // 请求未带 contour_threshold 时的默认容差，含义与默认值同 YoloInferenceConfig.contourThreshold
+    @org.springframework.beans.factory.annotation.Value("${inference.segmentation.contour-threshold:0.1}")
+    private double contourThreshold = 0.1;
+    
+    // 为 false 时只返回轮廓，不再转发掩码
+    @org.springframework.beans.factory.annotation.Value("${inference.segmentation.return-masks:true}")
+    private boolean returnMasks = true;
+    
+    // 交互（摄像头、单帧）与批量（batch、video）流量共用后端实例池时的在途帧调度
+    @org.springframework.beans.factory.annotation.Value("${inference.priority.enabled:true}")
+    private boolean priorityEnabled = true;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.priority.max-in-flight:16}")
+    private int priorityMaxInFlight = 16;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.priority.reserved-interactive:4}")
+    private int priorityReservedInteractive = 4;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.priority.interactive-weight:4}")
+    private int priorityInteractiveWeight = 4;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.priority.bulk-weight:1}")
+    private int priorityBulkWeight = 1;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.priority.preempt-queue-length:2}")
+    private int priorityPreemptQueueLength = 2;
+    
+    @org.springframework.beans.factory.annotation.Value("${inference.priority.min-bulk-in-flight:2}")
+    private int priorityMinBulkInFlight = 2;
+    
+    // 每个健康实例贡献的在途名额，总上限取 max(max-in-flight, 该值 × 实例数)；<= 0 时固定为 max-in-flight
+    @org.springframework.beans.factory.annotation.Value("${inference.priority.max-in-flight-per-instance:8}")
+    private int priorityMaxInFlightPerInstance = 8;
+    
+    // 批量请求扇出到多个实例时，单个实例上的在途帧数
+    @org.springframework.beans.factory.annotation.Value("${inference.batch.per-instance-in-flight:4}")
+    private int batchPerInstanceInFlight = 4;
+    
+    private final ThreadLocal<ContourExtractor> contourExtractors =
+            ThreadLocal.withInitial(() -> new ContourExtractor(contourThreshold));
+    
+    @Autowired
+    private InstanceOutlierDetector outlierDetector;
+    
+    @Autowired
+    private InferenceMetrics inferenceMetrics;
+    
+    private final LatencyTracker latencyTracker = new LatencyTracker(512);
+    private RetryBudget retryBudget;
+    private PriorityDispatcher dispatcher;
+    private ExecutorService batchExecutor;
+    
+    @PostConstruct
+    void init() {
+        batchExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "batch-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retryBudget = new RetryBudget(retryBudgetMaxTokens, retryBudgetRatio);
+        dispatcher = priorityEnabled
+                ? new PriorityDispatcher(priorityMaxInFlight, priorityReservedInteractive,
+                        priorityInteractiveWeight, priorityBulkWeight, priorityPreemptQueueLength,
+                        priorityMinBulkInFlight)
+                : PriorityDispatcher.unbounded();
+    }
     
     /**
      * 使用SSE进行流式推理
      */
     public void performStreamInference(StreamInferenceRequest request, SseEmitter emitter) throws Exception {
-        Instance instance = discoverInstance();
+        performStreamInference(request, emitter, "stream_sse");
+    }
+    
+    /**
+     * 使用SSE进行流式推理，endpoint 作为阶段耗时指标的标签
+     */
+    public void performStreamInference(StreamInferenceRequest request, SseEmitter emitter, String endpoint) throws Exception {
+        RequestTimer timer = inferenceMetrics.start(request.getModel(), endpoint);
+        Instance instance = discoverInstance(timer);
         if (instance == null) {
             emitter.send(SseEmitter.event()
                     .name("error")
@@ -63,21 +195,25 @@ public class StreamGrpcInferenceService {
             return;
         }
         
-        ManagedChannel channel = createChannel(instance);
+        ManagedChannel channel = createChannel(instance, timer);
+        PriorityDispatcher.Lane lane = dispatcher.lane(Priority.INTERACTIVE);
         try {
+            long deadlineMs = deadlineMillis(emitter, DEFAULT_STREAM_TIMEOUT_MS);
             InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = 
-                    InferenceStreamServiceGrpc.newStub(channel);
+                    newStub(channel, request.getTraceId()).withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS);
             
             CountDownLatch finishLatch = new CountDownLatch(1);
             AtomicInteger frameCount = new AtomicInteger(0);
             
-            StreamObserver<StreamRequest> requestObserver = createSSEObserver(stub, emitter, finishLatch, frameCount);
+            StreamObserver<StreamRequest> requestObserver = createSSEObserver(stub, instance, emitter, finishLatch, frameCount, timer, lane,
+                    contourThreshold(request));
+            AtomicBoolean cancelled = bindCancellation(emitter, requestObserver);
             
             // 发送推理请求
-            sendStreamRequest(requestObserver, request);
+            sendStreamRequest(requestObserver, request, cancelled, lane, deadlineMs, timer);
             
-            // 等待完成
-            if (!finishLatch.await(300, TimeUnit.SECONDS)) {
+            // 等待完成（gRPC deadline 先到期，这里只是兜底）
+            if (!finishLatch.await(deadlineMs + DEADLINE_MARGIN_MS, TimeUnit.MILLISECONDS)) {
                 emitter.send(SseEmitter.event()
                         .name("timeout")
                         .data(new StreamInferenceResponse(false, "Request timeout")));
@@ -86,6 +222,7 @@ public class StreamGrpcInferenceService {
             emitter.complete();
             
         } finally {
+            lane.close();
             channel.shutdownNow();
         }
     }
@@ -96,27 +233,34 @@ public class StreamGrpcInferenceService {
     public Flux<StreamInferenceResponse> performStreamInferenceReactive(StreamInferenceRequest request) {
         return Flux.create(sink -> {
             try {
-                Instance instance = discoverInstance();
+                RequestTimer timer = inferenceMetrics.start(request.getModel(), "stream_reactive");
+                Instance instance = discoverInstance(timer);
                 if (instance == null) {
                     sink.next(new StreamInferenceResponse(false, "No healthy gRPC service instance found"));
                     sink.complete();
                     return;
                 }
                 
-                ManagedChannel channel = createChannel(instance);
+                ManagedChannel channel = createChannel(instance, timer);
                 InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = 
-                        InferenceStreamServiceGrpc.newStub(channel);
+                        newStub(channel, request.getTraceId())
+                                .withDeadlineAfter(DEFAULT_STREAM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
                 
                 CountDownLatch finishLatch = new CountDownLatch(1);
                 AtomicInteger frameCount = new AtomicInteger(0);
+                PriorityDispatcher.Lane lane = dispatcher.lane(Priority.INTERACTIVE);
+                sink.onDispose(lane::close);
                 
-                StreamObserver<StreamRequest> requestObserver = createReactiveObserver(stub, sink, finishLatch, frameCount);
+                StreamObserver<StreamRequest> requestObserver = createReactiveObserver(stub, instance, sink, finishLatch, frameCount, timer, lane,
+                        contourThreshold(request));
+                AtomicBoolean cancelled = new AtomicBoolean(false);
+                sink.onCancel(() -> cancelCall(requestObserver, cancelled, "Reactive subscriber cancelled"));
                 
                 // 发送推理请求
-                sendStreamRequest(requestObserver, request);
+                sendStreamRequest(requestObserver, request, cancelled, lane, DEFAULT_STREAM_TIMEOUT_MS, timer);
                 
                 // 等待完成
-                if (!finishLatch.await(300, TimeUnit.SECONDS)) {
+                if (!finishLatch.await(DEFAULT_STREAM_TIMEOUT_MS + DEADLINE_MARGIN_MS, TimeUnit.MILLISECONDS)) {
                     sink.next(new StreamInferenceResponse(false, "Request timeout"));
                 }
                 
@@ -134,59 +278,97 @@ public class StreamGrpcInferenceService {
      * 单次推理（非流式）
      */
     public StreamInferenceResponse performSingleInference(StreamInferenceRequest request) {
+        return performSingleInference(request, DEFAULT_SINGLE_TIMEOUT_MS);
+    }
+    
+    /**
+     * 单次推理（非流式），timeoutMs 为调用方的整体超时，gRPC deadline 由此推导
+     */
+    public StreamInferenceResponse performSingleInference(StreamInferenceRequest request, long timeoutMs) {
+        return performSingleInference(request, timeoutMs, "single");
+    }
+    
+    /**
+     * 单次推理（非流式），endpoint 作为阶段耗时指标的标签
+     */
+    public StreamInferenceResponse performSingleInference(StreamInferenceRequest request, long timeoutMs, String endpoint) {
+        List<SingleAttempt> attempts = new ArrayList<>();
+        boolean admitted = false;
         try {
-            Instance instance = discoverInstance();
+            RequestTimer timer = inferenceMetrics.start(request.getModel(), endpoint);
+            Instance instance = discoverInstance(timer);
             if (instance == null) {
                 return new StreamInferenceResponse(false, "No healthy gRPC service instance found");
             }
             
-            ManagedChannel channel = createChannel(instance);
-            try {
-                InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = 
-                        InferenceStreamServiceGrpc.newStub(channel);
-                
-                CountDownLatch finishLatch = new CountDownLatch(1);
-                AtomicInteger frameCount = new AtomicInteger(0);
-                StreamInferenceResponse[] response = new StreamInferenceResponse[1];
-                
-                StreamObserver<StreamRequest> requestObserver = stub.streamInference(new StreamObserver<StreamResponse>() {
-                    @Override
-                    public void onNext(StreamResponse streamResponse) {
-                        try {
-                            response[0] = processStreamResponse(streamResponse, frameCount.getAndIncrement());
-                        } catch (Exception e) {
-                            response[0] = new StreamInferenceResponse(false, "Processing error: " + e.getMessage());
-                        }
-                    }
-                    
-                    @Override
-                    public void onError(Throwable t) {
-                        response[0] = new StreamInferenceResponse(false, "gRPC error: " + t.getMessage());
-                        finishLatch.countDown();
-                    }
-                    
-                    @Override
-                    public void onCompleted() {
-                        finishLatch.countDown();
+            long deadlineMs = Math.max(1L, timeoutMs - DEADLINE_MARGIN_MS);
+            long startNanos = System.nanoTime();
+            long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+            long backstopNanos = deadlineNanos + TimeUnit.MILLISECONDS.toNanos(DEADLINE_MARGIN_MS);
+            int maxAttempts = Math.max(1, hedgingEnabled ? Math.max(hedgingMaxAttempts, retryMaxAttempts) : retryMaxAttempts);
+            
+            // 只解码、构建一次，对冲/重试复用同一组消息
+            List<StreamRequest> messages = buildSingleFrameMessages(request, timer);
+            double contourThreshold = contourThreshold(request);
+            BlockingQueue<SingleAttempt> finished = new LinkedBlockingQueue<>();
+            
+            // 实时帧走交互队列；对冲/重试的额外尝试共用这一个名额
+            admitted = dispatcher.acquire(Priority.INTERACTIVE, deadlineMs, TimeUnit.MILLISECONDS);
+            if (!admitted) {
+                return new StreamInferenceResponse(false, "Request timeout while waiting for a backend slot");
+            }
+            
+            attempts.add(startSingleAttempt(instance, messages, contourThreshold, deadlineMs, finished, timer));
+            retryBudget.deposit();
+            long hedgeAtNanos = hedgingEnabled && maxAttempts > 1
+                    ? startNanos + TimeUnit.MILLISECONDS.toNanos(hedgeDelayMillis())
+                    : backstopNanos;
+            
+            // 已收到的确定性错误；仍有在途的对冲请求时先不返回
+            StreamInferenceResponse deterministic = null;
+            while (true) {
+                long waitNanos = Math.min(hedgeAtNanos, backstopNanos) - System.nanoTime();
+                SingleAttempt done = waitNanos > 0 ? finished.poll(waitNanos, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    if (System.nanoTime() >= backstopNanos) {
+                        return deterministic != null ? deterministic : new StreamInferenceResponse(false, "Request timeout");
                     }
-                });
-                
-                // 发送推理请求
-                sendStreamRequest(requestObserver, request);
-                
-                // 等待完成
-                if (!finishLatch.await(30, TimeUnit.SECONDS)) {
-                    return new StreamInferenceResponse(false, "Request timeout");
+                    // 对冲：超过分位延迟仍未收到 FrameResult，把同一帧发给另一个健康实例，取先到的结果
+                    hedgeAtNanos = backstopNanos;
+                    startExtraAttempt(attempts, maxAttempts, messages, contourThreshold, deadlineNanos, finished, timer);
+                    continue;
                 }
                 
-                return response[0] != null ? response[0] : new StreamInferenceResponse(false, "No response received");
-                
-            } finally {
-                channel.shutdownNow();
+                StreamInferenceResponse result = done.result;
+                if (Boolean.TRUE.equals(result.getSuccess())) {
+                    latencyTracker.record(done.elapsedMicros);
+                    return result;
+                }
+                // 确定性错误（图片无法解码、参数错误、租户限流等）换实例也一样，不再重试或对冲，
+                // 但已在途的另一次尝试仍可能成功，等所有尝试结束再返回
+                if (!done.retryable) {
+                    deterministic = result;
+                    hedgeAtNanos = backstopNanos;
+                }
+                if (!attempts.stream().allMatch(SingleAttempt::isDone)) {
+                    continue;
+                }
+                if (deterministic != null) {
+                    return deterministic;
+                }
+                // 传输错误、实例不可用或超时，且没有其他在途请求时，在预算允许的情况下换实例重试
+                if (!startExtraAttempt(attempts, maxAttempts, messages, contourThreshold, deadlineNanos, finished, timer)) {
+                    return result;
+                }
             }
             
         } catch (Exception e) {
             return new StreamInferenceResponse(false, "Single inference error: " + e.getMessage());
+        } finally {
+            attempts.forEach(SingleAttempt::cancel);
+            if (admitted) {
+                dispatcher.release(Priority.INTERACTIVE);
+            }
         }
     }
     
@@ -194,7 +376,15 @@ public class StreamGrpcInferenceService {
      * 视频流推理
      */
     public void performVideoStreamInference(StreamInferenceRequest request, SseEmitter emitter) throws Exception {
-        Instance instance = discoverInstance();
+        performVideoStreamInference(request, null, emitter);
+    }
+    
+    /**
+     * 视频流推理，videoFile 不为空时从该文件映射分块发送（忽略 request.video），文件由调用方负责删除
+     */
+    public void performVideoStreamInference(StreamInferenceRequest request, Path videoFile, SseEmitter emitter) throws Exception {
+        RequestTimer timer = inferenceMetrics.start(request.getModel(), "video");
+        Instance instance = discoverInstance(timer);
         if (instance == null) {
             emitter.send(SseEmitter.event()
                     .name("error")
@@ -203,21 +393,34 @@ public class StreamGrpcInferenceService {
             return;
         }
         
-        ManagedChannel channel = createChannel(instance);
+        ManagedChannel channel = createChannel(instance, timer);
+        PriorityDispatcher.Lane lane = dispatcher.lane(Priority.BULK);
         try {
+            long deadlineMs = deadlineMillis(emitter, DEFAULT_BULK_TIMEOUT_MS);
             InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = 
-                    InferenceStreamServiceGrpc.newStub(channel);
+                    newStub(channel, request.getTraceId()).withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS);
             
             CountDownLatch finishLatch = new CountDownLatch(1);
             AtomicInteger frameCount = new AtomicInteger(0);
             
-            StreamObserver<StreamRequest> requestObserver = createSSEObserver(stub, emitter, finishLatch, frameCount);
+            // 视频由后端解码抽帧，网关无法按帧计量，整条流占用一个批量名额
+            if (!lane.acquire(deadlineMs, () -> false)) {
+                emitter.send(SseEmitter.event()
+                        .name("timeout")
+                        .data(new StreamInferenceResponse(false, "Video request timeout while waiting for a backend slot")));
+                emitter.complete();
+                return;
+            }
+            
+            StreamObserver<StreamRequest> requestObserver = createSSEObserver(stub, instance, emitter, finishLatch, frameCount, timer, null,
+                    contourThreshold(request));
+            AtomicBoolean cancelled = bindCancellation(emitter, requestObserver);
             
             // 发送视频推理请求
-            sendVideoStreamRequest(requestObserver, request);
+            sendVideoStreamRequest(requestObserver, request, videoFile, cancelled, finishLatch, timer);
             
-            // 等待完成
-            if (!finishLatch.await(600, TimeUnit.SECONDS)) {
+            // 等待完成（gRPC deadline 先到期，这里只是兜底）
+            if (!finishLatch.await(deadlineMs + DEADLINE_MARGIN_MS, TimeUnit.MILLISECONDS)) {
                 emitter.send(SseEmitter.event()
                         .name("timeout")
                         .data(new StreamInferenceResponse(false, "Video request timeout")));
@@ -226,16 +429,19 @@ public class StreamGrpcInferenceService {
             emitter.complete();
             
         } finally {
+            lane.close();
             channel.shutdownNow();
         }
     }
     
     /**
-     * 批量推理
+     * 批量推理：图片扇出到全部可用实例，每个实例一条流、在途帧数受 inference.batch.per-instance-in-flight 限制，
+     * 结果按图片下标排序后以 frame 事件依次推送
      */
     public void performBatchInference(StreamInferenceRequest request, SseEmitter emitter) throws Exception {
-        Instance instance = discoverInstance();
-        if (instance == null) {
+        RequestTimer timer = inferenceMetrics.start(request.getModel(), "batch");
+        List<Instance> instances = discoverBatchInstances(timer);
+        if (instances.isEmpty()) {
             emitter.send(SseEmitter.event()
                     .name("error")
                     .data(new StreamInferenceResponse(false, "No healthy gRPC service instance found")));
@@ -243,64 +449,252 @@ public class StreamGrpcInferenceService {
             return;
         }
         
-        ManagedChannel channel = createChannel(instance);
+        long deadlineMs = deadlineMillis(emitter, DEFAULT_BULK_TIMEOUT_MS);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        emitter.onCompletion(() -> cancelled.set(true));
+        emitter.onTimeout(() -> cancelled.set(true));
+        emitter.onError(t -> cancelled.set(true));
+        
+        emitter.send(SseEmitter.event()
+                .name("ack")
+                .data(new StreamInferenceResponse(true, "ACK: dispatched to " + instances.size() + " instance(s)", 0)));
+        List<String> images = request.getImages() != null ? request.getImages() : List.of();
+        BatchFanOut.Summary summary = runBatch(request, images, index -> isBlank(images.get(index)), instances,
+                response -> sendBatchEvent(emitter, response, cancelled, timer), cancelled::get, deadlineMs, timer);
+        
+        if (!cancelled.get()) {
+            String message = summary.succeeded() + " succeeded, " + summary.failed() + " failed";
+            emitter.send(SseEmitter.event()
+                    .name(summary.timedOut() ? "timeout" : "completed")
+                    .data(summary.timedOut()
+                            ? new StreamInferenceResponse(false, "Batch request timeout: " + message)
+                            : new StreamInferenceResponse(true, "Batch completed: " + message)));
+        }
+        emitter.complete();
+    }
+    
+    /**
+     * 异步批量任务的执行入口：图片按下标从磁盘读取，结果按图片顺序交给 sink（由 {@link BatchJobService} 写入磁盘日志），
+     * 没有可用实例时抛 IllegalStateException
+     */
+    BatchFanOut.Summary runBatchJob(StreamInferenceRequest request, BatchJobImages images,
+                                    Consumer<StreamInferenceResponse> sink, BooleanSupplier cancelled,
+                                    long deadlineMs) throws InterruptedException {
+        RequestTimer timer = inferenceMetrics.start(request.getModel(), "batch_job");
+        List<Instance> instances = discoverBatchInstances(timer);
+        if (instances.isEmpty()) {
+            throw new IllegalStateException("No healthy gRPC service instance found");
+        }
+        return runBatch(request, images, images::isBlank, instances, sink, cancelled, deadlineMs, timer);
+    }
+    
+    /**
+     * 批量流的 header。各实例只负责一部分图片，frame_index 取全局下标，由网关负责跨实例排序；
+     * 单条流仍要求 ordered：帧级错误的 ack 不带下标，{@link BatchFanOut} 把它归到该流最早未返回的一帧
+     */
+    static InferenceHeader batchHeader(StreamInferenceRequest request, int perInstanceInFlight) {
+        return HeaderUtils.withTenant(HeaderUtils.withTrace(HeaderUtils.withPriority(
+                HeaderUtils.header(request.getModel(), request.getTargetWidth(), request.getTargetHeight(),
+                        request.getKeepAspectRatio(), request.getMode(), request.getReturnOverlay(),
+                        perInstanceInFlight, true), Priority.BULK), request.getTraceId()), request.getTenantId());
+    }
+    
+    private BatchFanOut.Summary runBatch(StreamInferenceRequest request, List<String> images, IntPredicate skipped,
+                                         List<Instance> instances, Consumer<StreamInferenceResponse> sink,
+                                         BooleanSupplier cancelled, long deadlineMs, RequestTimer timer)
+            throws InterruptedException {
+        InferenceHeader header = batchHeader(request, batchPerInstanceInFlight);
+        double threshold = contourThreshold(request);
+        
+        List<ManagedChannel> channels = new CopyOnWriteArrayList<>();
+        BatchFanOut.Transport transport = (instance, responses) -> {
+            ManagedChannel channel = createChannel(instance, timer);
+            channels.add(channel);
+            return newStub(channel, request.getTraceId())
+                    .withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS)
+                    .stream(responses);
+        };
+        PriorityDispatcher.Lane lane = dispatcher.lane(Priority.BULK);
         try {
-            InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = 
-                    InferenceStreamServiceGrpc.newStub(channel);
-            
-            CountDownLatch finishLatch = new CountDownLatch(1);
-            AtomicInteger frameCount = new AtomicInteger(0);
-            
-            StreamObserver<StreamRequest> requestObserver = createSSEObserver(stub, emitter, finishLatch, frameCount);
-            
-            // 发送批量推理请求
-            sendBatchStreamRequest(requestObserver, request);
-            
-            // 等待完成
-            if (!finishLatch.await(600, TimeUnit.SECONDS)) {
-                emitter.send(SseEmitter.event()
-                        .name("timeout")
-                        .data(new StreamInferenceResponse(false, "Batch request timeout")));
-            }
-            
-            emitter.complete();
-            
+            timer.openSent();
+            BatchFanOut fanOut = new BatchFanOut(images.size(), skipped, header, transport,
+                    index -> {
+                        StreamFrame frame = buildImageFrame(images.get(index), index, timer);
+                        timer.frameSent(index);
+                        return frame;
+                    },
+                    result -> {
+                        timer.frameResult(result.getFrameIndex());
+                        return parseFrameResult(result, timer, threshold);
+                    },
+                    sink, lane, outlierDetector, batchPerInstanceInFlight, instances.size(), cancelled);
+            return fanOut.run(instances, batchExecutor, deadlineMs);
         } finally {
-            channel.shutdownNow();
+            lane.close();
+            channels.forEach(ManagedChannel::shutdownNow);
+        }
+    }
+    
+    private static boolean isBlank(String image) {
+        return image == null || image.trim().isEmpty();
+    }
+    
+    private List<Instance> discoverBatchInstances(RequestTimer timer) {
+        long startNanos = System.nanoTime();
+        try {
+            List<Instance> healthy = instanceDiscovery.healthyInstances();
+            scaleDispatcher(healthy);
+            return outlierDetector.available(healthy);
+        } catch (NacosException e) {
+            System.err.println("Nacos discovery failed: " + e.getMessage());
+            return List.of();
+        } finally {
+            timer.record(Stage.DISCOVERY, startNanos);
+        }
+    }
+    
+    /**
+     * 按序推送一张图片的结果；写失败说明客户端已断开，停止整个批次
+     */
+    private void sendBatchEvent(SseEmitter emitter, StreamInferenceResponse response, AtomicBoolean cancelled,
+                                RequestTimer timer) {
+        if (cancelled.get()) {
+            return;
+        }
+        long writeStartNanos = System.nanoTime();
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("frame")
+                    .data(response));
+        } catch (Exception e) {
+            cancelled.set(true);
         }
+        timer.record(Stage.SSE_WRITE, writeStartNanos);
     }
     
-    private Instance discoverInstance() {
+    private Instance discoverInstance(RequestTimer timer) {
+        long startNanos = System.nanoTime();
         try {
-            return NacosUtils.selectOneHealthyInstance(
-                    nacosServerAddr,
-                    nacosNamespace,
-                    nacosUsername,
-                    nacosPassword,
-                    grpcServiceName,
-                    nacosGroup
-            );
+            // 在 Nacos 健康实例中再排除被熔断/摘除的实例
+            List<Instance> healthy = instanceDiscovery.healthyInstances();
+            scaleDispatcher(healthy);
+            return outlierDetector.choose(healthy);
         } catch (NacosException e) {
             System.err.println("Nacos discovery failed: " + e.getMessage());
             return null;
+        } finally {
+            timer.record(Stage.DISCOVERY, startNanos);
+        }
+    }
+    
+    /**
+     * 在途上限随实例数伸缩，批量扇出到更多实例时吞吐不被固定的网关总量卡住
+     */
+    private void scaleDispatcher(List<Instance> healthy) {
+        if (!priorityEnabled || priorityMaxInFlightPerInstance <= 0 || healthy == null) {
+            return;
         }
+        int capacity = Math.max(priorityMaxInFlight, priorityMaxInFlightPerInstance * healthy.size());
+        dispatcher.resize(capacity);
     }
     
-    private ManagedChannel createChannel(Instance instance) {
-        return NacosUtils.createPlainChannel(instance, 64);
+    private ManagedChannel createChannel(Instance instance, RequestTimer timer) {
+        long startNanos = System.nanoTime();
+        ManagedChannel channel = instanceDiscovery.createChannel(instance);
+        timer.record(Stage.CHANNEL, startNanos);
+        return channel;
+    }
+    
+    /**
+     * 由 SseEmitter 的超时推导 gRPC deadline；未设置超时时使用 fallbackMs
+     */
+    private long deadlineMillis(SseEmitter emitter, long fallbackMs) {
+        Long timeout = emitter.getTimeout();
+        long budget = (timeout != null && timeout > 0) ? timeout : fallbackMs;
+        return Math.max(1L, budget - DEADLINE_MARGIN_MS);
+    }
+    
+    /**
+     * SSE 连接结束（完成、超时或出错）时取消 gRPC 调用，避免后端继续为已断开的客户端计算
+     */
+    private AtomicBoolean bindCancellation(SseEmitter emitter, StreamObserver<StreamRequest> requestObserver) {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        emitter.onCompletion(() -> cancelCall(requestObserver, cancelled, "SSE emitter completed"));
+        emitter.onTimeout(() -> cancelCall(requestObserver, cancelled, "SSE emitter timed out"));
+        emitter.onError(t -> cancelCall(requestObserver, cancelled, "SSE emitter error"));
+        return cancelled;
+    }
+    
+    /**
+     * 由我们主动取消（客户端断开）的调用不算实例故障
+     */
+    private void recordStreamFailure(Instance instance, Throwable t) {
+        if (Status.fromThrowable(t).getCode() != Status.Code.CANCELLED) {
+            outlierDetector.recordFailure(instance);
+        }
+    }
+    
+    private void cancelCall(StreamObserver<StreamRequest> requestObserver, AtomicBoolean cancelled, String reason) {
+        if (cancelled.compareAndSet(false, true) && requestObserver instanceof ClientCallStreamObserver) {
+            ((ClientCallStreamObserver<StreamRequest>) requestObserver).cancel(reason, null);
+        }
+    }
+    
+    /**
+     * 调用已取消时不再发送；与取消并发导致的 IllegalStateException 视为正常结束
+     */
+    private boolean sendIfActive(StreamObserver<StreamRequest> requestObserver, StreamRequest message, AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            return false;
+        }
+        try {
+            requestObserver.onNext(message);
+            return true;
+        } catch (IllegalStateException e) {
+            if (cancelled.get()) {
+                return false;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * 分块发送的出口：等待传输层可写后再发下一块，调用结束（取消或已收到终止）时停止
+     */
+    private VideoChunks.ChunkSink chunkSink(StreamObserver<StreamRequest> requestObserver, AtomicBoolean cancelled,
+            CountDownLatch finishLatch) {
+        return frame -> VideoChunks.awaitReady(requestObserver, () -> cancelled.get() || finishLatch.getCount() == 0)
+                && sendIfActive(requestObserver, StreamRequest.newBuilder().setFrame(frame).build(), cancelled);
+    }
+    
+    private void closeIfActive(StreamObserver<StreamRequest> requestObserver, AtomicBoolean cancelled) {
+        if (sendIfActive(requestObserver, StreamRequest.newBuilder()
+                .setClose(StreamClose.newBuilder().build())
+                .build(), cancelled)) {
+            requestObserver.onCompleted();
+        }
     }
     
     private StreamObserver<StreamRequest> createSSEObserver(
             InferenceStreamServiceGrpc.InferenceStreamServiceStub stub,
+            Instance instance,
             SseEmitter emitter,
             CountDownLatch finishLatch,
-            AtomicInteger frameCount) {
+            AtomicInteger frameCount,
+            RequestTimer timer,
+            PriorityDispatcher.Lane frameLane,
+            double contourThreshold) {
         
         return stub.stream(new StreamObserver<StreamResponse>() {
             @Override
             public void onNext(StreamResponse response) {
+                if (response.hasFrame() && frameLane != null) {
+                    // 该帧已出结果，归还调度名额
+                    frameLane.releaseOne();
+                }
                 try {
                     if (response.hasAck()) {
+                        timer.ackReceived();
                         StreamAck ack = response.getAck();
                         StreamInferenceResponse sseResponse = new StreamInferenceResponse();
                         sseResponse.setSuccess(ack.getStatus().getCode() == 0);
@@ -312,11 +706,14 @@ public class StreamGrpcInferenceService {
                                 .data(sseResponse));
                     } else if (response.hasFrame()) {
                         FrameResult result = response.getFrame();
-                        StreamInferenceResponse sseResponse = processFrameResult(result);
+                        timer.frameResult(result.getFrameIndex());
+                        StreamInferenceResponse sseResponse = parseFrameResult(result, timer, contourThreshold);
                         
+                        long writeStartNanos = System.nanoTime();
                         emitter.send(SseEmitter.event()
                                 .name("frame")
                                 .data(sseResponse));
+                        timer.record(Stage.SSE_WRITE, writeStartNanos);
                     }
                 } catch (Exception e) {
                     try {
@@ -331,6 +728,10 @@ public class StreamGrpcInferenceService {
             
             @Override
             public void onError(Throwable t) {
+                recordStreamFailure(instance, t);
+                if (frameLane != null) {
+                    frameLane.close();
+                }
                 try {
                     emitter.send(SseEmitter.event()
                             .name("error")
@@ -343,6 +744,10 @@ public class StreamGrpcInferenceService {
             
             @Override
             public void onCompleted() {
+                outlierDetector.recordSuccess(instance, -1L);
+                if (frameLane != null) {
+                    frameLane.close();
+                }
                 try {
                     emitter.send(SseEmitter.event()
                             .name("completed")
@@ -357,14 +762,22 @@ public class StreamGrpcInferenceService {
     
     private StreamObserver<StreamRequest> createReactiveObserver(
             InferenceStreamServiceGrpc.InferenceStreamServiceStub stub,
+            Instance instance,
             FluxSink<StreamInferenceResponse> sink,
             CountDownLatch finishLatch,
-            AtomicInteger frameCount) {
+            AtomicInteger frameCount,
+            RequestTimer timer,
+            PriorityDispatcher.Lane frameLane,
+            double contourThreshold) {
         
         return stub.stream(new StreamObserver<StreamResponse>() {
             @Override
             public void onNext(StreamResponse response) {
+                if (response.hasFrame()) {
+                    frameLane.releaseOne();
+                }
                 if (response.hasAck()) {
+                    timer.ackReceived();
                     StreamAck ack = response.getAck();
                     StreamInferenceResponse reactiveResponse = new StreamInferenceResponse();
                     reactiveResponse.setSuccess(ack.getStatus().getCode() == 0);
@@ -373,76 +786,96 @@ public class StreamGrpcInferenceService {
                     
                     sink.next(reactiveResponse);
                 } else if (response.hasFrame()) {
-                    StreamInferenceResponse reactiveResponse = processFrameResult(response.getFrame());
+                    timer.frameResult(response.getFrame().getFrameIndex());
+                    StreamInferenceResponse reactiveResponse = parseFrameResult(response.getFrame(), timer, contourThreshold);
                     sink.next(reactiveResponse);
                 }
             }
             
             @Override
             public void onError(Throwable t) {
+                recordStreamFailure(instance, t);
+                frameLane.close();
                 sink.next(new StreamInferenceResponse(false, "gRPC stream error: " + t.getMessage()));
                 finishLatch.countDown();
             }
             
             @Override
             public void onCompleted() {
+                outlierDetector.recordSuccess(instance, -1L);
+                frameLane.close();
                 sink.next(new StreamInferenceResponse(true, "Stream completed"));
                 finishLatch.countDown();
             }
         });
     }
     
-    private void sendStreamRequest(StreamObserver<StreamRequest> requestObserver, StreamInferenceRequest request) throws Exception {
+    private void sendStreamRequest(StreamObserver<StreamRequest> requestObserver, StreamInferenceRequest request,
+            AtomicBoolean cancelled, PriorityDispatcher.Lane lane, long deadlineMs, RequestTimer timer) throws Exception {
         // 构建推理头部
         InferenceHeader header = buildInferenceHeader(request);
         
         // 发送流打开请求
-        requestObserver.onNext(StreamRequest.newBuilder()
+        if (!sendIfActive(requestObserver, StreamRequest.newBuilder()
                 .setOpen(StreamOpen.newBuilder().setHeader(header).build())
-                .build());
+                .build(), cancelled)) {
+            return;
+        }
+        timer.openSent();
         
         // 发送图像帧
         if (request.getImage() != null && !request.getImage().trim().isEmpty()) {
-            byte[] imageBytes = Base64.getDecoder().decode(request.getImage());
+            StreamFrame frame = buildImageFrame(request.getImage(), 0, timer);
             
-            InputEnvelope input = InputEnvelope.newBuilder()
-                    .setKind("image")
-                    .setContentType("image/jpeg")
-                    .setBinary(ByteString.copyFrom(imageBytes))
-                    .build();
-            
-            StreamFrame frame = StreamFrame.newBuilder()
-                    .addInputs(input)
-                    .setFrameIndex(0)
-                    .setTs(Timestamps.fromMillis(System.currentTimeMillis()))
-                    .build();
-            
-            requestObserver.onNext(StreamRequest.newBuilder().setFrame(frame).build());
+            if (lane.acquire(deadlineMs, cancelled::get)
+                    && sendIfActive(requestObserver, StreamRequest.newBuilder().setFrame(frame).build(), cancelled)) {
+                timer.frameSent(0);
+            }
         }
         
         // 等待处理
         Thread.sleep(1000);
         
         // 发送流关闭请求
-        requestObserver.onNext(StreamRequest.newBuilder()
-                .setClose(StreamClose.newBuilder().build())
-                .build());
-        requestObserver.onCompleted();
+        closeIfActive(requestObserver, cancelled);
     }
     
-    private void sendVideoStreamRequest(StreamObserver<StreamRequest> requestObserver, StreamInferenceRequest request) throws Exception {
-        // 构建推理头部
-        InferenceHeader header = buildInferenceHeader(request);
+    private void sendVideoStreamRequest(StreamObserver<StreamRequest> requestObserver, StreamInferenceRequest request,
+            Path videoFile, AtomicBoolean cancelled, CountDownLatch finishLatch, RequestTimer timer) throws Exception {
+        // 构建推理头部，附带抽帧参数；后端每推理完一帧即返回一个 FrameResult，由 SSE 观察者逐帧转发
+        InferenceHeader header = HeaderUtils.withPriority(HeaderUtils.videoHeaderFrom(request), Priority.BULK);
         
         // 发送流打开请求
-        requestObserver.onNext(StreamRequest.newBuilder()
+        if (!sendIfActive(requestObserver, StreamRequest.newBuilder()
                 .setOpen(StreamOpen.newBuilder().setHeader(header).build())
-                .build());
+                .build(), cancelled)) {
+            return;
+        }
+        timer.openSent();
         
         // 发送视频帧
-        if (request.getVideo() != null && !request.getVideo().trim().isEmpty()) {
+        if (videoFile != null) {
+            // 上传已落盘：映射文件分块发送，视频内容不进入堆
+            try (FileChannel channel = FileChannel.open(videoFile, StandardOpenOption.READ)) {
+                int chunks = VideoChunks.sendMapped(channel, "video/mp4", videoChunkSizeKb * 1024,
+                        chunkSink(requestObserver, cancelled, finishLatch));
+                if (chunks > 0) {
+                    timer.frameSent(0);
+                }
+            }
+        } else if (videoChunked && request.getVideo() != null && !request.getVideo().trim().isEmpty()) {
+            // 逐块解码 Base64 并按发送窗口推进，堆上只保留当前块
+            int chunks = VideoChunks.sendBase64(request.getVideo(), "video/mp4", videoChunkSizeKb * 1024,
+                    chunkSink(requestObserver, cancelled, finishLatch));
+            if (chunks > 0) {
+                timer.frameSent(0);
+            }
+        } else if (request.getVideo() != null && !request.getVideo().trim().isEmpty()) {
+            long decodeStartNanos = System.nanoTime();
             byte[] videoBytes = Base64.getDecoder().decode(request.getVideo());
+            timer.record(Stage.DECODE, decodeStartNanos);
             
+            long buildStartNanos = System.nanoTime();
             InputEnvelope input = InputEnvelope.newBuilder()
                     .setKind("video")
                     .setContentType("video/mp4")
@@ -454,73 +887,304 @@ public class StreamGrpcInferenceService {
                     .setFrameIndex(0)
                     .setTs(Timestamps.fromMillis(System.currentTimeMillis()))
                     .build();
+            timer.record(Stage.PROTO_BUILD, buildStartNanos);
             
-            requestObserver.onNext(StreamRequest.newBuilder().setFrame(frame).build());
+            if (sendIfActive(requestObserver, StreamRequest.newBuilder().setFrame(frame).build(), cancelled)) {
+                timer.frameSent(0);
+            }
         }
         
         // 等待处理
         Thread.sleep(2000);
         
         // 发送流关闭请求
-        requestObserver.onNext(StreamRequest.newBuilder()
+        closeIfActive(requestObserver, cancelled);
+    }
+    
+    private List<StreamRequest> buildSingleFrameMessages(StreamInferenceRequest request, RequestTimer timer) {
+        List<StreamRequest> messages = new ArrayList<>(3);
+        messages.add(StreamRequest.newBuilder()
+                .setOpen(StreamOpen.newBuilder().setHeader(buildInferenceHeader(request)).build())
+                .build());
+        
+        if (request.getImage() != null && !request.getImage().trim().isEmpty()) {
+            StreamFrame frame = buildImageFrame(request.getImage(), 0, timer);
+            
+            messages.add(StreamRequest.newBuilder().setFrame(frame).build());
+        }
+        
+        // 服务端先处理完帧再响应 close，因此可以立即半关闭，不必等待
+        messages.add(StreamRequest.newBuilder()
                 .setClose(StreamClose.newBuilder().build())
                 .build());
-        requestObserver.onCompleted();
+        return messages;
     }
     
-    private void sendBatchStreamRequest(StreamObserver<StreamRequest> requestObserver, StreamInferenceRequest request) throws Exception {
-        // 构建推理头部
-        InferenceHeader header = buildInferenceHeader(request);
+    private SingleAttempt startSingleAttempt(Instance instance, List<StreamRequest> messages, double contourThreshold,
+                                             long deadlineMs, BlockingQueue<SingleAttempt> finished, RequestTimer timer) {
+        SingleAttempt attempt = new SingleAttempt(instance, createChannel(instance, timer), finished, timer, contourThreshold);
+        try {
+            InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = 
+                    newStub(attempt.channel, traceIdOf(messages)).withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS);
+            StreamObserver<StreamRequest> requestObserver = stub.stream(attempt);
+            timer.openSent();
+            for (StreamRequest message : messages) {
+                requestObserver.onNext(message);
+                if (message.hasFrame()) {
+                    timer.frameSent(message.getFrame().getFrameIndex());
+                }
+            }
+            requestObserver.onCompleted();
+        } catch (RuntimeException e) {
+            attempt.fail(new StreamInferenceResponse(false, "gRPC error: " + e.getMessage()), true);
+        }
+        return attempt;
+    }
+    
+    private boolean startExtraAttempt(List<SingleAttempt> attempts, int maxAttempts, List<StreamRequest> messages,
+                                      double contourThreshold, long deadlineNanos,
+                                      BlockingQueue<SingleAttempt> finished, RequestTimer timer) {
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        if (attempts.size() >= maxAttempts || remainingMs <= 0) {
+            return false;
+        }
+        Instance alternative = discoverAlternativeInstance(attempts);
+        if (alternative == null || !retryBudget.tryWithdraw()) {
+            return false;
+        }
+        attempts.add(startSingleAttempt(alternative, messages, contourThreshold, remainingMs, finished, timer));
+        return true;
+    }
+    
+    /**
+     * 选一个本次请求尚未使用过的健康实例
+     */
+    private Instance discoverAlternativeInstance(List<SingleAttempt> attempts) {
+        try {
+            List<Instance> candidates = new ArrayList<>();
+            for (Instance candidate : instanceDiscovery.healthyInstances()) {
+                boolean used = attempts.stream().anyMatch(a -> a.instance.getIp().equals(candidate.getIp())
+                        && a.instance.getPort() == candidate.getPort());
+                if (!used) {
+                    candidates.add(candidate);
+                }
+            }
+            return candidates.isEmpty() ? null : outlierDetector.choose(candidates);
+        } catch (NacosException e) {
+            System.err.println("Nacos discovery failed: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 对冲延迟：历史 FrameResult 延迟的配置分位数；样本不足时使用默认值
+     */
+    private long hedgeDelayMillis() {
+        long delayMs = latencyTracker.count() >= HEDGE_MIN_SAMPLES
+                ? latencyTracker.percentileMicros(hedgingPercentile) / 1000L
+                : hedgingDefaultDelayMs;
+        return Math.max(hedgingMinDelayMs, delayMs);
+    }
+    
+    /**
+     * 只有实例不可用、传输中断或超时才换实例重试；其余状态码对同一帧是确定的
+     */
+    static boolean isRetryable(Status.Code code) {
+        return code == Status.Code.UNAVAILABLE || code == Status.Code.DEADLINE_EXCEEDED;
+    }
+    
+    /**
+     * 单帧推理的一次尝试：收到首个 FrameResult（或失败）即结束，结束后放入 finished 队列
+     */
+    private final class SingleAttempt implements StreamObserver<StreamResponse> {
         
-        // 发送流打开请求
-        requestObserver.onNext(StreamRequest.newBuilder()
-                .setOpen(StreamOpen.newBuilder().setHeader(header).build())
-                .build());
+        private final Instance instance;
+        private final ManagedChannel channel;
+        private final BlockingQueue<SingleAttempt> finished;
+        private final RequestTimer timer;
+        private final double contourThreshold;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile StreamInferenceResponse result;
+        private volatile long elapsedMicros;
+        // 失败时是否值得换实例重试
+        private volatile boolean retryable;
         
-        // 发送批量图像帧
-        if (request.getImages() != null && !request.getImages().isEmpty()) {
-            for (int i = 0; i < request.getImages().size(); i++) {
-                String imageBase64 = request.getImages().get(i);
-                if (imageBase64 != null && !imageBase64.trim().isEmpty()) {
-                    byte[] imageBytes = Base64.getDecoder().decode(imageBase64);
-                    
-                    InputEnvelope input = InputEnvelope.newBuilder()
-                            .setKind("image")
-                            .setContentType("image/jpeg")
-                            .setBinary(ByteString.copyFrom(imageBytes))
-                            .build();
-                    
-                    StreamFrame frame = StreamFrame.newBuilder()
-                            .addInputs(input)
-                            .setFrameIndex(i)
-                            .setTs(Timestamps.fromMillis(System.currentTimeMillis()))
-                            .build();
-                    
-                    requestObserver.onNext(StreamRequest.newBuilder().setFrame(frame).build());
-                    
-                    // 每帧之间稍作延迟
-                    Thread.sleep(500);
+        SingleAttempt(Instance instance, ManagedChannel channel, BlockingQueue<SingleAttempt> finished, RequestTimer timer,
+                      double contourThreshold) {
+            this.instance = instance;
+            this.channel = channel;
+            this.finished = finished;
+            this.timer = timer;
+            this.contourThreshold = contourThreshold;
+        }
+        
+        @Override
+        public void onNext(StreamResponse streamResponse) {
+            try {
+                if (streamResponse.hasAck()) {
+                    timer.ackReceived();
                 }
+                if (streamResponse.hasFrame()) {
+                    timer.frameResult(streamResponse.getFrame().getFrameIndex());
+                    finish(parseFrameResult(streamResponse.getFrame(), timer, contourThreshold), true);
+                } else if (streamResponse.hasAck() && streamResponse.getAck().getStatus().getCode() != 0) {
+                    // 业务错误（如图片无法解码）说明实例本身可用，不计入实例故障
+                    int code = streamResponse.getAck().getStatus().getCode();
+                    retryable = isRetryable(Status.fromCodeValue(code).getCode());
+                    finish(new StreamInferenceResponse(false, "ACK: " + streamResponse.getAck().getStatus().getMessage()), false);
+                }
+            } catch (Exception e) {
+                finish(new StreamInferenceResponse(false, "Processing error: " + e.getMessage()), false);
             }
         }
         
-        // 等待处理
-        Thread.sleep(2000);
+        @Override
+        public void onError(Throwable t) {
+            if (done.compareAndSet(false, true)) {
+                outlierDetector.recordFailure(instance);
+                retryable = isRetryable(Status.fromThrowable(t).getCode());
+                complete(new StreamInferenceResponse(false, "gRPC error: " + t.getMessage()));
+            }
+        }
         
-        // 发送流关闭请求
-        requestObserver.onNext(StreamRequest.newBuilder()
-                .setClose(StreamClose.newBuilder().build())
-                .build());
-        requestObserver.onCompleted();
+        @Override
+        public void onCompleted() {
+            finish(new StreamInferenceResponse(false, "No response received"), false);
+        }
+        
+        boolean isDone() {
+            return done.get();
+        }
+        
+        void finish(StreamInferenceResponse response, boolean timed) {
+            if (done.compareAndSet(false, true)) {
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+                outlierDetector.recordSuccess(instance, timed ? micros : -1L);
+                complete(response);
+            }
+        }
+        
+        void fail(StreamInferenceResponse response, boolean retryable) {
+            if (done.compareAndSet(false, true)) {
+                this.retryable = retryable;
+                complete(response);
+            }
+        }
+        
+        private void complete(StreamInferenceResponse response) {
+            result = response;
+            elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            finished.offer(this);
+        }
+        
+        /**
+         * 放弃本次尝试（对冲失败方或请求结束），被主动取消的调用不计入实例统计
+         */
+        void cancel() {
+            done.set(true);
+            channel.shutdownNow();
+        }
+    }
+    
+    /**
+     * Base64 图片解码并封装为单输入帧（单帧、流式与批量路径共用）
+     */
+    static StreamFrame buildImageFrame(String imageBase64, long frameIndex) {
+        return buildImageFrame(imageBase64, frameIndex, RequestTimer.NOOP);
+    }
+    
+    private static StreamFrame buildImageFrame(String imageBase64, long frameIndex, RequestTimer timer) {
+        long decodeStartNanos = System.nanoTime();
+        byte[] imageBytes = Base64.getDecoder().decode(imageBase64);
+        timer.record(Stage.DECODE, decodeStartNanos);
+        
+        long buildStartNanos = System.nanoTime();
+        InputEnvelope input = InputEnvelope.newBuilder()
+                .setKind("image")
+                .setContentType("image/jpeg")
+                .setBinary(ByteString.copyFrom(imageBytes))
+                .build();
+        
+        StreamFrame frame = StreamFrame.newBuilder()
+                .addInputs(input)
+                .setFrameIndex(frameIndex)
+                .setTs(Timestamps.fromMillis(System.currentTimeMillis()))
+                .build();
+        timer.record(Stage.PROTO_BUILD, buildStartNanos);
+        return frame;
     }
     
     private InferenceHeader buildInferenceHeader(StreamInferenceRequest request) {
         return HeaderUtils.buildHeaderFrom(request);
     }
     
-    private StreamInferenceResponse processFrameResult(FrameResult frameResult) {
+    /**
+     * 显式带上 HTTP 入口确定的 trace-id，调用运行在线程池上，不能依赖调用线程的 MDC
+     */
+    static InferenceStreamServiceGrpc.InferenceStreamServiceStub newStub(ManagedChannel channel, String traceId) {
+        InferenceStreamServiceGrpc.InferenceStreamServiceStub stub = InferenceStreamServiceGrpc.newStub(channel);
+        return traceId != null ? stub.withOption(TelemetryClientInterceptor.TRACE_ID, traceId) : stub;
+    }
+    
+    private static String traceIdOf(List<StreamRequest> messages) {
+        if (messages.isEmpty() || !messages.get(0).hasOpen()) {
+            return null;
+        }
+        InferenceHeader header = messages.get(0).getOpen().getHeader();
+        return header.hasTrace() ? header.getTrace().getTraceId() : null;
+    }
+    
+    /**
+     * 解析 FrameResult 并记录解析耗时与后端上报的 runtime_ms
+     */
+    private StreamInferenceResponse parseFrameResult(FrameResult frameResult, RequestTimer timer, double contourThreshold) {
+        long parseStartNanos = System.nanoTime();
+        StreamInferenceResponse response = processFrameResult(frameResult);
+        applyContours(response, contourThreshold);
+        timer.record(Stage.RESULT_PARSE, parseStartNanos);
+        timer.backendRuntime(response.getRuntimeMs());
+        return response;
+    }
+    
+    /**
+     * 轮廓简化容差：请求的 contour_threshold（同 YoloInferenceConfig.contourThreshold），未设置或不在 (0, 1] 内时用配置的默认值
+     */
+    private double contourThreshold(StreamInferenceRequest request) {
+        Double requested = request.getContourThreshold();
+        return requested != null && requested > 0 && requested <= 1 ? requested : contourThreshold;
+    }
+    
+    /**
+     * 带掩码的检测在这里解码一次并转成轮廓、面积与周长；不需要掩码时随后丢弃
+     */
+    private void applyContours(StreamInferenceResponse response, double contourThreshold) {
+        if (!segmentationContours || response.getDetections() == null) {
+            return;
+        }
+        ContourExtractor extractor = null;
+        for (DetectionResult detection : response.getDetections()) {
+            EncodedMask mask = detection.getMask();
+            if (mask == null) {
+                continue;
+            }
+            if (extractor == null) {
+                extractor = contourExtractors.get();
+            }
+            ContourExtractor.MaskShape shape = extractor.extract(mask, contourThreshold);
+            detection.setContours(shape.contours());
+            detection.setArea(shape.area());
+            detection.setPerimeter(shape.perimeter());
+            if (!returnMasks) {
+                detection.setMask(null);
+            }
+        }
+    }
+    
+    static StreamInferenceResponse processFrameResult(FrameResult frameResult) {
         StreamInferenceResponse response = new StreamInferenceResponse();
         List<DetectionResult> detections = new ArrayList<>();
+        List<EncodedMask> masks = null;
         
         // 处理检测结果
         for (ResultEnvelope envelope : frameResult.getResultsList()) {
@@ -550,6 +1214,23 @@ public class StreamGrpcInferenceService {
                 String overlayBase64 = Base64.getEncoder().encodeToString(
                         envelope.getBinary().toByteArray());
                 response.setOverlayImage(overlayBase64);
+            } else if (MaskCodec.KIND.equals(envelope.getKind())) {
+                EncodedMask mask = MaskCodec.fromEnvelope(envelope);
+                if (mask != null) {
+                    if (masks == null) {
+                        masks = new ArrayList<>();
+                    }
+                    masks.add(mask);
+                }
+            }
+        }
+        
+        // 掩码按 index 挂到对应的检测上
+        if (masks != null) {
+            for (EncodedMask mask : masks) {
+                if (mask.getIndex() >= 0 && mask.getIndex() < detections.size()) {
+                    detections.get(mask.getIndex()).setMask(mask);
+                }
             }
         }
         
@@ -565,6 +1246,21 @@ public class StreamGrpcInferenceService {
             if (meta.containsFields("session_id")) {
                 response.setSessionId(meta.getFieldsOrThrow("session_id").getStringValue());
             }
+            // 视频逐帧结果的进度信息，total_frames 为 0 表示后端无法预知总帧数
+            if (meta.containsFields("processed_frames")) {
+                int processed = (int) meta.getFieldsOrThrow("processed_frames").getNumberValue();
+                response.setProcessedFrames(processed);
+                if (meta.containsFields("total_frames")) {
+                    int total = (int) meta.getFieldsOrThrow("total_frames").getNumberValue();
+                    if (total > 0) {
+                        response.setTotalFrames(total);
+                        response.setProgress(Math.min(1.0, (double) processed / total));
+                    }
+                }
+            }
+            if (meta.containsFields("pts_ms")) {
+                response.setPtsMs(meta.getFieldsOrThrow("pts_ms").getNumberValue());
+            }
         }
         
         response.setSuccess(true);
@@ -575,7 +1271,7 @@ public class StreamGrpcInferenceService {
         return response;
     }
     
-    private DetectionResult parseDetectionResult(Struct itemStruct) {
+    static DetectionResult parseDetectionResult(Struct itemStruct) {
         try {
             DetectionResult detection = new DetectionResult();
             
@@ -0,0 +1,139 @@
+package com.duola.grpc_java.service;
+
+import com.duola.grpc_java.util.TenantLimiter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * REST 入口的租户准入。租户取自 {@link #TENANT_HEADER} 请求头，未带时归到匿名租户。
+ * 单次请求消耗一个令牌；SSE / Flux 长连接还要占用一个并发流名额，连接结束时归还。
+ * 超限时直接抛 429（带 Retry-After），不进入推理线程池，也不占用后端实例。
+ * 未带租户头的老客户端默认不限制（anonymous-* 配置 &lt;= 0），需要时再单独配置匿名租户的额度
+ */
+@Component
+public class TenantAdmission {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantAdmission.class);
+
+    public static final String TENANT_HEADER = "X-Tenant-Id";
+
+    @Value("${inference.tenant.requests-per-second:20}")
+    private double requestsPerSecond = 20.0;
+
+    @Value("${inference.tenant.burst:40}")
+    private double burst = 40.0;
+
+    @Value("${inference.tenant.max-streams:4}")
+    private int maxStreams = 4;
+
+    @Value("${inference.tenant.anonymous-requests-per-second:0}")
+    private double anonymousRequestsPerSecond = 0.0;
+
+    @Value("${inference.tenant.anonymous-burst:0}")
+    private double anonymousBurst = 0.0;
+
+    @Value("${inference.tenant.anonymous-max-streams:0}")
+    private int anonymousMaxStreams = 0;
+
+    private TenantLimiter limiter;
+    private TenantLimiter anonymousLimiter;
+
+    public TenantAdmission() {
+    }
+
+    TenantAdmission(double requestsPerSecond, double burst, int maxStreams) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxStreams = maxStreams;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        limiter = new TenantLimiter(requestsPerSecond, burst, maxStreams);
+        anonymousLimiter = new TenantLimiter(anonymousRequestsPerSecond, anonymousBurst, anonymousMaxStreams);
+    }
+
+    private TenantLimiter limiterFor(String tenant) {
+        return TenantLimiter.ANONYMOUS.equals(tenant) ? anonymousLimiter : limiter;
+    }
+
+    /**
+     * 单次请求准入，超限抛 429
+     */
+    public void admit(String tenantId) {
+        String tenant = TenantLimiter.normalize(tenantId);
+        TenantLimiter.Decision decision = limiterFor(tenant).tryAcquire(tenant);
+        if (!decision.admitted()) {
+            throw rejected(tenant, decision);
+        }
+    }
+
+    /**
+     * 长连接准入：占用一个并发流名额，返回幂等的释放回调，调用方必须在处理结束时（finally）调用
+     */
+    public Runnable openStream(String tenantId) {
+        String tenant = TenantLimiter.normalize(tenantId);
+        TenantLimiter limiter = limiterFor(tenant);
+        TenantLimiter.Decision decision = limiter.tryOpenStream(tenant);
+        if (!decision.admitted()) {
+            throw rejected(tenant, decision);
+        }
+        AtomicBoolean released = new AtomicBoolean(false);
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                limiter.releaseStream(tenant);
+            }
+        };
+    }
+
+    /**
+     * SSE 准入：处理线程结束时由调用方在 finally 中执行返回的回调归还名额；
+     * 客户端断开（超时或写出错）时提前归还。emitter 正常 complete() 后不保证触发完成回调，不能依赖它释放
+     */
+    public Runnable openStream(String tenantId, SseEmitter emitter) {
+        Runnable release = openStream(tenantId);
+        emitter.onTimeout(release);
+        emitter.onError(t -> release.run());
+        return release;
+    }
+
+    private ResponseStatusException rejected(String tenantId, TenantLimiter.Decision decision) {
+        String tenant = TenantLimiter.normalize(tenantId);
+        logger.warn("Request rejected for tenant {}: {}", tenant, decision);
+        String reason = decision == TenantLimiter.Decision.TOO_MANY_STREAMS
+                ? "Tenant stream limit exceeded"
+                : "Tenant rate limit exceeded";
+        long retryAfterMillis = limiterFor(tenant).retryAfterMillis();
+        return new TenantLimitExceededException(reason, Math.max(1L, (retryAfterMillis + 999) / 1000));
+    }
+
+    /**
+     * 429 响应，附带 Retry-After（秒）
+     */
+    static final class TenantLimitExceededException extends ResponseStatusException {
+
+        private final long retryAfterSeconds;
+
+        TenantLimitExceededException(String reason, long retryAfterSeconds) {
+            super(HttpStatus.TOO_MANY_REQUESTS, reason);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+            return headers;
+        }
+    }
+}
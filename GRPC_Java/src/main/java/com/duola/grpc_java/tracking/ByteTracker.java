@@ -0,0 +1,484 @@
+package com.duola.grpc_java.tracking;
+
+import com.duola.grpc_java.dto.DetectionResult;
+import com.duola.grpc_java.dto2.yolo.YoloDetectionResult;
+import com.duola.grpc_java.dto2.yolo.YoloInferenceConfig;
+import com.duola.grpc_java.dto2.yolo.YoloTrackPoint;
+import com.duola.grpc_java.dto2.yolo.YoloTrackVelocity;
+import com.duola.grpc_java.dto2.yolo.YoloTrackingResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 网关侧的 ByteTrack 风格多目标跟踪器，每个摄像头会话一个实例，后端只需做无状态的检测。
+ * 每帧先用卡尔曼滤波预测所有轨迹，再分三轮按 IoU 做最优匹配：高分检测对已确认和丢失的轨迹，
+ * 低分检测对剩下仍在跟踪的轨迹，剩余高分检测对待确认轨迹；没匹配上的高分检测开新轨迹。
+ * <p>
+ * 参数取自 {@link YoloInferenceConfig}：trackThreshold 为高分检测阈值，连续命中 trackMinHits 次的轨迹才分配 ID 并对外输出，
+ * 丢失的轨迹最多保留 trackBuffer 帧等待找回，且任何轨迹超过 trackMaxAge 帧未更新即删除。
+ * 轨迹状态按列存放在可增长的基本类型数组里，匹配用预分配的 {@link HungarianSolver}，稳态下每帧只分配输出对象。
+ * 每条轨迹的历史中心点放在定长环形缓冲区（float x/y + long 时间戳，长度为 trackBuffer）里，
+ * 速度在每次命中时按指数平滑增量更新，单条轨迹占用的内存不随跟踪时长增长。
+ * 非线程安全，调用方按会话串行调用
+ */
+public final class ByteTracker {
+
+    static final byte TENTATIVE = 0;
+    static final byte TRACKED = 1;
+    static final byte LOST = 2;
+
+    /** 低于此分数的检测直接丢弃，介于它与 trackThreshold 之间的参与第二轮匹配 */
+    private static final float LOW_THRESHOLD = 0.1f;
+    private static final double FIRST_MATCH_IOU = 0.2;
+    private static final double SECOND_MATCH_IOU = 0.5;
+    private static final double TENTATIVE_MATCH_IOU = 0.3;
+    /** 速度的指数平滑系数，越大越跟手、越小越平稳 */
+    private static final float VELOCITY_ALPHA = 0.3f;
+
+    private final float highThreshold;
+    private final int minHits;
+    private final int maxMissed;
+    private final int trailLength;
+
+    private final KalmanBoxFilter filter = new KalmanBoxFilter();
+    private final HungarianSolver solver = new HungarianSolver(16);
+
+    // 轨迹表（按列存放，删除时与末尾交换）
+    private int size = 0;
+    private double[] mean;
+    private double[] cov;
+    private int[] ids;
+    private byte[] states;
+    private int[] ages;
+    private int[] hits;
+    private int[] streaks;
+    private int[] missed;
+    private int[] classIds;
+    private float[] scores;
+    private String[] classNames;
+    private int[] matchedDet;
+    private int nextId = 1;
+
+    // 轨迹历史：第 t 条轨迹占 [t * trailLength, (t + 1) * trailLength) 一段，trailHead 指向下一个写入位置
+    private float[] trailX;
+    private float[] trailY;
+    private long[] trailTime;
+    private int[] trailHead;
+    private int[] trailCount;
+    private float[] velocityX;
+    private float[] velocityY;
+
+    // 每帧复用的暂存数组
+    private int[] pool = new int[16];
+    private int[] dets = new int[16];
+    private int[] detTrack = new int[16];
+    private boolean[] detUsed = new boolean[16];
+    private double[] costs = new double[256];
+    private double[] boxes = new double[64];
+    private float[] detScores = new float[16];
+
+    public ByteTracker(YoloInferenceConfig config) {
+        this(valueOr(config.getTrackThreshold(), 0.3),
+                valueOr(config.getTrackBuffer(), 30),
+                valueOr(config.getTrackMaxAge(), 30),
+                valueOr(config.getTrackMinHits(), 3));
+    }
+
+    ByteTracker(double trackThreshold, int trackBuffer, int trackMaxAge, int trackMinHits) {
+        this.highThreshold = (float) trackThreshold;
+        this.maxMissed = Math.max(1, Math.min(trackBuffer, trackMaxAge));
+        this.minHits = Math.max(1, trackMinHits);
+        this.trailLength = Math.max(2, trackBuffer);
+        allocate(16);
+    }
+
+    /**
+     * 处理一帧检测：回填每个检测的 trackId（未确认的为 null），返回当前已确认轨迹（跟踪中与丢失中）的快照
+     */
+    public List<YoloTrackingResult> update(List<DetectionResult> detections) {
+        return update(detections, System.currentTimeMillis());
+    }
+
+    /**
+     * 同上，timestampMillis 为帧时间，用于轨迹点与速度
+     */
+    public List<YoloTrackingResult> update(List<DetectionResult> detections, long timestampMillis) {
+        int n = detections == null ? 0 : detections.size();
+        if (boxes.length < n * 4) {
+            boxes = new double[Math.max(n * 4, boxes.length * 2)];
+            detScores = new float[Math.max(n, detScores.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            DetectionResult d = detections.get(i);
+            boxes[i * 4] = valueOr(d.getX(), 0.0);
+            boxes[i * 4 + 1] = valueOr(d.getY(), 0.0);
+            boxes[i * 4 + 2] = valueOr(d.getWidth(), 0.0);
+            boxes[i * 4 + 3] = valueOr(d.getHeight(), 0.0);
+            detScores[i] = (float) valueOr(d.getScore(), 0.0);
+        }
+        int[] assigned = update(boxes, detScores, n, timestampMillis);
+        for (int i = 0; i < n; i++) {
+            DetectionResult d = detections.get(i);
+            d.setTrackId(assigned[i] > 0 ? assigned[i] : null);
+            int t = indexOfId(assigned[i]);
+            if (t >= 0) {
+                classIds[t] = d.getClassId() != null ? d.getClassId() : -1;
+                classNames[t] = d.getClassName();
+            }
+        }
+        return snapshot();
+    }
+
+    /**
+     * 基本类型入口：boxes 为 count 个 (x, y, w, h)，返回数组前 count 项为各检测的轨迹 ID，0 表示未分配。
+     * 返回的是内部数组，下一次调用前有效
+     */
+    int[] update(double[] detBoxes, float[] detScoresIn, int count, long timestampMillis) {
+        ensureFrameCapacity(count);
+        for (int t = 0; t < size; t++) {
+            filter.predict(mean, t * KalmanBoxFilter.STATE, cov, t * KalmanBoxFilter.COVARIANCE);
+            ages[t]++;
+            missed[t]++;
+            matchedDet[t] = -1;
+        }
+        for (int d = 0; d < count; d++) {
+            detUsed[d] = detScoresIn[d] < LOW_THRESHOLD;
+            detTrack[d] = 0;
+        }
+
+        // 第一轮：高分检测 vs 跟踪中与丢失的轨迹
+        int np = collectTracks(TRACKED, LOST);
+        int nd = collectDets(detScoresIn, count, true);
+        associate(np, nd, detBoxes, FIRST_MATCH_IOU);
+
+        // 第二轮：低分检测 vs 上一轮没匹配上的跟踪中轨迹，用于找回被遮挡而分数下降的目标
+        np = collectTracks(TRACKED, TRACKED);
+        nd = collectDets(detScoresIn, count, false);
+        associate(np, nd, detBoxes, SECOND_MATCH_IOU);
+
+        // 第三轮：剩余高分检测 vs 待确认轨迹
+        np = collectTracks(TENTATIVE, TENTATIVE);
+        nd = collectDets(detScoresIn, count, true);
+        associate(np, nd, detBoxes, TENTATIVE_MATCH_IOU);
+
+        for (int t = size - 1; t >= 0; t--) {
+            int d = matchedDet[t];
+            if (d >= 0) {
+                applyMatch(t, detBoxes, d, detScoresIn[d], timestampMillis);
+                if (states[t] == TRACKED) {
+                    detTrack[d] = ids[t];
+                }
+            } else if (states[t] == TENTATIVE || missed[t] > maxMissed) {
+                removeAt(t);
+            } else {
+                states[t] = LOST;
+                streaks[t] = 0;
+            }
+        }
+
+        for (int d = 0; d < count; d++) {
+            if (!detUsed[d] && detScoresIn[d] >= highThreshold) {
+                int t = spawn(detBoxes, d, detScoresIn[d], timestampMillis);
+                if (states[t] == TRACKED) {
+                    detTrack[d] = ids[t];
+                }
+            }
+        }
+        return detTrack;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void associate(int np, int nd, double[] detBoxes, double minIou) {
+        if (np == 0 || nd == 0) {
+            return;
+        }
+        if (costs.length < np * nd) {
+            costs = new double[Math.max(np * nd, costs.length * 2)];
+        }
+        for (int i = 0; i < np; i++) {
+            int m = pool[i] * KalmanBoxFilter.STATE;
+            double w = mean[m + 2] * mean[m + 3];
+            double h = mean[m + 3];
+            double x = mean[m] - w / 2;
+            double y = mean[m + 1] - h / 2;
+            for (int j = 0; j < nd; j++) {
+                int b = dets[j] * 4;
+                costs[i * nd + j] = 1.0 - iou(x, y, w, h, detBoxes[b], detBoxes[b + 1], detBoxes[b + 2], detBoxes[b + 3]);
+            }
+        }
+        int[] assignment = solver.solve(costs, np, nd, 1.0);
+        for (int i = 0; i < np; i++) {
+            int j = assignment[i];
+            if (j >= 0 && 1.0 - costs[i * nd + j] >= minIou) {
+                matchedDet[pool[i]] = dets[j];
+                detUsed[dets[j]] = true;
+            }
+        }
+    }
+
+    private int collectTracks(byte a, byte b) {
+        int n = 0;
+        for (int t = 0; t < size; t++) {
+            if (matchedDet[t] < 0 && (states[t] == a || states[t] == b)) {
+                pool[n++] = t;
+            }
+        }
+        return n;
+    }
+
+    private int collectDets(float[] detScoresIn, int count, boolean high) {
+        int n = 0;
+        for (int d = 0; d < count; d++) {
+            if (!detUsed[d] && (detScoresIn[d] >= highThreshold) == high) {
+                dets[n++] = d;
+            }
+        }
+        return n;
+    }
+
+    private void applyMatch(int t, double[] detBoxes, int d, float score, long timestampMillis) {
+        int b = d * 4;
+        double w = detBoxes[b + 2];
+        double h = Math.max(detBoxes[b + 3], 1e-6);
+        filter.update(mean, t * KalmanBoxFilter.STATE, cov, t * KalmanBoxFilter.COVARIANCE,
+                detBoxes[b] + w / 2, detBoxes[b + 1] + h / 2, w / h, h);
+        hits[t]++;
+        streaks[t]++;
+        missed[t] = 0;
+        scores[t] = score;
+        int m = t * KalmanBoxFilter.STATE;
+        recordPosition(t, (float) mean[m], (float) mean[m + 1], timestampMillis);
+        if (states[t] == LOST || (states[t] == TENTATIVE && streaks[t] >= minHits)) {
+            activate(t);
+        }
+    }
+
+    private int spawn(double[] detBoxes, int d, float score, long timestampMillis) {
+        if (size == ids.length) {
+            allocate(size * 2);
+        }
+        int t = size++;
+        int b = d * 4;
+        double w = detBoxes[b + 2];
+        double h = Math.max(detBoxes[b + 3], 1e-6);
+        filter.initiate(mean, t * KalmanBoxFilter.STATE, cov, t * KalmanBoxFilter.COVARIANCE,
+                detBoxes[b] + w / 2, detBoxes[b + 1] + h / 2, w / h, h);
+        ids[t] = 0;
+        states[t] = TENTATIVE;
+        ages[t] = 1;
+        hits[t] = 1;
+        streaks[t] = 1;
+        missed[t] = 0;
+        classIds[t] = -1;
+        classNames[t] = null;
+        scores[t] = score;
+        matchedDet[t] = d;
+        trailHead[t] = 0;
+        trailCount[t] = 0;
+        velocityX[t] = 0f;
+        velocityY[t] = 0f;
+        recordPosition(t, (float) (detBoxes[b] + w / 2), (float) (detBoxes[b + 1] + h / 2), timestampMillis);
+        if (minHits <= 1) {
+            activate(t);
+        }
+        return t;
+    }
+
+    /**
+     * 写入一个轨迹点并增量更新平滑速度（像素/秒）；第一段速度直接取瞬时值，避免从 0 爬升
+     */
+    private void recordPosition(int t, float x, float y, long timestampMillis) {
+        int base = t * trailLength;
+        int count = trailCount[t];
+        if (count > 0) {
+            int prev = base + (trailHead[t] + trailLength - 1) % trailLength;
+            long dt = timestampMillis - trailTime[prev];
+            if (dt > 0) {
+                float vx = (x - trailX[prev]) * 1000f / dt;
+                float vy = (y - trailY[prev]) * 1000f / dt;
+                if (count == 1) {
+                    velocityX[t] = vx;
+                    velocityY[t] = vy;
+                } else {
+                    velocityX[t] += VELOCITY_ALPHA * (vx - velocityX[t]);
+                    velocityY[t] += VELOCITY_ALPHA * (vy - velocityY[t]);
+                }
+            }
+        }
+        int slot = base + trailHead[t];
+        trailX[slot] = x;
+        trailY[slot] = y;
+        trailTime[slot] = timestampMillis;
+        trailHead[t] = (trailHead[t] + 1) % trailLength;
+        trailCount[t] = Math.min(count + 1, trailLength);
+    }
+
+    private void activate(int t) {
+        states[t] = TRACKED;
+        if (ids[t] == 0) {
+            ids[t] = nextId++;
+        }
+    }
+
+    private void removeAt(int t) {
+        int last = --size;
+        if (t != last) {
+            System.arraycopy(mean, last * KalmanBoxFilter.STATE, mean, t * KalmanBoxFilter.STATE, KalmanBoxFilter.STATE);
+            System.arraycopy(cov, last * KalmanBoxFilter.COVARIANCE, cov, t * KalmanBoxFilter.COVARIANCE, KalmanBoxFilter.COVARIANCE);
+            ids[t] = ids[last];
+            states[t] = states[last];
+            ages[t] = ages[last];
+            hits[t] = hits[last];
+            streaks[t] = streaks[last];
+            missed[t] = missed[last];
+            classIds[t] = classIds[last];
+            scores[t] = scores[last];
+            classNames[t] = classNames[last];
+            matchedDet[t] = matchedDet[last];
+            System.arraycopy(trailX, last * trailLength, trailX, t * trailLength, trailLength);
+            System.arraycopy(trailY, last * trailLength, trailY, t * trailLength, trailLength);
+            System.arraycopy(trailTime, last * trailLength, trailTime, t * trailLength, trailLength);
+            trailHead[t] = trailHead[last];
+            trailCount[t] = trailCount[last];
+            velocityX[t] = velocityX[last];
+            velocityY[t] = velocityY[last];
+        }
+        classNames[last] = null;
+    }
+
+    private int indexOfId(int id) {
+        if (id <= 0) {
+            return -1;
+        }
+        for (int t = 0; t < size; t++) {
+            if (ids[t] == id) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private List<YoloTrackingResult> snapshot() {
+        List<YoloTrackingResult> results = new ArrayList<>();
+        for (int t = 0; t < size; t++) {
+            if (states[t] == TENTATIVE) {
+                continue;
+            }
+            int m = t * KalmanBoxFilter.STATE;
+            double h = mean[m + 3];
+            double w = mean[m + 2] * h;
+            YoloDetectionResult box = new YoloDetectionResult(classNames[t], classIds[t] >= 0 ? classIds[t] : null,
+                    (double) scores[t], mean[m] - w / 2, mean[m + 1] - h / 2, w, h);
+            box.setTrackId(ids[t]);
+
+            YoloTrackingResult result = new YoloTrackingResult(ids[t], Collections.singletonList(box));
+            result.setTrackAge(ages[t]);
+            result.setTrackHits(hits[t]);
+            result.setTrackState(states[t] == TRACKED ? "active" : "lost");
+            result.setVelocity(new YoloTrackVelocity((double) velocityX[t], (double) velocityY[t]));
+            result.setTrajectory(trajectory(t));
+            results.add(result);
+        }
+        return results;
+    }
+
+    private List<YoloTrackPoint> trajectory(int t) {
+        int base = t * trailLength;
+        int count = trailCount[t];
+        int start = trailHead[t] - count + trailLength;
+        List<YoloTrackPoint> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int slot = base + (start + i) % trailLength;
+            points.add(new YoloTrackPoint((double) trailX[slot], (double) trailY[slot], trailTime[slot]));
+        }
+        return points;
+    }
+
+    private void ensureFrameCapacity(int count) {
+        int tracks = size + count;
+        if (pool.length < tracks) {
+            pool = new int[Math.max(tracks, pool.length * 2)];
+        }
+        if (dets.length < count) {
+            int n = Math.max(count, dets.length * 2);
+            dets = new int[n];
+            detTrack = new int[n];
+            detUsed = new boolean[n];
+        }
+        if (ids.length < tracks) {
+            allocate(Math.max(tracks, ids.length * 2));
+        }
+    }
+
+    private void allocate(int capacity) {
+        if (ids != null && ids.length >= capacity) {
+            return;
+        }
+        if (ids == null) {
+            mean = new double[capacity * KalmanBoxFilter.STATE];
+            cov = new double[capacity * KalmanBoxFilter.COVARIANCE];
+            ids = new int[capacity];
+            states = new byte[capacity];
+            ages = new int[capacity];
+            hits = new int[capacity];
+            streaks = new int[capacity];
+            missed = new int[capacity];
+            classIds = new int[capacity];
+            scores = new float[capacity];
+            classNames = new String[capacity];
+            matchedDet = new int[capacity];
+            trailX = new float[capacity * trailLength];
+            trailY = new float[capacity * trailLength];
+            trailTime = new long[capacity * trailLength];
+            trailHead = new int[capacity];
+            trailCount = new int[capacity];
+            velocityX = new float[capacity];
+            velocityY = new float[capacity];
+            return;
+        }
+        mean = Arrays.copyOf(mean, capacity * KalmanBoxFilter.STATE);
+        cov = Arrays.copyOf(cov, capacity * KalmanBoxFilter.COVARIANCE);
+        ids = Arrays.copyOf(ids, capacity);
+        states = Arrays.copyOf(states, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        hits = Arrays.copyOf(hits, capacity);
+        streaks = Arrays.copyOf(streaks, capacity);
+        missed = Arrays.copyOf(missed, capacity);
+        classIds = Arrays.copyOf(classIds, capacity);
+        scores = Arrays.copyOf(scores, capacity);
+        classNames = Arrays.copyOf(classNames, capacity);
+        matchedDet = Arrays.copyOf(matchedDet, capacity);
+        trailX = Arrays.copyOf(trailX, capacity * trailLength);
+        trailY = Arrays.copyOf(trailY, capacity * trailLength);
+        trailTime = Arrays.copyOf(trailTime, capacity * trailLength);
+        trailHead = Arrays.copyOf(trailHead, capacity);
+        trailCount = Arrays.copyOf(trailCount, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+    }
+
+    static double iou(double ax, double ay, double aw, double ah, double bx, double by, double bw, double bh) {
+        double iw = Math.min(ax + aw, bx + bw) - Math.max(ax, bx);
+        double ih = Math.min(ay + ah, by + bh) - Math.max(ay, by);
+        if (iw <= 0 || ih <= 0) {
+            return 0.0;
+        }
+        double inter = iw * ih;
+        double union = aw * ah + bw * bh - inter;
+        return union > 0 ? inter / union : 0.0;
+    }
+
+    private static double valueOr(Double value, double fallback) {
+        return value != null ? value : fallback;
+    }
+
+    private static int valueOr(Integer value, int fallback) {
+        return value != null ? value : fallback;
+    }
+}
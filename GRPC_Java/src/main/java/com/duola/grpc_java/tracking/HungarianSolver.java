@@ -0,0 +1,109 @@
+package com.duola.grpc_java.tracking;
+
+import java.util.Arrays;
+
+/**
+ * 最小代价二分匹配（Kuhn-Munkres，O(n^3) 势函数版本）。
+ * 工作数组按历史最大规模预分配并复用，每帧求解不产生新对象；非方阵按常数代价补齐成方阵，补齐的行列不影响真实匹配。
+ * 非线程安全，由持有它的跟踪器串行调用
+ */
+final class HungarianSolver {
+
+    private double[] cost = new double[0];
+    private double[] u = new double[0];
+    private double[] v = new double[0];
+    private double[] minv = new double[0];
+    private int[] p = new int[0];
+    private int[] way = new int[0];
+    private boolean[] used = new boolean[0];
+    private int[] assignment = new int[0];
+
+    HungarianSolver(int initialSize) {
+        ensureCapacity(initialSize);
+    }
+
+    /**
+     * 求解 rows x cols 的代价矩阵（行优先），返回数组的前 rows 项为每行匹配到的列，未匹配为 -1。
+     * 返回的是内部数组，下一次调用前有效
+     */
+    int[] solve(double[] costs, int rows, int cols, double padCost) {
+        int n = Math.max(rows, cols);
+        ensureCapacity(n);
+        if (n == 0) {
+            return assignment;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                cost[i * n + j] = i < rows && j < cols ? costs[i * cols + j] : padCost;
+            }
+        }
+        Arrays.fill(u, 0, n + 1, 0.0);
+        Arrays.fill(v, 0, n + 1, 0.0);
+        Arrays.fill(p, 0, n + 1, 0);
+        Arrays.fill(way, 0, n + 1, 0);
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, 0, n + 1, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, 0, n + 1, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= n; j++) {
+                    if (!used[j]) {
+                        double cur = cost[(i0 - 1) * n + (j - 1)] - u[i0] - v[j];
+                        if (cur < minv[j]) {
+                            minv[j] = cur;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= n; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        Arrays.fill(assignment, 0, n, -1);
+        for (int j = 1; j <= n; j++) {
+            int row = p[j] - 1;
+            if (row < rows && j - 1 < cols) {
+                assignment[row] = j - 1;
+            }
+        }
+        return assignment;
+    }
+
+    private void ensureCapacity(int n) {
+        if (assignment.length >= n) {
+            return;
+        }
+        int size = Math.max(n, assignment.length * 2);
+        cost = new double[size * size];
+        u = new double[size + 1];
+        v = new double[size + 1];
+        minv = new double[size + 1];
+        p = new int[size + 1];
+        way = new int[size + 1];
+        used = new boolean[size + 1];
+        assignment = new int[size];
+    }
+}
@@ -0,0 +1,184 @@
+package com.duola.grpc_java.tracking;
+
+/**
+ * 检测框的匀速卡尔曼滤波，状态与 ByteTrack 一致为 (cx, cy, a, h, vcx, vcy, va, vh)，a 为宽高比。
+ * 均值与协方差由调用方放在连续的 double 数组里按偏移访问，滤波器只持有求解用的暂存数组，
+ * 因此每条轨迹只占 8 + 64 个 double，每帧的预测与更新都不分配对象
+ */
+final class KalmanBoxFilter {
+
+    static final int STATE = 8;
+    static final int COVARIANCE = STATE * STATE;
+
+    private static final int MEASURE = 4;
+    private static final double STD_POSITION = 1.0 / 20;
+    private static final double STD_VELOCITY = 1.0 / 160;
+
+    private final double[] s = new double[MEASURE * MEASURE];
+    private final double[] sInv = new double[MEASURE * MEASURE];
+    private final double[] gain = new double[STATE * MEASURE];
+    private final double[] top = new double[MEASURE * STATE];
+    private final double[] innovation = new double[MEASURE];
+
+    /**
+     * 用第一次观测初始化一条轨迹，速度为 0，速度方差取较大值让前几帧快速收敛
+     */
+    void initiate(double[] mean, int m, double[] cov, int c, double cx, double cy, double a, double h) {
+        mean[m] = cx;
+        mean[m + 1] = cy;
+        mean[m + 2] = a;
+        mean[m + 3] = h;
+        for (int i = 4; i < STATE; i++) {
+            mean[m + i] = 0.0;
+        }
+        for (int i = 0; i < COVARIANCE; i++) {
+            cov[c + i] = 0.0;
+        }
+        double pos = 2 * STD_POSITION * h;
+        double vel = 10 * STD_VELOCITY * h;
+        cov[c] = pos * pos;
+        cov[c + 9] = pos * pos;
+        cov[c + 18] = 1e-4;
+        cov[c + 27] = pos * pos;
+        cov[c + 36] = vel * vel;
+        cov[c + 45] = vel * vel;
+        cov[c + 54] = 1e-10;
+        cov[c + 63] = vel * vel;
+    }
+
+    /**
+     * 预测一帧：x = F x，P = F P F^T + Q。F 只是位置加速度，两步原地完成
+     */
+    void predict(double[] mean, int m, double[] cov, int c) {
+        double h = mean[m + 3];
+        for (int i = 0; i < MEASURE; i++) {
+            mean[m + i] += mean[m + MEASURE + i];
+        }
+        // F P：前四行加上对应的速度行
+        for (int i = 0; i < MEASURE; i++) {
+            for (int j = 0; j < STATE; j++) {
+                cov[c + i * STATE + j] += cov[c + (i + MEASURE) * STATE + j];
+            }
+        }
+        // (F P) F^T：前四列加上对应的速度列
+        for (int i = 0; i < STATE; i++) {
+            for (int j = 0; j < MEASURE; j++) {
+                cov[c + i * STATE + j] += cov[c + i * STATE + j + MEASURE];
+            }
+        }
+        double pos = STD_POSITION * h;
+        double vel = STD_VELOCITY * h;
+        cov[c] += pos * pos;
+        cov[c + 9] += pos * pos;
+        cov[c + 18] += 1e-4;
+        cov[c + 27] += pos * pos;
+        cov[c + 36] += vel * vel;
+        cov[c + 45] += vel * vel;
+        cov[c + 54] += 1e-10;
+        cov[c + 63] += vel * vel;
+    }
+
+    /**
+     * 用观测 (cx, cy, a, h) 校正：K = P H^T S^-1，x += K (z - H x)，P -= K H P。H 取状态前四维
+     */
+    void update(double[] mean, int m, double[] cov, int c, double cx, double cy, double a, double h) {
+        double pos = STD_POSITION * mean[m + 3];
+        for (int i = 0; i < MEASURE; i++) {
+            for (int j = 0; j < MEASURE; j++) {
+                s[i * MEASURE + j] = cov[c + i * STATE + j];
+            }
+        }
+        s[0] += pos * pos;
+        s[5] += pos * pos;
+        s[10] += 1e-2;
+        s[15] += pos * pos;
+        if (!invert4(s, sInv)) {
+            return;
+        }
+
+        for (int i = 0; i < STATE; i++) {
+            for (int j = 0; j < MEASURE; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < MEASURE; k++) {
+                    sum += cov[c + i * STATE + k] * sInv[k * MEASURE + j];
+                }
+                gain[i * MEASURE + j] = sum;
+            }
+        }
+
+        innovation[0] = cx - mean[m];
+        innovation[1] = cy - mean[m + 1];
+        innovation[2] = a - mean[m + 2];
+        innovation[3] = h - mean[m + 3];
+        for (int i = 0; i < STATE; i++) {
+            double sum = 0.0;
+            for (int k = 0; k < MEASURE; k++) {
+                sum += gain[i * MEASURE + k] * innovation[k];
+            }
+            mean[m + i] += sum;
+        }
+
+        System.arraycopy(cov, c, top, 0, MEASURE * STATE);
+        for (int i = 0; i < STATE; i++) {
+            for (int j = 0; j < STATE; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < MEASURE; k++) {
+                    sum += gain[i * MEASURE + k] * top[k * STATE + j];
+                }
+                cov[c + i * STATE + j] -= sum;
+            }
+        }
+    }
+
+    /**
+     * 4x4 矩阵求逆（带部分主元的高斯-约旦消元），奇异时返回 false 并跳过本次校正
+     */
+    private static boolean invert4(double[] a, double[] inv) {
+        for (int i = 0; i < MEASURE; i++) {
+            for (int j = 0; j < MEASURE; j++) {
+                inv[i * MEASURE + j] = i == j ? 1.0 : 0.0;
+            }
+        }
+        for (int col = 0; col < MEASURE; col++) {
+            int pivot = col;
+            for (int r = col + 1; r < MEASURE; r++) {
+                if (Math.abs(a[r * MEASURE + col]) > Math.abs(a[pivot * MEASURE + col])) {
+                    pivot = r;
+                }
+            }
+            double p = a[pivot * MEASURE + col];
+            if (Math.abs(p) < 1e-12) {
+                return false;
+            }
+            if (pivot != col) {
+                swapRows(a, pivot, col);
+                swapRows(inv, pivot, col);
+            }
+            for (int j = 0; j < MEASURE; j++) {
+                a[col * MEASURE + j] /= p;
+                inv[col * MEASURE + j] /= p;
+            }
+            for (int r = 0; r < MEASURE; r++) {
+                if (r == col) {
+                    continue;
+                }
+                double f = a[r * MEASURE + col];
+                if (f != 0.0) {
+                    for (int j = 0; j < MEASURE; j++) {
+                        a[r * MEASURE + j] -= f * a[col * MEASURE + j];
+                        inv[r * MEASURE + j] -= f * inv[col * MEASURE + j];
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void swapRows(double[] a, int r1, int r2) {
+        for (int j = 0; j < MEASURE; j++) {
+            double t = a[r1 * MEASURE + j];
+            a[r1 * MEASURE + j] = a[r2 * MEASURE + j];
+            a[r2 * MEASURE + j] = t;
+        }
+    }
+}
@@ -1,34 +1,148 @@
 package com.duola.grpc_java.util;
 
 import com.duola.grpc_java.dto.StreamInferenceRequest;
+import com.duola.grpc_java.segmentation.MaskCodec;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
 import io.grpc.ai.InferenceHeader;
 import io.grpc.ai.ModelSpec;
+import io.grpc.ai.TenantContext;
+import io.grpc.ai.TraceContext;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class HeaderUtils {
 
+    // 组合来自请求参数，限制缓存条数；超出后照常构建但不再缓存
+    private static final int MAX_CACHED_HEADERS = 256;
+
+    // protobuf 消息不可变，同一组选项的 header 可在所有流之间共享
+    private static final Map<HeaderKey, InferenceHeader> HEADERS = new ConcurrentHashMap<>();
+
     private HeaderUtils() {}
 
+    private record HeaderKey(String model, int targetWidth, int targetHeight, boolean keepAspectRatio,
+                             String mode, boolean returnOverlay, Integer maxInFlight, Boolean ordered) {}
+
+    /**
+     * 请求带 trace / 租户时在缓存的 header 上追加（每次请求不同，不进入缓存）
+     */
     public static InferenceHeader buildHeaderFrom(StreamInferenceRequest request) {
+        return withTenant(withTrace(header(request.getModel(), request.getTargetWidth(), request.getTargetHeight(),
+                request.getKeepAspectRatio(), request.getMode(), request.getReturnOverlay(),
+                request.getMaxInFlight(), request.getOrdered()), request.getTraceId()), request.getTenantId());
+    }
+
+    /**
+     * 视频请求的 header：在缓存的基础 header 上追加 max_frames / frame_interval，
+     * 后端据此抽帧并逐帧返回结果。视频请求少且重，这里不再缓存
+     */
+    public static InferenceHeader videoHeaderFrom(StreamInferenceRequest request) {
+        InferenceHeader base = buildHeaderFrom(request);
+        Struct.Builder options = base.getOptions().toBuilder();
+        if (request.getMaxFrames() != null) {
+            options.putFields("max_frames", Value.newBuilder().setNumberValue(request.getMaxFrames()).build());
+        }
+        if (request.getFrameInterval() != null) {
+            options.putFields("frame_interval", Value.newBuilder().setNumberValue(request.getFrameInterval()).build());
+        }
+        return base.toBuilder().setOptions(options).build();
+    }
+
+    /**
+     * 在 options 中写入调度优先级（priority = interactive / bulk），后端可据此区分实时与批量流量。
+     * 只用于批量这类低频请求，结果不缓存；未写入时视为 interactive
+     */
+    public static InferenceHeader withPriority(InferenceHeader header, PriorityDispatcher.Priority priority) {
+        Struct options = header.getOptions().toBuilder()
+                .putFields(PriorityDispatcher.OPTION, Value.newBuilder().setStringValue(priority.optionValue()).build())
+                .build();
+        return header.toBuilder().setOptions(options).build();
+    }
+
+    /**
+     * 写入网关入口确定的 trace-id，span-id 为网关到后端这一跳新开的 span；traceId 不合法时原样返回
+     */
+    public static InferenceHeader withTrace(InferenceHeader header, String traceId) {
+        String normalized = TraceParent.normalizeTraceId(traceId);
+        if (normalized == null) {
+            return header;
+        }
+        return header.toBuilder()
+                .setTrace(TraceContext.newBuilder().setTraceId(normalized).setSpanId(TraceParent.newSpanId()))
+                .build();
+    }
+
+    /**
+     * 写入 REST 入口的租户（X-Tenant-Id），后端按 tenant_id 做准入；未带租户时原样返回，由后端归到匿名租户
+     */
+    public static InferenceHeader withTenant(InferenceHeader header, String tenantId) {
+        if (tenantId == null || tenantId.isBlank()) {
+            return header;
+        }
+        return header.toBuilder()
+                .setTenant(TenantContext.newBuilder().setTenantId(TenantLimiter.normalize(tenantId)))
+                .build();
+    }
+
+    /**
+     * 不带 max_in_flight / ordered 选项的 header，后端按默认值处理
+     */
+    public static InferenceHeader header(String model, int targetWidth, int targetHeight, boolean keepAspectRatio,
+                                         String mode, boolean returnOverlay) {
+        return header(model, targetWidth, targetHeight, keepAspectRatio, mode, returnOverlay, null, null);
+    }
+
+    /**
+     * 按选项组合返回缓存的 header；maxInFlight / ordered 为 null 时不写入对应选项
+     */
+    public static InferenceHeader header(String model, int targetWidth, int targetHeight, boolean keepAspectRatio,
+                                         String mode, boolean returnOverlay, Integer maxInFlight, Boolean ordered) {
+        HeaderKey key = new HeaderKey(model, targetWidth, targetHeight, keepAspectRatio,
+                mode, returnOverlay, maxInFlight, ordered);
+        InferenceHeader header = HEADERS.get(key);
+        if (header != null) {
+            return header;
+        }
+        header = build(key);
+        if (HEADERS.size() < MAX_CACHED_HEADERS) {
+            InferenceHeader previous = HEADERS.putIfAbsent(key, header);
+            if (previous != null) {
+                return previous;
+            }
+        }
+        return header;
+    }
+
+    private static InferenceHeader build(HeaderKey key) {
         Struct.Builder optionsBuilder = Struct.newBuilder();
-        optionsBuilder.putFields("target_w", Value.newBuilder().setNumberValue(request.getTargetWidth()).build());
-        optionsBuilder.putFields("target_h", Value.newBuilder().setNumberValue(request.getTargetHeight()).build());
-        optionsBuilder.putFields("keep_aspect_ratio", Value.newBuilder().setBoolValue(request.getKeepAspectRatio()).build());
-        optionsBuilder.putFields("mode", Value.newBuilder().setStringValue(request.getMode()).build());
+        optionsBuilder.putFields("target_w", Value.newBuilder().setNumberValue(key.targetWidth()).build());
+        optionsBuilder.putFields("target_h", Value.newBuilder().setNumberValue(key.targetHeight()).build());
+        optionsBuilder.putFields("keep_aspect_ratio", Value.newBuilder().setBoolValue(key.keepAspectRatio()).build());
+        optionsBuilder.putFields("mode", Value.newBuilder().setStringValue(key.mode()).build());
         optionsBuilder.putFields("persist", Value.newBuilder().setBoolValue(false).build());
-        optionsBuilder.putFields("return_overlay", Value.newBuilder().setBoolValue(request.getReturnOverlay()).build());
+        optionsBuilder.putFields("return_overlay", Value.newBuilder().setBoolValue(key.returnOverlay()).build());
+        if (key.maxInFlight() != null) {
+            optionsBuilder.putFields("max_in_flight", Value.newBuilder().setNumberValue(key.maxInFlight()).build());
+        }
+        if (key.ordered() != null) {
+            optionsBuilder.putFields("ordered", Value.newBuilder().setBoolValue(key.ordered()).build());
+        }
 
-        return InferenceHeader.newBuilder()
+        InferenceHeader.Builder header = InferenceHeader.newBuilder()
                 .setModel(ModelSpec.newBuilder()
-                        .setName(request.getModel())
+                        .setName(key.model())
                         .setVersion("v1")
                         .build())
                 .setOptions(optionsBuilder.build())
                 .addAccept("application/x-protobuf;type=\"google.protobuf.Struct\"")
-                .addAccept("image/jpeg;kind=\"overlay\"")
-                .build();
+                .addAccept("image/jpeg;kind=\"overlay\"");
+        // 分割模式按偏好顺序声明可接受的掩码编码，后端取第一个支持的；未声明时后端不返回掩码
+        if ("segment".equals(key.mode())) {
+            header.addAccept(MaskCodec.ACCEPT_RLE)
+                    .addAccept(MaskCodec.ACCEPT_BITPACKED);
+        }
+        return header.build();
     }
 }
-
-
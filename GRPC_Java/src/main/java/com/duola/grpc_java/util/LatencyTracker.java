@@ -0,0 +1,45 @@
+package com.duola.grpc_java.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 最近 N 次延迟的环形采样，用于估算分位数（例如对冲请求的触发延迟）。
+ */
+public final class LatencyTracker {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong cursor = new AtomicLong(0);
+
+    public LatencyTracker(int capacity) {
+        this.samples = new AtomicLongArray(capacity);
+    }
+
+    public void record(long micros) {
+        int slot = (int) (cursor.getAndIncrement() % samples.length());
+        samples.set(slot, micros);
+    }
+
+    public long count() {
+        return Math.min(cursor.get(), samples.length());
+    }
+
+    /**
+     * @param percentile 0-100
+     * @return 对应分位的延迟（微秒），没有样本时返回 -1
+     */
+    public long percentileMicros(double percentile) {
+        int n = (int) count();
+        if (n == 0) {
+            return -1L;
+        }
+        long[] copy = new long[n];
+        for (int i = 0; i < n; i++) {
+            copy[i] = samples.get(i);
+        }
+        Arrays.sort(copy);
+        int rank = (int) Math.ceil(percentile / 100.0 * n) - 1;
+        return copy[Math.max(0, Math.min(n - 1, rank))];
+    }
+}
@@ -0,0 +1,26 @@
+package com.duola.grpc_java.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志限流：在给定时间窗口内最多放行一次，用于帧级别等高频路径的采样日志。
+ */
+public final class LogRateLimiter {
+
+    private final long intervalNanos;
+    private final AtomicLong nextAllowedAt = new AtomicLong(Long.MIN_VALUE);
+
+    public LogRateLimiter(long interval, TimeUnit unit) {
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        long next = nextAllowedAt.get();
+        if (next != Long.MIN_VALUE && now - next < 0) {
+            return false;
+        }
+        return nextAllowedAt.compareAndSet(next, now + intervalNanos);
+    }
+}
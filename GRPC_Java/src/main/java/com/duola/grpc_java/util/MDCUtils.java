@@ -6,36 +6,64 @@ import io.grpc.ai.TenantContext;
 import io.grpc.ai.TraceContext;
 import org.slf4j.MDC;
 
-import java.util.UUID;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 public final class MDCUtils {
 
     private MDCUtils() {}
 
     public static void populateFromHeader(InferenceHeader header) {
-        if (header == null) return;
-        if (header.hasTrace()) {
-            TraceContext trace = header.getTrace();
-            putIfNotEmpty("trace_id", trace.getTraceId());
-            putIfNotEmpty("span_id", trace.getSpanId());
-            putIfNotEmpty("parent_span_id", trace.getParentSpanId());
+        snapshotFromHeader(header).forEach(MDC::put);
+    }
+
+    /**
+     * 从 header 预先计算一份不可变的 MDC 上下文，流打开时构建一次，之后按需 {@link #install(Map)}。
+     */
+    public static Map<String, String> snapshotFromHeader(InferenceHeader header) {
+        return snapshotFromHeader(header, null);
+    }
+
+    /**
+     * 同 {@link #snapshotFromHeader(InferenceHeader)}，header 未携带 trace 时使用 remoteTrace（如从 gRPC metadata 的 traceparent 提取的 trace）
+     */
+    public static Map<String, String> snapshotFromHeader(InferenceHeader header, TraceContext remoteTrace) {
+        if (header == null && remoteTrace == null) return Collections.emptyMap();
+        Map<String, String> context = new HashMap<>();
+        TraceContext trace = header != null && header.hasTrace() && !header.getTrace().getTraceId().isEmpty()
+                ? header.getTrace() : remoteTrace;
+        if (trace != null) {
+            putIfNotEmpty(context, "trace_id", trace.getTraceId());
+            putIfNotEmpty(context, "span_id", trace.getSpanId());
+            putIfNotEmpty(context, "parent_span_id", trace.getParentSpanId());
         }
+        if (header == null) return Collections.unmodifiableMap(context);
         if (header.hasTenant()) {
             TenantContext tenant = header.getTenant();
-            putIfNotEmpty("tenant_id", tenant.getTenantId());
-            putIfNotEmpty("user_id", tenant.getUserId());
+            putIfNotEmpty(context, "tenant_id", tenant.getTenantId());
+            putIfNotEmpty(context, "user_id", tenant.getUserId());
         }
         if (header.hasModel()) {
             ModelSpec model = header.getModel();
-            putIfNotEmpty("model_name", model.getName());
-            putIfNotEmpty("model_version", model.getVersion());
+            putIfNotEmpty(context, "model_name", model.getName());
+            putIfNotEmpty(context, "model_version", model.getVersion());
         }
+        return Collections.unmodifiableMap(context);
+    }
+
+    public static void install(Map<String, String> context) {
+        if (context == null || context.isEmpty()) return;
+        MDC.setContextMap(context);
     }
 
+    /**
+     * 确保 MDC 中有 trace_id，缺失时生成 W3C 格式（32 位 hex）的新 trace_id，以便可以直接写入 traceparent
+     */
     public static String ensureTraceId() {
         String traceId = MDC.get("trace_id");
         if (traceId == null || traceId.isEmpty()) {
-            traceId = UUID.randomUUID().toString();
+            traceId = TraceParent.newTraceId();
             MDC.put("trace_id", traceId);
         }
         return traceId;
@@ -45,9 +73,9 @@ public final class MDCUtils {
         MDC.clear();
     }
 
-    private static void putIfNotEmpty(String key, String value) {
+    private static void putIfNotEmpty(Map<String, String> context, String key, String value) {
         if (value != null && !value.isEmpty()) {
-            MDC.put(key, value);
+            context.put(key, value);
         }
     }
 }
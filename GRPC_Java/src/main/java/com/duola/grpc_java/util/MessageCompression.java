@@ -0,0 +1,213 @@
+package com.duola.grpc_java.util;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.ForwardingClientCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ai.ResultEnvelope;
+import io.grpc.ai.StreamResponse;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 响应方向的按调用压缩协商。
+ * 客户端在 {@link #RESPONSE_ENCODING} 元数据中按偏好列出希望的响应编码（如 "lz4,gzip"），
+ * 服务端取第一个自己注册过的编码作为本次调用的响应压缩；grpc-accept-encoding 中没有声明的编码 gRPC 会自动退回不压缩。
+ * 上行的图片帧始终不压缩（客户端不设置 CallOptions 压缩），下行中携带 JPEG 等二进制结果的消息逐条关闭压缩，
+ * 只有重复字段名很多的检测 Struct 才付出压缩开销。
+ * <p>
+ * 编解码注册表在内置的 gzip 之外注册了 lz4（块格式），新的编码实现 {@link Codec} 后在这里注册即可
+ */
+public final class MessageCompression {
+
+    public static final String GZIP = "gzip";
+    public static final String LZ4 = "lz4";
+    public static final String IDENTITY = "identity";
+
+    /** 默认偏好：Java 服务端用 lz4，Python 后端只支持 gzip */
+    public static final String DEFAULT_PREFERENCE = LZ4 + "," + GZIP;
+
+    public static final Metadata.Key<String> RESPONSE_ENCODING =
+            Metadata.Key.of("x-response-encoding", Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final CompressorRegistry COMPRESSORS;
+    private static final DecompressorRegistry DECOMPRESSORS;
+
+    static {
+        Codec lz4 = new Lz4Codec();
+        CompressorRegistry compressors = CompressorRegistry.newEmptyInstance();
+        compressors.register(Codec.Identity.NONE);
+        compressors.register(new Codec.Gzip());
+        compressors.register(lz4);
+        COMPRESSORS = compressors;
+        DECOMPRESSORS = DecompressorRegistry.getDefaultInstance().with(lz4, true);
+    }
+
+    private MessageCompression() {}
+
+    public static CompressorRegistry compressorRegistry() {
+        return COMPRESSORS;
+    }
+
+    /**
+     * 客户端通道使用，同时决定 grpc-accept-encoding 中声明的编码
+     */
+    public static DecompressorRegistry decompressorRegistry() {
+        return DECOMPRESSORS;
+    }
+
+    /**
+     * 在每个调用上声明希望的响应编码；preference 为空或 identity 时不声明，服务端不压缩
+     */
+    public static ClientInterceptor requestResponseEncoding(String preference) {
+        String value = preference == null ? "" : preference.trim();
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions, Channel next) {
+                return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                        if (!value.isEmpty() && !IDENTITY.equals(value)) {
+                            headers.put(RESPONSE_ENCODING, value);
+                        }
+                        super.start(responseListener, headers);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * 服务端按客户端的偏好设置本次调用的响应压缩，需配合 {@link #compressorRegistry()} 构建的 Server
+     */
+    public static ServerInterceptor responseEncodingSelector() {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                         ServerCallHandler<ReqT, RespT> next) {
+                String encoding = choose(headers.get(RESPONSE_ENCODING));
+                if (encoding != null) {
+                    try {
+                        call.setCompression(encoding);
+                    } catch (IllegalArgumentException e) {
+                        // Server 未使用本类的注册表时找不到编码，保持不压缩
+                    }
+                }
+                return next.startCall(call, headers);
+            }
+        };
+    }
+
+    /**
+     * 从逗号分隔的偏好中取第一个已注册的非 identity 编码
+     */
+    static String choose(String preference) {
+        if (preference == null || preference.isEmpty()) {
+            return null;
+        }
+        for (String name : preference.split(",")) {
+            String encoding = name.trim();
+            if (!encoding.isEmpty() && !IDENTITY.equals(encoding) && COMPRESSORS.lookupCompressor(encoding) != null) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 带二进制结果（叠图 JPEG 等已压缩数据）的响应不值得再压缩
+     */
+    public static boolean isCompressible(StreamResponse response) {
+        if (!response.hasFrame()) {
+            return true;
+        }
+        for (ResultEnvelope result : response.getFrame().getResultsList()) {
+            if (result.hasBinary() && result.getContentType().startsWith("image/")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * lz4 块格式编解码，压缩率低于 gzip，但压缩与解压的 CPU 开销小一个数量级。
+     * 一条消息压成一个块，前面是 4 字节大端原始长度；不用帧格式，
+     * 帧格式默认按 4MB 块分配缓冲，小消息每条都会产生数 MB 的垃圾
+     */
+    static final class Lz4Codec implements Codec {
+
+        /** lz4 块的压缩比上限约 255，超出的原始长度说明数据损坏 */
+        private static final int MAX_RATIO = 255;
+
+        /** 解压前按声明长度分配，上限取各通道最大的 maxInboundMessageSize */
+        private static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+        private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+        private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+        @Override
+        public String getMessageEncoding() {
+            return LZ4;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream os) throws IOException {
+            return new ByteArrayOutputStream() {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    byte[] block = new byte[4 + COMPRESSOR.maxCompressedLength(count)];
+                    ByteBuffer.wrap(block).putInt(count);
+                    int length = COMPRESSOR.compress(buf, 0, count, block, 4);
+                    os.write(block, 0, 4 + length);
+                    os.close();
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream is) throws IOException {
+            byte[] block = is.readAllBytes();
+            if (block.length < 4) {
+                throw new IOException("Truncated lz4 block: " + block.length + " bytes");
+            }
+            int length = ByteBuffer.wrap(block).getInt();
+            if (length < 0 || length > MAX_LENGTH || (long) length > (long) (block.length - 4) * MAX_RATIO) {
+                throw new IOException("Invalid lz4 block length: " + length);
+            }
+            byte[] raw = new byte[length];
+            try {
+                if (DECOMPRESSOR.decompress(block, 4, block.length - 4, raw, 0) != length) {
+                    throw new IOException("lz4 block shorter than declared length " + length);
+                }
+            } catch (LZ4Exception e) {
+                throw new IOException("Corrupt lz4 block", e);
+            }
+            return new ByteArrayInputStream(raw);
+        }
+    }
+}
@@ -4,9 +4,11 @@ import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.NamingFactory;
 import com.alibaba.nacos.api.naming.NamingService;
 import com.alibaba.nacos.api.naming.pojo.Instance;
+import io.grpc.ClientInterceptor;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 
+import java.util.List;
 import java.util.Properties;
 
 public final class NacosUtils {
@@ -19,22 +21,42 @@ public final class NacosUtils {
                                                     String password,
                                                     String serviceName,
                                                     String group) throws NacosException {
+        NamingService namingService = createNamingService(serverAddr, namespace, username, password);
+        return namingService.selectOneHealthyInstance(serviceName, group);
+    }
+
+    public static List<Instance> selectHealthyInstances(String serverAddr,
+                                                        String namespace,
+                                                        String username,
+                                                        String password,
+                                                        String serviceName,
+                                                        String group) throws NacosException {
+        NamingService namingService = createNamingService(serverAddr, namespace, username, password);
+        return namingService.selectInstances(serviceName, group, true);
+    }
+
+    private static NamingService createNamingService(String serverAddr,
+                                                     String namespace,
+                                                     String username,
+                                                     String password) throws NacosException {
         Properties props = new Properties();
         props.setProperty("serverAddr", serverAddr);
         if (namespace != null && !namespace.isEmpty()) props.setProperty("namespace", namespace);
         if (username != null && !username.isEmpty()) props.setProperty("username", username);
         if (password != null && !password.isEmpty()) props.setProperty("password", password);
 
-        NamingService namingService = NamingFactory.createNamingService(props);
-        return namingService.selectOneHealthyInstance(serviceName, group);
+        return NamingFactory.createNamingService(props);
     }
 
-    public static ManagedChannel createPlainChannel(Instance instance, int maxInboundMb) {
+    public static ManagedChannel createPlainChannel(Instance instance, int maxInboundMb, ClientInterceptor... interceptors) {
         int maxBytes = maxInboundMb * 1024 * 1024;
         return ManagedChannelBuilder
                 .forAddress(instance.getIp(), instance.getPort())
                 .usePlaintext()
                 .maxInboundMessageSize(maxBytes)
+                // 只声明可解压的响应编码，请求方向不压缩（图片本身已是 JPEG/PNG）
+                .decompressorRegistry(MessageCompression.decompressorRegistry())
+                .intercept(interceptors)
                 .build();
     }
 }
@@ -0,0 +1,318 @@
+package com.duola.grpc_java.util;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 网关到后端实例池的在途帧配额，按优先级分成交互（摄像头、单帧）与批量（batch、video）两个队列：
+ * <ul>
+ *     <li>总在途数不超过 capacity，其中 reservedInteractive 个名额只给交互流量，批量任务占不满整个池；</li>
+ *     <li>两类都在排队时按权重做平滑加权轮询（interactiveWeight : bulkWeight），批量不会被完全饿死；</li>
+ *     <li>交互队列长度达到 preemptQueueLength 时暂停发放批量名额，批量流在下一帧发送前让出；</li>
+ *     <li>抢占不会把批量压到 minBulkInFlight 以下：批量在排队且在途不足该数时，交互流量也要为其留出名额。</li>
+ * </ul>
+ * 名额以帧为单位：发送前 acquire，收到该帧结果（或流结束）后 release。
+ * 实例数变化时可用 {@link #resize(int)} 调整总在途上限，预留与保底名额不随之变化。
+ * 优先级同时写入 InferenceHeader.options.priority，后端可据此调度
+ */
+public final class PriorityDispatcher {
+
+    /** header.options 中的优先级字段，缺省视为 interactive */
+    public static final String OPTION = "priority";
+
+    public enum Priority {
+        INTERACTIVE,
+        BULK;
+
+        public String optionValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        public static Priority fromOption(String value) {
+            return "bulk".equalsIgnoreCase(value) ? BULK : INTERACTIVE;
+        }
+    }
+
+    // 等待中的 acquire 每隔这么久检查一次是否已被放弃（客户端断开等）
+    private static final long ABANDON_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int configuredReservedInteractive;
+    private final int configuredMinBulkInFlight;
+    private final int preemptQueueLength;
+    private final int[] weights;
+
+    // 以下由 lock 保护，resize 时重新计算
+    private int capacity;
+    private int reservedInteractive;
+    private int minBulkInFlight;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Waiter>[] queues = new ArrayDeque[]{new ArrayDeque<>(), new ArrayDeque<>()};
+    private final int[] inFlight = new int[2];
+    // 平滑加权轮询的当前值
+    private final int[] current = new int[2];
+    private int inFlightTotal;
+
+    /**
+     * preemptQueueLength &lt;= 0 表示不抢占，仅按权重分配；不保证批量的最低名额
+     */
+    public PriorityDispatcher(int capacity, int reservedInteractive, int interactiveWeight, int bulkWeight,
+                              int preemptQueueLength) {
+        this(capacity, reservedInteractive, interactiveWeight, bulkWeight, preemptQueueLength, 0);
+    }
+
+    /**
+     * minBulkInFlight 为批量的保底在途数，不超过 capacity - reservedInteractive
+     */
+    public PriorityDispatcher(int capacity, int reservedInteractive, int interactiveWeight, int bulkWeight,
+                              int preemptQueueLength, int minBulkInFlight) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        this.configuredReservedInteractive = reservedInteractive;
+        this.configuredMinBulkInFlight = minBulkInFlight;
+        this.preemptQueueLength = preemptQueueLength;
+        this.weights = new int[]{Math.max(1, interactiveWeight), Math.max(1, bulkWeight)};
+        applyCapacityLocked(capacity);
+    }
+
+    /**
+     * 不限在途数，acquire 总是立即成功
+     */
+    public static PriorityDispatcher unbounded() {
+        return new PriorityDispatcher(Integer.MAX_VALUE, 0, 1, 1, 0);
+    }
+
+    public boolean acquire(Priority priority, long timeout, TimeUnit unit) throws InterruptedException {
+        return acquire(priority, timeout, unit, () -> false);
+    }
+
+    /**
+     * 在 timeout 内取得一个名额；超时或 abandoned 返回 true 时放弃排队并返回 false
+     */
+    public boolean acquire(Priority priority, long timeout, TimeUnit unit, BooleanSupplier abandoned)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(lock.newCondition());
+            queues[priority.ordinal()].addLast(waiter);
+            dispatchLocked();
+            try {
+                while (!waiter.granted) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || abandoned.getAsBoolean()) {
+                        queues[priority.ordinal()].remove(waiter);
+                        return false;
+                    }
+                    waiter.condition.awaitNanos(Math.min(remaining, ABANDON_CHECK_NANOS));
+                }
+                return true;
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    releaseLocked(priority);
+                } else {
+                    queues[priority.ordinal()].remove(waiter);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 调整总在途上限；缩小时已发放的名额不收回，在途数降到新上限以下后才继续发放
+     */
+    public void resize(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        lock.lock();
+        try {
+            if (capacity == this.capacity) {
+                return;
+            }
+            applyCapacityLocked(capacity);
+            dispatchLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(Priority priority) {
+        lock.lock();
+        try {
+            releaseLocked(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight(Priority priority) {
+        lock.lock();
+        try {
+            return inFlight[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued(Priority priority) {
+        lock.lock();
+        try {
+            return queues[priority.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 一条流持有的名额，收到一帧结果释放一个，流结束时 close 归还剩余的。线程安全
+     */
+    public Lane lane(Priority priority) {
+        return new Lane(priority);
+    }
+
+    private void applyCapacityLocked(int capacity) {
+        this.capacity = capacity;
+        this.reservedInteractive = Math.max(0, Math.min(configuredReservedInteractive, capacity - 1));
+        this.minBulkInFlight = Math.max(0, Math.min(configuredMinBulkInFlight, capacity - reservedInteractive));
+    }
+
+    private void releaseLocked(Priority priority) {
+        int p = priority.ordinal();
+        if (inFlight[p] == 0) {
+            return;
+        }
+        inFlight[p]--;
+        inFlightTotal--;
+        dispatchLocked();
+    }
+
+    private void dispatchLocked() {
+        while (inFlightTotal < capacity) {
+            boolean interactive = !queues[0].isEmpty() && interactiveAdmissibleLocked();
+            boolean bulk = !queues[1].isEmpty() && bulkAdmissibleLocked();
+            int chosen;
+            if (interactive && bulk) {
+                current[0] += weights[0];
+                current[1] += weights[1];
+                chosen = current[0] >= current[1] ? 0 : 1;
+                current[chosen] -= weights[0] + weights[1];
+            } else if (interactive) {
+                chosen = 0;
+            } else if (bulk) {
+                chosen = 1;
+            } else {
+                return;
+            }
+            Waiter waiter = queues[chosen].pollFirst();
+            waiter.granted = true;
+            inFlight[chosen]++;
+            inFlightTotal++;
+            waiter.condition.signal();
+        }
+    }
+
+    private boolean bulkAdmissibleLocked() {
+        if (inFlightTotal >= capacity - reservedInteractive) {
+            return false;
+        }
+        if (inFlight[1] < minBulkInFlight) {
+            return true;
+        }
+        // 交互队列积压时抢占：批量流在下一帧前停下，把名额让给实时帧
+        return preemptQueueLength <= 0 || queues[0].size() < preemptQueueLength;
+    }
+
+    private boolean interactiveAdmissibleLocked() {
+        // 批量在排队且低于保底时，为其留出差额
+        int bulkShortfall = queues[1].isEmpty() ? 0 : Math.max(0, minBulkInFlight - inFlight[1]);
+        return inFlightTotal < capacity - bulkShortfall;
+    }
+
+    private static final class Waiter {
+        final Condition condition;
+        boolean granted;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    public final class Lane implements AutoCloseable {
+
+        private final Priority priority;
+        private int held;
+        private boolean closed;
+
+        private Lane(Priority priority) {
+            this.priority = priority;
+        }
+
+        public Priority priority() {
+            return priority;
+        }
+
+        public boolean acquire(long timeoutMs, BooleanSupplier abandoned) throws InterruptedException {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+            }
+            if (!PriorityDispatcher.this.acquire(priority, timeoutMs, TimeUnit.MILLISECONDS, abandoned)) {
+                return false;
+            }
+            synchronized (this) {
+                if (!closed) {
+                    held++;
+                    return true;
+                }
+            }
+            // 排队期间流已结束
+            PriorityDispatcher.this.release(priority);
+            return false;
+        }
+
+        public void releaseOne() {
+            synchronized (this) {
+                if (held == 0) {
+                    return;
+                }
+                held--;
+            }
+            PriorityDispatcher.this.release(priority);
+        }
+
+        @Override
+        public void close() {
+            int remaining;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                remaining = held;
+                held = 0;
+            }
+            for (int i = 0; i < remaining; i++) {
+                PriorityDispatcher.this.release(priority);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.duola.grpc_java.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶式的重试预算：每个原始请求存入 ratio 个令牌（不超过 maxTokens），
+ * 每次对冲或重试取出 1 个令牌，令牌不足时放弃额外请求，避免在过载时放大流量。
+ */
+public final class RetryBudget {
+
+    // 以千分之一令牌为单位，避免浮点 CAS
+    private static final long SCALE = 1000L;
+
+    private final long maxMilliTokens;
+    private final long depositMilliTokens;
+    private final AtomicLong milliTokens;
+
+    public RetryBudget(double maxTokens, double ratio) {
+        if (maxTokens < 1.0 || ratio < 0.0) {
+            throw new IllegalArgumentException("maxTokens must be >= 1 and ratio >= 0");
+        }
+        this.maxMilliTokens = (long) (maxTokens * SCALE);
+        this.depositMilliTokens = (long) (ratio * SCALE);
+        this.milliTokens = new AtomicLong(maxMilliTokens);
+    }
+
+    public void deposit() {
+        long current;
+        long next;
+        do {
+            current = milliTokens.get();
+            next = Math.min(maxMilliTokens, current + depositMilliTokens);
+        } while (current != next && !milliTokens.compareAndSet(current, next));
+    }
+
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = milliTokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!milliTokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    public double available() {
+        return milliTokens.get() / (double) SCALE;
+    }
+}
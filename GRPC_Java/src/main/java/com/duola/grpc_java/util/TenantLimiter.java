@@ -0,0 +1,158 @@
+package com.duola.grpc_java.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按租户的准入控制：每个租户一个令牌桶限制请求速率，另有并发流上限，
+ * 避免单个租户占满共享的 GPU 实例池。超限时立即拒绝，不排队。
+ * <p>
+ * 租户 id 取自 InferenceHeader.tenant.tenant_id（REST 入口取 X-Tenant-Id 请求头），为空的请求归到 {@link #ANONYMOUS}。
+ * ratePerSecond &lt;= 0 表示不限速，maxStreams &lt;= 0 表示不限并发流
+ */
+public final class TenantLimiter {
+
+    public static final String ANONYMOUS = "anonymous";
+
+    // 租户状态表超过该条数时清理空闲条目，防止伪造租户 id 撑大内存
+    private static final int MAX_TRACKED_TENANTS = 10_000;
+
+    public enum Decision {
+        ADMITTED,
+        RATE_LIMITED,
+        TOO_MANY_STREAMS;
+
+        public boolean admitted() {
+            return this == ADMITTED;
+        }
+    }
+
+    private final double ratePerSecond;
+    private final double burst;
+    private final int maxStreams;
+    private final ConcurrentMap<String, TenantState> tenants = new ConcurrentHashMap<>();
+
+    public TenantLimiter(double ratePerSecond, double burst, int maxStreams) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = ratePerSecond > 0 ? Math.max(1.0, burst) : 0.0;
+        this.maxStreams = maxStreams;
+    }
+
+    public static TenantLimiter unlimited() {
+        return new TenantLimiter(0, 0, 0);
+    }
+
+    public static String normalize(String tenantId) {
+        return tenantId == null || tenantId.isBlank() ? ANONYMOUS : tenantId.trim();
+    }
+
+    /**
+     * 单次请求：消耗一个令牌
+     */
+    public Decision tryAcquire(String tenantId) {
+        return state(normalize(tenantId)).tryAcquire(System.nanoTime()) ? Decision.ADMITTED : Decision.RATE_LIMITED;
+    }
+
+    /**
+     * 打开一条流：先占并发流名额，再消耗一个令牌；成功后必须调用 {@link #releaseStream(String)}
+     */
+    public Decision tryOpenStream(String tenantId) {
+        TenantState state = state(normalize(tenantId));
+        if (!state.tryOpenStream()) {
+            return Decision.TOO_MANY_STREAMS;
+        }
+        if (!state.tryAcquire(System.nanoTime())) {
+            state.releaseStream();
+            return Decision.RATE_LIMITED;
+        }
+        return Decision.ADMITTED;
+    }
+
+    public void releaseStream(String tenantId) {
+        TenantState state = tenants.get(normalize(tenantId));
+        if (state != null) {
+            state.releaseStream();
+        }
+    }
+
+    public int activeStreams(String tenantId) {
+        TenantState state = tenants.get(normalize(tenantId));
+        return state == null ? 0 : state.streams();
+    }
+
+    /**
+     * 令牌补满一个所需的毫秒数，用于 Retry-After
+     */
+    public long retryAfterMillis() {
+        return ratePerSecond > 0 ? (long) Math.ceil(1000.0 / ratePerSecond) : 0L;
+    }
+
+    private TenantState state(String tenant) {
+        TenantState state = tenants.get(tenant);
+        if (state != null) {
+            return state;
+        }
+        if (tenants.size() >= MAX_TRACKED_TENANTS) {
+            long now = System.nanoTime();
+            tenants.values().removeIf(s -> s.isIdle(now));
+        }
+        return tenants.computeIfAbsent(tenant, t -> new TenantState(burst, System.nanoTime()));
+    }
+
+    private final class TenantState {
+        private double tokens;
+        private long refilledAt;
+        private int streams;
+
+        TenantState(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            if (ratePerSecond <= 0) {
+                return true;
+            }
+            refill(now);
+            if (tokens < 1.0) {
+                return false;
+            }
+            tokens -= 1.0;
+            return true;
+        }
+
+        synchronized boolean tryOpenStream() {
+            if (maxStreams > 0 && streams >= maxStreams) {
+                return false;
+            }
+            streams++;
+            return true;
+        }
+
+        synchronized void releaseStream() {
+            if (streams > 0) {
+                streams--;
+            }
+        }
+
+        synchronized int streams() {
+            return streams;
+        }
+
+        synchronized boolean isIdle(long now) {
+            refill(now);
+            return streams == 0 && tokens >= burst;
+        }
+
+        private void refill(long now) {
+            if (ratePerSecond <= 0) {
+                return;
+            }
+            double elapsedSeconds = (now - refilledAt) / 1_000_000_000.0;
+            if (elapsedSeconds > 0) {
+                tokens = Math.min(burst, tokens + elapsedSeconds * ratePerSecond);
+                refilledAt = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.duola.grpc_java.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * W3C Trace Context 的 traceparent 头：{@code 00-<32 位 hex trace-id>-<16 位 hex parent-id>-<2 位 hex flags>}
+ */
+public final class TraceParent {
+
+    public static final String HEADER = "traceparent";
+
+    private static final String VERSION = "00";
+    private static final String SAMPLED = "01";
+    private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+    private static final String INVALID_SPAN_ID = "0000000000000000";
+
+    private final String traceId;
+    private final String spanId;
+    private final String flags;
+
+    private TraceParent(String traceId, String spanId, String flags) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.flags = flags;
+    }
+
+    public static TraceParent of(String traceId, String spanId) {
+        return new TraceParent(traceId, spanId, SAMPLED);
+    }
+
+    /**
+     * 解析 traceparent，格式不合法时返回 null（按规范此时应开启新的 trace）
+     */
+    public static TraceParent parse(String value) {
+        if (value == null || value.length() < 55) {
+            return null;
+        }
+        String[] parts = value.trim().split("-");
+        if (parts.length < 4 || !isHex(parts[0], 2) || "ff".equals(parts[0])
+                || !isHex(parts[1], 32) || INVALID_TRACE_ID.equals(parts[1])
+                || !isHex(parts[2], 16) || INVALID_SPAN_ID.equals(parts[2])
+                || !isHex(parts[3], 2)) {
+            return null;
+        }
+        return new TraceParent(parts[1], parts[2], parts[3]);
+    }
+
+    public static String newTraceId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long high, low;
+        do {
+            high = random.nextLong();
+            low = random.nextLong();
+        } while (high == 0L && low == 0L);
+        return toHex(high) + toHex(low);
+    }
+
+    public static String newSpanId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0L);
+        return toHex(id);
+    }
+
+    public String traceId() {
+        return traceId;
+    }
+
+    public String spanId() {
+        return spanId;
+    }
+
+    public String format() {
+        return VERSION + "-" + traceId + "-" + spanId + "-" + flags;
+    }
+
+    /**
+     * trace-id 合法的 32 位 hex 时原样沿用，否则（如旧的 UUID 格式）返回 null
+     */
+    public static String normalizeTraceId(String traceId) {
+        return isHex(traceId, 32) && !INVALID_TRACE_ID.equals(traceId) ? traceId : null;
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        return hex.length() == 16 ? hex : "0".repeat(16 - hex.length()) + hex;
+    }
+
+    private static boolean isHex(String s, int length) {
+        if (s == null || s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
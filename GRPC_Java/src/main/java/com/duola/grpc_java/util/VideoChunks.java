@@ -0,0 +1,175 @@
+package com.duola.grpc_java.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.util.Timestamps;
+import io.grpc.ai.InputEnvelope;
+import io.grpc.ai.StreamFrame;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 视频分块上传：把视频按固定大小切成连续的 StreamFrame，每块一个 kind="video_chunk" 的 InputEnvelope，
+ * tags 中携带 offset（块在视频中的字节偏移）、total_size 与 final（最后一块为 "true"），frame_index 为块序号。
+ * 服务端按 offset 写入临时文件，收到 final 块后开始解码，单次上传占用的堆内存以块大小为上限。
+ */
+public final class VideoChunks {
+
+    public static final String KIND = "video_chunk";
+    public static final String TAG_OFFSET = "offset";
+    public static final String TAG_TOTAL_SIZE = "total_size";
+    public static final String TAG_FINAL = "final";
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    // 每次映射的窗口大小，超过 2GB 的文件也能逐段映射
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private static final long READY_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private VideoChunks() {}
+
+    /**
+     * 发送一个块，返回 false 表示调用已取消，停止发送
+     */
+    @FunctionalInterface
+    public interface ChunkSink {
+        boolean send(StreamFrame frame) throws Exception;
+    }
+
+    public static StreamFrame chunkFrame(ByteString data, String contentType, long chunkIndex,
+                                         long offset, long totalSize, boolean last) {
+        InputEnvelope input = InputEnvelope.newBuilder()
+                .setKind(KIND)
+                .setContentType(contentType)
+                .setBinary(data)
+                .putTags(TAG_OFFSET, Long.toString(offset))
+                .putTags(TAG_TOTAL_SIZE, Long.toString(totalSize))
+                .putTags(TAG_FINAL, Boolean.toString(last))
+                .build();
+        return StreamFrame.newBuilder()
+                .addInputs(input)
+                .setFrameIndex(chunkIndex)
+                .setTs(Timestamps.fromMillis(System.currentTimeMillis()))
+                .build();
+    }
+
+    /**
+     * 从文件通道顺序读取并分块发送，复用同一个读缓冲区
+     *
+     * @return 发送的块数；中途取消时返回 -1
+     */
+    public static int sendFile(FileChannel channel, String contentType, int chunkSize, ChunkSink sink) throws Exception {
+        long totalSize = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(chunkSize, totalSize)));
+        long offset = 0;
+        int chunks = 0;
+        do {
+            buffer.clear();
+            while (buffer.hasRemaining() && offset + buffer.position() < totalSize) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of video at offset " + (offset + buffer.position()));
+                }
+            }
+            buffer.flip();
+            int length = buffer.remaining();
+            boolean last = offset + length >= totalSize;
+            if (!sink.send(chunkFrame(ByteString.copyFrom(buffer), contentType, chunks, offset, totalSize, last))) {
+                return -1;
+            }
+            offset += length;
+            chunks++;
+        } while (offset < totalSize);
+        return chunks;
+    }
+
+    /**
+     * 按窗口映射文件并分块发送。块直接包装映射区域（不复制到堆上），序列化时才从页缓存读取；
+     * 映射在缓冲区被回收时释放，文件在发送完成后删除也不影响已建立的映射
+     *
+     * @return 发送的块数；中途取消时返回 -1
+     */
+    public static int sendMapped(FileChannel channel, String contentType, int chunkSize, ChunkSink sink) throws Exception {
+        long totalSize = channel.size();
+        long window = Math.max(chunkSize, MAP_WINDOW / chunkSize * chunkSize);
+        long offset = 0;
+        int chunks = 0;
+        do {
+            long regionSize = Math.min(window, totalSize - offset);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, regionSize);
+            int position = 0;
+            do {
+                int length = (int) Math.min(chunkSize, regionSize - position);
+                ByteString data = UnsafeByteOperations.unsafeWrap(region.slice(position, length));
+                boolean last = offset + position + length >= totalSize;
+                if (!sink.send(chunkFrame(data, contentType, chunks, offset + position, totalSize, last))) {
+                    return -1;
+                }
+                position += length;
+                chunks++;
+            } while (position < regionSize);
+            offset += regionSize;
+        } while (offset < totalSize);
+        return chunks;
+    }
+
+    /**
+     * 按块解码 Base64 字符串并发送，不生成完整的解码后字节数组
+     *
+     * @return 发送的块数；中途取消时返回 -1
+     */
+    public static int sendBase64(String base64, String contentType, int chunkSize, ChunkSink sink) throws Exception {
+        String encoded = base64.trim();
+        if (encoded.length() % 4 != 0) {
+            throw new IllegalArgumentException("Invalid Base64 video length: " + encoded.length());
+        }
+        int padding = encoded.endsWith("==") ? 2 : encoded.endsWith("=") ? 1 : 0;
+        long totalSize = (long) encoded.length() / 4 * 3 - padding;
+        // 每块对应的字符数取 4 的倍数，保证块边界落在完整的 Base64 分组上
+        int charsPerChunk = Math.max(1, chunkSize / 3) * 4;
+        Base64.Decoder decoder = Base64.getDecoder();
+        long offset = 0;
+        int chunks = 0;
+        int start = 0;
+        do {
+            int end = Math.min(encoded.length(), start + charsPerChunk);
+            byte[] data = decoder.decode(encoded.substring(start, end));
+            boolean last = end >= encoded.length();
+            if (!sink.send(chunkFrame(ByteString.copyFrom(data), contentType, chunks, offset, totalSize, last))) {
+                return -1;
+            }
+            offset += data.length;
+            start = end;
+            chunks++;
+        } while (start < encoded.length());
+        return chunks;
+    }
+
+    /**
+     * 等待 gRPC 发送缓冲可写，避免在慢连接上把整个视频堆积在传输层缓冲里
+     *
+     * @return false 表示等待期间调用已取消
+     */
+    public static boolean awaitReady(StreamObserver<?> requestObserver, BooleanSupplier cancelled) {
+        if (!(requestObserver instanceof ClientCallStreamObserver)) {
+            return !cancelled.getAsBoolean();
+        }
+        ClientCallStreamObserver<?> call = (ClientCallStreamObserver<?>) requestObserver;
+        while (!call.isReady()) {
+            if (cancelled.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(READY_POLL_NANOS);
+        }
+        return !cancelled.getAsBoolean();
+    }
+}
@@ -0,0 +1,78 @@
+package com.duola.grpc_java.controller;
+
+import com.duola.grpc_java.load.InProcessBackends;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 租户并发流名额随请求结束归还：同一租户顺序发出超过 max-streams 次 SSE 请求都应被接受
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "grpc.server.host=" + InProcessBackends.NAME_PREFIX + "0",
+        "grpc.server.port=0",
+        "inference.tenant.requests-per-second=0",
+        "inference.tenant.max-streams=2",
+        "logging.level.com.duola.grpc_java=WARN"
+})
+class TenantStreamAdmissionTests {
+
+    private static final String IMAGE = Base64.getEncoder().encodeToString(new byte[1024]);
+
+    @Value("${local.server.port}")
+    private int port;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @TestConfiguration
+    static class InProcessBackendConfig {
+
+        @Bean(destroyMethod = "close")
+        @Primary
+        InProcessBackends inProcessBackends() throws IOException {
+            return new InProcessBackends(1, "simulated", 1L, 0.0, 1);
+        }
+    }
+
+    @Test
+    void sequentialStreamsReleaseTheirSlots() throws Exception {
+        String body = "{\"image\":\"" + IMAGE + "\",\"return_overlay\":false}";
+        for (int i = 0; i < 6; i++) {
+            HttpResponse<String> sse = http.send(post("/api/v1/stream/inference/sse", body, "acme"),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, sse.statusCode(), "sse request " + i);
+            assertTrue(sse.body().contains("\"success\":true"), sse.body());
+
+            HttpResponse<String> camera = http.send(post("/api/v1/camera/stream/inference",
+                            "{\"image\":\"" + IMAGE + "\",\"return_overlay\":false,\"session_id\":\"slots\"}", "acme"),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, camera.statusCode(), "camera request " + i);
+        }
+    }
+
+    private HttpRequest post(String path, String json, String tenant) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .header("X-Tenant-Id", tenant)
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+}
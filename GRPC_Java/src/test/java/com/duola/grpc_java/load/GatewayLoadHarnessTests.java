@@ -0,0 +1,233 @@
+package com.duola.grpc_java.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 网关端到端压测：Nacos 替换为进程内后端实例，按配置并发压 REST 接口，输出 HdrHistogram 延迟分位数与帧率。
+ * 默认不运行，启用方式：
+ * mvn test -Dtest=GatewayLoadHarnessTests -Dload.enabled=true [-Dload.concurrency=16 -Dload.duration-seconds=30
+ * -Dload.instances=2 -Dload.backend=simulated|echo -Dload.latency-ms=20 -Dload.jitter=0.2 -Dload.boxes=20 -Dload.image-kb=100]
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "grpc.server.host=" + InProcessBackends.NAME_PREFIX + "0",
+        "grpc.server.port=0",
+        "logging.level.com.duola.grpc_java=WARN"
+})
+@EnabledIfSystemProperty(named = "load.enabled", matches = "true")
+class GatewayLoadHarnessTests {
+
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 8);
+    private static final long DURATION_SECONDS = Long.getLong("load.duration-seconds", 10L);
+    private static final int IMAGE_KB = Integer.getInteger("load.image-kb", 100);
+
+    private static String imageBase64;
+
+    @Value("${local.server.port}")
+    private int port;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    @TestConfiguration
+    static class InProcessBackendConfig {
+
+        @Bean(destroyMethod = "close")
+        @Primary
+        InProcessBackends inProcessBackends() throws IOException {
+            return new InProcessBackends(
+                    Integer.getInteger("load.instances", 2),
+                    System.getProperty("load.backend", "simulated"),
+                    Long.getLong("load.latency-ms", 20L),
+                    Double.parseDouble(System.getProperty("load.jitter", "0.2")),
+                    Integer.getInteger("load.boxes", 20));
+        }
+    }
+
+    @BeforeAll
+    static void prepareImage() {
+        byte[] image = new byte[IMAGE_KB * 1024];
+        new Random(42).nextBytes(image);
+        imageBase64 = Base64.getEncoder().encodeToString(image);
+    }
+
+    @Test
+    void singleInference() throws Exception {
+        String body = "{\"image\":\"" + imageBase64 + "\",\"return_overlay\":false}";
+        LoadResult result = drive("/api/v1/inference", () -> {
+            HttpResponse<String> response = http.send(post("/api/v1/inference", body), HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 && response.body().contains("\"success\":true") ? 1 : -1;
+        });
+        assertHealthy(result);
+    }
+
+    @Test
+    void streamInferenceSse() throws Exception {
+        String body = "{\"image\":\"" + imageBase64 + "\",\"return_overlay\":false}";
+        LoadResult result = drive("/api/v1/stream/inference/sse", () -> countSseFrames(post("/api/v1/stream/inference/sse", body)));
+        assertHealthy(result);
+    }
+
+    @Test
+    void cameraFrameInference() throws Exception {
+        String body = "{\"image\":\"" + imageBase64 + "\",\"return_overlay\":false,\"session_id\":\"load\"}";
+        LoadResult result = drive("/api/v1/camera/frame/inference", () -> countSseFrames(post("/api/v1/camera/frame/inference", body)));
+        assertHealthy(result);
+    }
+
+    /**
+     * 压测期间不允许出现失败请求，且至少有一次成功，否则延迟数字没有意义
+     */
+    private static void assertHealthy(LoadResult result) {
+        assertEquals(0, result.errors(), "failed requests: " + result.errors() + "/" + result.requests());
+        assertTrue(result.requests() - result.errors() > 0);
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    /**
+     * 读完整个 SSE 响应，返回成功的 frame 事件数；出现 error 事件或失败帧时返回 -1
+     */
+    private int countSseFrames(HttpRequest request) throws Exception {
+        HttpResponse<Stream<String>> response = http.send(request, HttpResponse.BodyHandlers.ofLines());
+        if (response.statusCode() != 200) {
+            return -1;
+        }
+        int frames = 0;
+        boolean failed = false;
+        String event = "";
+        try (Stream<String> lines = response.body()) {
+            for (String line : (Iterable<String>) lines::iterator) {
+                if (line.startsWith("event:")) {
+                    event = line.substring(6).trim();
+                    failed |= "error".equals(event) || "timeout".equals(event);
+                } else if (line.startsWith("data:") && "frame".equals(event)) {
+                    if (line.contains("\"success\":true")) {
+                        frames++;
+                    } else {
+                        failed = true;
+                    }
+                }
+            }
+        }
+        return failed ? -1 : frames;
+    }
+
+    @FunctionalInterface
+    interface Call {
+        /**
+         * 执行一次请求，返回得到的结果帧数，失败返回负数
+         */
+        int execute() throws Exception;
+    }
+
+    record LoadResult(long requests, long errors, long frames, Histogram latency) {
+    }
+
+    /**
+     * 闭环压测：CONCURRENCY 个线程在 DURATION_SECONDS 内循环发请求，每次请求的完整耗时记入直方图
+     */
+    private LoadResult drive(String name, Call call) throws Exception {
+        ConcurrentHistogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(5), 3);
+        LongAdder requests = new LongAdder();
+        LongAdder errors = new LongAdder();
+        LongAdder frames = new LongAdder();
+
+        // 预热：每个并发先跑一次，建立连接、完成类加载与 JIT 的首轮编译
+        ExecutorService pool = Executors.newFixedThreadPool(CONCURRENCY);
+        try {
+            List<Future<?>> warmup = new ArrayList<>();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                warmup.add(pool.submit(() -> call.execute()));
+            }
+            for (Future<?> f : warmup) {
+                f.get();
+            }
+
+            long startNanos = System.nanoTime();
+            long endNanos = startNanos + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                workers.add(pool.submit(() -> {
+                    while (System.nanoTime() < endNanos) {
+                        long t0 = System.nanoTime();
+                        int n;
+                        try {
+                            n = call.execute();
+                        } catch (Exception e) {
+                            n = -1;
+                        }
+                        latency.recordValue(Math.min(latency.getHighestTrackableValue(),
+                                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - t0)));
+                        requests.increment();
+                        if (n < 0) {
+                            errors.increment();
+                        } else {
+                            frames.add(n);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : workers) {
+                f.get();
+            }
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+            LoadResult result = new LoadResult(requests.sum(), errors.sum(), frames.sum(), latency);
+            report(name, result, seconds);
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void report(String name, LoadResult result, double seconds) {
+        Histogram h = result.latency();
+        System.out.printf("[load] %s concurrency=%d duration=%.1fs requests=%d errors=%d req/s=%.1f frames/s=%.1f%n",
+                name, CONCURRENCY, seconds, result.requests(), result.errors(),
+                result.requests() / seconds, result.frames() / seconds);
+        System.out.printf("[load]   latency ms p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                h.getValueAtPercentile(50) / 1000.0,
+                h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0,
+                h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0);
+    }
+}
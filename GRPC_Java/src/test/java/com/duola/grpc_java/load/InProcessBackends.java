@@ -0,0 +1,61 @@
+package com.duola.grpc_java.load;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.duola.grpc_java.server.imp.InferenceStreamServiceImpl;
+import com.duola.grpc_java.service.InstanceDiscovery;
+import io.grpc.BindableService;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 代替 Nacos 的静态实例列表：每个实例是一个进程内 gRPC 服务，实例 ip 即进程内服务名
+ */
+public class InProcessBackends implements InstanceDiscovery, AutoCloseable {
+
+    public static final String NAME_PREFIX = "load-backend-";
+
+    private final List<Server> servers = new ArrayList<>();
+    private final List<Instance> instances = new ArrayList<>();
+
+    /**
+     * @param backend simulated（按延迟模拟 YOLO）或 echo（InferenceStreamServiceImpl）
+     */
+    public InProcessBackends(int count, String backend, long latencyMs, double jitter, int boxes) throws IOException {
+        for (int i = 0; i < count; i++) {
+            String name = NAME_PREFIX + i;
+            BindableService service = "echo".equals(backend)
+                    ? new InferenceStreamServiceImpl()
+                    : new SimulatedYoloBackend(latencyMs, jitter, boxes);
+            servers.add(InProcessServerBuilder.forName(name).addService(service).build().start());
+
+            Instance instance = new Instance();
+            instance.setIp(name);
+            instance.setPort(0);
+            instance.setWeight(1.0);
+            instance.setHealthy(true);
+            instances.add(instance);
+        }
+    }
+
+    @Override
+    public List<Instance> healthyInstances() {
+        return Collections.unmodifiableList(instances);
+    }
+
+    @Override
+    public ManagedChannel createChannel(Instance instance) {
+        return InProcessChannelBuilder.forName(instance.getIp()).build();
+    }
+
+    @Override
+    public void close() {
+        servers.forEach(Server::shutdownNow);
+    }
+}
@@ -0,0 +1,107 @@
+package com.duola.grpc_java.load;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import io.grpc.ai.*;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟 Python YOLO 服务端的协议行为：open/close 回 ack，每帧按配置延迟后返回固定数量的检测框
+ */
+class SimulatedYoloBackend extends InferenceStreamServiceGrpc.InferenceStreamServiceImplBase {
+
+    private final long latencyMicros;
+    private final double jitter;
+    private final Any detections;
+
+    SimulatedYoloBackend(long latencyMs, double jitter, int boxes) {
+        this.latencyMicros = TimeUnit.MILLISECONDS.toMicros(latencyMs);
+        this.jitter = jitter;
+        this.detections = Any.pack(detectionStruct(boxes));
+    }
+
+    @Override
+    public StreamObserver<StreamRequest> stream(StreamObserver<StreamResponse> responseObserver) {
+        return new StreamObserver<StreamRequest>() {
+            @Override
+            public void onNext(StreamRequest request) {
+                if (request.hasOpen()) {
+                    responseObserver.onNext(ack(0, "Stream opened"));
+                } else if (request.hasFrame()) {
+                    long runtimeMicros = simulateInference();
+                    responseObserver.onNext(StreamResponse.newBuilder()
+                            .setFrame(FrameResult.newBuilder()
+                                    .setFrameIndex(request.getFrame().getFrameIndex())
+                                    .addResults(ResultEnvelope.newBuilder()
+                                            .setKind("detections")
+                                            .setContentType("application/x-protobuf;type=\"google.protobuf.Struct\"")
+                                            .setMessage(detections)
+                                            .build())
+                                    .setMeta(Struct.newBuilder()
+                                            .putFields("runtime_ms", Value.newBuilder()
+                                                    .setNumberValue(runtimeMicros / 1000.0).build())
+                                            .build()))
+                            .build());
+                } else if (request.hasClose()) {
+                    // 与 Python 服务端一致：确认关闭后立即结束响应流
+                    responseObserver.onNext(ack(0, "Stream closed"));
+                    responseObserver.onCompleted();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        };
+    }
+
+    private long simulateInference() {
+        long micros = latencyMicros;
+        if (jitter > 0) {
+            micros += (long) (latencyMicros * jitter * ThreadLocalRandom.current().nextDouble(-1.0, 1.0));
+        }
+        if (micros > 0) {
+            try {
+                TimeUnit.MICROSECONDS.sleep(micros);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return micros;
+    }
+
+    private static StreamResponse ack(int code, String message) {
+        return StreamResponse.newBuilder()
+                .setAck(StreamAck.newBuilder()
+                        .setStatus(CustomStatus.newBuilder().setCode(code).setMessage(message).build())
+                        .build())
+                .build();
+    }
+
+    private static Struct detectionStruct(int boxes) {
+        ListValue.Builder items = ListValue.newBuilder();
+        for (int i = 0; i < boxes; i++) {
+            items.addValues(Value.newBuilder().setStructValue(Struct.newBuilder()
+                    .putFields("class_name", Value.newBuilder().setStringValue(i % 2 == 0 ? "person" : "car").build())
+                    .putFields("class_id", Value.newBuilder().setNumberValue(i % 80).build())
+                    .putFields("score", Value.newBuilder().setNumberValue(0.5 + (i % 50) / 100.0).build())
+                    .putFields("x", Value.newBuilder().setNumberValue(i % 640).build())
+                    .putFields("y", Value.newBuilder().setNumberValue(i % 480).build())
+                    .putFields("width", Value.newBuilder().setNumberValue(32 + i % 64).build())
+                    .putFields("height", Value.newBuilder().setNumberValue(48 + i % 96).build())
+                    .build()).build());
+        }
+        return Struct.newBuilder()
+                .putFields("items", Value.newBuilder().setListValue(items).build())
+                .build();
+    }
+}
@@ -0,0 +1,64 @@
+package com.duola.grpc_java.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CameraSessionStatsTests {
+
+    @Test
+    void countsAreExactUnderConcurrency() throws Exception {
+        CameraSessionStats stats = new CameraSessionStats();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    stats.recordFrame(i % 2, 5);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(80_000, stats.getTotalFrames());
+        assertEquals(40_000, stats.getDetectedFrames());
+        assertEquals(40_000, stats.getDetectedObjects());
+    }
+
+    @Test
+    void windowDropsOldSecondsAndReportsPercentiles() {
+        long start = 1_000_000L;
+        CameraSessionStats stats = new CameraSessionStats(10, start);
+        // 前 10 秒每秒 30 帧，延迟 10 ms；其中每秒 2 帧 200 ms
+        for (int s = 0; s < 10; s++) {
+            for (int i = 0; i < 30; i++) {
+                stats.recordFrame(1, i < 2 ? 200 : 10, start + s * 1000L + i);
+            }
+        }
+        CameraSessionStats.Window window = stats.window(start + 9_999L);
+        assertEquals(30.0, window.getFps(), 0.5);
+        assertEquals(11.0, window.getP50LatencyMs());
+        assertTrue(window.getP95LatencyMs() >= 200.0);
+
+        // 空闲 20 秒后窗口内没有帧
+        CameraSessionStats.Window idle = stats.window(start + 30_000L);
+        assertEquals(0.0, idle.getFps());
+        assertNull(idle.getP50LatencyMs());
+        assertEquals(300, stats.getTotalFrames());
+    }
+
+    @Test
+    void latencyBinsCoverTheirValues() {
+        for (long v = 0; v < 100_000; v++) {
+            int bin = CameraSessionStats.binOf(v);
+            assertTrue(CameraSessionStats.upperBoundOf(bin) >= v);
+            assertTrue(bin == 0 || CameraSessionStats.upperBoundOf(bin - 1) < v);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.duola.grpc_java.metrics;
+
+import com.duola.grpc_java.metrics.InferenceMetrics.RequestTimer;
+import com.duola.grpc_java.metrics.InferenceMetrics.Stage;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InferenceMetricsTests {
+
+    @Test
+    void recordsStagesAndBackendRuntimeWithTags() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RequestTimer timer = new InferenceMetrics(registry).start("yolo-detection-nano", "single");
+
+        timer.openSent();
+        timer.ackReceived();
+        timer.ackReceived();
+        timer.frameSent(0);
+        timer.frameResult(0);
+        timer.backendRuntime(12.5);
+
+        assertEquals(1, stage(registry, "first_ack").count());
+        assertEquals(1, stage(registry, "frame_result").count());
+        Timer runtime = registry.get(InferenceMetrics.BACKEND_RUNTIME_TIMER)
+                .tag("model", "yolo-detection-nano").tag("endpoint", "single").timer();
+        assertEquals(12.5, runtime.totalTime(TimeUnit.MILLISECONDS), 1e-6);
+    }
+
+    @Test
+    void noopTimerRecordsNothing() {
+        RequestTimer.NOOP.record(Stage.DECODE, System.nanoTime());
+        RequestTimer.NOOP.ackReceived();
+        RequestTimer.NOOP.frameResult(3);
+    }
+
+    private static Timer stage(SimpleMeterRegistry registry, String stage) {
+        return registry.get(InferenceMetrics.STAGE_TIMER)
+                .tag("stage", stage).tag("model", "yolo-detection-nano").tag("endpoint", "single").timer();
+    }
+}
@@ -0,0 +1,132 @@
+package com.duola.grpc_java.metrics;
+
+import com.duola.grpc_java.server.imp.InferenceStreamServiceImpl;
+import com.duola.grpc_java.util.TraceParent;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ai.InferenceHeader;
+import io.grpc.ai.InferenceStreamServiceGrpc;
+import io.grpc.ai.StreamOpen;
+import io.grpc.ai.StreamRequest;
+import io.grpc.ai.StreamResponse;
+import io.grpc.ai.TraceContext;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelemetryInterceptorTests {
+
+    @Test
+    void parsesAndFormatsTraceParent() {
+        String value = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+        TraceParent parsed = TraceParent.parse(value);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", parsed.traceId());
+        assertEquals("00f067aa0ba902b7", parsed.spanId());
+        assertEquals(value, parsed.format());
+
+        assertNull(TraceParent.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        assertNull(TraceParent.parse("00-4BF92F3577B34DA6A3CE929D0E0E4736-00f067aa0ba902b7-01"));
+        assertNull(TraceParent.parse("garbage"));
+        assertEquals(32, TraceParent.newTraceId().length());
+    }
+
+    @Test
+    void callOptionTracePrecedesThreadMdc() {
+        String edgeTrace = TraceParent.newTraceId();
+        MDC.put("trace_id", TraceParent.newTraceId());
+        try {
+            TraceParent outgoing = TelemetryClientInterceptor.outgoingTraceParent(
+                    CallOptions.DEFAULT.withOption(TelemetryClientInterceptor.TRACE_ID, edgeTrace));
+            assertEquals(edgeTrace, outgoing.traceId());
+        } finally {
+            MDC.clear();
+        }
+        assertEquals(32, TelemetryClientInterceptor.outgoingTraceParent(CallOptions.DEFAULT).traceId().length());
+    }
+
+    @Test
+    void propagatesTraceAndRecordsCallMetrics() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AtomicReference<TraceContext> serverTrace = new AtomicReference<>();
+        ServerInterceptor capture = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> io.grpc.ServerCall.Listener<ReqT> interceptCall(io.grpc.ServerCall<ReqT, RespT> call,
+                                                                                 io.grpc.Metadata headers,
+                                                                                 io.grpc.ServerCallHandler<ReqT, RespT> next) {
+                serverTrace.set(TelemetryServerInterceptor.TRACE_CONTEXT.get());
+                return next.startCall(call, headers);
+            }
+        };
+
+        String name = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(ServerInterceptors.intercept(new InferenceStreamServiceImpl(),
+                        capture, new TelemetryServerInterceptor(registry)))
+                .build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).directExecutor()
+                .intercept(new TelemetryClientInterceptor(registry))
+                .build();
+        String traceId = TraceParent.newTraceId();
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            MDC.put("trace_id", traceId);
+            StreamObserver<StreamRequest> requests = InferenceStreamServiceGrpc.newStub(channel)
+                    .stream(new StreamObserver<>() {
+                        @Override
+                        public void onNext(StreamResponse value) {
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            done.countDown();
+                        }
+                    });
+            MDC.clear();
+            requests.onNext(StreamRequest.newBuilder()
+                    .setOpen(StreamOpen.newBuilder().setHeader(InferenceHeader.getDefaultInstance()))
+                    .build());
+            requests.onCompleted();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+
+        TraceContext trace = serverTrace.get();
+        assertEquals(traceId, trace.getTraceId());
+        assertEquals(16, trace.getParentSpanId().length());
+        assertNotEquals(trace.getParentSpanId(), trace.getSpanId());
+
+        String method = InferenceStreamServiceGrpc.getStreamMethod().getFullMethodName();
+        assertEquals(1, registry.get("grpc.client.message.size")
+                .tag("method", method).tag("direction", "sent").summary().count());
+        assertEquals(1, registry.get("grpc.server.message.size")
+                .tag("method", method).tag("direction", "received").summary().count());
+        assertTrue(registry.get("grpc.client.message.size")
+                .tag("method", method).tag("direction", "received").summary().totalAmount() > 0);
+        assertEquals(1, registry.get("grpc.client.call.duration")
+                .tag("method", method).tag("status", "OK").timer().count());
+        assertEquals(1, registry.get("grpc.server.call.duration")
+                .tag("method", method).tag("status", "OK").timer().count());
+    }
+}
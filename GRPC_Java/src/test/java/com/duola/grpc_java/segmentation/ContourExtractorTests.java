@@ -0,0 +1,93 @@
+package com.duola.grpc_java.segmentation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContourExtractorTests {
+
+    @Test
+    void simplifiesRectangleToFourCorners() {
+        int width = 20;
+        int height = 10;
+        byte[] bitmap = new byte[width * height];
+        for (int y = 2; y < 8; y++) {
+            for (int x = 3; x < 17; x++) {
+                bitmap[y * width + x] = 1;
+            }
+        }
+        ContourExtractor.MaskShape shape = new ContourExtractor(0.1).extract(bitmap, width, height, 100, 200);
+        assertEquals(1, shape.contours().size());
+        float[] polygon = shape.contours().get(0);
+        assertEquals(8, polygon.length);
+        assertEquals(103f, polygon[0]);
+        assertEquals(202f, polygon[1]);
+        // 外轮廓经过边界像素坐标：13 x 5
+        assertEquals(65.0, shape.area(), 1e-6);
+        assertEquals(36.0, shape.perimeter(), 1e-6);
+    }
+
+    @Test
+    void tracesEachComponentAndDropsNoise() {
+        int width = 30;
+        int height = 30;
+        byte[] bitmap = new byte[width * height];
+        // 圆
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < 15; x++) {
+                if ((x - 7) * (x - 7) + (y - 15) * (y - 15) <= 36) {
+                    bitmap[y * width + x] = 1;
+                }
+            }
+        }
+        // 斜线（单像素宽）
+        for (int i = 0; i < 10; i++) {
+            bitmap[(5 + i) * width + 18 + i] = 1;
+        }
+        // 噪声点
+        bitmap[28 * width + 28] = 1;
+
+        ContourExtractor.MaskShape shape = new ContourExtractor(0.02).extract(bitmap, width, height, 0, 0);
+        assertEquals(2, shape.contours().size());
+        // 行扫描先遇到斜线，它简化为两个端点
+        assertEquals(4, shape.contours().get(0).length);
+        float[] circle = shape.contours().get(1);
+        assertTrue(circle.length / 2 >= 6 && circle.length / 2 < 30, "vertices: " + circle.length / 2);
+        // 斜线面积为 0，总面积即圆的多边形面积
+        assertTrue(shape.area() > 80 && shape.area() < 115, "area: " + shape.area());
+    }
+
+    @Test
+    void perCallToleranceOverridesDefault() {
+        int size = 40;
+        byte[] bitmap = new byte[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if ((x - 20) * (x - 20) + (y - 20) * (y - 20) <= 15 * 15) {
+                    bitmap[y * size + x] = 1;
+                }
+            }
+        }
+        ContourExtractor extractor = new ContourExtractor(0.02);
+        int fine = extractor.extract(bitmap, size, size, 0, 0).contours().get(0).length;
+        int coarse = extractor.extract(bitmap, size, size, 0, 0, 0.2).contours().get(0).length;
+        assertTrue(coarse < fine, "coarse " + coarse + " vs fine " + fine);
+        // 暂存数组复用不影响默认容差的结果
+        assertEquals(fine, extractor.extract(bitmap, size, size, 0, 0).contours().get(0).length);
+    }
+
+    @Test
+    void extractsFromEncodedMask() {
+        byte[] bitmap = new byte[8 * 8];
+        for (int y = 1; y < 7; y++) {
+            for (int x = 1; x < 7; x++) {
+                bitmap[y * 8 + x] = 1;
+            }
+        }
+        EncodedMask mask = EncodedMask.rle(0, 10, 10, 8, 8, MaskCodec.toCocoString(MaskCodec.rleEncode(bitmap, 8, 8)));
+        ContourExtractor.MaskShape shape = new ContourExtractor(0.1).extract(mask);
+        assertEquals(25.0, shape.area(), 1e-6);
+        assertEquals(20.0, shape.perimeter(), 1e-6);
+    }
+}
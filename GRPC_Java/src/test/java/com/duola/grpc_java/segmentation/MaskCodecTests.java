@@ -0,0 +1,79 @@
+package com.duola.grpc_java.segmentation;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import io.grpc.ai.ResultEnvelope;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MaskCodecTests {
+
+    // 3x4 位图（行优先）
+    private static final byte[] BITMAP = {
+            0, 1, 1, 0,
+            0, 1, 1, 1,
+            0, 0, 1, 0
+    };
+
+    @Test
+    void rleRoundTripsThroughCocoString() {
+        int[] counts = MaskCodec.rleEncode(BITMAP, 4, 3);
+        // 列优先：第 0 列全 0，第 1 列 1,1,0，第 2 列 1,1,1，第 3 列 0,1,0
+        assertArrayEquals(new int[]{3, 2, 1, 3, 1, 1, 1}, counts);
+        assertEquals(6, MaskCodec.rleArea(counts));
+
+        String coco = MaskCodec.toCocoString(counts);
+        assertArrayEquals(counts, MaskCodec.fromCocoString(coco));
+        assertArrayEquals(BITMAP, MaskCodec.rleDecode(counts, 4, 3));
+
+        // 与后端 mask_codec.counts_to_string 的输出一致
+        assertArrayEquals(new int[]{0, 3, 5, 2, 100, 40000, 7}, MaskCodec.fromCocoString("035Oo2nQW1SM"));
+        assertEquals("035Oo2nQW1SM", MaskCodec.toCocoString(new int[]{0, 3, 5, 2, 100, 40000, 7}));
+    }
+
+    @Test
+    void bitpackedRoundTrips() {
+        byte[] large = new byte[130];
+        large[0] = 1;
+        large[64] = 1;
+        large[129] = 1;
+        long[] words = MaskCodec.pack(large, 13, 10);
+        assertEquals(3, words.length);
+        assertEquals(3, MaskCodec.bitCount(words));
+        assertArrayEquals(large, MaskCodec.unpack(words, 13, 10));
+    }
+
+    @Test
+    void decodesEnvelopeLazily() {
+        long[] words = MaskCodec.pack(BITMAP, 4, 3);
+        ResultEnvelope envelope = ResultEnvelope.newBuilder()
+                .setKind(MaskCodec.KIND)
+                .setContentType(MaskCodec.ACCEPT_BITPACKED)
+                .setBinary(ByteString.copyFrom(MaskCodec.toBytes(words)))
+                .setMeta(Struct.newBuilder()
+                        .putFields("index", Value.newBuilder().setNumberValue(2).build())
+                        .putFields("x", Value.newBuilder().setNumberValue(100).build())
+                        .putFields("y", Value.newBuilder().setNumberValue(50).build())
+                        .putFields("width", Value.newBuilder().setNumberValue(4).build())
+                        .putFields("height", Value.newBuilder().setNumberValue(3).build()))
+                .build();
+
+        EncodedMask mask = MaskCodec.fromEnvelope(envelope);
+        assertEquals(2, mask.getIndex());
+        assertEquals(6, mask.getArea());
+        assertFalse(mask.isDecoded());
+
+        assertTrue(mask.contains(101, 50));
+        assertFalse(mask.contains(100, 50));
+        assertFalse(mask.contains(10, 10));
+        assertTrue(mask.isDecoded());
+
+        EncodedMask rle = EncodedMask.rle(0, 0, 0, 4, 3, MaskCodec.toCocoString(MaskCodec.rleEncode(BITMAP, 4, 3)));
+        assertArrayEquals(BITMAP, rle.decode());
+    }
+}
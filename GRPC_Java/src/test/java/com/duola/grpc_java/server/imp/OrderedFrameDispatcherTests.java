@@ -0,0 +1,99 @@
+package com.duola.grpc_java.server.imp;
+
+import io.grpc.ai.FrameResult;
+import io.grpc.ai.StreamResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderedFrameDispatcherTests {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void orderedModeEmitsInSubmissionOrder() throws Exception {
+        List<Long> emitted = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger credits = new AtomicInteger();
+        OrderedFrameDispatcher dispatcher = new OrderedFrameDispatcher(pool, 4, true,
+                resp -> emitted.add(resp.getFrame().getFrameIndex()), credits::incrementAndGet);
+
+        int frames = 200;
+        for (int i = 0; i < frames; i++) {
+            long index = i;
+            dispatcher.submit(() -> slowResult(index));
+        }
+        CountDownLatch drained = new CountDownLatch(1);
+        dispatcher.whenDrained(drained::countDown);
+
+        assertTrue(drained.await(10, TimeUnit.SECONDS));
+        assertEquals(frames, emitted.size());
+        for (int i = 0; i < frames; i++) {
+            assertEquals(i, emitted.get(i));
+        }
+        assertEquals(frames, credits.get());
+    }
+
+    @Test
+    void unorderedModeEmitsEveryFrame() throws Exception {
+        List<Long> emitted = Collections.synchronizedList(new ArrayList<>());
+        OrderedFrameDispatcher dispatcher = new OrderedFrameDispatcher(pool, 4, false,
+                resp -> emitted.add(resp.getFrame().getFrameIndex()), () -> { });
+
+        for (int i = 0; i < 50; i++) {
+            long index = i;
+            dispatcher.submit(() -> slowResult(index));
+        }
+        CountDownLatch drained = new CountDownLatch(1);
+        dispatcher.whenDrained(drained::countDown);
+
+        assertTrue(drained.await(10, TimeUnit.SECONDS));
+        assertEquals(50, emitted.size());
+        assertEquals(50, emitted.stream().distinct().count());
+    }
+
+    @Test
+    void failedFrameKeepsOrderWithErrorAck() throws Exception {
+        List<StreamResponse> emitted = Collections.synchronizedList(new ArrayList<>());
+        OrderedFrameDispatcher dispatcher = new OrderedFrameDispatcher(pool, 2, true, emitted::add, () -> { });
+
+        dispatcher.submit(() -> slowResult(0));
+        dispatcher.submit(() -> { throw new IllegalStateException("boom"); });
+        dispatcher.submit(() -> slowResult(2));
+        CountDownLatch drained = new CountDownLatch(1);
+        dispatcher.whenDrained(drained::countDown);
+
+        assertTrue(drained.await(10, TimeUnit.SECONDS));
+        assertEquals(3, emitted.size());
+        assertEquals(0, emitted.get(0).getFrame().getFrameIndex());
+        assertEquals(13, emitted.get(1).getAck().getStatus().getCode());
+        assertEquals(2, emitted.get(2).getFrame().getFrameIndex());
+    }
+
+    private static StreamResponse slowResult(long index) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return StreamResponse.newBuilder()
+                .setFrame(FrameResult.newBuilder().setFrameIndex(index).build())
+                .build();
+    }
+}
@@ -0,0 +1,267 @@
+package com.duola.grpc_java.service;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.duola.grpc_java.dto.StreamInferenceRequest;
+import com.duola.grpc_java.dto.StreamInferenceResponse;
+import com.duola.grpc_java.util.PriorityDispatcher;
+import com.duola.grpc_java.util.PriorityDispatcher.Priority;
+import com.google.protobuf.Struct;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.ai.CustomStatus;
+import io.grpc.ai.FrameResult;
+import io.grpc.ai.InferenceStreamServiceGrpc;
+import io.grpc.ai.StreamAck;
+import io.grpc.ai.StreamFrame;
+import io.grpc.ai.StreamRequest;
+import io.grpc.ai.StreamResponse;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchFanOutTests {
+
+    private final ScheduledExecutorService replies = Executors.newScheduledThreadPool(4);
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final List<Server> servers = new ArrayList<>();
+    private final Map<String, ManagedChannel> channels = new HashMap<>();
+
+    @AfterEach
+    void tearDown() {
+        channels.values().forEach(ManagedChannel::shutdownNow);
+        servers.forEach(Server::shutdownNow);
+        replies.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    @Test
+    void resultsMergeInOrderAcrossInstances() throws Exception {
+        FakeBackend slow = new FakeBackend(15, -1);
+        FakeBackend fast = new FakeBackend(1, -1);
+        List<Instance> instances = List.of(start("slow", slow), start("fast", fast));
+        List<String> images = IntStream.range(0, 30)
+                .mapToObj(i -> i == 7 ? " " : "img-" + i)
+                .collect(Collectors.toList());
+        List<Integer> emitted = new CopyOnWriteArrayList<>();
+
+        BatchFanOut.Summary summary = fanOut(images, instances, emitted).run(instances, workers, 10_000);
+
+        List<Integer> expected = IntStream.range(0, 30).filter(i -> i != 7).boxed().collect(Collectors.toList());
+        assertEquals(expected, emitted);
+        assertEquals(new BatchFanOut.Summary(29, 0, false), summary);
+        assertEquals(29, slow.received.get() + fast.received.get());
+        assertTrue(fast.received.get() > slow.received.get());
+        assertTrue(slow.maxInFlight.get() <= 2 && fast.maxInFlight.get() <= 2);
+    }
+
+    @Test
+    void failedInstanceFramesMoveToSurvivor() throws Exception {
+        FakeBackend broken = new FakeBackend(5, 2);
+        FakeBackend healthy = new FakeBackend(2, -1);
+        List<Instance> instances = List.of(start("broken", broken), start("healthy", healthy));
+        List<String> images = IntStream.range(0, 12).mapToObj(i -> "img-" + i).collect(Collectors.toList());
+        List<Integer> emitted = new CopyOnWriteArrayList<>();
+        List<Boolean> success = new CopyOnWriteArrayList<>();
+
+        BatchFanOut.Summary summary = fanOut(images, instances, emitted, success).run(instances, workers, 10_000);
+
+        assertEquals(IntStream.range(0, 12).boxed().collect(Collectors.toList()), emitted);
+        assertFalse(success.contains(false));
+        assertEquals(new BatchFanOut.Summary(12, 0, false), summary);
+    }
+
+    @Test
+    void frameLevelAckFailsOnlyThatImage() throws Exception {
+        FakeBackend backend = new FakeBackend(0, -1, 4);
+        List<Instance> instances = List.of(start("only", backend));
+        List<String> images = IntStream.range(0, 10).mapToObj(i -> "img-" + i).collect(Collectors.toList());
+        List<Integer> emitted = new CopyOnWriteArrayList<>();
+        List<Boolean> success = new CopyOnWriteArrayList<>();
+
+        BatchFanOut.Summary summary = fanOut(images, instances, emitted, success).run(instances, workers, 10_000);
+
+        // 同一条流继续处理坏图之后的帧，只有坏图失败
+        assertEquals(IntStream.range(0, 10).boxed().collect(Collectors.toList()), emitted);
+        assertEquals(IntStream.range(0, 10).mapToObj(i -> i != 4).collect(Collectors.toList()), success);
+        assertEquals(new BatchFanOut.Summary(9, 1, false), summary);
+        assertEquals(9, backend.received.get());
+    }
+
+    @Test
+    void frameLevelAckMatchesItsImageWhenFramesFinishOutOfOrder() throws Exception {
+        // 坏图立即回 ack，前面的帧还在处理；批量流以 ordered 打开，后端把 ack 排在前面的结果之后
+        FakeBackend backend = new FakeBackend(20, -1, 5);
+        List<Instance> instances = List.of(start("only", backend));
+        List<String> images = IntStream.range(0, 12).mapToObj(i -> "img-" + i).collect(Collectors.toList());
+        List<Integer> emitted = new CopyOnWriteArrayList<>();
+        List<Boolean> success = new CopyOnWriteArrayList<>();
+
+        BatchFanOut.Summary summary = fanOut(images, instances, emitted, success).run(instances, workers, 10_000);
+
+        assertEquals(IntStream.range(0, 12).boxed().collect(Collectors.toList()), emitted);
+        assertEquals(IntStream.range(0, 12).mapToObj(i -> i != 5).collect(Collectors.toList()), success);
+        assertEquals(new BatchFanOut.Summary(11, 1, false), summary);
+    }
+
+    private BatchFanOut fanOut(List<String> images, List<Instance> instances, List<Integer> emitted) {
+        return fanOut(images, instances, emitted, new ArrayList<>());
+    }
+
+    private BatchFanOut fanOut(List<String> images, List<Instance> instances, List<Integer> emitted,
+                               List<Boolean> success) {
+        PriorityDispatcher.Lane lane = PriorityDispatcher.unbounded().lane(Priority.BULK);
+        BatchFanOut.Transport transport = (instance, responses) ->
+                InferenceStreamServiceGrpc.newStub(channels.get(instance.getIp())).stream(responses);
+        return new BatchFanOut(images.size(), index -> images.get(index).isBlank(),
+                StreamGrpcInferenceService.batchHeader(new StreamInferenceRequest(), 2), transport,
+                index -> StreamFrame.newBuilder().setFrameIndex(index).build(),
+                result -> new StreamInferenceResponse(true, "ok", (int) result.getFrameIndex()),
+                response -> {
+                    emitted.add(response.getFrameIndex());
+                    success.add(response.getSuccess());
+                },
+                lane, new InstanceOutlierDetector(), 2, instances.size(), () -> false);
+    }
+
+    private Instance start(String name, FakeBackend backend) throws Exception {
+        String serverName = InProcessServerBuilder.generateName();
+        servers.add(InProcessServerBuilder.forName(serverName).addService(backend).build().start());
+        channels.put(name, InProcessChannelBuilder.forName(serverName).build());
+        Instance instance = new Instance();
+        instance.setIp(name);
+        instance.setPort(50051);
+        return instance;
+    }
+
+    /**
+     * 每帧延迟 delayMs 后回结果，delayMs 为 0 时按收到的顺序立即回复；
+     * failAfter 大于 0 时收到第 failAfter 帧后不回结果，直接以 UNAVAILABLE 断流；
+     * badFrame 对应的帧模拟图片解码失败，不等延迟立即回 code=1 的 ack（不带下标），流继续。
+     * 与真实后端一样，header 未关闭 ordered 时按收到的顺序输出回复，否则谁先完成谁先输出
+     */
+    private final class FakeBackend extends InferenceStreamServiceGrpc.InferenceStreamServiceImplBase {
+
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        private final long delayMs;
+        private final int failAfter;
+        private final long badFrame;
+
+        FakeBackend(long delayMs, int failAfter) {
+            this(delayMs, failAfter, -1);
+        }
+
+        FakeBackend(long delayMs, int failAfter, long badFrame) {
+            this.delayMs = delayMs;
+            this.failAfter = failAfter;
+            this.badFrame = badFrame;
+        }
+
+        @Override
+        public StreamObserver<StreamRequest> stream(StreamObserver<StreamResponse> responses) {
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger frames = new AtomicInteger();
+            return new StreamObserver<>() {
+                private final Map<Long, StreamResponse> completed = new HashMap<>();
+                private boolean ordered = true;
+                private long submitted;
+                private long nextEmit;
+
+                @Override
+                public void onNext(StreamRequest request) {
+                    if (request.hasOpen()) {
+                        Struct options = request.getOpen().getHeader().getOptions();
+                        ordered = !options.containsFields("ordered") || options.getFieldsOrThrow("ordered").getBoolValue();
+                        reply(StreamResponse.newBuilder().setAck(StreamAck.newBuilder()
+                                .setStatus(CustomStatus.newBuilder().setCode(0))).build());
+                    } else if (request.hasFrame()) {
+                        long index = request.getFrame().getFrameIndex();
+                        long seq = submitted++;
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        if (failAfter > 0 && frames.incrementAndGet() >= failAfter) {
+                            synchronized (responses) {
+                                responses.onError(Status.UNAVAILABLE.asRuntimeException());
+                            }
+                            return;
+                        }
+                        Runnable result = () -> {
+                            inFlight.decrementAndGet();
+                            if (index == badFrame) {
+                                complete(seq, StreamResponse.newBuilder().setAck(StreamAck.newBuilder()
+                                        .setStatus(CustomStatus.newBuilder().setCode(1)
+                                                .setMessage("decode image failed"))).build());
+                                return;
+                            }
+                            received.incrementAndGet();
+                            complete(seq, StreamResponse.newBuilder()
+                                    .setFrame(FrameResult.newBuilder().setFrameIndex(index)).build());
+                        };
+                        if (delayMs > 0 && index != badFrame) {
+                            replies.schedule(result, delayMs, TimeUnit.MILLISECONDS);
+                        } else {
+                            result.run();
+                        }
+                    } else if (request.hasClose()) {
+                        // 结果都已回完才会收到 close
+                        synchronized (responses) {
+                            responses.onCompleted();
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+
+                private void complete(long seq, StreamResponse response) {
+                    synchronized (responses) {
+                        if (!ordered) {
+                            reply(response);
+                            return;
+                        }
+                        completed.put(seq, response);
+                        StreamResponse next;
+                        while ((next = completed.remove(nextEmit)) != null) {
+                            nextEmit++;
+                            reply(next);
+                        }
+                    }
+                }
+
+                private void reply(StreamResponse response) {
+                    synchronized (responses) {
+                        try {
+                            responses.onNext(response);
+                        } catch (RuntimeException ignored) {
+                            // 流已结束
+                        }
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.duola.grpc_java.service;
+
+import com.duola.grpc_java.dto.BatchJobResponse;
+import com.duola.grpc_java.dto.BatchJobResultsResponse;
+import com.duola.grpc_java.dto.StreamInferenceRequest;
+import com.duola.grpc_java.dto.StreamInferenceResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchJobServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private BatchJobService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void resultsArePagedFromDiskLog() throws Exception {
+        service = new BatchJobService(BatchJobServiceTests::echo, new ObjectMapper(), dir, 1, 4);
+        BatchJobResponse submitted = service.submit(request(25), "acme");
+        String id = submitted.getJobId();
+        awaitStatus(id, "completed");
+
+        BatchJobResultsResponse first = service.results(id, "acme", 0, 10);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), frameIndexes(first));
+        assertEquals(10L, first.getNextOffset());
+        assertFalse(first.getDone());
+
+        BatchJobResultsResponse last = service.results(id, "acme", 20, 10);
+        assertEquals(List.of(20, 21, 22, 23, 24), frameIndexes(last));
+        assertTrue(last.getDone());
+        assertEquals(25L, service.status(id, "acme").getResultCount());
+        assertEquals(25, service.status(id, "acme").getSucceeded());
+        // 输入图片在任务结束后删除，结果日志保留
+        assertFalse(Files.exists(dir.resolve(id + ".images.log")));
+        assertTrue(Files.size(dir.resolve(id + ".log")) > 0);
+        assertEquals(25 * Long.BYTES, Files.size(dir.resolve(id + ".idx")));
+    }
+
+    @Test
+    void jobsAreInvisibleToOtherTenants() throws Exception {
+        service = new BatchJobService(BatchJobServiceTests::echo, new ObjectMapper(), dir, 1, 4);
+        String id = service.submit(request(3), "acme").getJobId();
+        awaitStatus(id, "completed");
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> service.status(id, "other"));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+
+        service.cancel(id, "acme");
+        assertFalse(Files.exists(dir.resolve(id + ".log")));
+        assertThrows(ResponseStatusException.class, () -> service.status(id, "acme"));
+    }
+
+    @Test
+    void fullQueueIsRejectedAndRunningJobCanBeCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        BatchJobService.Runner blocking = (request, images, sink, cancelled, deadlineMs) -> {
+            sink.accept(new StreamInferenceResponse(true, "ok", 0));
+            started.countDown();
+            while (!cancelled.getAsBoolean()) {
+                Thread.sleep(5);
+            }
+            return new BatchFanOut.Summary(1, 0, false);
+        };
+        service = new BatchJobService(blocking, new ObjectMapper(), dir, 1, 1);
+        String running = service.submit(request(2), null).getJobId();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        service.submit(request(2), null);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> service.submit(request(2), null));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        // 拒绝的任务不落盘：运行中与排队中的任务各有结果日志与输入图片两对文件
+        try (var files = Files.list(dir)) {
+            assertEquals(8, files.count());
+        }
+
+        assertEquals("cancelled", service.cancel(running, null).getStatus());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (Files.exists(dir.resolve(running + ".log")) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertFalse(Files.exists(dir.resolve(running + ".log")));
+    }
+
+    private static BatchFanOut.Summary echo(StreamInferenceRequest request, BatchJobImages images,
+                                            Consumer<StreamInferenceResponse> sink,
+                                            BooleanSupplier cancelled, long deadlineMs) {
+        for (int i = 0; i < images.size() && !cancelled.getAsBoolean(); i++) {
+            // 图片从磁盘按下标读取，内容与提交时一致
+            sink.accept(new StreamInferenceResponse(images.get(i).equals("img-" + i), "ok", i));
+        }
+        return new BatchFanOut.Summary(images.size(), 0, false);
+    }
+
+    private static StreamInferenceRequest request(int images) {
+        StreamInferenceRequest request = new StreamInferenceRequest();
+        request.setImages(IntStream.range(0, images).mapToObj(i -> "img-" + i).collect(Collectors.toList()));
+        return request;
+    }
+
+    private static List<Integer> frameIndexes(BatchJobResultsResponse page) {
+        return page.getResults().stream()
+                .map(node -> node.get("frame_index"))
+                .map(JsonNode::asInt)
+                .collect(Collectors.toList());
+    }
+
+    private void awaitStatus(String id, String status) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!status.equals(service.status(id, "acme").getStatus()) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(status, service.status(id, "acme").getStatus());
+    }
+}
@@ -0,0 +1,77 @@
+package com.duola.grpc_java.service;
+
+import com.duola.grpc_java.dto.CameraInferenceRequest;
+import com.duola.grpc_java.dto.CameraInferenceResponse;
+import com.duola.grpc_java.dto.DetectionResult;
+import com.duola.grpc_java.dto.StreamInferenceRequest;
+import com.duola.grpc_java.dto.StreamInferenceResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CameraInferenceServiceTests {
+
+    @Test
+    void onlyFrameEventsAreTrackedAndCounted() {
+        CameraSessionRegistry registry = new CameraSessionRegistry(16, 60_000L, 1_000L, 64);
+        CameraSession session = registry.getOrCreate("cam");
+        CameraInferenceService service = new CameraInferenceService();
+        ReflectionTestUtils.setField(service, "activeSessions", registry);
+        ReflectionTestUtils.setField(service, "streamGrpcInferenceService", new StreamGrpcInferenceService() {
+            @Override
+            public void performStreamInference(StreamInferenceRequest request, SseEmitter emitter, String endpoint) throws Exception {
+                emitter.send(SseEmitter.event().name("ack").data(new StreamInferenceResponse(true, "ACK: ok")));
+                for (int i = 0; i < 3; i++) {
+                    List<DetectionResult> detections = new ArrayList<>();
+                    detections.add(new DetectionResult("person", 0, 0.9, 10.0 + i * 2, 20.0, 40.0, 80.0));
+                    StreamInferenceResponse frame = new StreamInferenceResponse(true, "ok", detections);
+                    frame.setFrameIndex(i);
+                    emitter.send(SseEmitter.event().name("frame").data(frame));
+                }
+                emitter.send(SseEmitter.event().name("completed").data(new StreamInferenceResponse(true, "Stream completed")));
+                emitter.complete();
+            }
+        });
+
+        CameraInferenceRequest request = new CameraInferenceRequest();
+        request.setImage("aW1hZ2U=");
+        request.setMode("track");
+        request.setSessionId("cam");
+        RecordingEmitter emitter = new RecordingEmitter();
+        service.processCameraStream(request, emitter);
+
+        // 网关自己的 ack、后端 ack、三帧结果、completed
+        assertEquals(List.of("ack", "ack", "frame", "frame", "frame", "completed"), emitter.names);
+        assertEquals(3, session.getStats().getTotalFrames());
+        CameraInferenceResponse last = emitter.responses.get(4);
+        assertEquals(1, last.getTracks().size());
+        assertEquals("completed", emitter.responses.get(5).getEventType());
+        assertNull(emitter.responses.get(5).getTracks());
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final List<String> names = new ArrayList<>();
+        private final List<CameraInferenceResponse> responses = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            for (ResponseBodyEmitter.DataWithMediaType item : builder.build()) {
+                Object data = item.getData();
+                if (data instanceof CameraInferenceResponse) {
+                    responses.add((CameraInferenceResponse) data);
+                } else if (data instanceof String && ((String) data).startsWith("event:")) {
+                    String text = (String) data;
+                    names.add(text.substring("event:".length(), text.indexOf('\n')));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.duola.grpc_java.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CameraSessionRegistryTests {
+
+    @Test
+    void evictsIdleSessionsAndReleasesResources() {
+        CameraSessionRegistry registry = new CameraSessionRegistry(16, 1_000L, 100L, 64);
+        CameraSession idle = registry.getOrCreate("idle");
+        CameraSession active = registry.getOrCreate("active");
+        AtomicInteger released = new AtomicInteger();
+        idle.onClose(released::incrementAndGet);
+
+        long now = System.currentTimeMillis();
+        registry.advance(now + 500L);
+        assertEquals(2, registry.size());
+
+        // active 在超时前有活动，到期检查时会被挂回时间轮
+        active.getStats().recordFrame(1, 10L, now + 900L);
+        registry.advance(now + 1_500L);
+        assertNull(registry.get("idle"));
+        assertTrue(idle.isClosed());
+        assertEquals(1, released.get());
+        assertSame(active, registry.get("active"));
+
+        registry.advance(now + 2_500L);
+        assertNull(registry.get("active"));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyActiveWhenFull() {
+        CameraSessionRegistry registry = new CameraSessionRegistry(2, 60_000L, 1_000L, 64);
+        CameraSession first = registry.getOrCreate("a");
+        CameraSession second = registry.getOrCreate("b");
+        first.getStats().recordFrame(0, -1L, System.currentTimeMillis() + 1_000L);
+
+        registry.getOrCreate("c");
+        assertEquals(2, registry.size());
+        assertNotNull(registry.get("a"));
+        assertNull(registry.get("b"));
+        assertTrue(second.isClosed());
+
+        AtomicInteger released = new AtomicInteger();
+        second.onClose(released::incrementAndGet);
+        assertEquals(1, released.get());
+    }
+}
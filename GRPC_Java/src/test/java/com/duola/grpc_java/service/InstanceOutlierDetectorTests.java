@@ -0,0 +1,46 @@
+package com.duola.grpc_java.service;
+
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InstanceOutlierDetectorTests {
+
+    @Test
+    void consecutiveFailuresEjectInstance() {
+        InstanceOutlierDetector detector = new InstanceOutlierDetector();
+        Instance bad = instance("10.0.0.1");
+        Instance good = instance("10.0.0.2");
+
+        for (int i = 0; i < 3; i++) {
+            detector.recordFailure(bad);
+        }
+        assertEquals(InstanceOutlierDetector.State.OPEN, detector.stateOf(bad));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(good, detector.choose(List.of(bad, good)));
+        }
+    }
+
+    @Test
+    void successesKeepInstanceClosed() {
+        InstanceOutlierDetector detector = new InstanceOutlierDetector();
+        Instance instance = instance("10.0.0.3");
+
+        detector.recordFailure(instance);
+        detector.recordFailure(instance);
+        detector.recordSuccess(instance, 1_000L);
+        detector.recordFailure(instance);
+        assertEquals(InstanceOutlierDetector.State.CLOSED, detector.stateOf(instance));
+    }
+
+    private static Instance instance(String ip) {
+        Instance instance = new Instance();
+        instance.setIp(ip);
+        instance.setPort(50051);
+        instance.setWeight(1.0);
+        return instance;
+    }
+}
@@ -0,0 +1,21 @@
+package com.duola.grpc_java.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TenantAdmissionTests {
+
+    @Test
+    void untaggedClientsAreNotLimitedByDefault() {
+        TenantAdmission admission = new TenantAdmission(1.0, 1, 1);
+        for (int i = 0; i < 50; i++) {
+            admission.admit(null);
+            admission.openStream(" ");
+        }
+
+        admission.admit("acme");
+        assertThrows(ResponseStatusException.class, () -> admission.admit("acme"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.duola.grpc_java.tracking;
+
+import com.duola.grpc_java.dto.DetectionResult;
+import com.duola.grpc_java.dto2.yolo.YoloInferenceConfig;
+import com.duola.grpc_java.dto2.yolo.YoloTrackPoint;
+import com.duola.grpc_java.dto2.yolo.YoloTrackingResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteTrackerTests {
+
+    @Test
+    void solverFindsMinimumCostAssignment() {
+        HungarianSolver solver = new HungarianSolver(1);
+        double[] cost = {
+                4, 1, 3,
+                2, 0, 5,
+                3, 2, 2
+        };
+        int[] assignment = solver.solve(cost, 3, 3, 1.0);
+        assertArrayEquals(new int[]{1, 0, 2}, new int[]{assignment[0], assignment[1], assignment[2]});
+
+        // 行多于列时多出的行不匹配
+        assignment = solver.solve(new double[]{0.9, 0.1}, 2, 1, 1.0);
+        assertEquals(-1, assignment[0]);
+        assertEquals(0, assignment[1]);
+    }
+
+    @Test
+    void confirmsAfterMinHitsAndKeepsIdsForMovingObjects() {
+        ByteTracker tracker = new ByteTracker(new YoloInferenceConfig().forTracking());
+        List<YoloTrackingResult> tracks = null;
+        List<DetectionResult> frame = null;
+        for (int i = 0; i < 10; i++) {
+            frame = new ArrayList<>();
+            frame.add(new DetectionResult("person", 0, 0.9, 10.0 + i * 5, 20.0, 40.0, 80.0));
+            frame.add(new DetectionResult("car", 2, 0.8, 300.0 - i * 5, 200.0, 60.0, 40.0));
+            tracks = tracker.update(frame);
+            if (i < 2) {
+                assertNull(frame.get(0).getTrackId());
+                assertEquals(0, tracks.size());
+            }
+        }
+        assertEquals(2, tracks.size());
+        Integer person = frame.get(0).getTrackId();
+        Integer car = frame.get(1).getTrackId();
+        assertNotNull(person);
+        assertNotNull(car);
+        assertNotEquals(person, car);
+        for (YoloTrackingResult track : tracks) {
+            assertEquals("active", track.getTrackState());
+            assertEquals(10, track.getTrackHits());
+        }
+
+        // 低分检测在第二轮仍能接上原轨迹
+        frame = new ArrayList<>();
+        frame.add(new DetectionResult("person", 0, 0.2, 60.0, 20.0, 40.0, 80.0));
+        tracker.update(frame);
+        assertEquals(person, frame.get(0).getTrackId());
+    }
+
+    @Test
+    void lostTracksAreRecoveredWithinBufferAndDroppedAfter() {
+        ByteTracker tracker = new ByteTracker(0.3, 5, 30, 1);
+        List<DetectionResult> frame = new ArrayList<>();
+        frame.add(new DetectionResult("person", 0, 0.9, 100.0, 100.0, 50.0, 100.0));
+        tracker.update(frame);
+        Integer id = frame.get(0).getTrackId();
+        assertNotNull(id);
+
+        List<YoloTrackingResult> tracks = null;
+        for (int i = 0; i < 3; i++) {
+            tracks = tracker.update(new ArrayList<>());
+        }
+        assertEquals("lost", tracks.get(0).getTrackState());
+
+        frame = new ArrayList<>();
+        frame.add(new DetectionResult("person", 0, 0.9, 102.0, 100.0, 50.0, 100.0));
+        tracker.update(frame);
+        assertEquals(id, frame.get(0).getTrackId());
+
+        for (int i = 0; i < 6; i++) {
+            tracker.update(new ArrayList<>());
+        }
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    void keepsBoundedTrajectoryAndSmoothedVelocity() {
+        ByteTracker tracker = new ByteTracker(0.3, 5, 30, 1);
+        List<YoloTrackingResult> tracks = null;
+        for (int i = 0; i < 20; i++) {
+            List<DetectionResult> frame = new ArrayList<>();
+            frame.add(new DetectionResult("person", 0, 0.9, 100.0 + i * 10, 50.0, 40.0, 80.0));
+            tracks = tracker.update(frame, 1_000L + i * 100L);
+        }
+        YoloTrackingResult track = tracks.get(0);
+        List<YoloTrackPoint> trajectory = track.getTrajectory();
+        assertEquals(5, trajectory.size());
+        assertEquals(2_500L, trajectory.get(0).getTimestamp());
+        assertEquals(2_900L, trajectory.get(4).getTimestamp());
+        assertTrue(trajectory.get(4).getX() > trajectory.get(0).getX());
+
+        // 每 100ms 右移 10px，约 100 px/s
+        assertEquals(100.0, track.getVelocity().getX(), 10.0);
+        assertEquals(0.0, track.getVelocity().getY(), 5.0);
+    }
+}
@@ -0,0 +1,58 @@
+package com.duola.grpc_java.util;
+
+import com.duola.grpc_java.dto.StreamInferenceRequest;
+import io.grpc.ai.InferenceHeader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class HeaderUtilsTests {
+
+    @Test
+    void reusesHeaderForSameOptions() {
+        StreamInferenceRequest first = new StreamInferenceRequest();
+        StreamInferenceRequest second = new StreamInferenceRequest();
+        assertSame(HeaderUtils.buildHeaderFrom(first), HeaderUtils.buildHeaderFrom(second));
+
+        second.setReturnOverlay(false);
+        InferenceHeader noOverlay = HeaderUtils.buildHeaderFrom(second);
+        assertNotSame(HeaderUtils.buildHeaderFrom(first), noOverlay);
+        assertFalse(noOverlay.getOptions().getFieldsOrThrow("return_overlay").getBoolValue());
+    }
+
+    @Test
+    void tenantIsCarriedOutsideTheCachedHeader() {
+        StreamInferenceRequest anonymous = new StreamInferenceRequest();
+        StreamInferenceRequest tagged = new StreamInferenceRequest();
+        tagged.setTenantId(" acme ");
+        InferenceHeader header = HeaderUtils.buildHeaderFrom(tagged);
+        assertEquals("acme", header.getTenant().getTenantId());
+        assertFalse(HeaderUtils.buildHeaderFrom(anonymous).hasTenant());
+        assertSame(HeaderUtils.buildHeaderFrom(anonymous), HeaderUtils.buildHeaderFrom(new StreamInferenceRequest()));
+    }
+
+    @Test
+    void videoHeaderCarriesFrameSamplingOptions() {
+        StreamInferenceRequest request = new StreamInferenceRequest();
+        request.setMaxFrames(30);
+        request.setFrameInterval(5);
+        InferenceHeader header = HeaderUtils.videoHeaderFrom(request);
+        assertEquals(30, header.getOptions().getFieldsOrThrow("max_frames").getNumberValue());
+        assertEquals(5, header.getOptions().getFieldsOrThrow("frame_interval").getNumberValue());
+        assertFalse(HeaderUtils.buildHeaderFrom(request).getOptions().containsFields("max_frames"));
+    }
+
+    @Test
+    void omitsUnsetStreamOptions() {
+        InferenceHeader header = HeaderUtils.header("yolov8n", 320, 240, false, "track", true);
+        assertEquals("yolov8n", header.getModel().getName());
+        assertEquals(320, header.getOptions().getFieldsOrThrow("target_w").getNumberValue());
+        assertEquals("track", header.getOptions().getFieldsOrThrow("mode").getStringValue());
+        assertFalse(header.getOptions().containsFields("max_in_flight"));
+        assertFalse(header.getOptions().containsFields("ordered"));
+        assertEquals(2, header.getAcceptCount());
+    }
+}
@@ -0,0 +1,113 @@
+package com.duola.grpc_java.util;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Codec;
+import io.grpc.ai.FrameResult;
+import io.grpc.ai.ResultEnvelope;
+import io.grpc.ai.StreamResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageCompressionTests {
+
+    @Test
+    void lz4RoundTripShrinksRepetitivePayload() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("{\"class_name\":\"person\",\"confidence\":0.9,\"bbox\":[1,2,3,4]}");
+        }
+        byte[] raw = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        Codec codec = new MessageCompression.Lz4Codec();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = codec.compress(compressed)) {
+            out.write(raw);
+        }
+        assertTrue(compressed.size() < raw.length / 4);
+
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(raw, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void lz4SmallMessagesAllocateInProportionToTheirSize() throws Exception {
+        byte[] raw = new byte[1024];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) (i % 17);
+        }
+        Codec codec = new MessageCompression.Lz4Codec();
+        roundTrip(codec, new byte[0]);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(raw, roundTrip(codec, raw));
+        }
+
+        // 帧格式每条消息按 4MB 块分配缓冲，块格式只分配与消息同量级的数组
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int rounds = 1_000;
+        for (int i = 0; i < rounds; i++) {
+            roundTrip(codec, raw);
+        }
+        long perMessage = (threads.getCurrentThreadAllocatedBytes() - before) / rounds;
+        assertTrue(perMessage < 32 * 1024, "allocated " + perMessage + " bytes per message");
+    }
+
+    private static byte[] roundTrip(Codec codec, byte[] raw) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length);
+        try (OutputStream out = codec.compress(compressed)) {
+            out.write(raw);
+        }
+        try (InputStream in = codec.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void registriesKnowGzipAndLz4() {
+        assertNotNull(MessageCompression.compressorRegistry().lookupCompressor(MessageCompression.LZ4));
+        assertNotNull(MessageCompression.compressorRegistry().lookupCompressor(MessageCompression.GZIP));
+        assertTrue(MessageCompression.decompressorRegistry().getAdvertisedMessageEncodings()
+                .containsAll(java.util.Set.of(MessageCompression.LZ4, MessageCompression.GZIP)));
+    }
+
+    @Test
+    void choosesFirstRegisteredEncoding() {
+        assertEquals("lz4", MessageCompression.choose("lz4,gzip"));
+        assertEquals("gzip", MessageCompression.choose(" zstd , gzip"));
+        assertNull(MessageCompression.choose("identity"));
+        assertNull(MessageCompression.choose("zstd"));
+        assertNull(MessageCompression.choose(null));
+    }
+
+    @Test
+    void imageResultsAreNotCompressed() {
+        ResultEnvelope json = ResultEnvelope.newBuilder()
+                .setKind("detections").setContentType("application/json").setText("{}").build();
+        ResultEnvelope overlay = ResultEnvelope.newBuilder()
+                .setKind("overlay").setContentType("image/jpeg").setBinary(ByteString.copyFrom(new byte[16])).build();
+
+        StreamResponse detections = StreamResponse.newBuilder()
+                .setFrame(FrameResult.newBuilder().addResults(json)).build();
+        StreamResponse withOverlay = StreamResponse.newBuilder()
+                .setFrame(FrameResult.newBuilder().addResults(json).addResults(overlay)).build();
+
+        assertTrue(MessageCompression.isCompressible(detections));
+        assertFalse(MessageCompression.isCompressible(withOverlay));
+        assertTrue(MessageCompression.isCompressible(StreamResponse.getDefaultInstance()));
+    }
+}
@@ -0,0 +1,154 @@
+package com.duola.grpc_java.util;
+
+import com.duola.grpc_java.util.PriorityDispatcher.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityDispatcherTests {
+
+    @Test
+    void bulkCannotTakeReservedSlots() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(3, 1, 4, 1, 0);
+        assertTrue(dispatcher.acquire(Priority.BULK, 0, TimeUnit.MILLISECONDS));
+        assertTrue(dispatcher.acquire(Priority.BULK, 0, TimeUnit.MILLISECONDS));
+        assertFalse(dispatcher.acquire(Priority.BULK, 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, dispatcher.queued(Priority.BULK));
+        assertTrue(dispatcher.acquire(Priority.INTERACTIVE, 0, TimeUnit.MILLISECONDS));
+
+        dispatcher.release(Priority.BULK);
+        assertEquals(1, dispatcher.inFlight(Priority.BULK));
+        assertEquals(1, dispatcher.inFlight(Priority.INTERACTIVE));
+    }
+
+    @Test
+    void backloggedQueuesShareByWeight() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(1, 0, 2, 1, 0);
+        assertTrue(dispatcher.acquire(Priority.INTERACTIVE, 0, TimeUnit.MILLISECONDS));
+
+        List<Priority> grants = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(waiter(dispatcher, Priority.INTERACTIVE, grants));
+            threads.add(waiter(dispatcher, Priority.BULK, grants));
+        }
+        awaitQueued(dispatcher, 4, 4);
+
+        dispatcher.release(Priority.INTERACTIVE);
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(List.of(Priority.INTERACTIVE, Priority.BULK, Priority.INTERACTIVE,
+                Priority.INTERACTIVE, Priority.BULK, Priority.INTERACTIVE,
+                Priority.BULK, Priority.BULK), grants);
+    }
+
+    @Test
+    void interactiveBacklogPreemptsBulk() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(1, 0, 1, 1, 2);
+        assertTrue(dispatcher.acquire(Priority.BULK, 0, TimeUnit.MILLISECONDS));
+
+        List<Priority> grants = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(waiter(dispatcher, Priority.BULK, grants));
+        awaitQueued(dispatcher, 0, 1);
+        threads.add(waiter(dispatcher, Priority.INTERACTIVE, grants));
+        threads.add(waiter(dispatcher, Priority.INTERACTIVE, grants));
+        awaitQueued(dispatcher, 2, 1);
+
+        // 交互队列达到阈值，等权重下批量也要让出
+        dispatcher.release(Priority.BULK);
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(List.of(Priority.INTERACTIVE, Priority.INTERACTIVE, Priority.BULK), grants);
+    }
+
+    @Test
+    void preemptionKeepsMinimumBulkShare() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(2, 0, 4, 1, 1, 1);
+        assertTrue(dispatcher.acquire(Priority.INTERACTIVE, 0, TimeUnit.MILLISECONDS));
+        assertTrue(dispatcher.acquire(Priority.INTERACTIVE, 0, TimeUnit.MILLISECONDS));
+
+        List<Priority> grants = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(waiter(dispatcher, Priority.BULK, grants));
+        awaitQueued(dispatcher, 0, 1);
+        threads.add(waiter(dispatcher, Priority.INTERACTIVE, grants));
+        threads.add(waiter(dispatcher, Priority.INTERACTIVE, grants));
+        awaitQueued(dispatcher, 2, 1);
+
+        // 交互积压已触发抢占，但批量在途低于保底，空出的名额先给批量
+        dispatcher.release(Priority.INTERACTIVE);
+        dispatcher.release(Priority.INTERACTIVE);
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(Priority.BULK, grants.get(0));
+        assertEquals(3, grants.size());
+    }
+
+    @Test
+    void resizeGrowsBulkShare() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(4, 2, 1, 1, 0);
+        assertTrue(dispatcher.acquire(Priority.BULK, 0, TimeUnit.MILLISECONDS));
+        assertTrue(dispatcher.acquire(Priority.BULK, 0, TimeUnit.MILLISECONDS));
+        assertFalse(dispatcher.acquire(Priority.BULK, 0, TimeUnit.MILLISECONDS));
+
+        // 实例增多后批量可用名额随之增加，预留给交互的名额不变
+        dispatcher.resize(8);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(dispatcher.acquire(Priority.BULK, 0, TimeUnit.MILLISECONDS));
+        }
+        assertFalse(dispatcher.acquire(Priority.BULK, 0, TimeUnit.MILLISECONDS));
+        assertTrue(dispatcher.acquire(Priority.INTERACTIVE, 0, TimeUnit.MILLISECONDS));
+        assertEquals(8, dispatcher.capacity());
+    }
+
+    @Test
+    void laneReleasesWhatItHolds() throws Exception {
+        PriorityDispatcher dispatcher = new PriorityDispatcher(4, 0, 1, 1, 0);
+        PriorityDispatcher.Lane lane = dispatcher.lane(Priority.BULK);
+        assertTrue(lane.acquire(0, () -> false));
+        assertTrue(lane.acquire(0, () -> false));
+        lane.releaseOne();
+        assertEquals(1, dispatcher.inFlight(Priority.BULK));
+
+        lane.close();
+        lane.releaseOne();
+        assertEquals(0, dispatcher.inFlight(Priority.BULK));
+        assertFalse(lane.acquire(0, () -> false));
+    }
+
+    private static Thread waiter(PriorityDispatcher dispatcher, Priority priority, List<Priority> grants) {
+        Thread thread = new Thread(() -> {
+            try {
+                if (dispatcher.acquire(priority, 5, TimeUnit.SECONDS)) {
+                    grants.add(priority);
+                    dispatcher.release(priority);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(PriorityDispatcher dispatcher, int interactive, int bulk) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((dispatcher.queued(Priority.INTERACTIVE) != interactive || dispatcher.queued(Priority.BULK) != bulk)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(interactive, dispatcher.queued(Priority.INTERACTIVE));
+        assertEquals(bulk, dispatcher.queued(Priority.BULK));
+    }
+}
@@ -0,0 +1,34 @@
+package com.duola.grpc_java.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryBudgetTests {
+
+    @Test
+    void startsFullAndDrainsOneTokenPerRetry() {
+        RetryBudget budget = new RetryBudget(2, 0.1);
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    void depositsRefillUpToMax() {
+        RetryBudget budget = new RetryBudget(2, 0.5);
+        budget.tryWithdraw();
+        budget.tryWithdraw();
+        budget.deposit();
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        assertEquals(2.0, budget.available(), 1e-9);
+    }
+}
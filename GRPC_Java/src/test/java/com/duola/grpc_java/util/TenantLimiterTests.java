@@ -0,0 +1,115 @@
+package com.duola.grpc_java.util;
+
+import com.duola.grpc_java.server.imp.InferenceStreamServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ai.InferenceHeader;
+import io.grpc.ai.InferenceStreamServiceGrpc;
+import io.grpc.ai.StreamOpen;
+import io.grpc.ai.StreamRequest;
+import io.grpc.ai.StreamResponse;
+import io.grpc.ai.TenantContext;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TenantLimiterTests {
+
+    @Test
+    void tokenBucketIsPerTenant() {
+        TenantLimiter limiter = new TenantLimiter(1.0, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("noisy").admitted());
+        }
+        assertEquals(TenantLimiter.Decision.RATE_LIMITED, limiter.tryAcquire("noisy"));
+        // 其他租户不受影响
+        assertTrue(limiter.tryAcquire("quiet").admitted());
+        assertTrue(limiter.tryAcquire(null).admitted());
+        assertEquals(1000L, limiter.retryAfterMillis());
+    }
+
+    @Test
+    void streamCapIsReleasedOnClose() {
+        TenantLimiter limiter = new TenantLimiter(0, 0, 2);
+        assertTrue(limiter.tryOpenStream("t").admitted());
+        assertTrue(limiter.tryOpenStream(" t ").admitted());
+        assertEquals(TenantLimiter.Decision.TOO_MANY_STREAMS, limiter.tryOpenStream("t"));
+        assertEquals(2, limiter.activeStreams("t"));
+
+        limiter.releaseStream("t");
+        assertTrue(limiter.tryOpenStream("t").admitted());
+        assertTrue(TenantLimiter.unlimited().tryAcquire("t").admitted());
+    }
+
+    @Test
+    void rateLimitedOpenDoesNotHoldStreamSlot() {
+        TenantLimiter limiter = new TenantLimiter(0.001, 1, 5);
+        assertTrue(limiter.tryOpenStream("t").admitted());
+        assertEquals(TenantLimiter.Decision.RATE_LIMITED, limiter.tryOpenStream("t"));
+        assertEquals(1, limiter.activeStreams("t"));
+    }
+
+    @Test
+    void streamOpenOverLimitGetsResourceExhausted() throws Exception {
+        TenantLimiter limiter = new TenantLimiter(0, 0, 1);
+        String name = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(new InferenceStreamServiceImpl(Runnable::run, limiter))
+                .build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        try {
+            StreamRequest open = StreamRequest.newBuilder()
+                    .setOpen(StreamOpen.newBuilder().setHeader(InferenceHeader.newBuilder()
+                            .setTenant(TenantContext.newBuilder().setTenantId("acme"))))
+                    .build();
+            Collector first = new Collector();
+            StreamObserver<StreamRequest> firstRequests = InferenceStreamServiceGrpc.newStub(channel).stream(first);
+            firstRequests.onNext(open);
+
+            Collector second = new Collector();
+            StreamObserver<StreamRequest> secondRequests = InferenceStreamServiceGrpc.newStub(channel).stream(second);
+            secondRequests.onNext(open);
+            assertTrue(second.done.await(5, TimeUnit.SECONDS));
+            assertEquals(8, second.responses.get(0).getAck().getStatus().getCode());
+            assertEquals(1, limiter.activeStreams("acme"));
+
+            // 第一条流结束后名额归还
+            firstRequests.onCompleted();
+            assertTrue(first.done.await(5, TimeUnit.SECONDS));
+            assertEquals(0, first.responses.get(0).getAck().getStatus().getCode());
+            assertEquals(0, limiter.activeStreams("acme"));
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    private static final class Collector implements StreamObserver<StreamResponse> {
+        final List<StreamResponse> responses = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onNext(StreamResponse value) {
+            responses.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.duola.grpc_java.util;
+
+import io.grpc.ai.InputEnvelope;
+import io.grpc.ai.StreamFrame;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VideoChunksTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void fileChunksReassembleByOffset() throws Exception {
+        byte[] video = randomBytes(10_000);
+        Path file = Files.write(tempDir.resolve("clip.mp4"), video);
+        List<StreamFrame> frames = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(3, VideoChunks.sendFile(channel, "video/mp4", 4096, frames::add));
+        }
+        assertArrayEquals(video, reassemble(frames, video.length));
+    }
+
+    @Test
+    void mappedChunksReassembleByOffset() throws Exception {
+        for (int size : new int[]{0, 4096, 10_000}) {
+            byte[] video = randomBytes(size);
+            Path file = Files.write(tempDir.resolve("mapped-" + size + ".mp4"), video);
+            List<StreamFrame> frames = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(file)) {
+                VideoChunks.sendMapped(channel, "video/mp4", 4096, frames::add);
+            }
+            assertArrayEquals(video, reassemble(frames, size));
+        }
+    }
+
+    @Test
+    void base64ChunksDecodeIndependently() throws Exception {
+        for (int size : new int[]{0, 1, 2, 3, 3000, 3001, 3002}) {
+            byte[] video = randomBytes(size);
+            List<StreamFrame> frames = new ArrayList<>();
+            VideoChunks.sendBase64(Base64.getEncoder().encodeToString(video), "video/mp4", 1000, frames::add);
+            assertArrayEquals(video, reassemble(frames, size));
+        }
+    }
+
+    private static byte[] reassemble(List<StreamFrame> frames, int expectedSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < frames.size(); i++) {
+            StreamFrame frame = frames.get(i);
+            InputEnvelope chunk = frame.getInputs(0);
+            assertEquals(VideoChunks.KIND, chunk.getKind());
+            assertEquals(i, frame.getFrameIndex());
+            assertEquals(out.size(), Long.parseLong(chunk.getTagsOrThrow(VideoChunks.TAG_OFFSET)));
+            assertEquals(expectedSize, Long.parseLong(chunk.getTagsOrThrow(VideoChunks.TAG_TOTAL_SIZE)));
+            assertEquals(i == frames.size() - 1, Boolean.parseBoolean(chunk.getTagsOrThrow(VideoChunks.TAG_FINAL)));
+            chunk.getBinary().writeTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
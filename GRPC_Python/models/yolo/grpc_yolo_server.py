@@ -1,5 +1,6 @@
 import os
 import time
+import tempfile
 import signal
 import sys
 import logging
@@ -17,6 +18,7 @@ from gen import ai_pb2 as pb, ai_pb2_grpc as pb_grpc
 
 from .yolo_core import YoloCore
 from .yolo_dto import YoloDetectionDTO, YoloResultDTO, YoloResponseDTO, YoloDTOFactory
+from .mask_codec import negotiate_mask_type, mask_envelopes
 
 # 导入配置管理器
 sys.path.append(os.path.join(os.path.dirname(__file__), "..", ".."))
@@ -57,6 +59,42 @@ for _h in _root.handlers:
     _h.setFormatter(_fmt)
 
 
+def _video_options(options):
+    """从 header.options 读取视频抽帧参数：max_frames（<=0 不限制）、frame_interval、return_overlay。"""
+    opts = {"max_frames": 0, "frame_interval": 1, "return_overlay": True}
+    if options is None:
+        return opts
+    fields = options.fields
+    if "max_frames" in fields:
+        opts["max_frames"] = int(fields["max_frames"].number_value)
+    if "frame_interval" in fields:
+        opts["frame_interval"] = max(1, int(fields["frame_interval"].number_value))
+    if "return_overlay" in fields:
+        opts["return_overlay"] = bool(fields["return_overlay"].bool_value)
+    return opts
+
+
+# 网关在元数据中按偏好列出希望的响应压缩（如 "lz4,gzip"），Python 端只支持 gzip
+RESPONSE_ENCODING_KEY = "x-response-encoding"
+
+
+def _wants_gzip(context) -> bool:
+    for key, value in context.invocation_metadata() or ():
+        if key == RESPONSE_ENCODING_KEY:
+            return "gzip" in [v.strip() for v in value.split(",")]
+    return False
+
+
+def _compressible(resp) -> bool:
+    """带叠图等二进制图片的响应已是压缩数据，不再压缩"""
+    if not resp.HasField("frame"):
+        return True
+    for env in resp.frame.results:
+        if env.HasField("binary") and env.content_type.startswith("image/"):
+            return False
+    return True
+
+
 class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
     """实现 proto 中的 InferenceStreamService，
     将流式请求解析为 numpy 图像 → 调用 YoloCore → 封装为 ResultEnvelope 返回。
@@ -67,10 +105,25 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
         self.core = YoloCore(weights)
 
     def Stream(self, request_iterator, context):
+        # 响应方向压缩：整条调用使用 gzip，逐条关闭图片类响应；上行图片不压缩
+        compress = _wants_gzip(context)
+        if compress:
+            context.set_compression(grpc.Compression.Gzip)
+        for resp in self._stream(request_iterator, context):
+            if compress and not _compressible(resp):
+                context.disable_next_message_compression()
+            yield resp
+
+    def _stream(self, request_iterator, context):
         try:
             # Tokens for resetting MDC at the end
             _tok_trace = None
             _tok_span = None
+            # 分块上传的视频：按 offset 写入临时文件，收到 final 块后再解码
+            chunk_file = None
+            video_opts = _video_options(None)
+            # 网关在 accept 中声明可接受的掩码编码，未声明时不返回掩码
+            mask_type = None
             for request in request_iterator:
                 if request.HasField('open'):
                     # Extract trace context from header if present
@@ -82,6 +135,8 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
                         # Set MDC for this stream thread
                         _tok_trace = mdc_trace_id.set(_trace_id)
                         _tok_span = mdc_span_id.set(_span_id)
+                        video_opts = _video_options(hdr.options if hdr and hdr.HasField('options') else None)
+                        mask_type = negotiate_mask_type(hdr.accept if hdr else None)
                         logger.info("stream opened")
                     except Exception:
                         logger.info("stream opened (no trace context)")
@@ -90,34 +145,33 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
                     frame = request.frame
                     # 先尝试找视频
                     video_bytes = None
+                    video_chunk = None
                     for i, inp in enumerate(frame.inputs):
                         if inp.kind == "video" and inp.HasField("binary"):
                             video_bytes = inp.binary
                             break
-                    if video_bytes:
+                        if inp.kind == "video_chunk" and inp.HasField("binary"):
+                            video_chunk = inp
+                            break
+                    if video_chunk is not None:
+                        if chunk_file is None:
+                            chunk_file = tempfile.NamedTemporaryFile(delete=False, suffix=".mp4")
+                        chunk_file.seek(int(video_chunk.tags.get("offset", "0")))
+                        chunk_file.write(video_chunk.binary)
+                        if video_chunk.tags.get("final") == "true":
+                            temp_path = chunk_file.name
+                            chunk_file.close()
+                            chunk_file = None
+                            yield from self._process_video_file(temp_path, video_opts)
+                    elif video_bytes:
                         # 写临时文件并逐帧处理
-                        import tempfile, os, cv2, time
                         with tempfile.NamedTemporaryFile(delete=False, suffix=".mp4") as f:
                             f.write(video_bytes)
                             temp_path = f.name
-                        cap = cv2.VideoCapture(temp_path)
-                        idx = 0
-                        try:
-                            while True:
-                                ok, bgr = cap.read()
-                                if not ok or bgr is None:
-                                    break
-                                # 将单帧包装成一个“伪 frame”复用现有处理，要求 _process_image(bgr, frame_index=idx)
-                                resp = self._process_image(bgr, frame_index=idx)
-                                if resp:
-                                    yield resp
-                                idx += 1
-                        finally:
-                            cap.release()
-                            os.unlink(temp_path)
+                        yield from self._process_video_file(temp_path, video_opts)
                     else:
                         # 兼容原有逻辑：寻找 image/binary
-                        result = self._process_frame(frame, context)
+                        result = self._process_frame(frame, context, mask_type)
                         if result:
                             yield result
                 elif request.HasField('close'):
@@ -128,6 +182,13 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
             logger.error(f"流式处理错误: {e}")
             yield pb.StreamResponse(ack=pb.StreamAck(status=pb.CustomStatus(code=1, message=str(e))))
         finally:
+            # 上传中途结束时清理未完成的分块文件
+            if chunk_file is not None:
+                try:
+                    chunk_file.close()
+                    os.unlink(chunk_file.name)
+                except Exception:
+                    pass
             # Reset MDC to avoid leaking across requests
             try:
                 if _tok_trace is not None:
@@ -137,7 +198,44 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
             except Exception:
                 pass
 
-    def _process_frame(self, frame: pb.StreamFrame, context):
+    def _process_video_file(self, temp_path: str, video_opts: dict):
+        """逐帧解码临时视频文件并推理，处理完删除文件。
+        每个被抽取的帧推理完立即作为独立的 FrameResult 返回（frame_index 从 0 连续递增），
+        meta 中附带 total_frames / processed_frames / source_frame / pts_ms 供网关计算进度。"""
+        cap = cv2.VideoCapture(temp_path)
+        interval = video_opts["frame_interval"]
+        max_frames = video_opts["max_frames"]
+        source_total = int(cap.get(cv2.CAP_PROP_FRAME_COUNT) or 0)
+        total = (source_total + interval - 1) // interval if source_total > 0 else 0
+        if max_frames > 0 and total > 0:
+            total = min(total, max_frames)
+        source_idx = 0
+        processed = 0
+        try:
+            while max_frames <= 0 or processed < max_frames:
+                ok, bgr = cap.read()
+                if not ok or bgr is None:
+                    break
+                if source_idx % interval == 0:
+                    pts_ms = cap.get(cv2.CAP_PROP_POS_MSEC)
+                    # 将单帧包装成一个“伪 frame”复用现有处理，要求 _process_image(bgr, frame_index=idx)
+                    resp = self._process_image(bgr, frame_index=processed,
+                                               return_overlay=video_opts["return_overlay"],
+                                               extra_meta={
+                                                   "total_frames": total,
+                                                   "processed_frames": processed + 1,
+                                                   "source_frame": source_idx,
+                                                   "pts_ms": pts_ms,
+                                               })
+                    if resp:
+                        yield resp
+                    processed += 1
+                source_idx += 1
+        finally:
+            cap.release()
+            os.unlink(temp_path)
+
+    def _process_frame(self, frame: pb.StreamFrame, context, mask_type: str = None):
         """处理单个图像帧"""
         t0 = time.time()
 
@@ -240,6 +338,9 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
         if overlay_env:
             results_env.append(overlay_env)
 
+        # 分割模型的实例掩码：裁剪到检测框并按协商的编码返回
+        results_env.extend(mask_envelopes(results, boxes_scaled, resize_info, image.shape, mask_type, input_index))
+
         # 结果元数据
         meta = struct_pb2.Struct(fields={
             "coord_type": struct_pb2.Value(string_value="pixel"),
@@ -259,7 +360,7 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
             )
         )
 
-    def _process_image(self, image_bgr, frame_index: int = 0):
+    def _process_image(self, image_bgr, frame_index: int = 0, return_overlay: bool = True, extra_meta: dict = None):
         """处理单张已解码的 BGR 图像（用于视频逐帧场景）。"""
         t0 = time.time()
 
@@ -324,7 +425,7 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
 
         # 生成叠图
         overlay_image = None
-        if boxes_scaled:
+        if boxes_scaled and return_overlay:
             overlay = self.core.draw_boxes_on_image(image_bgr, boxes_scaled, clss, confs, tids if tids else None)
             jpeg_quality = yolo_config.get("jpeg_quality", 90)
             ok, buf = cv2.imencode(".jpg", overlay, [cv2.IMWRITE_JPEG_QUALITY, jpeg_quality])
@@ -354,6 +455,8 @@ class InferenceServicer(pb_grpc.InferenceStreamServiceServicer):
             "trace_id": struct_pb2.Value(string_value=mdc_trace_id.get()),
             "span_id": struct_pb2.Value(string_value=mdc_span_id.get()),
         })
+        for key, value in (extra_meta or {}).items():
+            meta.fields[key].number_value = float(value)
 
         return pb.StreamResponse(
             frame=pb.FrameResult(
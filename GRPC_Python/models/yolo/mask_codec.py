@@ -0,0 +1,142 @@
+#!/usr/bin/env python3
+# -*- coding: utf-8 -*-
+"""
+分割掩码的紧凑编码，与网关的 MaskCodec 对应
+掩码裁剪到检测框后按 InferenceHeader.accept 协商的格式返回，每个实例一个 kind="mask" 的 ResultEnvelope：
+- RLE：COCO 风格列优先游程编码，压缩字符串放在 text 中
+- bitpacked：行优先逐位打包为小端 uint64，放在 binary 中
+"""
+
+import math
+import os
+import sys
+from typing import Optional
+
+import cv2
+import numpy as np
+from google.protobuf import struct_pb2
+
+sys.path.append(os.path.join(os.path.dirname(__file__), "..", "..", "gen"))
+from gen import ai_pb2 as pb
+
+MASK_KIND = "mask"
+MASK_RLE = 'application/x-mask;encoding="rle"'
+MASK_BITPACKED = 'application/x-mask;encoding="bitpacked"'
+_SUPPORTED = (MASK_RLE, MASK_BITPACKED)
+
+
+def negotiate_mask_type(accept) -> Optional[str]:
+    """按客户端声明的顺序选第一个支持的掩码编码；没有声明时不返回掩码"""
+    for content_type in accept or []:
+        if content_type in _SUPPORTED:
+            return content_type
+    return None
+
+
+def rle_counts(crop: np.ndarray) -> list:
+    """0/1 位图 → 列优先游程长度，首段为 0 的游程"""
+    flat = crop.flatten(order="F")
+    if flat.size == 0:
+        return [0]
+    change = np.flatnonzero(flat[1:] != flat[:-1]) + 1
+    bounds = np.concatenate(([0], change, [flat.size]))
+    counts = np.diff(bounds).tolist()
+    if flat[0]:
+        counts.insert(0, 0)
+    return counts
+
+
+def counts_to_string(counts: list) -> str:
+    """COCO 的游程压缩字符串"""
+    out = []
+    for i, x in enumerate(counts):
+        x = int(x)
+        if i > 2:
+            x -= int(counts[i - 2])
+        more = True
+        while more:
+            c = x & 0x1f
+            x >>= 5
+            more = (x != -1) if (c & 0x10) else (x != 0)
+            if more:
+                c |= 0x20
+            out.append(chr(c + 48))
+    return "".join(out)
+
+
+def pack_bits(crop: np.ndarray) -> bytes:
+    """行优先逐位打包，按 64 位补齐，第 i 个像素对应第 i/64 个小端字的第 i%64 位"""
+    flat = crop.astype(bool).flatten()
+    pad = (-flat.size) % 64
+    if pad:
+        flat = np.concatenate([flat, np.zeros(pad, dtype=bool)])
+    return np.packbits(flat, bitorder="little").tobytes()
+
+
+def crop_instance_mask(mask: np.ndarray, box, resize_info, image_shape):
+    """把网络输入空间的实例掩码裁剪到原图坐标下的检测框，返回 (x, y, w, h, crop)；框为空时返回 None"""
+    H, W = image_shape[:2]
+    x0 = max(0, int(math.floor(box[0])))
+    y0 = max(0, int(math.floor(box[1])))
+    x1 = min(W, int(math.ceil(box[2])))
+    y1 = min(H, int(math.ceil(box[3])))
+    w, h = x1 - x0, y1 - y0
+    if w <= 0 or h <= 0:
+        return None
+
+    mh, mw = mask.shape[:2]
+    if resize_info:
+        tw, th = resize_info["target_size"]
+    else:
+        tw, th = W, H
+    if resize_info and resize_info.get("method") == "aspect_ratio_preserved":
+        sx = sy = resize_info["scale"]
+        ox, oy = resize_info["padding"]
+    else:
+        sx, sy = tw / W, th / H
+        ox, oy = 0, 0
+    # 原图 → 网络输入 → 掩码网格（掩码分辨率可能低于网络输入）
+    gx, gy = mw / tw, mh / th
+    mx0 = int(math.floor((x0 * sx + ox) * gx))
+    my0 = int(math.floor((y0 * sy + oy) * gy))
+    mx1 = max(mx0 + 1, int(math.ceil((x1 * sx + ox) * gx)))
+    my1 = max(my0 + 1, int(math.ceil((y1 * sy + oy) * gy)))
+    region = mask[max(0, my0):min(mh, my1), max(0, mx0):min(mw, mx1)]
+    if region.size == 0:
+        return None
+    crop = cv2.resize(region.astype(np.uint8), (w, h), interpolation=cv2.INTER_NEAREST)
+    return x0, y0, w, h, crop
+
+
+def mask_envelope(index: int, x: int, y: int, w: int, h: int, crop: np.ndarray,
+                  content_type: str, input_index: int = 0) -> pb.ResultEnvelope:
+    env = pb.ResultEnvelope(kind=MASK_KIND, content_type=content_type, input_index=input_index)
+    if content_type == MASK_RLE:
+        env.text = counts_to_string(rle_counts(crop))
+    else:
+        env.binary = pack_bits(crop)
+    env.meta.CopyFrom(struct_pb2.Struct(fields={
+        "index": struct_pb2.Value(number_value=index),
+        "x": struct_pb2.Value(number_value=x),
+        "y": struct_pb2.Value(number_value=y),
+        "width": struct_pb2.Value(number_value=w),
+        "height": struct_pb2.Value(number_value=h),
+    }))
+    return env
+
+
+def mask_envelopes(results, boxes_scaled, resize_info, image_shape, content_type: str, input_index: int = 0):
+    """分割模型的实例掩码 → 按检测顺序的 mask envelope 列表；非分割模型或未协商编码时返回空列表"""
+    if not content_type or not results or results[0].masks is None:
+        return []
+    data = results[0].masks.data.cpu().numpy() > 0.5
+    envelopes = []
+    for i, box in enumerate(boxes_scaled):
+        if i >= len(data):
+            break
+        cropped = crop_instance_mask(data[i], box, resize_info, image_shape)
+        if cropped is None:
+            continue
+        x, y, w, h, crop = cropped
+        envelopes.append(mask_envelope(i, x, y, w, h, crop, content_type, input_index))
+    return envelopes